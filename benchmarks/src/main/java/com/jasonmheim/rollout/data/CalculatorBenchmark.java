@@ -0,0 +1,59 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link StationDistanceCalculator} and {@link DestinationDistanceCalculator} applied to every
+ * station in the system, as the list and notification code do.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalculatorBenchmark {
+
+  @Benchmark
+  public void stationDistanceCalculator(StationSystem system, Blackhole blackhole) {
+    StationDistanceCalculator calculator =
+        new StationDistanceCalculator(StationSystem.LATITUDE, StationSystem.LONGITUDE);
+    for (Station station : system.stationList.stationBeanList) {
+      blackhole.consume(calculator.apply(station));
+    }
+  }
+
+  @Benchmark
+  public void destinationDistanceCalculator(StationSystem system, Blackhole blackhole) {
+    DestinationDistanceCalculator calculator = new DestinationDistanceCalculator(
+        StationSystem.LATITUDE, StationSystem.LONGITUDE,
+        StationSystem.DESTINATION_LATITUDE, StationSystem.DESTINATION_LONGITUDE);
+    for (Station station : system.stationList.stationBeanList) {
+      blackhole.consume(calculator.apply(station));
+    }
+  }
+}
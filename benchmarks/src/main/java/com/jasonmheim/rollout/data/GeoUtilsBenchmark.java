@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import static java.lang.Math.cos;
+import static java.lang.Math.sin;
+import static java.lang.Math.toRadians;
+
+/**
+ * The distance and direction functions in {@link GeoUtils}, each applied from a fixed location to
+ * every station in the system.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GeoUtilsBenchmark {
+
+  private static final double LATITUDE_RADIANS = toRadians(StationSystem.LATITUDE);
+  private static final double LONGITUDE_RADIANS = toRadians(StationSystem.LONGITUDE);
+  private static final double SIN_LATITUDE = sin(LATITUDE_RADIANS);
+  private static final double COS_LATITUDE = cos(LATITUDE_RADIANS);
+
+  @Benchmark
+  public double distanceInMiles(StationSystem system) {
+    double total = 0;
+    for (int i = 0; i < system.latitudeRadians.length; i++) {
+      total += GeoUtils.distanceInMiles(LATITUDE_RADIANS, LONGITUDE_RADIANS,
+          system.latitudeRadians[i], system.longitudeRadians[i]);
+    }
+    return total;
+  }
+
+  @Benchmark
+  public double distanceInMiles_cachedTrigonometry(StationSystem system) {
+    double total = 0;
+    for (int i = 0; i < system.latitudeRadians.length; i++) {
+      total += GeoUtils.distanceInMiles(SIN_LATITUDE, COS_LATITUDE,
+          system.sinLatitude[i], system.cosLatitude[i],
+          cos(system.longitudeRadians[i] - LONGITUDE_RADIANS));
+    }
+    return total;
+  }
+
+  @Benchmark
+  public double haversineInMiles(StationSystem system) {
+    double total = 0;
+    for (int i = 0; i < system.latitudeRadians.length; i++) {
+      total += GeoUtils.haversineInMiles(LATITUDE_RADIANS, LONGITUDE_RADIANS, COS_LATITUDE,
+          system.latitudeRadians[i], system.longitudeRadians[i], system.cosLatitude[i]);
+    }
+    return total;
+  }
+
+  @Benchmark
+  public double equirectangularInMiles(StationSystem system) {
+    double total = 0;
+    for (int i = 0; i < system.latitudeRadians.length; i++) {
+      total += GeoUtils.equirectangularInMiles(LATITUDE_RADIANS, LONGITUDE_RADIANS, COS_LATITUDE,
+          system.latitudeRadians[i], system.longitudeRadians[i], system.cosLatitude[i]);
+    }
+    return total;
+  }
+
+  @Benchmark
+  public void compassDirection(StationSystem system, Blackhole blackhole) {
+    for (int i = 0; i < system.latitudeRadians.length; i++) {
+      blackhole.consume(GeoUtils.compassDirection(LATITUDE_RADIANS, LONGITUDE_RADIANS,
+          system.latitudeRadians[i], system.longitudeRadians[i]));
+    }
+  }
+}
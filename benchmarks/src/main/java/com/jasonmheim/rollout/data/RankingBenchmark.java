@@ -0,0 +1,158 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Ordering;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The ways of ordering a system by distance that {@code StationDataProcessor} has used, from the
+ * original sort of one {@link StationDistance} per station to the lazy and indexed searches. The
+ * processor itself depends on Android, so these repeat its steps with the shared classes it calls.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RankingBenchmark {
+
+  // The number of rows the station list shows before the user scrolls.
+  private static final int PAGE_SIZE = 20;
+  private static final int BIKE_THRESHOLD = 5;
+  // About 30 meters north of StationSystem.LATITUDE.
+  private static final double MOVED_LATITUDE = StationSystem.LATITUDE + 0.0003;
+
+  private static final Predicate<Station> HAS_BIKES = new Predicate<Station>() {
+    @Override
+    public boolean apply(Station station) {
+      return station.availableBikes > BIKE_THRESHOLD;
+    }
+  };
+
+  /** The original orderClosestStations: a stable sort of one object per station. */
+  @Benchmark
+  public List<StationDistance> orderClosestStations_sortedCopy(StationSystem system) {
+    return Ordering.natural().immutableSortedCopy(Iterables.transform(
+        system.stationList.stationBeanList,
+        new StationDistanceCalculator(StationSystem.LATITUDE, StationSystem.LONGITUDE)));
+  }
+
+  @Benchmark
+  public List<DestinationDistance> orderClosestStations_sortedCopyWithDestination(
+      StationSystem system) {
+    return Ordering.natural().immutableSortedCopy(Iterables.transform(
+        system.stationList.stationBeanList,
+        new DestinationDistanceCalculator(
+            StationSystem.LATITUDE, StationSystem.LONGITUDE,
+            StationSystem.DESTINATION_LATITUDE, StationSystem.DESTINATION_LONGITUDE)));
+  }
+
+  /** A full sort over the table's primitive columns, creating objects only for the output. */
+  @Benchmark
+  public List<StationDistance> orderClosestStations_table(StationSystem system) {
+    return materialize(system.table,
+        system.table.rankByDistance(StationSystem.LATITUDE, StationSystem.LONGITUDE));
+  }
+
+  @Benchmark
+  public List<StationDistance> orderClosestStations_equirectangularTable(StationSystem system) {
+    return materialize(system.equirectangularTable, system.equirectangularTable.rankByDistance(
+        StationSystem.LATITUDE, StationSystem.LONGITUDE));
+  }
+
+  /** The lazy ranking, read all the way through. */
+  @Benchmark
+  public void orderClosestStations_lazyAll(StationSystem system, Blackhole blackhole) {
+    StationRanking<StationDistance> ranking =
+        system.table.getRankingByDistance(StationSystem.LATITUDE, StationSystem.LONGITUDE);
+    for (int rank = 0; rank < ranking.size(); rank++) {
+      blackhole.consume(ranking.get(rank));
+    }
+  }
+
+  /** The lazy ranking, read only as far as the first page of the station list. */
+  @Benchmark
+  public void orderClosestStations_lazyFirstPage(StationSystem system, Blackhole blackhole) {
+    StationRanking<StationDistance> ranking =
+        system.table.getRankingByDistance(StationSystem.LATITUDE, StationSystem.LONGITUDE);
+    int count = Math.min(PAGE_SIZE, ranking.size());
+    for (int rank = 0; rank < count; rank++) {
+      blackhole.consume(ranking.get(rank));
+    }
+  }
+
+  /**
+   * The lazy ranking after a short move, repairing the order of the previous ranking's first page
+   * rather than starting over. Compare with {@link #orderClosestStations_lazyFirstPage}.
+   */
+  @Benchmark
+  public void orderClosestStations_repairedFirstPage(
+      StationSystem system, Blackhole blackhole) {
+    StationRanking<StationDistance> ranking = system.table.getRankingByDistance(
+        MOVED_LATITUDE, StationSystem.LONGITUDE, system.firstPageRanking);
+    int count = Math.min(PAGE_SIZE, ranking.size());
+    for (int rank = 0; rank < count; rank++) {
+      blackhole.consume(ranking.get(rank));
+    }
+  }
+
+  @Benchmark
+  public StationDistanceRank closestAvailableStation_lazy(StationSystem system) {
+    StationRanking<StationDistance> ranking =
+        system.table.getRankingByDistance(StationSystem.LATITUDE, StationSystem.LONGITUDE);
+    return ranking.getStationDistanceRank(ranking.findFirstWithBikes(BIKE_THRESHOLD));
+  }
+
+  @Benchmark
+  public StationDistanceRank closestAvailableStation_grid(StationSystem system) {
+    return system.gridIndex.getClosestStation(
+        StationSystem.LATITUDE, StationSystem.LONGITUDE, HAS_BIKES);
+  }
+
+  @Benchmark
+  public StationDistanceRank closestAvailableStation_gridWithDestination(StationSystem system) {
+    return system.gridIndex.getClosestStation(
+        StationSystem.LATITUDE, StationSystem.LONGITUDE,
+        StationSystem.DESTINATION_LATITUDE, StationSystem.DESTINATION_LONGITUDE, HAS_BIKES);
+  }
+
+  private static List<StationDistance> materialize(StationTable table, int[] ranking) {
+    Function<Station, StationDistance> calculator =
+        new StationDistanceCalculator(StationSystem.LATITUDE, StationSystem.LONGITUDE);
+    ImmutableList.Builder<StationDistance> results = ImmutableList.builder();
+    for (int row : ranking) {
+      results.add(calculator.apply(table.getStation(row)));
+    }
+    return results.build();
+  }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding a station feed with Gson's reflective adapter versus {@link StationListTypeAdapter}, and
+ * the stored catalog and snapshot with {@link StationListBinaryFormat}. The feed is the sample snapshot, or a
+ * synthetic system serialized with reflection so that it has every field the real feed has.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StationListParseBenchmark {
+
+  private final Gson reflectiveGson = new Gson();
+  private final Gson streamingGson = new GsonBuilder()
+      .registerTypeAdapter(StationList.class, new StationListTypeAdapter())
+      .create();
+
+  private String json;
+  private ByteBuffer catalog;
+  private ByteBuffer snapshot;
+
+  @Setup(Level.Trial)
+  public void setUp(StationSystem system) throws IOException {
+    json = reflectiveGson.toJson(system.stationList);
+    catalog = StationListBinaryFormat.encodeCatalog(StationCatalog.of(system.stationList));
+    snapshot = StationListBinaryFormat.encodeSnapshot(StationStatusSnapshot.of(system.stationList));
+  }
+
+  @Benchmark
+  public StationList reflective() {
+    return reflectiveGson.fromJson(json, StationList.class);
+  }
+
+  @Benchmark
+  public StationList streaming() {
+    return streamingGson.fromJson(json, StationList.class);
+  }
+
+  @Benchmark
+  public StationList binary() throws IOException {
+    return StationListBinaryFormat.decodeCatalog(catalog.duplicate())
+        .merge(StationListBinaryFormat.decodeSnapshot(snapshot.duplicate()));
+  }
+
+  /** Only the snapshot is decoded on a sync once the catalog is known. */
+  @Benchmark
+  public StationStatusSnapshot binarySnapshot() throws IOException {
+    return StationListBinaryFormat.decodeSnapshot(snapshot.duplicate());
+  }
+}
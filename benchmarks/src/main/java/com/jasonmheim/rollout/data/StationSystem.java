@@ -0,0 +1,153 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import com.google.gson.Gson;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static java.lang.Math.cos;
+import static java.lang.Math.sin;
+import static java.lang.Math.sqrt;
+import static java.lang.Math.toRadians;
+
+/**
+ * A bike share system for the benchmarks to rank. The 332 station system is the sample snapshot
+ * used by the shared tests; larger systems are synthesized from it by scattering copies of its
+ * stations at random over an area grown in proportion, so that station density stays the same.
+ */
+@State(Scope.Benchmark)
+public class StationSystem {
+
+  static final String SAMPLE_SNAPSHOT = "libs/test/data/sampleSnapshot.json";
+
+  // Approximately 76 Ninth Ave, New York, NY, 10011
+  static final double LATITUDE = 40.7417806;
+  static final double LONGITUDE = -74.0045012;
+  // Approximately Grand Army Plaza, Brooklyn, NY
+  static final double DESTINATION_LATITUDE = 40.6740;
+  static final double DESTINATION_LONGITUDE = -73.9701;
+
+  @Param({"332", "5000", "50000"})
+  public int stations;
+
+  StationList stationList;
+  StationTable table;
+  StationTable equirectangularTable;
+  StationGridIndex gridIndex;
+
+  // A ranking from LATITUDE, LONGITUDE with its first page read, as a user would leave it.
+  StationRanking<StationDistance> firstPageRanking;
+
+  // Station coordinates in radians, along with the trigonometry the cached overloads expect.
+  double[] latitudeRadians;
+  double[] longitudeRadians;
+  double[] sinLatitude;
+  double[] cosLatitude;
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    StationList sample = loadSample();
+    stationList = stations == sample.stationBeanList.size() ? sample : synthesize(sample, stations);
+    table = new StationTable(stationList);
+    equirectangularTable = new StationTable(stationList, DistanceMode.EQUIRECTANGULAR);
+    gridIndex = new StationGridIndex(table);
+    firstPageRanking = table.getRankingByDistance(LATITUDE, LONGITUDE);
+    firstPageRanking.get(Math.min(20, firstPageRanking.size()) - 1);
+    int size = stationList.stationBeanList.size();
+    latitudeRadians = new double[size];
+    longitudeRadians = new double[size];
+    sinLatitude = new double[size];
+    cosLatitude = new double[size];
+    for (int i = 0; i < size; i++) {
+      Station station = stationList.stationBeanList.get(i);
+      latitudeRadians[i] = toRadians(station.latitude);
+      longitudeRadians[i] = toRadians(station.longitude);
+      sinLatitude[i] = sin(latitudeRadians[i]);
+      cosLatitude[i] = cos(latitudeRadians[i]);
+    }
+  }
+
+  static StationList loadSample() throws IOException {
+    FileInputStream file = new FileInputStream(SAMPLE_SNAPSHOT);
+    try {
+      return new Gson().fromJson(new InputStreamReader(file), StationList.class);
+    } finally {
+      file.close();
+    }
+  }
+
+  static StationList synthesize(StationList sample, int count) {
+    double minLatitude = Double.MAX_VALUE;
+    double maxLatitude = -Double.MAX_VALUE;
+    double minLongitude = Double.MAX_VALUE;
+    double maxLongitude = -Double.MAX_VALUE;
+    for (Station station : sample.stationBeanList) {
+      minLatitude = Math.min(minLatitude, station.latitude);
+      maxLatitude = Math.max(maxLatitude, station.latitude);
+      minLongitude = Math.min(minLongitude, station.longitude);
+      maxLongitude = Math.max(maxLongitude, station.longitude);
+    }
+    double scale = sqrt((double) count / sample.stationBeanList.size());
+    double latitudeSpan = (maxLatitude - minLatitude) * scale;
+    double longitudeSpan = (maxLongitude - minLongitude) * scale;
+    double centerLatitude = (minLatitude + maxLatitude) / 2;
+    double centerLongitude = (minLongitude + maxLongitude) / 2;
+
+    // A fixed seed keeps every run, and every fork, ranking the same system.
+    Random random = new Random(count);
+    List<Station> stations = new ArrayList<Station>(count);
+    for (int i = 0; i < count; i++) {
+      Station template = sample.stationBeanList.get(i % sample.stationBeanList.size());
+      Station station = new Station();
+      station.id = i + 1;
+      station.stationName = template.stationName;
+      station.availableDocks = template.availableDocks;
+      station.totalDocks = template.totalDocks;
+      station.availableBikes = template.availableBikes;
+      station.statusValue = template.statusValue;
+      station.statusKey = template.statusKey;
+      station.stAddress1 = template.stAddress1;
+      station.stAddress2 = template.stAddress2;
+      station.city = template.city;
+      station.postalCode = template.postalCode;
+      station.location = template.location;
+      station.altitude = template.altitude;
+      station.testStation = template.testStation;
+      station.lastCommunicationTime = template.lastCommunicationTime;
+      station.landMark = template.landMark;
+      station.latitude = centerLatitude + (random.nextDouble() - 0.5) * latitudeSpan;
+      station.longitude = centerLongitude + (random.nextDouble() - 0.5) * longitudeSpan;
+      stations.add(station);
+    }
+    StationList result = new StationList();
+    result.executionTime = sample.executionTime;
+    result.stationBeanList = stations;
+    return result;
+  }
+}
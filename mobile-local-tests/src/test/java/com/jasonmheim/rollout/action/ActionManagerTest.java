@@ -22,7 +22,6 @@ import android.content.ContentResolver;
 import android.content.ContentValues;
 import android.content.SharedPreferences;
 import android.location.Location;
-import android.net.Uri;
 
 import com.jasonmheim.rollout.settings.Settings;
 
@@ -40,11 +39,11 @@ import static com.jasonmheim.rollout.Constants.ACTION_IDLE;
 import static com.jasonmheim.rollout.Constants.ACTION_RIDE;
 import static com.jasonmheim.rollout.Constants.ACTION_SEARCH;
 import static com.jasonmheim.rollout.Constants.ACTION_SILENCE;
+import static com.jasonmheim.rollout.Constants.ACTION_URI;
 import static com.jasonmheim.rollout.Constants.DESTINATION_NAME_HOME;
 import static com.jasonmheim.rollout.Constants.DESTINATION_NAME_WORK;
 import static com.jasonmheim.rollout.Constants.PREF_KEY;
 import static com.jasonmheim.rollout.Constants.PREF_MODE;
-import static com.jasonmheim.rollout.Constants.STATION_URI;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
@@ -86,7 +85,7 @@ public class ActionManagerTest {
         mockSettings,
         fakeSharedPreferences);
 
-    Mockito.when(mockContentResolver.acquireContentProviderClient(STATION_URI))
+    Mockito.when(mockContentResolver.acquireContentProviderClient(ACTION_URI))
         .thenReturn(mockContentProviderClient);
     Mockito.when(mockSettings.getHomeDestination()).thenReturn(homeLocation);
     Mockito.when(mockSettings.getWorkDestination()).thenReturn(workLocation);
@@ -181,7 +180,7 @@ public class ActionManagerTest {
 
   private void verifyUpdateNotification() throws Exception {
     verify(mockContentProviderClient).update(
-        Mockito.<Uri>any(), Mockito.<ContentValues>any(),
+        Mockito.eq(ACTION_URI), Mockito.<ContentValues>any(),
         Mockito.<String>any(), Mockito.<String[]>any());
   }
 
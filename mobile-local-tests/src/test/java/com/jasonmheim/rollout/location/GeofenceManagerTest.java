@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.location;
+
+import android.annotation.TargetApi;
+import android.app.PendingIntent;
+import android.location.Location;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.location.GeofencingApi;
+import com.google.android.gms.location.GeofencingRequest;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.jasonmheim.rollout.data.Station;
+import com.jasonmheim.rollout.data.StationDistance;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.inject.Provider;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyListOf;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+@RunWith(RobolectricTestRunner.class)
+@TargetApi(21)
+@Config(manifest = Config.NONE)
+public class GeofenceManagerTest {
+
+  @Mock private GeofencingApi mockGeofencingApi;
+  @Mock private GoogleApiClient mockLocationClient;
+
+  private GeofenceManager instance;
+
+  @Before
+  public void setUp() throws Exception {
+    MockitoAnnotations.initMocks(this);
+    instance = new GeofenceManager(Robolectric.application,
+        MoreExecutors.newDirectExecutorService(),
+        mockGeofencingApi,
+        new Provider<GoogleApiClient>() {
+          @Override public GoogleApiClient get() { return mockLocationClient; }
+        });
+  }
+
+  @Test
+  public void testSetFences_firstRemovesNothing() {
+    instance.setFences(location(), candidates(1, 2, 3));
+    verify(mockGeofencingApi).addGeofences(
+        any(GoogleApiClient.class), any(GeofencingRequest.class), any(PendingIntent.class));
+    verify(mockGeofencingApi, never())
+        .removeGeofences(any(GoogleApiClient.class), anyListOf(String.class));
+  }
+
+  @Test
+  public void testSetFences_removesDroppedStations() {
+    instance.setFences(location(), candidates(1, 2, 3));
+    instance.setFences(location(), candidates(3, 4, 1));
+    verify(mockGeofencingApi).removeGeofences(mockLocationClient, Arrays.asList("2"));
+    verify(mockGeofencingApi, times(2)).addGeofences(
+        any(GoogleApiClient.class), any(GeofencingRequest.class), any(PendingIntent.class));
+  }
+
+  @Test
+  public void testSetFences_unchanged() {
+    instance.setFences(location(), candidates(1, 2, 3));
+    instance.setFences(location(), candidates(1, 2, 3));
+    verify(mockGeofencingApi).addGeofences(
+        any(GoogleApiClient.class), any(GeofencingRequest.class), any(PendingIntent.class));
+    verify(mockGeofencingApi, never())
+        .removeGeofences(any(GoogleApiClient.class), anyListOf(String.class));
+  }
+
+  private static Location location() {
+    Location location = new Location("testonly");
+    location.setLatitude(40.7417806);
+    location.setLongitude(-74.0045012);
+    return location;
+  }
+
+  private static List<StationDistance> candidates(int... ids) {
+    List<StationDistance> candidates = new ArrayList<StationDistance>();
+    for (int id : ids) {
+      Station station = new Station();
+      station.id = id;
+      station.latitude = 40.74 + id * 0.001;
+      station.longitude = -74.0;
+      candidates.add(new StationDistance(station, id * 0.1, "N"));
+    }
+    return candidates;
+  }
+}
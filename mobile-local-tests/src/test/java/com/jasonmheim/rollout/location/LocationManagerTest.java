@@ -40,12 +40,16 @@ import org.robolectric.shadows.ShadowApplication;
 import org.robolectric.shadows.ShadowContentResolver;
 import org.robolectric.tester.android.content.TestSharedPreferences;
 
+import java.io.File;
 import java.util.Map;
 import java.util.concurrent.ExecutorService;
 
 import javax.inject.Provider;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.verify;
 
 @RunWith(RobolectricTestRunner.class)
 @TargetApi(21)
@@ -74,7 +78,12 @@ public class LocationManagerTest {
 
     ShadowContentResolver.registerProvider(Constants.AUTHORITY, mockContentProvider);
 
-    instance = new LocationManager(Robolectric.application,
+    new File(Robolectric.application.getFilesDir(), LocationManager.LOCATION_FILE).delete();
+    instance = newInstance();
+  }
+
+  private LocationManager newInstance() {
+    return new LocationManager(Robolectric.application,
         Robolectric.application.getContentResolver(),
         sameThreadExecutor,
         mockFusedLocationProviderApi,
@@ -82,26 +91,27 @@ public class LocationManagerTest {
           @Override public GoogleApiClient get() { return mockLocationClient; }
         },
         testSharedPreferences);
-
-
   }
 
   @Test
   public void testSetLastLocation() throws Exception {
-    testSharedPreferences.edit()
-        .putString(LocationManager.LATITUDE, "1.23")
-        .putString(LocationManager.LONGITUDE, "4.56")
-        .putLong(LocationManager.TIMESTAMP, 78907890L)
-        .apply();
     Location location = new Location("testonly");
     location.setLatitude(32.1);
     location.setLongitude(-43.2);
     location.setTime(987987987L);
     instance.setLastLocation(location);
 
-    assertEquals("32.1", testSharedPreferences.getString(LocationManager.LATITUDE, ""));
-    assertEquals("-43.2", testSharedPreferences.getString(LocationManager.LONGITUDE, ""));
-    assertEquals(987987987L, testSharedPreferences.getLong(LocationManager.TIMESTAMP, 0L));
+    Location lastLocation = instance.getLastLocation();
+    assertEquals(32.1, lastLocation.getLatitude(), 0);
+    assertEquals(-43.2, lastLocation.getLongitude(), 0);
+    assertEquals(987987987L, lastLocation.getTime());
+    verify(mockContentProvider).update(Constants.LOCATION_URI, null, null, null);
+
+    // A new process reads it back from the file.
+    Location storedLocation = newInstance().getLastLocation();
+    assertEquals(32.1, storedLocation.getLatitude(), 0);
+    assertEquals(-43.2, storedLocation.getLongitude(), 0);
+    assertEquals(987987987L, storedLocation.getTime());
   }
 
   @Test
@@ -118,6 +128,14 @@ public class LocationManagerTest {
     expected.setTime(98769876L);
 
     assertEquals(expected, location);
+    // The location moves out of the preferences, and is found in the file from then on.
+    assertFalse(testSharedPreferences.contains(LocationManager.LATITUDE));
+    assertEquals(expected, newInstance().getLastLocation());
+  }
+
+  @Test
+  public void testGetLastLocation_neverKnown() throws Exception {
+    assertNull(instance.getLastLocation());
   }
 
   // TODO(jasonmheim): add a test for setLocationUpdateInterval
@@ -0,0 +1,106 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.settings;
+
+import android.annotation.TargetApi;
+import android.content.SharedPreferences;
+
+import com.google.common.collect.Maps;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.tester.android.content.TestSharedPreferences;
+
+import java.util.Map;
+
+import static com.jasonmheim.rollout.Constants.PREF_DESTINATION_HOME_LATITUDE;
+import static com.jasonmheim.rollout.Constants.PREF_DESTINATION_HOME_LONGITUDE;
+import static com.jasonmheim.rollout.Constants.PREF_EMPTY_THRESHOLD;
+import static com.jasonmheim.rollout.Constants.PREF_FULL_THRESHOLD;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for {@link Settings}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@TargetApi(21)
+@Config(manifest = Config.NONE)
+public class SettingsTest {
+
+  private TestSharedPreferences testSharedPreferences;
+  private SharedPreferences.OnSharedPreferenceChangeListener listener;
+
+  private Settings instance;
+
+  @Before
+  public void setUp() throws Exception {
+    Map<String, Map<String, Object>> preferenceMap = Maps.newHashMap();
+    testSharedPreferences = new TestSharedPreferences(preferenceMap, "prefs", 0);
+    testSharedPreferences.edit()
+        .putString(PREF_EMPTY_THRESHOLD, "3")
+        .putString(PREF_FULL_THRESHOLD, "4")
+        .putString(PREF_DESTINATION_HOME_LATITUDE, "1.234")
+        .putString(PREF_DESTINATION_HOME_LONGITUDE, "2.345")
+        .commit();
+    SharedPreferences sharedPreferences = spy(testSharedPreferences);
+    instance = new Settings(sharedPreferences);
+    // The test preferences do not call their listeners, so the test calls the one registered.
+    ArgumentCaptor<SharedPreferences.OnSharedPreferenceChangeListener> captor =
+        ArgumentCaptor.forClass(SharedPreferences.OnSharedPreferenceChangeListener.class);
+    verify(sharedPreferences).registerOnSharedPreferenceChangeListener(captor.capture());
+    listener = captor.getValue();
+  }
+
+  @Test
+  public void testSnapshot() throws Exception {
+    SettingsSnapshot snapshot = instance.getSnapshot();
+    assertEquals(3, snapshot.getEmptyThreshold());
+    assertEquals(4, snapshot.getFullThreshold());
+    assertEquals(1.234, snapshot.getHomeDestination().getLatitude(), 0);
+    assertEquals(2.345, snapshot.getHomeDestination().getLongitude(), 0);
+    assertNull(snapshot.getWorkDestination());
+    assertSame(snapshot, instance.getSnapshot());
+    assertSame(snapshot.getHomeDestination(), instance.getHomeDestination());
+  }
+
+  @Test
+  public void testSnapshot_afterChange() throws Exception {
+    SettingsSnapshot snapshot = instance.getSnapshot();
+    testSharedPreferences.edit().putString(PREF_EMPTY_THRESHOLD, "7").commit();
+    assertSame(snapshot, instance.getSnapshot());
+    listener.onSharedPreferenceChanged(testSharedPreferences, PREF_EMPTY_THRESHOLD);
+    assertNotSame(snapshot, instance.getSnapshot());
+    assertEquals(7, instance.getEmptyThreshold());
+    assertEquals(3, snapshot.getEmptyThreshold());
+  }
+
+  @Test
+  public void testSnapshot_unparseableThreshold() throws Exception {
+    testSharedPreferences.edit().putString(PREF_FULL_THRESHOLD, "many").commit();
+    listener.onSharedPreferenceChanged(testSharedPreferences, PREF_FULL_THRESHOLD);
+    assertEquals(0, instance.getFullThreshold());
+  }
+}
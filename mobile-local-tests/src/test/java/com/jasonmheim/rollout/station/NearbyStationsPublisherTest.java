@@ -0,0 +1,131 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.station;
+
+import android.annotation.TargetApi;
+
+import com.jasonmheim.rollout.data.NearbyStations;
+import com.jasonmheim.rollout.data.NearbyStationsFormat;
+import com.jasonmheim.rollout.data.Station;
+import com.jasonmheim.rollout.data.StationDistance;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link NearbyStationsPublisher}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@TargetApi(21)
+@Config(manifest = Config.NONE)
+public class NearbyStationsPublisherTest {
+
+  private final List<String> paths = new ArrayList<String>();
+  private final List<byte[]> payloads = new ArrayList<byte[]>();
+  private boolean failing;
+
+  private NearbyStationsPublisher instance;
+
+  @Before
+  public void setUp() {
+    instance = new NearbyStationsPublisher(new NearbyStationsPublisher.DataLayer() {
+      @Override
+      public boolean put(String path, byte[] data) {
+        if (failing) {
+          return false;
+        }
+        paths.add(path);
+        payloads.add(data);
+        return true;
+      }
+    });
+  }
+
+  @Test
+  public void testPublish_firstIsFull() throws Exception {
+    instance.publish(stations(0.1, 5));
+    assertEquals(Collections.singletonList(NearbyStationsFormat.FULL_PATH), paths);
+    NearbyStations decoded = decode(0, null);
+    assertEquals(NearbyStationsPublisher.STATION_COUNT, decoded.getStations().size());
+    assertEquals(5, decoded.getStations().get(0).getAvailableBikes());
+  }
+
+  @Test
+  public void testPublish_changeIsDelta() throws Exception {
+    instance.publish(stations(0.1, 5));
+    instance.publish(stations(0.2, 4));
+    assertEquals(NearbyStationsFormat.DELTA_PATH, paths.get(1));
+    assertTrue(payloads.get(1).length * 2 <= payloads.get(0).length);
+    NearbyStations decoded = decode(1, decode(0, null));
+    assertEquals(4, decoded.getStations().get(0).getAvailableBikes());
+  }
+
+  @Test
+  public void testPublish_unchangedOnWatch() {
+    instance.publish(stations(0.1, 5));
+    // A few feet closer still reads 0.10 miles.
+    instance.publish(stations(0.1001, 5));
+    assertEquals(1, paths.size());
+  }
+
+  @Test
+  public void testPublish_retriesAfterFailure() {
+    failing = true;
+    instance.publish(stations(0.1, 5));
+    failing = false;
+    instance.publish(stations(0.1, 5));
+    assertEquals(Collections.singletonList(NearbyStationsFormat.FULL_PATH), paths);
+  }
+
+  @Test
+  public void testPublish_emptyClearsWatch() throws Exception {
+    instance.publish(stations(0.1, 5));
+    instance.publish(Collections.<StationDistance>emptyList());
+    assertEquals(2, paths.size());
+    assertEquals(0, decode(1, decode(0, null)).getStations().size());
+  }
+
+  private NearbyStations decode(int index, NearbyStations base) throws Exception {
+    return NearbyStationsFormat.decode(ByteBuffer.wrap(payloads.get(index)), base);
+  }
+
+  // More stations than are pushed, each a tenth of a mile further than the last.
+  private static List<StationDistance> stations(double closestMiles, int closestBikes) {
+    List<StationDistance> stations = new ArrayList<StationDistance>();
+    for (int id = 1; id <= NearbyStationsPublisher.STATION_COUNT + 2; id++) {
+      Station station = new Station();
+      station.id = id;
+      station.stationName = "Station " + id;
+      station.availableBikes = id == 1 ? closestBikes : 10;
+      station.availableDocks = 10;
+      station.totalDocks = 20;
+      stations.add(new StationDistance(station, closestMiles + (id - 1) * 0.1, "NE"));
+    }
+    return stations;
+  }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.station;
+
+import android.annotation.TargetApi;
+import android.database.Cursor;
+
+import com.jasonmheim.rollout.data.Station;
+import com.jasonmheim.rollout.data.StationList;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+
+import static com.jasonmheim.rollout.station.StationDataCursor.COLUMN_AVAILABLE_BIKES;
+import static com.jasonmheim.rollout.station.StationDataCursor.COLUMN_ID;
+import static com.jasonmheim.rollout.station.StationDataCursor.COLUMN_LATITUDE;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link StationDataCursor}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@TargetApi(21)
+@Config(manifest = Config.NONE)
+public class StationDataCursorTest {
+
+  private StationList stationList;
+
+  @Before
+  public void setUp() {
+    stationList = new StationList();
+    stationList.executionTime = "2014-12-01 08:00:00 AM";
+    stationList.timestamp = 1234L;
+    stationList.stationBeanList = new ArrayList<Station>();
+    for (int i = 0; i < 3; i++) {
+      Station station = new Station();
+      station.id = 100 + i;
+      station.stationName = "Station " + i;
+      station.latitude = 40.7 + i;
+      station.longitude = -74.0 - i;
+      station.availableBikes = i;
+      station.availableDocks = 10 - i;
+      station.totalDocks = 10;
+      station.statusKey = 1;
+      station.statusValue = "In Service";
+      station.testStation = i == 2;
+      stationList.stationBeanList.add(station);
+    }
+  }
+
+  @Test
+  public void testProjection() {
+    String[] projection = {COLUMN_LATITUDE, COLUMN_ID};
+    StationDataCursor cursor = new StationDataCursor(stationList, projection);
+    assertArrayEquals(projection, cursor.getColumnNames());
+    assertEquals(3, cursor.getCount());
+    assertTrue(cursor.moveToPosition(1));
+    assertEquals(41.7, cursor.getDouble(0), 0);
+    assertEquals(Cursor.FIELD_TYPE_FLOAT, cursor.getType(0));
+    assertEquals(101, cursor.getInt(1));
+    assertEquals(Cursor.FIELD_TYPE_INTEGER, cursor.getType(1));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testUnknownColumn() {
+    new StationDataCursor(stationList, new String[] {COLUMN_AVAILABLE_BIKES, "bogus"});
+  }
+
+  @Test
+  public void testReadStationList() {
+    StationList result =
+        StationDataCursor.readStationList(new StationDataCursor(stationList, null));
+    assertEquals(stationList.executionTime, result.executionTime);
+    assertEquals(stationList.timestamp, result.timestamp);
+    assertEquals(3, result.stationBeanList.size());
+    for (int i = 0; i < 3; i++) {
+      Station expected = stationList.stationBeanList.get(i);
+      Station actual = result.stationBeanList.get(i);
+      assertEquals(expected.id, actual.id);
+      assertEquals(expected.stationName, actual.stationName);
+      assertEquals(expected.latitude, actual.latitude, 0);
+      assertEquals(expected.longitude, actual.longitude, 0);
+      assertEquals(expected.availableBikes, actual.availableBikes);
+      assertEquals(expected.availableDocks, actual.availableDocks);
+      assertEquals(expected.totalDocks, actual.totalDocks);
+      assertEquals(expected.statusKey, actual.statusKey);
+      assertEquals(expected.statusValue, actual.statusValue);
+      assertEquals(expected.testStation, actual.testStation);
+    }
+  }
+
+  @Test
+  public void testNoData() {
+    StationList result = StationDataCursor.readStationList(new StationDataCursor(null, null));
+    assertEquals(0, result.stationBeanList.size());
+  }
+}
@@ -0,0 +1,226 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.station;
+
+import android.annotation.TargetApi;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import com.google.gson.Gson;
+import com.jasonmheim.rollout.data.StationList;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLConnection;
+import java.util.Date;
+import java.util.zip.GZIPOutputStream;
+
+import javax.inject.Provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link StationDataDownloader}, against a stub HTTP server on the loopback interface.
+ */
+@RunWith(RobolectricTestRunner.class)
+@TargetApi(21)
+@Config(manifest = Config.NONE)
+public class StationDataDownloaderTest {
+
+  private static final String FEED = "{\"executionTime\":\"2014-12-01 08:00:00 AM\","
+      + "\"stationBeanList\":[{\"id\":72,\"stationName\":\"W 52 St & 11 Ave\","
+      + "\"availableDocks\":20,\"totalDocks\":39,\"latitude\":40.76727216,"
+      + "\"longitude\":-73.99392888,\"statusValue\":\"In Service\",\"statusKey\":1,"
+      + "\"availableBikes\":17}]}";
+  private static final String ENTITY_TAG = "\"v1\"";
+
+  private HttpServer server;
+  private StubHandler handler;
+  private URL url;
+  private long now;
+  private File directory;
+  private StationDataStorage storage;
+  private StationDataDownloader instance;
+
+  @Before
+  public void setUp() throws Exception {
+    handler = new StubHandler();
+    server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/stations/json", handler);
+    server.start();
+    url = new URL("http://127.0.0.1:" + server.getAddress().getPort() + "/stations/json");
+    now = 1000;
+    directory = Files.createTempDir();
+    storage = new StationDataStorage(new File(directory, "stationData"), new Gson());
+    instance = createInstance();
+  }
+
+  @After
+  public void tearDown() {
+    server.stop(0);
+    for (File file : Files.fileTreeTraverser().postOrderTraversal(directory)) {
+      file.delete();
+    }
+  }
+
+  // Each instance stands for the downloader of a new process sharing the same storage.
+  private StationDataDownloader createInstance() {
+    return new StationDataDownloader(
+        new Gson(),
+        new Provider<Date>() {
+          @Override
+          public Date get() {
+            return new Date(now);
+          }
+        },
+        new Provider<URLConnection>() {
+          @Override
+          public URLConnection get() {
+            try {
+              return url.openConnection();
+            } catch (IOException ex) {
+              throw new RuntimeException(ex);
+            }
+          }
+        },
+        storage);
+  }
+
+  @Test
+  public void testGzippedDownload() {
+    StationList stationList = instance.get();
+    assertEquals(1, stationList.stationBeanList.size());
+    assertEquals(17, stationList.stationBeanList.get(0).availableBikes);
+    assertEquals(1000, stationList.timestamp);
+    assertEquals("gzip", handler.acceptEncoding);
+    assertNull(handler.ifNoneMatch);
+    assertEquals(handler.bytesSent, instance.getLastBytesTransferred());
+    assertTrue(instance.getLastBytesTransferred() > 0);
+    assertEquals(1, instance.getDownloadCount());
+  }
+
+  @Test
+  public void testNotModified() {
+    StationList first = instance.get();
+    storage.set(first);
+    now = 61000;
+    StationList second = instance.get();
+    assertEquals(ENTITY_TAG, handler.ifNoneMatch);
+    assertEquals(first.executionTime, second.executionTime);
+    assertEquals(1, second.stationBeanList.size());
+    assertEquals(17, second.stationBeanList.get(0).availableBikes);
+    assertEquals(1000, first.timestamp);
+    assertEquals(61000, second.timestamp);
+    assertEquals(0, instance.getLastBytesTransferred());
+    assertEquals(0, instance.getLastParseMillis());
+    assertEquals(1, instance.getDownloadCount());
+    assertEquals(1, instance.getNotModifiedCount());
+  }
+
+  @Test
+  public void testNotModified_newProcess() {
+    storage.set(instance.get());
+    now = 61000;
+    StationDataDownloader restarted = createInstance();
+    StationList stationList = restarted.get();
+    assertEquals(ENTITY_TAG, handler.ifNoneMatch);
+    assertEquals(17, stationList.stationBeanList.get(0).availableBikes);
+    assertEquals(61000, stationList.timestamp);
+    assertEquals(0, restarted.getDownloadCount());
+    assertEquals(1, restarted.getNotModifiedCount());
+  }
+
+  @Test
+  public void testUnconditionalUntilStored() {
+    instance.get();
+    StationList stationList = instance.get();
+    assertNull(handler.ifNoneMatch);
+    assertEquals(17, stationList.stationBeanList.get(0).availableBikes);
+    assertEquals(2, instance.getDownloadCount());
+    assertEquals(0, instance.getNotModifiedCount());
+  }
+
+  @Test
+  public void testModified() {
+    storage.set(instance.get());
+    handler.entityTag = "\"v2\"";
+    handler.body = FEED.replace("\"availableBikes\":17", "\"availableBikes\":16");
+    StationList stationList = instance.get();
+    assertEquals(ENTITY_TAG, handler.ifNoneMatch);
+    assertEquals(16, stationList.stationBeanList.get(0).availableBikes);
+    assertEquals(2, instance.getDownloadCount());
+    assertEquals(0, instance.getNotModifiedCount());
+  }
+
+  @Test
+  public void testServerError() {
+    handler.status = 500;
+    assertNull(instance.get());
+  }
+
+  /** Serves the feed gzipped with an entity tag, honoring If-None-Match. */
+  private static class StubHandler implements HttpHandler {
+
+    volatile int status = 200;
+    volatile String entityTag = ENTITY_TAG;
+    volatile String body = FEED;
+    volatile String acceptEncoding;
+    volatile String ifNoneMatch;
+    volatile long bytesSent;
+
+    @Override
+    public void handle(HttpExchange exchange) throws IOException {
+      acceptEncoding = exchange.getRequestHeaders().getFirst("Accept-Encoding");
+      ifNoneMatch = exchange.getRequestHeaders().getFirst("If-None-Match");
+      if (status != 200) {
+        exchange.sendResponseHeaders(status, -1);
+      } else if (entityTag.equals(ifNoneMatch)) {
+        exchange.getResponseHeaders().set("ETag", entityTag);
+        exchange.sendResponseHeaders(304, -1);
+      } else {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GZIPOutputStream gzip = new GZIPOutputStream(bytes);
+        gzip.write(body.getBytes(Charsets.UTF_8));
+        gzip.close();
+        bytesSent = bytes.size();
+        exchange.getResponseHeaders().set("ETag", entityTag);
+        exchange.getResponseHeaders().set("Content-Encoding", "gzip");
+        exchange.sendResponseHeaders(200, bytesSent);
+        OutputStream output = exchange.getResponseBody();
+        bytes.writeTo(output);
+        output.close();
+      }
+      exchange.close();
+    }
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.station;
+
+import android.annotation.TargetApi;
+
+import com.jasonmheim.rollout.data.DestinationDistance;
+import com.jasonmheim.rollout.data.Station;
+import com.jasonmheim.rollout.data.StationDistance;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@TargetApi(21)
+@Config(manifest = Config.NONE)
+public class StationDataListAdapterTest {
+
+  @Test
+  public void testUpdateStations_keepsOrderAndDistance() {
+    StationDataListAdapter adapter = new StationDataListAdapter();
+    StationDistance first = new StationDistance(station(1, 5), 0.5, "N");
+    StationDistance second = new StationDistance(station(2, 5), 0.6, "SW");
+    adapter.setRows(Arrays.asList(first, second), false);
+    Map<Integer, Station> changed = new HashMap<Integer, Station>();
+    Station updated = station(2, 4);
+    changed.put(2, updated);
+    changed.put(3, station(3, 1));
+    adapter.updateStations(changed);
+
+    assertEquals(2, adapter.getItemCount());
+    assertSame(first, adapter.getItem(0));
+    assertSame(updated, adapter.getItem(1).getStation());
+    assertEquals(0.6, adapter.getItem(1).getMilesToLocation(), 0);
+    assertEquals("SW", adapter.getItem(1).getDirection());
+  }
+
+  @Test
+  public void testWithStation_keepsDestinationDistance() {
+    Station updated = station(1, 3);
+    StationDistance row = StationDataListAdapter.withStation(
+        new DestinationDistance(station(1, 5), 1.5, 0.5, "E"), updated);
+    assertTrue(row instanceof DestinationDistance);
+    assertSame(updated, row.getStation());
+    assertEquals(1.5, ((DestinationDistance) row).getMilesToDestination(), 0);
+    assertEquals(0.5, row.getMilesToLocation(), 0);
+    assertEquals("E", row.getDirection());
+  }
+
+  private static Station station(int id, int availableBikes) {
+    Station station = new Station();
+    station.id = id;
+    station.stationName = "Station " + id;
+    station.availableBikes = availableBikes;
+    station.availableDocks = 10 - availableBikes;
+    station.totalDocks = 12;
+    return station;
+  }
+}
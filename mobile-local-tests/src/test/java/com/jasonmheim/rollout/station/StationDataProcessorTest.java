@@ -0,0 +1,215 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.station;
+
+import android.annotation.TargetApi;
+import android.content.SharedPreferences;
+import android.location.Location;
+
+import com.jasonmheim.rollout.action.ActionManager;
+import com.jasonmheim.rollout.action.ActionState;
+import com.jasonmheim.rollout.data.Station;
+import com.jasonmheim.rollout.data.StationDistance;
+import com.jasonmheim.rollout.data.StationDistanceRank;
+import com.jasonmheim.rollout.data.StationList;
+import com.jasonmheim.rollout.location.LocationManager;
+import com.jasonmheim.rollout.settings.SettingsSnapshot;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.jasonmheim.rollout.Constants.ACTION_RIDE;
+import static com.jasonmheim.rollout.Constants.ACTION_SEARCH;
+import static com.jasonmheim.rollout.Constants.PREF_EMPTY_THRESHOLD;
+import static com.jasonmheim.rollout.Constants.PREF_FULL_THRESHOLD;
+import static com.jasonmheim.rollout.Constants.PREF_KEY;
+import static com.jasonmheim.rollout.Constants.PREF_MODE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for the ranking cache in {@link StationDataProcessor}, and the stations chosen from it.
+ */
+@RunWith(RobolectricTestRunner.class)
+@TargetApi(21)
+@Config(manifest = Config.NONE)
+public class StationDataProcessorTest {
+
+  @Mock private ActionManager mockActionManager;
+  @Mock private LocationManager mockLocationManager;
+
+  private SharedPreferences sharedPreferences;
+  private StationList stationList;
+  private StationDataProcessor instance;
+
+  @Before
+  public void setUp() throws Exception {
+    MockitoAnnotations.initMocks(this);
+    sharedPreferences = Robolectric.application.getSharedPreferences(PREF_KEY, PREF_MODE);
+    sharedPreferences.edit().clear()
+        .putString(PREF_EMPTY_THRESHOLD, "2")
+        .putString(PREF_FULL_THRESHOLD, "2")
+        .apply();
+    setState(ACTION_SEARCH, null);
+    when(mockLocationManager.getLastLocation()).thenReturn(location(40.7417806, -74.0045012));
+    stationList = stationList();
+    instance = new StationDataProcessor(mockActionManager, mockLocationManager);
+  }
+
+  @Test
+  public void testSameCellHits() {
+    List<StationDistance> first = instance.orderClosestStations(stationList);
+    // A meter or so away, within the same cell.
+    when(mockLocationManager.getLastLocation()).thenReturn(location(40.7417856, -74.0045062));
+    assertSame(first, instance.orderClosestStations(stationList));
+    assertEquals(1, instance.getCacheHitCount());
+    assertEquals(1, instance.getCacheMissCount());
+  }
+
+  @Test
+  public void testOtherCellMisses() {
+    List<StationDistance> first = instance.orderClosestStations(stationList);
+    when(mockLocationManager.getLastLocation()).thenReturn(location(40.7427806, -74.0045012));
+    assertNotSame(first, instance.orderClosestStations(stationList));
+    assertEquals(0, instance.getCacheHitCount());
+    assertEquals(2, instance.getCacheMissCount());
+  }
+
+  @Test
+  public void testActionAndDestinationMiss() {
+    List<StationDistance> searching = instance.orderClosestStations(stationList);
+    setState(ACTION_RIDE, location(40.6740, -73.9701));
+    List<StationDistance> riding = instance.orderClosestStations(stationList);
+    assertNotSame(searching, riding);
+    assertSame(riding, instance.orderClosestStations(stationList));
+    setState(ACTION_RIDE, location(40.7500, -73.9900));
+    assertNotSame(riding, instance.orderClosestStations(stationList));
+    assertEquals(1, instance.getCacheHitCount());
+    assertEquals(3, instance.getCacheMissCount());
+  }
+
+  @Test
+  public void testThresholdsMiss() {
+    List<StationDistance> first = instance.orderClosestStations(stationList);
+    sharedPreferences.edit().putString(PREF_EMPTY_THRESHOLD, "5").apply();
+    setState(ACTION_SEARCH, null);
+    assertNotSame(first, instance.orderClosestStations(stationList));
+    assertEquals(2, instance.getCacheMissCount());
+  }
+
+  @Test
+  public void testNewSnapshotDropsEntries() {
+    List<StationDistance> first = instance.orderClosestStations(stationList);
+    List<StationDistance> second = instance.orderClosestStations(stationList());
+    assertNotSame(first, second);
+    // The first snapshot's ranking is gone, even though its list is asked for again.
+    assertNotSame(first, instance.orderClosestStations(stationList));
+    assertEquals(0, instance.getCacheHitCount());
+    assertEquals(3, instance.getCacheMissCount());
+  }
+
+  @Test
+  public void testCursorCopySharesRanking() {
+    stationList.executionTime = "2014-12-01 08:00:00 AM";
+    stationList.timestamp = 1000;
+    List<StationDistance> first = instance.orderClosestStations(stationList);
+    // As read back through the provider's cursor: equal stations, in a new list.
+    StationList copy = stationList();
+    copy.executionTime = stationList.executionTime;
+    copy.timestamp = stationList.timestamp;
+    assertSame(first, instance.orderClosestStations(copy));
+    assertEquals(1, instance.getCacheHitCount());
+    copy.timestamp = 61000;
+    assertNotSame(first, instance.orderClosestStations(copy));
+    assertEquals(2, instance.getCacheMissCount());
+  }
+
+  @Test
+  public void testFindAvailableStation_matchesIndexSearch() {
+    assertAvailableMatchesIndexSearch(mockActionManager.getState());
+    setState(ACTION_RIDE, null);
+    assertAvailableMatchesIndexSearch(mockActionManager.getState());
+    setState(ACTION_RIDE, location(40.6740, -73.9701));
+    assertAvailableMatchesIndexSearch(mockActionManager.getState());
+  }
+
+  @Test
+  public void testFindAvailableStation_noneAvailable() {
+    sharedPreferences.edit().putString(PREF_EMPTY_THRESHOLD, "10").apply();
+    setState(ACTION_SEARCH, null);
+    ActionState state = mockActionManager.getState();
+    List<StationDistance> ranking = instance.orderClosestStations(stationList, state);
+    assertNull(instance.findAvailableStation(ranking, state));
+    assertEquals(0, instance.selectAvailableStations(ranking, 3, state).size());
+  }
+
+  private void assertAvailableMatchesIndexSearch(ActionState state) {
+    List<StationDistance> ranking = instance.orderClosestStations(stationList, state);
+    StationDistanceRank expected = instance.getClosestAvailableStation(stationList, state);
+    StationDistanceRank actual = instance.findAvailableStation(ranking, state);
+    assertSame(expected.getStationDistance().getStation(),
+        actual.getStationDistance().getStation());
+    assertEquals(expected.getRank(), actual.getRank());
+    List<StationDistance> selected = instance.selectAvailableStations(ranking, 3, state);
+    assertEquals(3, selected.size());
+    assertSame(actual.getStationDistance(), selected.get(0));
+    for (int i = 1; i < selected.size(); i++) {
+      assertTrue(ranking.indexOf(selected.get(i - 1)) < ranking.indexOf(selected.get(i)));
+    }
+  }
+
+  private void setState(int action, Location destination) {
+    when(mockActionManager.getState()).thenReturn(new ActionState(
+        action, null, destination, SettingsSnapshot.read(sharedPreferences)));
+  }
+
+  private static Location location(double latitude, double longitude) {
+    Location location = new Location("testonly");
+    location.setLatitude(latitude);
+    location.setLongitude(longitude);
+    return location;
+  }
+
+  private static StationList stationList() {
+    StationList stationList = new StationList();
+    stationList.stationBeanList = new ArrayList<Station>();
+    for (int i = 0; i < 10; i++) {
+      Station station = new Station();
+      station.id = i;
+      station.latitude = 40.70 + i * 0.01;
+      station.longitude = -74.00 + i * 0.005;
+      station.availableBikes = i;
+      station.availableDocks = 10 - i;
+      station.totalDocks = 10;
+      stationList.stationBeanList.add(station);
+    }
+    return stationList;
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.station;
+
+import android.annotation.TargetApi;
+import android.widget.TextView;
+
+import com.jasonmheim.rollout.data.Station;
+import com.jasonmheim.rollout.data.StationDistance;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.lang.management.ManagementFactory;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link StationDataRowViewHolder}, including how much a bind allocates.
+ */
+@RunWith(RobolectricTestRunner.class)
+@TargetApi(21)
+@Config(manifest = Config.NONE)
+public class StationDataRowViewHolderTest {
+
+  private static final int BINDS = 10000;
+  // Far less than the three layout params, formatter and strings that a bind used to allocate.
+  private static final long MAX_BYTES_PER_BIND = 16;
+
+  private TextView textViewTL;
+  private TextView textViewTR;
+  private TextView textViewBL;
+  private TextView textViewBR;
+  private StationDataRowViewHolder instance;
+  private StationDistance[] rows;
+
+  @Before
+  public void setUp() throws Exception {
+    textViewTL = new TextView(Robolectric.application);
+    textViewTR = new TextView(Robolectric.application);
+    textViewBL = new TextView(Robolectric.application);
+    textViewBR = new TextView(Robolectric.application);
+    instance = new StationDataRowViewHolder(textViewTL, textViewTR, textViewBL, textViewBR,
+        new AvailabilityBarView(Robolectric.application, null, 0, 0));
+    rows = new StationDistance[] {
+        row(1, "W 20 St & 8 Ave", 3, 20, 0.05),
+        row(2, "9 Ave & W 18 St", 12, 7, 0.31),
+        row(3, "W 22 St & 10 Ave", 0, 35, 1.234),
+    };
+  }
+
+  @Test
+  public void testSetForNotRiding() {
+    instance.setForNotRiding(rows[1]);
+    assertEquals("9 Ave & W 18 St", textViewTL.getText().toString());
+    assertEquals("Bikes:\t12", textViewTR.getText().toString());
+    assertEquals("0.31 Miles N", textViewBL.getText().toString());
+    assertEquals("Duds:\t20", textViewBR.getText().toString());
+  }
+
+  @Test
+  public void testSetForRiding() {
+    instance.setForRiding(rows[0]);
+    assertEquals("W 20 St & 8 Ave", textViewTL.getText().toString());
+    assertEquals("Docks:\t20", textViewTR.getText().toString());
+    assertEquals("264 Feet N", textViewBL.getText().toString());
+    assertEquals("", textViewBR.getText().toString());
+  }
+
+  @Test
+  public void testCountsOutsideTheCache() {
+    Station station = rows[2].getStation();
+    station.availableBikes = 120;
+    station.availableDocks = 1;
+    station.totalDocks = 100;
+    instance.setForNotRiding(rows[2]);
+    assertEquals("Bikes:\t120", textViewTR.getText().toString());
+    assertEquals("Duds:\t-21", textViewBR.getText().toString());
+  }
+
+  @Test
+  public void testBindAllocation() {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long threadId = Thread.currentThread().getId();
+    // Warm up, so that class loading and the first sizing of buffers are not counted.
+    bind(BINDS);
+    long before = threads.getThreadAllocatedBytes(threadId);
+    bind(BINDS);
+    long bytesPerBind = (threads.getThreadAllocatedBytes(threadId) - before) / BINDS;
+    assertTrue(bytesPerBind + " bytes per bind", bytesPerBind <= MAX_BYTES_PER_BIND);
+  }
+
+  private void bind(int count) {
+    for (int i = 0; i < count; i++) {
+      StationDistance row = rows[i % rows.length];
+      if (i % 2 == 0) {
+        instance.setForRiding(row);
+      } else {
+        instance.setForNotRiding(row);
+      }
+    }
+  }
+
+  private static StationDistance row(
+      int id, String name, int availableBikes, int availableDocks, double miles) {
+    Station station = new Station();
+    station.id = id;
+    station.stationName = name;
+    station.availableBikes = availableBikes;
+    station.availableDocks = availableDocks;
+    station.totalDocks = 39;
+    return new StationDistance(station, miles, "N");
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.station;
+
+import android.annotation.TargetApi;
+import android.app.NotificationManager;
+import android.content.SharedPreferences;
+
+import com.jasonmheim.rollout.action.ActionState;
+import com.jasonmheim.rollout.data.Station;
+import com.jasonmheim.rollout.data.StationDistance;
+import com.jasonmheim.rollout.data.StationDistanceRank;
+import com.jasonmheim.rollout.settings.SettingsSnapshot;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static com.jasonmheim.rollout.Constants.ACTION_IDLE;
+import static com.jasonmheim.rollout.Constants.ACTION_SEARCH;
+import static com.jasonmheim.rollout.Constants.PREF_DESTINATION_HOME_LATITUDE;
+import static com.jasonmheim.rollout.Constants.PREF_DESTINATION_HOME_LONGITUDE;
+import static com.jasonmheim.rollout.Constants.PREF_DESTINATION_HOME_SET;
+import static com.jasonmheim.rollout.Constants.PREF_KEY;
+import static com.jasonmheim.rollout.Constants.PREF_MODE;
+import static com.jasonmheim.rollout.station.StationNotificationRenderer.ContentKey;
+import static com.jasonmheim.rollout.station.StationNotificationRenderer.NOTIFICATION_ID;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Tests for {@link StationNotificationRenderer}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@TargetApi(21)
+@Config(manifest = Config.NONE)
+public class StationNotificationRendererTest {
+
+  @Mock private NotificationManager mockNotificationManager;
+
+  private SharedPreferences sharedPreferences;
+  private StationNotificationRenderer instance;
+
+  @Before
+  public void setUp() throws Exception {
+    MockitoAnnotations.initMocks(this);
+    sharedPreferences = Robolectric.application.getSharedPreferences(PREF_KEY, PREF_MODE);
+    sharedPreferences.edit().clear().apply();
+    instance = new StationNotificationRenderer(Robolectric.application, mockNotificationManager);
+  }
+
+  @Test
+  public void testContentKey_sameContent() {
+    ActionState state = state(ACTION_SEARCH);
+    assertEquals(new ContentKey(state, rank(1, 0, 5, 0.31)),
+        new ContentKey(state, rank(1, 0, 5, 0.31)));
+    assertEquals(new ContentKey(state, rank(1, 0, 5, 0.31)).hashCode(),
+        new ContentKey(state, rank(1, 0, 5, 0.31)).hashCode());
+    // A move too small to change the distance as rendered.
+    assertEquals(new ContentKey(state, rank(1, 0, 5, 0.31)),
+        new ContentKey(state, rank(1, 0, 5, 0.3101)));
+  }
+
+  @Test
+  public void testContentKey_differentContent() {
+    ActionState state = state(ACTION_SEARCH);
+    ContentKey key = new ContentKey(state, rank(1, 0, 5, 0.31));
+    assertFalse(key.equals(new ContentKey(state, rank(2, 0, 5, 0.31))));
+    assertFalse(key.equals(new ContentKey(state, rank(1, 1, 5, 0.31))));
+    assertFalse(key.equals(new ContentKey(state, rank(1, 0, 4, 0.31))));
+    assertFalse(key.equals(new ContentKey(state, rank(1, 0, 5, 0.32))));
+    assertFalse(key.equals(new ContentKey(state(ACTION_IDLE), rank(1, 0, 5, 0.31))));
+  }
+
+  @Test
+  public void testContentKey_rideActionsOffered() {
+    ContentKey key = new ContentKey(state(ACTION_SEARCH), rank(1, 0, 5, 0.31));
+    sharedPreferences.edit()
+        .putBoolean(PREF_DESTINATION_HOME_SET, true)
+        .putString(PREF_DESTINATION_HOME_LATITUDE, "40.7")
+        .putString(PREF_DESTINATION_HOME_LONGITUDE, "-74.0")
+        .apply();
+    assertFalse(key.equals(new ContentKey(state(ACTION_SEARCH), rank(1, 0, 5, 0.31))));
+  }
+
+  @Test
+  public void testCancel_onlyOnce() {
+    instance.cancel();
+    instance.cancel();
+    verify(mockNotificationManager, times(1)).cancel(NOTIFICATION_ID);
+  }
+
+  private ActionState state(int action) {
+    return new ActionState(action, null, null, SettingsSnapshot.read(sharedPreferences));
+  }
+
+  private static StationDistanceRank rank(int id, int rank, int availableBikes, double miles) {
+    Station station = new Station();
+    station.id = id;
+    station.stationName = "Station " + id;
+    station.availableBikes = availableBikes;
+    station.availableDocks = 10;
+    station.totalDocks = 20;
+    return new StationDistanceRank(new StationDistance(station, miles, "N"), rank);
+  }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.station;
+
+import android.annotation.TargetApi;
+import android.net.Uri;
+
+import com.jasonmheim.rollout.data.Station;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static com.jasonmheim.rollout.Constants.QUERY_KEY_BIKES_ABOVE;
+import static com.jasonmheim.rollout.Constants.QUERY_KEY_LATITUDE;
+import static com.jasonmheim.rollout.Constants.QUERY_KEY_LIMIT;
+import static com.jasonmheim.rollout.Constants.QUERY_KEY_LONGITUDE;
+import static com.jasonmheim.rollout.Constants.QUERY_KEY_RADIUS_METERS;
+import static com.jasonmheim.rollout.Constants.STATION_URI;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link StationQuery}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@TargetApi(21)
+@Config(manifest = Config.NONE)
+public class StationQueryTest {
+
+  @Test
+  public void testWholeSystem() {
+    assertFalse(StationQuery.fromUri(STATION_URI).isSelective());
+  }
+
+  @Test
+  public void testNearest() {
+    StationQuery query = StationQuery.fromUri(STATION_URI.buildUpon()
+        .appendQueryParameter(QUERY_KEY_LATITUDE, "40.74")
+        .appendQueryParameter(QUERY_KEY_LONGITUDE, "-74.0")
+        .appendQueryParameter(QUERY_KEY_LIMIT, "5")
+        .appendQueryParameter(QUERY_KEY_RADIUS_METERS, "1609.344")
+        .appendQueryParameter(QUERY_KEY_BIKES_ABOVE, "2")
+        .build());
+    assertTrue(query.isSelective());
+    assertTrue(query.hasLocation);
+    assertEquals(40.74, query.latitude, 0);
+    assertEquals(-74.0, query.longitude, 0);
+    assertEquals(5, query.limit);
+    assertEquals(1, query.radiusMiles, 1e-12);
+    Station station = new Station();
+    station.availableBikes = 2;
+    assertFalse(query.getPredicate().apply(station));
+    station.availableBikes = 3;
+    assertTrue(query.getPredicate().apply(station));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testRadiusWithoutLocation() {
+    StationQuery.fromUri(
+        STATION_URI.buildUpon().appendQueryParameter(QUERY_KEY_RADIUS_METERS, "500").build());
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testMalformedLimit() {
+    StationQuery.fromUri(
+        STATION_URI.buildUpon().appendQueryParameter(QUERY_KEY_LIMIT, "lots").build());
+  }
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.station;
+
+import android.annotation.TargetApi;
+
+import com.jasonmheim.rollout.data.Station;
+import com.jasonmheim.rollout.data.StationDistance;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@TargetApi(21)
+@Config(manifest = Config.NONE)
+public class StationRowDiffTest {
+
+  @Test
+  public void testUnchanged() {
+    StationRowDiff diff = StationRowDiff.between(
+        rows(row(1, 5, 0.5), row(2, 5, 0.6)), rows(row(1, 5, 0.5), row(2, 5, 0.6)));
+    assertFalse(diff.isStructural());
+    assertEquals(0, diff.getChangedPositions().length);
+  }
+
+  @Test
+  public void testChangedCounts() {
+    StationRowDiff diff = StationRowDiff.between(
+        rows(row(1, 5, 0.5), row(2, 5, 0.6), row(3, 5, 0.7)),
+        rows(row(1, 5, 0.5), row(2, 4, 0.6), row(3, 5, 0.7)));
+    assertFalse(diff.isStructural());
+    assertArrayEquals(new int[] {1}, diff.getChangedPositions());
+  }
+
+  @Test
+  public void testChangedDistance() {
+    StationRowDiff diff = StationRowDiff.between(
+        rows(row(1, 5, 0.5), row(2, 5, 0.6)), rows(row(1, 5, 0.4), row(2, 5, 0.6001)));
+    assertFalse(diff.isStructural());
+    // The second distance is drawn the same way, to two decimal places.
+    assertArrayEquals(new int[] {0}, diff.getChangedPositions());
+  }
+
+  @Test
+  public void testMoved() {
+    StationRowDiff diff = StationRowDiff.between(
+        rows(row(1, 5, 0.5), row(2, 5, 0.6), row(3, 5, 0.7)),
+        rows(row(2, 5, 0.5), row(1, 5, 0.6), row(3, 4, 0.7)));
+    assertTrue(diff.isStructural());
+    assertEquals(1, diff.getMovedCount());
+    // The swapped stations are drawn at their new distances, and the third has a bike fewer.
+    assertArrayEquals(new int[] {0, 1, 2}, diff.getChangedPositions());
+  }
+
+  @Test
+  public void testMovedAndChanged() {
+    List<StationDistance> oldRows = rows(row(1, 5, 0.5), row(2, 5, 0.6), row(3, 5, 0.7),
+        row(4, 5, 0.8), row(5, 5, 0.9), row(6, 5, 1.0));
+    // Station 1 falls behind four others and loses a bike, 6 drops out, 7 appears, and 4 gains a
+    // bike without moving.
+    List<StationDistance> newRows = rows(row(2, 5, 0.6), row(3, 5, 0.7), row(4, 6, 0.8),
+        row(5, 5, 0.9), row(1, 4, 0.5), row(7, 5, 1.1));
+    StationRowDiff diff = StationRowDiff.between(oldRows, newRows);
+    assertTrue(diff.isStructural());
+    assertEquals(1, diff.getMovedCount());
+    assertArrayEquals(new int[] {2, 4}, diff.getChangedPositions());
+
+    RecordingCallback callback = new RecordingCallback(oldRows, newRows);
+    diff.dispatchTo(callback);
+    assertEquals(ids(newRows), callback.ids);
+    assertEquals(
+        Arrays.asList("removed 5", "moved 0 4", "inserted 5", "changed 2", "changed 4"),
+        callback.steps);
+  }
+
+  @Test
+  public void testResized() {
+    StationRowDiff diff = StationRowDiff.between(
+        rows(row(1, 5, 0.5)), rows(row(1, 5, 0.5), row(2, 5, 0.6)));
+    assertTrue(diff.isStructural());
+    assertEquals(0, diff.getMovedCount());
+  }
+
+  private static List<Integer> ids(List<StationDistance> rows) {
+    List<Integer> ids = new ArrayList<Integer>();
+    for (StationDistance row : rows) {
+      ids.add(row.getStation().id);
+    }
+    return ids;
+  }
+
+  // Applies the steps to a list of station ids, as a RecyclerView would to its items.
+  private static class RecordingCallback implements StationRowDiff.Callback {
+    final List<Integer> ids;
+    final List<Integer> newIds;
+    final List<String> steps = new ArrayList<String>();
+
+    RecordingCallback(List<StationDistance> oldRows, List<StationDistance> newRows) {
+      ids = ids(oldRows);
+      newIds = ids(newRows);
+    }
+
+    @Override
+    public void onRemoved(int position) {
+      steps.add("removed " + position);
+      ids.remove(position);
+    }
+
+    @Override
+    public void onMoved(int fromPosition, int toPosition) {
+      steps.add("moved " + fromPosition + " " + toPosition);
+      ids.add(toPosition, ids.remove(fromPosition));
+    }
+
+    @Override
+    public void onInserted(int position) {
+      steps.add("inserted " + position);
+      ids.add(position, newIds.get(position));
+    }
+
+    @Override
+    public void onChanged(int position) {
+      steps.add("changed " + position);
+    }
+  }
+
+  private static List<StationDistance> rows(StationDistance... rows) {
+    return Arrays.asList(rows);
+  }
+
+  private static StationDistance row(int id, int availableBikes, double miles) {
+    Station station = new Station();
+    station.id = id;
+    station.stationName = "Station " + id;
+    station.availableBikes = availableBikes;
+    station.availableDocks = 10 - availableBikes;
+    station.totalDocks = 12;
+    return new StationDistance(station, miles, "N");
+  }
+}
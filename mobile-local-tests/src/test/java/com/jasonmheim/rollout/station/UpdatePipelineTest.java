@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.station;
+
+import android.annotation.TargetApi;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static com.jasonmheim.rollout.station.UpdatePipeline.EVENT_ACTION;
+import static com.jasonmheim.rollout.station.UpdatePipeline.EVENT_LOCATION;
+import static com.jasonmheim.rollout.station.UpdatePipeline.EVENT_SETTINGS;
+import static com.jasonmheim.rollout.station.UpdatePipeline.EVENT_STATIONS;
+import static com.jasonmheim.rollout.station.UpdatePipeline.STAGE_COUNT;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests for {@link UpdatePipeline}, run on an executor that the test drives by hand.
+ */
+@RunWith(RobolectricTestRunner.class)
+@TargetApi(21)
+@Config(manifest = Config.NONE)
+public class UpdatePipelineTest {
+
+  private final List<Runnable> queued = new ArrayList<Runnable>();
+  private final List<Integer> passes = new ArrayList<Integer>();
+  // Events to post from within the next pass, as if they arrived while it was running.
+  private int postDuringPass;
+
+  private UpdatePipeline instance;
+
+  @Before
+  public void setUp() throws Exception {
+    instance = new UpdatePipeline(
+        new Executor() {
+          @Override
+          public void execute(Runnable runnable) {
+            queued.add(runnable);
+          }
+        },
+        new UpdatePipeline.Processor() {
+          @Override
+          public void process(int events) {
+            passes.add(events);
+            if (postDuringPass != 0) {
+              int moreEvents = postDuringPass;
+              postDuringPass = 0;
+              instance.post(moreEvents);
+            }
+          }
+        });
+  }
+
+  @Test
+  public void testPost_single() {
+    instance.post(EVENT_LOCATION);
+    assertEquals(1, instance.getQueueDepth());
+    runQueued();
+    assertEquals(1, passes.size());
+    assertEquals(EVENT_LOCATION, (int) passes.get(0));
+    assertEquals(0, instance.getQueueDepth());
+    assertEquals(1, instance.getPassCount());
+    assertEquals(0, instance.getCoalescedCount());
+  }
+
+  @Test
+  public void testPost_burstIsCoalesced() {
+    instance.post(EVENT_LOCATION);
+    instance.post(EVENT_LOCATION);
+    instance.post(EVENT_ACTION);
+    instance.post(EVENT_LOCATION);
+    // Only the first event queues any work.
+    assertEquals(1, queued.size());
+    assertEquals(4, instance.getQueueDepth());
+    runQueued();
+    assertEquals(1, passes.size());
+    assertEquals(EVENT_LOCATION | EVENT_ACTION, (int) passes.get(0));
+    assertEquals(3, instance.getCoalescedCount());
+    assertEquals(0, instance.getQueueDepth());
+  }
+
+  @Test
+  public void testPost_duringPass() {
+    postDuringPass = EVENT_SETTINGS;
+    instance.post(EVENT_STATIONS);
+    runQueued();
+    // The worker picks up the event itself rather than queueing another task.
+    assertEquals(2, passes.size());
+    assertEquals(EVENT_STATIONS, (int) passes.get(0));
+    assertEquals(EVENT_SETTINGS, (int) passes.get(1));
+    assertEquals(2, instance.getPassCount());
+    assertEquals(0, instance.getCoalescedCount());
+
+    instance.post(EVENT_ACTION);
+    assertEquals(1, queued.size());
+    runQueued();
+    assertEquals(3, passes.size());
+  }
+
+  @Test
+  public void testFinishStage() {
+    long start = System.nanoTime() - 5000000;
+    long end = instance.finishStage(UpdatePipeline.STAGE_RANK, start);
+    long[] stageMillis = instance.getStageMillis();
+    assertEquals(STAGE_COUNT, stageMillis.length);
+    assertEquals((end - start) / 1000000, stageMillis[UpdatePipeline.STAGE_RANK]);
+    assertEquals(0, stageMillis[UpdatePipeline.STAGE_OBSERVERS]);
+  }
+
+  private void runQueued() {
+    while (!queued.isEmpty()) {
+      queued.remove(0).run();
+    }
+  }
+}
@@ -0,0 +1,122 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.sync;
+
+import android.content.ContentProviderClient;
+import android.content.ContentValues;
+import android.net.Uri;
+
+import com.jasonmheim.rollout.Constants;
+import com.jasonmheim.rollout.data.Station;
+import com.jasonmheim.rollout.data.StationList;
+import com.jasonmheim.rollout.station.CoreContentProvider;
+import com.jasonmheim.rollout.station.StationDataDownloader;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.mockito.Mock;
+import org.mockito.MockitoAnnotations;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.jasonmheim.rollout.Constants.INSERT_KEY_CATALOG;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.when;
+
+/**
+ * Tests for {@link StationDataSyncAdapter}, with every insert routed as the provider routes it.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class StationDataSyncAdapterTest {
+
+  @Mock private StationDataDownloader mockDownloader;
+  @Mock private ContentProviderClient mockClient;
+
+  private final List<ContentValues> inserted = new ArrayList<ContentValues>();
+  // What the provider returns from each insert; null asks for the catalog.
+  private Uri insertResult = Constants.STATION_URI;
+
+  private StationDataSyncAdapter instance;
+
+  @Before
+  public void setUp() throws Exception {
+    MockitoAnnotations.initMocks(this);
+    when(mockDownloader.get()).thenReturn(stationList());
+    when(mockClient.insert(any(Uri.class), any(ContentValues.class))).thenAnswer(
+        new Answer<Uri>() {
+          @Override
+          public Uri answer(InvocationOnMock invocation) {
+            CoreContentProvider.checkInsertUri((Uri) invocation.getArguments()[0]);
+            inserted.add(new ContentValues((ContentValues) invocation.getArguments()[1]));
+            return insertResult;
+          }
+        });
+    instance = new StationDataSyncAdapter(Robolectric.application, mockDownloader);
+  }
+
+  @Test
+  public void testOnPerformSync_insertsWithCatalog() {
+    instance.onPerformSync(null, null, null, mockClient, null);
+    assertEquals(1, inserted.size());
+    assertTrue(inserted.get(0).containsKey(INSERT_KEY_CATALOG));
+  }
+
+  @Test
+  public void testOnPerformSync_omitsAcceptedCatalog() {
+    instance.onPerformSync(null, null, null, mockClient, null);
+    instance.onPerformSync(null, null, null, mockClient, null);
+    assertEquals(2, inserted.size());
+    assertFalse(inserted.get(1).containsKey(INSERT_KEY_CATALOG));
+  }
+
+  @Test
+  public void testOnPerformSync_resendsRejectedCatalog() {
+    instance.onPerformSync(null, null, null, mockClient, null);
+    insertResult = null;
+    instance.onPerformSync(null, null, null, mockClient, null);
+    assertEquals(3, inserted.size());
+    assertFalse(inserted.get(1).containsKey(INSERT_KEY_CATALOG));
+    assertTrue(inserted.get(2).containsKey(INSERT_KEY_CATALOG));
+  }
+
+  private static StationList stationList() {
+    StationList stationList = new StationList();
+    stationList.executionTime = "2014-11-01 09:30:00 AM";
+    stationList.stationBeanList = new ArrayList<Station>();
+    for (int id = 1; id <= 3; id++) {
+      Station station = new Station();
+      station.id = id;
+      station.stationName = "Station " + id;
+      station.availableBikes = id;
+      station.availableDocks = 10 - id;
+      station.totalDocks = 10;
+      stationList.stationBeanList.add(station);
+    }
+    return stationList;
+  }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.sync;
+
+import android.annotation.TargetApi;
+import android.content.SharedPreferences;
+
+import com.jasonmheim.rollout.data.Station;
+import com.jasonmheim.rollout.settings.SettingsSnapshot;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import static com.jasonmheim.rollout.Constants.ACTION_IDLE;
+import static com.jasonmheim.rollout.Constants.ACTION_RIDE;
+import static com.jasonmheim.rollout.Constants.ACTION_SEARCH;
+import static com.jasonmheim.rollout.Constants.ACTION_SILENCE;
+import static com.jasonmheim.rollout.Constants.PREF_EMPTY_THRESHOLD;
+import static com.jasonmheim.rollout.Constants.PREF_FULL_THRESHOLD;
+import static com.jasonmheim.rollout.Constants.PREF_KEY;
+import static com.jasonmheim.rollout.Constants.PREF_MODE;
+import static com.jasonmheim.rollout.sync.SyncScheduler.CRITICAL_PERIOD_SECONDS;
+import static com.jasonmheim.rollout.sync.SyncScheduler.computePeriodSeconds;
+import static com.jasonmheim.rollout.sync.SyncScheduler.isCritical;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests for {@link SyncScheduler}.
+ */
+@RunWith(RobolectricTestRunner.class)
+@TargetApi(21)
+@Config(manifest = Config.NONE)
+public class SyncSchedulerTest {
+
+  private static final int NOON = 12;
+  private static final int THREE_AM = 3;
+
+  @Test
+  public void testBasePeriods() {
+    assertEquals(60, computePeriodSeconds(ACTION_SEARCH, 1, -1, false, NOON));
+    assertEquals(60, computePeriodSeconds(ACTION_RIDE, 1, -1, false, NOON));
+    assertEquals(300, computePeriodSeconds(ACTION_IDLE, 1, -1, false, NOON));
+    assertEquals(1200, computePeriodSeconds(ACTION_SILENCE, 1, -1, false, NOON));
+  }
+
+  @Test
+  public void testStableDataStretchesPeriod() {
+    assertEquals(600, computePeriodSeconds(ACTION_IDLE, 0, -1, false, NOON));
+    assertEquals(450, computePeriodSeconds(ACTION_IDLE, 0.5, -1, false, NOON));
+  }
+
+  @Test
+  public void testNightStretchesPeriod() {
+    assertEquals(600, computePeriodSeconds(ACTION_IDLE, 1, -1, false, THREE_AM));
+  }
+
+  @Test
+  public void testCriticalTargetNearby() {
+    assertEquals(CRITICAL_PERIOD_SECONDS,
+        computePeriodSeconds(ACTION_IDLE, 0, 2, true, THREE_AM));
+    // Faster than even the shortest base period.
+    assertTrue(computePeriodSeconds(ACTION_SEARCH, 1, 2, true, NOON)
+        < computePeriodSeconds(ACTION_SEARCH, 1, -1, false, NOON));
+    assertTrue(computePeriodSeconds(ACTION_RIDE, 1, 2, true, NOON)
+        < computePeriodSeconds(ACTION_RIDE, 1, -1, false, NOON));
+    // Too far away to matter yet.
+    assertEquals(600, computePeriodSeconds(ACTION_IDLE, 0, 30, true, NOON));
+    // Close, but with plenty of bikes or docks.
+    assertEquals(600, computePeriodSeconds(ACTION_IDLE, 0, 2, false, NOON));
+  }
+
+  @Test
+  public void testIsCritical_usesSnapshotThresholds() {
+    SharedPreferences sharedPreferences =
+        Robolectric.application.getSharedPreferences(PREF_KEY, PREF_MODE);
+    sharedPreferences.edit()
+        .putString(PREF_EMPTY_THRESHOLD, "3")
+        .putString(PREF_FULL_THRESHOLD, "1")
+        .commit();
+    SettingsSnapshot settings = SettingsSnapshot.read(sharedPreferences);
+    // A later change to the preferences does not affect a pass working from the snapshot.
+    sharedPreferences.edit().putString(PREF_EMPTY_THRESHOLD, "0").commit();
+
+    assertTrue(isCritical(ACTION_SEARCH, settings, station(5, 10)));
+    assertFalse(isCritical(ACTION_SEARCH, settings, station(6, 10)));
+    assertTrue(isCritical(ACTION_RIDE, settings, station(10, 3)));
+    assertFalse(isCritical(ACTION_RIDE, settings, station(10, 4)));
+  }
+
+  private static Station station(int availableBikes, int availableDocks) {
+    Station station = new Station();
+    station.availableBikes = availableBikes;
+    station.availableDocks = availableDocks;
+    return station;
+  }
+}
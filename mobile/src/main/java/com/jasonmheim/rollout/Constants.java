@@ -77,10 +77,25 @@ public final class Constants {
 
   // TODO: these should be renamed for being used as query parameters after the URIs above are
   // being used for updating the content provider.
-  public static final String UPDATE_KEY_LOCATION = "location";
   public static final String UPDATE_KEY_ACTION = "action";
   public static final String UPDATE_KEY_DESTINATION = "dest";
 
+  // Keys for the binary station data passed from the sync adapter to the content provider. The
+  // catalog is only included when it has changed.
+  public static final String INSERT_KEY_CATALOG = "StationCatalog";
+  public static final String INSERT_KEY_STATUS = "StationStatus";
+
+  // Query parameters accepted on STATION_URI to select a few stations rather than the whole
+  // system. With a location the stations are ordered by distance from it; without one they keep
+  // the order of the feed. The bike and dock parameters select counts strictly greater than the
+  // value, like the empty and full thresholds.
+  public static final String QUERY_KEY_LATITUDE = "lat";
+  public static final String QUERY_KEY_LONGITUDE = "lon";
+  public static final String QUERY_KEY_LIMIT = "limit";
+  public static final String QUERY_KEY_RADIUS_METERS = "radius";
+  public static final String QUERY_KEY_BIKES_ABOVE = "bikesAbove";
+  public static final String QUERY_KEY_DOCKS_ABOVE = "docksAbove";
+
   public static final URL STATION_DATA_URL;
 
   public static final int DISCLAIMER_VERSION = 1;
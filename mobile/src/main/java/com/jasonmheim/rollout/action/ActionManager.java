@@ -18,7 +18,6 @@ package com.jasonmheim.rollout.action;
 
 import android.content.ContentProviderClient;
 import android.content.ContentResolver;
-import android.content.ContentValues;
 import android.content.SharedPreferences;
 import android.location.Location;
 import android.os.RemoteException;
@@ -27,12 +26,16 @@ import android.util.Log;
 import com.google.common.base.Objects;
 import com.jasonmheim.rollout.Constants;
 import com.jasonmheim.rollout.settings.Settings;
+import com.jasonmheim.rollout.settings.SettingsSnapshot;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 /**
  * Manages the current action that the user is doing.
+ * <p>
+ * The action and destination are kept in an {@link ActionState}, read from the preferences again
+ * only when the action or the settings change.
  */
 @Singleton
 public class ActionManager {
@@ -44,6 +47,8 @@ public class ActionManager {
   private final Settings preferences;
   private final SharedPreferences sharedPreferences;
 
+  private volatile ActionState state;
+
   @Inject
   ActionManager(
       ContentResolver contentResolver,
@@ -83,16 +88,37 @@ public class ActionManager {
         editor.putString(DESTINATION_KEY, destinationName);
       }
       editor.apply();
+      // The preferences are updated in memory at once, but their listeners may run later.
+      invalidate();
       onActionChanged();
     }
   }
 
+  /**
+   * Returns the current action and destination. The same instance is returned until either the
+   * action or the settings change.
+   */
+  public ActionState getState() {
+    ActionState result = state;
+    SettingsSnapshot settings = preferences.getSnapshot();
+    if (result == null || result.getSettings() != settings) {
+      synchronized (this) {
+        result = state;
+        if (result == null || result.getSettings() != settings) {
+          result = readState(settings);
+          state = result;
+        }
+      }
+    }
+    return result;
+  }
+
   public int getAction() {
-    return sharedPreferences.getInt(ACTION_KEY, Constants.ACTION_IDLE);
+    return getState().getAction();
   }
 
   public String getDestinationName() {
-    return sharedPreferences.getString(DESTINATION_KEY, null);
+    return getState().getDestinationName();
   }
 
   /**
@@ -100,15 +126,7 @@ public class ActionManager {
    * destination is not set, or the location cold not be computed, this returns {@code null}.
    */
   public Location getDestination() {
-    String destinationName = getDestinationName();
-    if (destinationName == null) {
-      return null;
-    } else if (destinationName.equals(Constants.DESTINATION_NAME_HOME)) {
-      return preferences.getHomeDestination();
-    } else if (destinationName.equals(Constants.DESTINATION_NAME_WORK)) {
-      return preferences.getWorkDestination();
-    }
-    return null;
+    return getState().getDestination();
   }
 
   /**
@@ -117,7 +135,8 @@ public class ActionManager {
    */
   public String getActionDisplayName() {
     // TODO: Extract string resources with formatting and such. Will need getString() dependency
-    switch (getAction()) {
+    ActionState state = getState();
+    switch (state.getAction()) {
       case Constants.ACTION_SEARCH:
         return "Searching for a bike";
       case Constants.ACTION_SILENCE:
@@ -125,8 +144,8 @@ public class ActionManager {
       case Constants.ACTION_IDLE:
         return "Idle";
       case Constants.ACTION_RIDE:
-        if (sharedPreferences.contains(DESTINATION_KEY)) {
-          return "Riding to " + sharedPreferences.getString(DESTINATION_KEY, "Unknown");
+        if (state.getDestinationName() != null) {
+          return "Riding to " + state.getDestinationName();
         }
         return "Roaming on a bike";
     }
@@ -144,14 +163,28 @@ public class ActionManager {
     onActionChanged();
   }
 
+  private ActionState readState(SettingsSnapshot settings) {
+    int action = sharedPreferences.getInt(ACTION_KEY, Constants.ACTION_IDLE);
+    String destinationName = sharedPreferences.getString(DESTINATION_KEY, null);
+    Location destination = null;
+    if (Constants.DESTINATION_NAME_HOME.equals(destinationName)) {
+      destination = preferences.getHomeDestination();
+    } else if (Constants.DESTINATION_NAME_WORK.equals(destinationName)) {
+      destination = preferences.getWorkDestination();
+    }
+    return new ActionState(action, destinationName, destination, settings);
+  }
+
+  // Synchronized so that a state read from the old values cannot be stored after this.
+  private synchronized void invalidate() {
+    state = null;
+  }
+
   private void onActionChanged() {
-    // TODO: Switch this to use the ACTION_URI; drop the content values.
-    ContentValues contentValues = new ContentValues();
-    contentValues.put(Constants.UPDATE_KEY_ACTION, true);
     ContentProviderClient contentProviderClient =
-        contentResolver.acquireContentProviderClient(Constants.STATION_URI);
+        contentResolver.acquireContentProviderClient(Constants.ACTION_URI);
     try {
-      contentProviderClient.update(Constants.STATION_URI, contentValues, null, null);
+      contentProviderClient.update(Constants.ACTION_URI, null, null, null);
     } catch (RemoteException ex) {
       Log.e("Rollout", "Failed to update after new action");
     } finally {
@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.action;
+
+import android.location.Location;
+
+import com.jasonmheim.rollout.Constants;
+import com.jasonmheim.rollout.settings.SettingsSnapshot;
+
+/**
+ * The user's current action, its destination, and the settings they were resolved with, as one
+ * immutable value. Code that makes several decisions from the action should take one
+ * {@link ActionManager#getState} and use it throughout, so that it never sees the action from one
+ * moment and the destination from another.
+ */
+public final class ActionState {
+
+  private final int action;
+  private final String destinationName;
+  private final Location destination;
+  private final SettingsSnapshot settings;
+
+  public ActionState(
+      int action, String destinationName, Location destination, SettingsSnapshot settings) {
+    this.action = action;
+    this.destinationName = destinationName;
+    this.destination = destination;
+    this.settings = settings;
+  }
+
+  /** The current action, such as {@link Constants#ACTION_IDLE}. */
+  public int getAction() {
+    return action;
+  }
+
+  /** The name of the destination, such as {@link Constants#DESTINATION_NAME_HOME}, or null. */
+  public String getDestinationName() {
+    return destinationName;
+  }
+
+  /**
+   * The location of the destination, or null if there is none or it is not known. The instance is
+   * shared and must not be modified.
+   */
+  public Location getDestination() {
+    return destination;
+  }
+
+  /** The settings as of when this state was built. */
+  public SettingsSnapshot getSettings() {
+    return settings;
+  }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.location;
+
+import android.content.Intent;
+import android.location.Location;
+import android.util.Log;
+
+import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofencingEvent;
+import com.jasonmheim.rollout.inject.DaggerIntentService;
+
+import javax.inject.Inject;
+
+import static com.google.android.gms.location.LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY;
+import static com.google.android.gms.location.LocationRequest.PRIORITY_HIGH_ACCURACY;
+
+/**
+ * Handles the crossing of a fence placed by {@link GeofenceManager}. The location of the crossing
+ * is handed to the {@link LocationManager} like any other update, which re-ranks the stations and
+ * moves the fences. Entering a station's fence also turns on fast, accurate location updates, since
+ * from there on every few meters matter; leaving it turns them off again.
+ */
+public class GeofenceIntentService extends DaggerIntentService {
+
+  /** Location update interval while inside a station fence. */
+  static final double NEAR_STATION_INTERVAL_MINUTES = 0.5;
+
+  /** Location update interval while riding between fences. */
+  public static final double BETWEEN_FENCES_INTERVAL_MINUTES = 5;
+
+  @Inject
+  LocationManager locationManager;
+
+  public GeofenceIntentService() {
+    super("GeofenceIntentService");
+  }
+
+  @Override
+  protected void onHandleIntent(Intent intent) {
+    if (intent == null) {
+      return;
+    }
+    GeofencingEvent event = GeofencingEvent.fromIntent(intent);
+    if (event == null || event.hasError()) {
+      Log.w("Rollout", "Geofence error");
+      return;
+    }
+    boolean stationFence = false;
+    for (Geofence geofence : event.getTriggeringGeofences()) {
+      if (!GeofenceManager.DEPARTURE_REQUEST_ID.equals(geofence.getRequestId())) {
+        stationFence = true;
+      }
+    }
+    int transition = event.getGeofenceTransition();
+    Log.i("Rollout", "Geofence transition " + transition + ", station fence: " + stationFence);
+    if (stationFence && transition == Geofence.GEOFENCE_TRANSITION_ENTER) {
+      locationManager.setLocationUpdateInterval(
+          NEAR_STATION_INTERVAL_MINUTES, PRIORITY_HIGH_ACCURACY);
+    } else if (stationFence && transition == Geofence.GEOFENCE_TRANSITION_EXIT) {
+      locationManager.setLocationUpdateInterval(
+          BETWEEN_FENCES_INTERVAL_MINUTES, PRIORITY_BALANCED_POWER_ACCURACY);
+    }
+    Location location = event.getTriggeringLocation();
+    if (location != null) {
+      locationManager.setLastLocation(location);
+    }
+  }
+}
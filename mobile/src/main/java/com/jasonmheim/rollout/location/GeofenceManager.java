@@ -0,0 +1,180 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.location;
+
+import android.app.Application;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.location.Location;
+import android.util.Log;
+
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.location.Geofence;
+import com.google.android.gms.location.GeofencingApi;
+import com.google.android.gms.location.GeofencingRequest;
+import com.jasonmheim.rollout.data.Station;
+import com.jasonmheim.rollout.data.StationDistance;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+/**
+ * Manages the geofences used while riding, so that the ranking is refreshed when the user gets
+ * somewhere that matters rather than on a fixed schedule. Fences are placed around the recommended
+ * station and the next few candidates, plus a departure fence around the user's position when the
+ * fences were placed. Crossings are handled by {@link GeofenceIntentService}.
+ * <p>
+ * Fences are only registered again when the candidate stations change, or the user has left the
+ * departure fence, so a re-ranking that comes to the same answer costs nothing here.
+ */
+@Singleton
+public class GeofenceManager {
+
+  /** The number of stations to fence, starting with the recommended one. */
+  public static final int CANDIDATE_COUNT = 3;
+
+  static final float STATION_RADIUS_METERS = 150;
+  static final float DEPARTURE_RADIUS_METERS = 500;
+
+  // Request IDs are the station ID for station fences, and this for the departure fence.
+  static final String DEPARTURE_REQUEST_ID = "departure";
+
+  // Let the platform batch transitions; a few seconds' delay is irrelevant on a bike.
+  private static final int RESPONSIVENESS_MS = 15000;
+
+  private final Application application;
+  private final ExecutorService executorService;
+  private final GeofencingApi geofencingApi;
+  private final Provider<GoogleApiClient> locationClientProvider;
+
+  // What is currently registered, or null if nothing is.
+  private List<Integer> fencedStationIds;
+  private Location departureCenter;
+
+  @Inject
+  GeofenceManager(
+      Application application,
+      ExecutorService executorService,
+      GeofencingApi geofencingApi,
+      Provider<GoogleApiClient> locationClientProvider) {
+    this.application = application;
+    this.executorService = executorService;
+    this.geofencingApi = geofencingApi;
+    this.locationClientProvider = locationClientProvider;
+  }
+
+  /** Whether fences are currently registered. */
+  public synchronized boolean isActive() {
+    return fencedStationIds != null;
+  }
+
+  /**
+   * Fences the given candidate stations, best first, and the user's current location, unless the
+   * same fences are already in place.
+   */
+  public synchronized void setFences(
+      Location location, List<? extends StationDistance> candidates) {
+    List<Integer> stationIds = new ArrayList<Integer>(candidates.size());
+    for (StationDistance candidate : candidates) {
+      stationIds.add(candidate.getStation().id);
+    }
+    if (stationIds.equals(fencedStationIds) && departureCenter != null
+        && departureCenter.distanceTo(location) < DEPARTURE_RADIUS_METERS / 2) {
+      return;
+    }
+    final List<Geofence> geofences = new ArrayList<Geofence>(candidates.size() + 1);
+    for (StationDistance candidate : candidates) {
+      Station station = candidate.getStation();
+      geofences.add(new Geofence.Builder()
+          .setRequestId(Integer.toString(station.id))
+          .setCircularRegion(station.latitude, station.longitude, STATION_RADIUS_METERS)
+          .setTransitionTypes(Geofence.GEOFENCE_TRANSITION_ENTER | Geofence.GEOFENCE_TRANSITION_EXIT)
+          .setNotificationResponsiveness(RESPONSIVENESS_MS)
+          .setExpirationDuration(Geofence.NEVER_EXPIRE)
+          .build());
+    }
+    geofences.add(new Geofence.Builder()
+        .setRequestId(DEPARTURE_REQUEST_ID)
+        .setCircularRegion(location.getLatitude(), location.getLongitude(), DEPARTURE_RADIUS_METERS)
+        .setTransitionTypes(Geofence.GEOFENCE_TRANSITION_EXIT)
+        .setNotificationResponsiveness(RESPONSIVENESS_MS)
+        .setExpirationDuration(Geofence.NEVER_EXPIRE)
+        .build());
+    // Adding a fence replaces the one with the same request ID, but fences of stations that are no
+    // longer candidates never expire, so they have to be removed.
+    final List<String> staleRequestIds = new ArrayList<String>();
+    if (fencedStationIds != null) {
+      for (Integer stationId : fencedStationIds) {
+        if (!stationIds.contains(stationId)) {
+          staleRequestIds.add(Integer.toString(stationId));
+        }
+      }
+    }
+    Log.i("Rollout", "Fencing stations " + stationIds);
+    fencedStationIds = stationIds;
+    departureCenter = location;
+
+    // As with location updates, connecting may block, so register on the executor.
+    executorService.submit(new Runnable() {
+      @Override
+      public void run() {
+        GoogleApiClient locationClient = locationClientProvider.get();
+        locationClient.blockingConnect();
+        if (!staleRequestIds.isEmpty()) {
+          geofencingApi.removeGeofences(locationClient, staleRequestIds);
+        }
+        geofencingApi.addGeofences(
+            locationClient,
+            new GeofencingRequest.Builder()
+                .setInitialTrigger(0)
+                .addGeofences(geofences)
+                .build(),
+            getPendingIntent());
+      }
+    });
+  }
+
+  /** Removes all fences, if any are registered. */
+  public synchronized void clearFences() {
+    if (fencedStationIds == null) {
+      return;
+    }
+    Log.i("Rollout", "Removing station fences");
+    fencedStationIds = null;
+    departureCenter = null;
+    executorService.submit(new Runnable() {
+      @Override
+      public void run() {
+        GoogleApiClient locationClient = locationClientProvider.get();
+        locationClient.blockingConnect();
+        geofencingApi.removeGeofences(locationClient, getPendingIntent());
+      }
+    });
+  }
+
+  private PendingIntent getPendingIntent() {
+    Context context = application.getApplicationContext();
+    Intent intent = new Intent(context, GeofenceIntentService.class);
+    return PendingIntent.getService(context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+  }
+}
@@ -20,12 +20,12 @@ import android.app.Application;
 import android.app.PendingIntent;
 import android.content.ContentProviderClient;
 import android.content.ContentResolver;
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.Intent;
 import android.content.SharedPreferences;
 import android.location.Location;
 import android.os.RemoteException;
+import android.util.AtomicFile;
 import android.util.Log;
 
 import com.google.android.gms.common.api.GoogleApiClient;
@@ -33,6 +33,12 @@ import com.google.android.gms.location.FusedLocationProviderApi;
 import com.google.android.gms.location.LocationRequest;
 import com.jasonmheim.rollout.Constants;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
 import java.util.concurrent.ExecutorService;
 
 import javax.inject.Inject;
@@ -45,20 +51,32 @@ import static java.lang.Math.min;
 /**
  * Manages the last known location of the device. The incoming value should normally be set by the
  * {@link LocationUpdateIntentService}, and all updates in turn notify the central content provider.
+ * <p>
+ * The location is held in memory, so reading it costs a volatile read. A copy is kept in a small
+ * binary file so that it survives the process, and is read back on first use.
  */
 @Singleton
 public class LocationManager {
 
+  // Where the location used to be kept. Read once, for users upgrading from that version.
   static final String LATITUDE = "LastLatitude";
   static final String LONGITUDE = "LastLongitude";
   static final String TIMESTAMP = "LastLocationTimestamp";
 
+  static final String LOCATION_FILE = "last_location";
+  // Written first in the file, so that the format can change later.
+  private static final int FILE_VERSION = 1;
+
   private final Application application;
   private final ContentResolver contentResolver;
   private final ExecutorService executorService;
   private final FusedLocationProviderApi fusedLocationProviderApi;
   private final Provider<GoogleApiClient> locationClientProvider;
   private final SharedPreferences sharedPreferences;
+  private final AtomicFile locationFile;
+
+  private volatile Location lastLocation;
+  private volatile boolean loaded;
 
   @Inject
   LocationManager(
@@ -74,6 +92,7 @@ public class LocationManager {
     this.fusedLocationProviderApi = fusedLocationProviderApi;
     this.locationClientProvider = locationClientProvider;
     this.sharedPreferences = sharedPreferences;
+    this.locationFile = new AtomicFile(new File(application.getFilesDir(), LOCATION_FILE));
   }
 
   /**
@@ -83,15 +102,17 @@ public class LocationManager {
    */
   void setLastLocation(Location location) {
     Log.i("Rollout", "Storing location " + location.getLatitude() + " " + location.getLongitude());
-    // TODO: Using shared preferences for this is a bit of a hack. It will trigger anything that
-    // listens for a change to the settings even though no actual settings are changed. This may
-    // unintentionally consume double cycles if something is listening to both a settings change and
-    // a content provider update.
-    sharedPreferences.edit()
-        .putString(LATITUDE, Double.toString(location.getLatitude()))
-        .putString(LONGITUDE, Double.toString(location.getLongitude()))
-        .putLong(TIMESTAMP, location.getTime())
-        .apply();
+    final Location copy = new Location(location);
+    synchronized (this) {
+      lastLocation = copy;
+      loaded = true;
+    }
+    executorService.submit(new Runnable() {
+      @Override
+      public void run() {
+        writeLocation(copy);
+      }
+    });
     notifyContentProvider();
   }
 
@@ -99,29 +120,95 @@ public class LocationManager {
    * Retrieves the last recorded location, or {@code null} if it has never been known. This is
    * retrieved from storage rather than a GMS location client, and thus may be quite old, so callers
    * should be sure to check the time that the location was recorded if recency is important.
+   * <p>
+   * The same instance is returned to every caller until the location changes, so it must not be
+   * modified.
    */
   public Location getLastLocation() {
-    // TODO: consider adding synchronization or document why it's unnecessary.
-    if (sharedPreferences.contains(LATITUDE) && sharedPreferences.contains(LONGITUDE)) {
-      Location location = new Location("");
+    if (!loaded) {
+      load();
+    }
+    return lastLocation;
+  }
+
+  private synchronized void load() {
+    if (loaded) {
+      return;
+    }
+    Location location = readLocation();
+    if (location == null && sharedPreferences.contains(LATITUDE)
+        && sharedPreferences.contains(LONGITUDE)) {
+      location = new Location("");
       location.setLatitude(Double.parseDouble(sharedPreferences.getString(LATITUDE, "0")));
       location.setLongitude(Double.parseDouble(sharedPreferences.getString(LONGITUDE, "0")));
       location.setTime(sharedPreferences.getLong(TIMESTAMP, 0));
+      writeLocation(location);
+      sharedPreferences.edit().remove(LATITUDE).remove(LONGITUDE).remove(TIMESTAMP).apply();
+    }
+    lastLocation = location;
+    loaded = true;
+  }
+
+  private Location readLocation() {
+    DataInputStream in = null;
+    try {
+      in = new DataInputStream(locationFile.openRead());
+      if (in.readByte() != FILE_VERSION) {
+        Log.w("Rollout", "Ignoring stored location of an unknown version");
+        return null;
+      }
+      Location location = new Location("");
+      location.setLatitude(in.readDouble());
+      location.setLongitude(in.readDouble());
+      location.setTime(in.readLong());
       return location;
+    } catch (FileNotFoundException ex) {
+      return null;
+    } catch (IOException ex) {
+      Log.w("Rollout", "Failed to read stored location", ex);
+      return null;
+    } finally {
+      if (in != null) {
+        try {
+          in.close();
+        } catch (IOException ex) {
+          // Nothing was written, so there is nothing to lose.
+        }
+      }
+    }
+  }
+
+  // Synchronized so that writes from the executor land in the order they were made.
+  private synchronized void writeLocation(Location location) {
+    if (location != lastLocation && lastLocation != null) {
+      // A newer location has been set and will be written by its own task.
+      return;
+    }
+    FileOutputStream stream = null;
+    try {
+      stream = locationFile.startWrite();
+      DataOutputStream out = new DataOutputStream(stream);
+      out.writeByte(FILE_VERSION);
+      out.writeDouble(location.getLatitude());
+      out.writeDouble(location.getLongitude());
+      out.writeLong(location.getTime());
+      out.flush();
+      locationFile.finishWrite(stream);
+    } catch (IOException ex) {
+      Log.e("Rollout", "Failed to store location", ex);
+      if (stream != null) {
+        locationFile.failWrite(stream);
+      }
     }
-    return null;
   }
 
   private void notifyContentProvider() {
-    // TODO: use LOCATION_URI instead of STATION_URI; drop the content values.
-    ContentValues contentValues = new ContentValues();
-    contentValues.put(Constants.UPDATE_KEY_LOCATION, true);
     ContentProviderClient contentProviderClient =
-        contentResolver.acquireContentProviderClient(Constants.STATION_URI);
+        contentResolver.acquireContentProviderClient(Constants.LOCATION_URI);
     try {
-      contentProviderClient.update(Constants.STATION_URI, contentValues, null, null);
+      contentProviderClient.update(Constants.LOCATION_URI, null, null, null);
     } catch (RemoteException ex) {
-      Log.e("Rollout", "Failed to update after new action");
+      Log.e("Rollout", "Failed to update after new location");
     } finally {
       contentProviderClient.release();
     }
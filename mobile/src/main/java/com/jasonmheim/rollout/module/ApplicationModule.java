@@ -26,14 +26,20 @@ import android.location.LocationManager;
 import com.google.android.gms.common.ConnectionResult;
 import com.google.android.gms.common.api.GoogleApiClient;
 import com.google.android.gms.location.FusedLocationProviderApi;
+import com.google.android.gms.location.GeofencingApi;
 import com.google.android.gms.location.LocationServices;
 import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
 import com.jasonmheim.rollout.Constants;
 import com.jasonmheim.rollout.action.ActionIntentService;
+import com.jasonmheim.rollout.data.StationList;
+import com.jasonmheim.rollout.data.StationListTypeAdapter;
+import com.jasonmheim.rollout.location.GeofenceIntentService;
 import com.jasonmheim.rollout.location.LocationUpdateIntentService;
 import com.jasonmheim.rollout.station.CoreContentProvider;
 import com.jasonmheim.rollout.station.StationData;
 import com.jasonmheim.rollout.station.StationDataProcessor;
+import com.jasonmheim.rollout.station.UpdateWorker;
 import com.jasonmheim.rollout.location.LocationConnectionCallbacks;
 import com.jasonmheim.rollout.action.ActionManager;
 import com.jasonmheim.rollout.settings.Settings;
@@ -64,6 +70,7 @@ import static com.jasonmheim.rollout.Constants.PREF_MODE;
         Application.class,
         GoogleApiClient.class,
         LocationUpdateIntentService.class,
+        GeofenceIntentService.class,
         LocationManager.class,
         ActionIntentService.class,
         ActionManager.class,
@@ -94,9 +101,9 @@ public class ApplicationModule {
 
   @Provides
   @StationData
-  File provideStationDataFile(Application application) {
+  File provideStationDataDirectory(Application application) {
     File filesDir = application.getApplicationContext().getFilesDir();
-    return new File(filesDir, "stationData.json");
+    return new File(filesDir, "stationData");
   }
 
   @Provides
@@ -122,11 +129,12 @@ public class ApplicationModule {
     return connectionCallbacks;
   }
 
-  // TODO: build custom serializer and deserializer for better performance
   @Provides
   @Singleton
   Gson getGson() {
-    return new Gson();
+    return new GsonBuilder()
+        .registerTypeAdapter(StationList.class, new StationListTypeAdapter())
+        .create();
   }
 
   @Provides
@@ -156,6 +164,13 @@ public class ApplicationModule {
     return Executors.newFixedThreadPool(10);
   }
 
+  @Provides
+  @Singleton
+  @UpdateWorker
+  ExecutorService provideUpdateWorker() {
+    return Executors.newSingleThreadExecutor();
+  }
+
   @Provides
   @Singleton
   GoogleApiClient provideLocationClient(
@@ -187,4 +202,10 @@ public class ApplicationModule {
   FusedLocationProviderApi provideFusedLocationProviderApi() {
     return LocationServices.FusedLocationApi;
   }
+
+  @Provides
+  @Singleton
+  GeofencingApi provideGeofencingApi() {
+    return LocationServices.GeofencingApi;
+  }
 }
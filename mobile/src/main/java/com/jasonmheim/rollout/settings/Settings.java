@@ -18,91 +18,93 @@ package com.jasonmheim.rollout.settings;
 
 import android.content.SharedPreferences;
 import android.location.Location;
-import android.util.Log;
-
-import com.jasonmheim.rollout.Constants;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
-import static com.jasonmheim.rollout.Constants.DISCLAIMER_VERSION;
-import static com.jasonmheim.rollout.Constants.PREF_AGREED_DISCLAIMER_VERSION;
-import static com.jasonmheim.rollout.Constants.PREF_DESTINATION_HOME_LATITUDE;
-import static com.jasonmheim.rollout.Constants.PREF_DESTINATION_HOME_LONGITUDE;
-import static com.jasonmheim.rollout.Constants.PREF_DESTINATION_HOME_SET;
-import static com.jasonmheim.rollout.Constants.PREF_DESTINATION_WORK_LATITUDE;
-import static com.jasonmheim.rollout.Constants.PREF_DESTINATION_WORK_LONGITUDE;
-import static com.jasonmheim.rollout.Constants.PREF_DESTINATION_WORK_SET;
-import static com.jasonmheim.rollout.Constants.PREF_ENABLE_VIBRATION;
-
 /**
  * Convenience class for accessing the user's current settings.
+ * <p>
+ * The preferences are parsed into a {@link SettingsSnapshot} on first use after any of them
+ * changes, so the getters here cost a field read. Code that reads several settings for one
+ * decision should take a single {@link #getSnapshot} so that they are consistent with each other.
  */
 @Singleton
 public class Settings {
 
   private final SharedPreferences sharedPreferences;
 
+  // Held here because the preferences only keep a weak reference to their listeners.
+  private final SharedPreferences.OnSharedPreferenceChangeListener listener =
+      new SharedPreferences.OnSharedPreferenceChangeListener() {
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+          invalidate();
+        }
+      };
+
+  private volatile SettingsSnapshot snapshot;
+
   @Inject
   Settings(SharedPreferences sharedPreferences) {
     this.sharedPreferences = sharedPreferences;
+    sharedPreferences.registerOnSharedPreferenceChangeListener(listener);
+  }
+
+  /** Returns the current settings, reading them again only if a preference has changed. */
+  public SettingsSnapshot getSnapshot() {
+    SettingsSnapshot result = snapshot;
+    if (result == null) {
+      synchronized (this) {
+        result = snapshot;
+        if (result == null) {
+          result = SettingsSnapshot.read(sharedPreferences);
+          snapshot = result;
+        }
+      }
+    }
+    return result;
   }
 
   public boolean isVibrationEnabled() {
-    return sharedPreferences.getBoolean(PREF_ENABLE_VIBRATION, false);
+    return getSnapshot().isVibrationEnabled();
   }
 
   public boolean isHomeDestinationActive() {
-    return sharedPreferences.getBoolean(PREF_DESTINATION_HOME_SET, false);
+    return getSnapshot().isHomeDestinationActive();
   }
 
   public Location getHomeDestination() {
-    String latitudeString = sharedPreferences.getString(PREF_DESTINATION_HOME_LATITUDE, "");
-    String longitudeString = sharedPreferences.getString(PREF_DESTINATION_HOME_LONGITUDE, "");
-    return parseLocation(latitudeString, longitudeString);
+    return getSnapshot().getHomeDestination();
   }
 
   public boolean isWorkDestinationActive() {
-    return sharedPreferences.getBoolean(PREF_DESTINATION_WORK_SET, false);
+    return getSnapshot().isWorkDestinationActive();
   }
 
   public Location getWorkDestination() {
-    String latitudeString = sharedPreferences.getString(PREF_DESTINATION_WORK_LATITUDE, "");
-    String longitudeString = sharedPreferences.getString(PREF_DESTINATION_WORK_LONGITUDE, "");
-    return parseLocation(latitudeString, longitudeString);
+    return getSnapshot().getWorkDestination();
   }
 
   public int getFullThreshold() {
-    return getThresholdValue(Constants.PREF_FULL_THRESHOLD);
+    return getSnapshot().getFullThreshold();
   }
 
   public int getEmptyThreshold() {
-    return getThresholdValue(Constants.PREF_EMPTY_THRESHOLD);
+    return getSnapshot().getEmptyThreshold();
   }
 
   public boolean isDisclaimerAgreed() {
-    return sharedPreferences.getInt(PREF_AGREED_DISCLAIMER_VERSION, -1) >= DISCLAIMER_VERSION;
+    return getSnapshot().isDisclaimerAgreed();
   }
 
-  private int getThresholdValue(String key) {
-    String valueString = sharedPreferences.getString(key, "0");
-    try {
-      return Integer.parseInt(valueString);
-    } catch (RuntimeException ex) {
-      Log.w("Rollout", "Failed to parse threshold key " + key + " value " + valueString);
-    }
-    return 0;
-  }
-
-  private Location parseLocation(String latitudeString, String longitudeString) {
-    try {
-      Location result = new Location("");
-      result.setLatitude(Double.parseDouble(latitudeString));
-      result.setLongitude(Double.parseDouble(longitudeString));
-      return result;
-    } catch (RuntimeException ex) {
-      Log.w("Rollout", "Home location extraction failed", ex);
-    }
-    return null;
+  /**
+   * Drops the current snapshot, so that the next read sees the preferences as they are now. The
+   * preference listener does this by itself; code told of a change some other way calls it first,
+   * since listeners run in no particular order. Synchronized so that a snapshot read from the old
+   * values cannot be stored after this.
+   */
+  public synchronized void invalidate() {
+    snapshot = null;
   }
 }
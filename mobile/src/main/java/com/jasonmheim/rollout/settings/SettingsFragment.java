@@ -27,6 +27,7 @@ import android.preference.PreferenceFragment;
 import android.widget.Toast;
 
 import com.google.common.base.Strings;
+import com.jasonmheim.rollout.Constants;
 import com.jasonmheim.rollout.R;
 import com.jasonmheim.rollout.inject.DaggerFragment;
 import com.jasonmheim.rollout.inject.ObjectGraphProvider;
@@ -107,7 +108,9 @@ public class SettingsFragment extends PreferenceFragment
 
   @Override
   public void onSharedPreferenceChanged(final SharedPreferences sharedPreferences, String key) {
-    // TODO: notify content provider via update to SETTINGS_URI
+    // Let the content provider bring the notification, and the observers of SETTINGS_URI, up to
+    // date with the new settings.
+    getActivity().getContentResolver().update(Constants.SETTINGS_URI, null, null, null);
     Preference preference = findPreference(key);
     if (key.equals("pref_empty_threshold")) {
       setSummaryForEmptyThreshold(preference);
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.settings;
+
+import android.content.SharedPreferences;
+import android.location.Location;
+import android.util.Log;
+
+import static com.jasonmheim.rollout.Constants.DISCLAIMER_VERSION;
+import static com.jasonmheim.rollout.Constants.PREF_AGREED_DISCLAIMER_VERSION;
+import static com.jasonmheim.rollout.Constants.PREF_DESTINATION_HOME_LATITUDE;
+import static com.jasonmheim.rollout.Constants.PREF_DESTINATION_HOME_LONGITUDE;
+import static com.jasonmheim.rollout.Constants.PREF_DESTINATION_HOME_SET;
+import static com.jasonmheim.rollout.Constants.PREF_DESTINATION_WORK_LATITUDE;
+import static com.jasonmheim.rollout.Constants.PREF_DESTINATION_WORK_LONGITUDE;
+import static com.jasonmheim.rollout.Constants.PREF_DESTINATION_WORK_SET;
+import static com.jasonmheim.rollout.Constants.PREF_EMPTY_THRESHOLD;
+import static com.jasonmheim.rollout.Constants.PREF_ENABLE_VIBRATION;
+import static com.jasonmheim.rollout.Constants.PREF_FULL_THRESHOLD;
+
+/**
+ * The user's settings as of one moment, parsed from their string preferences once. Instances are
+ * immutable; {@link Settings#getSnapshot} hands out the same one until a preference changes.
+ * <p>
+ * The destination {@link Location} instances are shared by every caller and must not be modified.
+ */
+public final class SettingsSnapshot {
+
+  private final boolean vibrationEnabled;
+  private final boolean homeDestinationActive;
+  private final Location homeDestination;
+  private final boolean workDestinationActive;
+  private final Location workDestination;
+  private final int fullThreshold;
+  private final int emptyThreshold;
+  private final boolean disclaimerAgreed;
+
+  private SettingsSnapshot(SharedPreferences sharedPreferences) {
+    vibrationEnabled = sharedPreferences.getBoolean(PREF_ENABLE_VIBRATION, false);
+    homeDestinationActive = sharedPreferences.getBoolean(PREF_DESTINATION_HOME_SET, false);
+    homeDestination = parseLocation(
+        sharedPreferences.getString(PREF_DESTINATION_HOME_LATITUDE, ""),
+        sharedPreferences.getString(PREF_DESTINATION_HOME_LONGITUDE, ""));
+    workDestinationActive = sharedPreferences.getBoolean(PREF_DESTINATION_WORK_SET, false);
+    workDestination = parseLocation(
+        sharedPreferences.getString(PREF_DESTINATION_WORK_LATITUDE, ""),
+        sharedPreferences.getString(PREF_DESTINATION_WORK_LONGITUDE, ""));
+    fullThreshold = getThresholdValue(sharedPreferences, PREF_FULL_THRESHOLD);
+    emptyThreshold = getThresholdValue(sharedPreferences, PREF_EMPTY_THRESHOLD);
+    disclaimerAgreed =
+        sharedPreferences.getInt(PREF_AGREED_DISCLAIMER_VERSION, -1) >= DISCLAIMER_VERSION;
+  }
+
+  /** Reads and parses every setting from {@code sharedPreferences}. */
+  public static SettingsSnapshot read(SharedPreferences sharedPreferences) {
+    return new SettingsSnapshot(sharedPreferences);
+  }
+
+  public boolean isVibrationEnabled() {
+    return vibrationEnabled;
+  }
+
+  public boolean isHomeDestinationActive() {
+    return homeDestinationActive;
+  }
+
+  public Location getHomeDestination() {
+    return homeDestination;
+  }
+
+  public boolean isWorkDestinationActive() {
+    return workDestinationActive;
+  }
+
+  public Location getWorkDestination() {
+    return workDestination;
+  }
+
+  public int getFullThreshold() {
+    return fullThreshold;
+  }
+
+  public int getEmptyThreshold() {
+    return emptyThreshold;
+  }
+
+  public boolean isDisclaimerAgreed() {
+    return disclaimerAgreed;
+  }
+
+  private static int getThresholdValue(SharedPreferences sharedPreferences, String key) {
+    String valueString = sharedPreferences.getString(key, "0");
+    try {
+      return Integer.parseInt(valueString);
+    } catch (RuntimeException ex) {
+      Log.w("Rollout", "Failed to parse threshold key " + key + " value " + valueString);
+    }
+    return 0;
+  }
+
+  private static Location parseLocation(String latitudeString, String longitudeString) {
+    if (latitudeString.isEmpty() && longitudeString.isEmpty()) {
+      // Never set; not worth a warning every time the settings change.
+      return null;
+    }
+    try {
+      Location result = new Location("");
+      result.setLatitude(Double.parseDouble(latitudeString));
+      result.setLongitude(Double.parseDouble(longitudeString));
+      return result;
+    } catch (RuntimeException ex) {
+      Log.w("Rollout", "Home location extraction failed", ex);
+    }
+    return null;
+  }
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.station;
+
+import android.content.Context;
+import android.graphics.Canvas;
+import android.graphics.Paint;
+import android.util.AttributeSet;
+import android.view.View;
+
+import com.jasonmheim.rollout.R;
+
+/**
+ * The bar behind a station row, split into broken bikes, available bikes and available docks in
+ * proportion to the station's total docks. The docks are the view's background, and the other two
+ * are drawn over it, so a bind only stores three numbers and invalidates the view if they changed.
+ * A station with no docks at all is drawn entirely as broken bikes, which is also how the summary
+ * row above the list is drawn.
+ */
+public class AvailabilityBarView extends View {
+
+  private final Paint brokenBikesPaint = new Paint();
+  private final Paint availableBikesPaint = new Paint();
+
+  private int availableBikes;
+  private int availableDocks;
+  private int totalDocks;
+
+  public AvailabilityBarView(Context context) {
+    this(context, null);
+  }
+
+  public AvailabilityBarView(Context context, AttributeSet attrs) {
+    this(context, attrs,
+        context.getResources().getColor(R.color.brokenBikes),
+        context.getResources().getColor(R.color.availableBikes));
+  }
+
+  AvailabilityBarView(
+      Context context, AttributeSet attrs, int brokenBikesColor, int availableBikesColor) {
+    super(context, attrs);
+    brokenBikesPaint.setColor(brokenBikesColor);
+    availableBikesPaint.setColor(availableBikesColor);
+  }
+
+  public void setCounts(int availableBikes, int availableDocks, int totalDocks) {
+    if (availableBikes == this.availableBikes
+        && availableDocks == this.availableDocks
+        && totalDocks == this.totalDocks) {
+      return;
+    }
+    this.availableBikes = availableBikes;
+    this.availableDocks = availableDocks;
+    this.totalDocks = totalDocks;
+    invalidate();
+  }
+
+  @Override
+  protected void onDraw(Canvas canvas) {
+    int width = getWidth();
+    int height = getHeight();
+    if (totalDocks <= 0) {
+      canvas.drawRect(0, 0, width, height, brokenBikesPaint);
+      return;
+    }
+    float brokenBikesRight =
+        width * (float) (totalDocks - availableBikes - availableDocks) / totalDocks;
+    float availableBikesRight = brokenBikesRight + width * (float) availableBikes / totalDocks;
+    canvas.drawRect(0, 0, brokenBikesRight, height, brokenBikesPaint);
+    canvas.drawRect(brokenBikesRight, 0, availableBikesRight, height, availableBikesPaint);
+  }
+}
@@ -16,36 +16,39 @@
 
 package com.jasonmheim.rollout.station;
 
-import android.app.Notification;
 import android.app.NotificationManager;
-import android.app.PendingIntent;
 import android.content.ContentProvider;
 import android.content.ContentResolver;
 import android.content.ContentValues;
-import android.content.Intent;
+import android.content.UriMatcher;
 import android.database.Cursor;
 import android.location.Location;
 import android.net.Uri;
 import android.os.Bundle;
-import android.support.v4.app.NotificationCompat;
+import android.os.SystemClock;
 import android.util.Log;
 
-import com.google.gson.Gson;
 import com.jasonmheim.rollout.Constants;
-import com.jasonmheim.rollout.R;
-import com.jasonmheim.rollout.action.ActionIntentService;
 import com.jasonmheim.rollout.action.ActionManager;
-import com.jasonmheim.rollout.data.Station;
+import com.jasonmheim.rollout.action.ActionState;
 import com.jasonmheim.rollout.data.StationDistance;
 import com.jasonmheim.rollout.data.StationDistanceRank;
+import com.jasonmheim.rollout.data.StationCatalog;
 import com.jasonmheim.rollout.data.StationList;
+import com.jasonmheim.rollout.data.StationListBinaryFormat;
+import com.jasonmheim.rollout.data.StationListDelta;
+import com.jasonmheim.rollout.data.StationStatusSnapshot;
 import com.jasonmheim.rollout.inject.ObjectGraphProvider;
+import com.jasonmheim.rollout.location.GeofenceIntentService;
+import com.jasonmheim.rollout.location.GeofenceManager;
 import com.jasonmheim.rollout.location.LocationManager;
 import com.jasonmheim.rollout.settings.Settings;
+import com.jasonmheim.rollout.sync.SyncScheduler;
 
-import java.util.ArrayList;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Future;
 
@@ -54,15 +57,11 @@ import javax.inject.Inject;
 import static com.google.android.gms.location.LocationRequest.PRIORITY_BALANCED_POWER_ACCURACY;
 import static com.google.android.gms.location.LocationRequest.PRIORITY_HIGH_ACCURACY;
 import static com.jasonmheim.rollout.Constants.ACCOUNT;
-import static com.jasonmheim.rollout.Constants.ACTION_IDLE;
 import static com.jasonmheim.rollout.Constants.ACTION_RIDE;
-import static com.jasonmheim.rollout.Constants.ACTION_SEARCH;
 import static com.jasonmheim.rollout.Constants.ACTION_SILENCE;
 import static com.jasonmheim.rollout.Constants.AUTHORITY;
-import static com.jasonmheim.rollout.Constants.DESTINATION_NAME_HOME;
-import static com.jasonmheim.rollout.Constants.DESTINATION_NAME_WORK;
-import static com.jasonmheim.rollout.Constants.UPDATE_KEY_ACTION;
-import static com.jasonmheim.rollout.Constants.UPDATE_KEY_DESTINATION;
+import static com.jasonmheim.rollout.Constants.INSERT_KEY_CATALOG;
+import static com.jasonmheim.rollout.Constants.INSERT_KEY_STATUS;
 
 /**
  * This class serves as the hub for all data and notification of updates to pretty much everything
@@ -73,9 +72,11 @@ import static com.jasonmheim.rollout.Constants.UPDATE_KEY_DESTINATION;
  * mechanism for incremental updates; the service exposes a blob of JSON data with the current state
  * of the entire bike share system.
  * <p>
- * Given this we simply serialize the entire blob to disk using {@link StationDataStorage}. The insert
- * method expects to be invoked by the Sync Adapter that polls for updates. The query method exposes
- * a custom StationDataCursor that has one row of data with one column: the entire JSON blob.
+ * Given this we simply serialize the entire blob to disk using {@link StationDataStorage}, split into
+ * a catalog of station metadata that rarely changes and a small snapshot of the live counts. The
+ * insert method expects to be invoked by the Sync Adapter that polls for updates, which passes the
+ * catalog only when it has changed. The query method exposes
+ * a custom {@link StationDataCursor} with one row per station, read directly from memory.
  * <p>
  * In addition to the bike share data being fed here from the Sync Adapter, the update method is
  * invoked when a new current location is known, or the user has updated the application's action.
@@ -85,13 +86,32 @@ import static com.jasonmheim.rollout.Constants.UPDATE_KEY_DESTINATION;
  * By having all updates posted here, two things are accomplished:
  * <ul>
  *   <li>This class becomes the hub of all notifications.
- *   <li>The UI can listen for updates from a single STATION_URI to get the effects of all changes.
+ *   <li>The UI can listen for exactly the changes it cares about. Each kind of change is updated
+ *       through its own URI, {@link Constants#STATION_URI}, {@link Constants#ACTION_URI},
+ *       {@link Constants#LOCATION_URI} or {@link Constants#SETTINGS_URI}, and only observers of
+ *       that URI are notified, along with those of {@link Constants#ANY_URI}. Only a change to the
+ *       stations themselves calls for the station data to be queried again.
  * </ul>
+ * <p>
+ * The notification and the observers are brought up to date by an {@link UpdatePipeline}, on a
+ * thread of its own, so callers never wait for them, and a burst of changes is handled by one pass
+ * over the newest state.
  */
 public class CoreContentProvider extends ContentProvider {
 
-  @Inject
-  Gson gson;
+  private static final int MATCH_STATION = 1;
+  private static final int MATCH_ACTION = 2;
+  private static final int MATCH_LOCATION = 3;
+  private static final int MATCH_SETTINGS = 4;
+
+  private static final UriMatcher URI_MATCHER = new UriMatcher(UriMatcher.NO_MATCH);
+
+  static {
+    URI_MATCHER.addURI(AUTHORITY, Constants.STATION_URI.getPath().substring(1), MATCH_STATION);
+    URI_MATCHER.addURI(AUTHORITY, Constants.ACTION_URI.getPath().substring(1), MATCH_ACTION);
+    URI_MATCHER.addURI(AUTHORITY, Constants.LOCATION_URI.getPath().substring(1), MATCH_LOCATION);
+    URI_MATCHER.addURI(AUTHORITY, Constants.SETTINGS_URI.getPath().substring(1), MATCH_SETTINGS);
+  }
 
   @Inject
   StationDataStorage stationDataStorage;
@@ -102,6 +122,10 @@ public class CoreContentProvider extends ContentProvider {
   @Inject
   ExecutorService executorService;
 
+  @Inject
+  @UpdateWorker
+  ExecutorService updateWorker;
+
   @Inject
   ActionManager actionManager;
 
@@ -117,162 +141,24 @@ public class CoreContentProvider extends ContentProvider {
   @Inject
   StationDataProcessor stationDataProcessor;
 
-  private StationList stationList;
-  private StationDistanceRank previousStationDistanceRank = null;
-
-  private static final int[] FILL_COLOR = {
-      R.drawable.ic_fill_0_color_48dp,
-      R.drawable.ic_fill_1_color_48dp,
-      R.drawable.ic_fill_2_color_48dp,
-      R.drawable.ic_fill_3_color_48dp,
-      R.drawable.ic_fill_4_color_48dp,
-      R.drawable.ic_fill_5_color_48dp,
-      R.drawable.ic_fill_6_color_48dp,
-      R.drawable.ic_fill_7_color_48dp,
-      R.drawable.ic_fill_8_color_48dp,
-      R.drawable.ic_fill_0_red1_48dp,
-      R.drawable.ic_fill_1_red1_48dp,
-      R.drawable.ic_fill_2_red1_48dp,
-      R.drawable.ic_fill_3_red1_48dp,
-      R.drawable.ic_fill_4_red1_48dp,
-      R.drawable.ic_fill_5_red1_48dp,
-      R.drawable.ic_fill_6_red1_48dp,
-      R.drawable.ic_fill_7_red1_48dp,
-      R.drawable.ic_fill_8_red1_48dp,
-      R.drawable.ic_fill_0_red2_48dp,
-      R.drawable.ic_fill_1_red2_48dp,
-      R.drawable.ic_fill_2_red2_48dp,
-      R.drawable.ic_fill_3_red2_48dp,
-      R.drawable.ic_fill_4_red2_48dp,
-      R.drawable.ic_fill_5_red2_48dp,
-      R.drawable.ic_fill_6_red2_48dp,
-      R.drawable.ic_fill_7_red2_48dp,
-      R.drawable.ic_fill_8_red2_48dp,
-      R.drawable.ic_fill_0_red3_48dp,
-      R.drawable.ic_fill_1_red3_48dp,
-      R.drawable.ic_fill_2_red3_48dp,
-      R.drawable.ic_fill_3_red3_48dp,
-      R.drawable.ic_fill_4_red3_48dp,
-      R.drawable.ic_fill_5_red3_48dp,
-      R.drawable.ic_fill_6_red3_48dp,
-      R.drawable.ic_fill_7_red3_48dp,
-      R.drawable.ic_fill_8_red3_48dp,
-  };
-
-  private static final int[] FILL_BW = {
-      R.drawable.ic_fill_0_bw_24p,
-      R.drawable.ic_fill_1_bw_24p,
-      R.drawable.ic_fill_2_bw_24p,
-      R.drawable.ic_fill_3_bw_24p,
-      R.drawable.ic_fill_4_bw_24p,
-      R.drawable.ic_fill_5_bw_24p,
-      R.drawable.ic_fill_6_bw_24p,
-      R.drawable.ic_fill_7_bw_24p,
-      R.drawable.ic_fill_8_bw_24p,
-      R.drawable.ic_fill_0_bw_red1_24p,
-      R.drawable.ic_fill_1_bw_red1_24p,
-      R.drawable.ic_fill_2_bw_red1_24p,
-      R.drawable.ic_fill_3_bw_red1_24p,
-      R.drawable.ic_fill_4_bw_red1_24p,
-      R.drawable.ic_fill_5_bw_red1_24p,
-      R.drawable.ic_fill_6_bw_red1_24p,
-      R.drawable.ic_fill_7_bw_red1_24p,
-      R.drawable.ic_fill_8_bw_red1_24p,
-      R.drawable.ic_fill_0_bw_red2_24p,
-      R.drawable.ic_fill_1_bw_red2_24p,
-      R.drawable.ic_fill_2_bw_red2_24p,
-      R.drawable.ic_fill_3_bw_red2_24p,
-      R.drawable.ic_fill_4_bw_red2_24p,
-      R.drawable.ic_fill_5_bw_red2_24p,
-      R.drawable.ic_fill_6_bw_red2_24p,
-      R.drawable.ic_fill_7_bw_red2_24p,
-      R.drawable.ic_fill_8_bw_red2_24p,
-      R.drawable.ic_fill_0_bw_red3_24p,
-      R.drawable.ic_fill_1_bw_red3_24p,
-      R.drawable.ic_fill_2_bw_red3_24p,
-      R.drawable.ic_fill_3_bw_red3_24p,
-      R.drawable.ic_fill_4_bw_red3_24p,
-      R.drawable.ic_fill_5_bw_red3_24p,
-      R.drawable.ic_fill_6_bw_red3_24p,
-      R.drawable.ic_fill_7_bw_red3_24p,
-      R.drawable.ic_fill_8_bw_red3_24p,
-  };
-
-  // Use this to bump the priority of a notification without actually buzzing the device
-  private static final long[] BUZZ_SILENT = {
-      0,
-      0,
-  };
-
-  private static final long[] BUZZ_0 = {
-      0,
-      200,
-      100,
-      200,
-      100,
-      200,
-  };
-
-  private static final long[] BUZZ_1 = {
-      0,
-      100,
-      150,
-      200,
-      150,
-      300,
-      150,
-      400,
-  };
-
-  private static final long[] BUZZ_2 = {
-      0,
-      100,
-      150,
-      200,
-      150,
-      300,
-      150,
-      400,
-      250,
-      100,
-      150,
-      200,
-      150,
-      300,
-      150,
-      400,
-  };
-
-  private static final long[] BUZZ_3 = {
-      0,
-      100,
-      150,
-      200,
-      150,
-      300,
-      150,
-      400,
-      250,
-      100,
-      150,
-      200,
-      150,
-      300,
-      150,
-      400,
-      250,
-      100,
-      150,
-      200,
-      150,
-      300,
-      150,
-      400,
-  };
-
-  private static final long[][] BUZZ_RANKS = {
-      BUZZ_0, BUZZ_1, BUZZ_2, BUZZ_3,
-  };
+  @Inject
+  SyncScheduler syncScheduler;
+
+  @Inject
+  GeofenceManager geofenceManager;
+
+  // Written under the provider's lock, but read without it by queries and the update pipeline.
+  private volatile StationList stationList;
+  private UpdatePipeline updatePipeline;
+  // Only used by the update pipeline's worker.
+  private StationNotificationRenderer notificationRenderer;
+  private NearbyStationsPublisher nearbyStationsPublisher;
+
+  // The pending or most recent background download made for a cold query.
+  private Future<?> bootstrap;
+  // See StationDataCursor.EXTRA_TIME_TO_FIRST_ROW
+  private long createdAtMillis;
+  private volatile long timeToFirstRowMillis = -1;
 
   @Override
   public int delete(Uri uri, String selection, String[] selectionArgs) {
@@ -284,13 +170,32 @@ public class CoreContentProvider extends ContentProvider {
     throw new UnsupportedOperationException("Not yet implemented");
   }
 
+  /**
+   * Accepts a {@link StationStatusSnapshot}, and a {@link StationCatalog} if it has changed, from
+   * the sync adapter. Returns null, without storing anything, if the snapshot cannot be merged
+   * because this provider has no catalog or an out of date one; the caller should then insert
+   * again with the catalog included.
+   */
   @Override
   public Uri insert(Uri uri, ContentValues values) {
-    // TODO: make this a constant, or even better, create static helper methods
-    String valuesAsString = values.getAsString("StationList");
+    checkInsertUri(uri);
     try {
-      StationList newStationList = gson.fromJson(valuesAsString, StationList.class);
-      internalInsert(newStationList);
+      byte[] catalogBytes = values.getAsByteArray(INSERT_KEY_CATALOG);
+      if (catalogBytes != null) {
+        stationDataStorage.setCatalog(
+            StationListBinaryFormat.decodeCatalog(ByteBuffer.wrap(catalogBytes)));
+      }
+      StationCatalog catalog = stationDataStorage.getCatalog();
+      StationStatusSnapshot snapshot = StationListBinaryFormat.decodeSnapshot(
+          ByteBuffer.wrap(values.getAsByteArray(INSERT_KEY_STATUS)));
+      if (catalog == null || !catalog.covers(snapshot)) {
+        Log.i("Rollout", "Station catalog missing or out of date, rejecting status");
+        return null;
+      }
+      stationDataStorage.setSnapshot(snapshot);
+      replaceStationList(catalog.merge(snapshot));
+    } catch (IOException ex) {
+      Log.e("Rollout", "Insert deserialization exception", ex);
     } catch (RuntimeException ex) {
       Log.e("Rollout", "Insert deserialization exception", ex);
     }
@@ -299,10 +204,26 @@ public class CoreContentProvider extends ContentProvider {
 
   @Override
   public boolean onCreate() {
+    createdAtMillis = SystemClock.elapsedRealtime();
     ((ObjectGraphProvider) getContext().getApplicationContext()).get().inject(this);
+    notificationRenderer = new StationNotificationRenderer(getContext(), notificationManager);
+    nearbyStationsPublisher = new NearbyStationsPublisher(getContext());
+    updatePipeline = new UpdatePipeline(
+        updateWorker,
+        new UpdatePipeline.Processor() {
+          @Override
+          public void process(int events) {
+            processUpdate(events);
+          }
+        });
     return true;
   }
 
+  /**
+   * Returns a {@link StationDataCursor} over the whole system, or over the stations selected by the
+   * {@code QUERY_KEY} parameters of {@code uri}; see {@link Constants#QUERY_KEY_LATITUDE}. SQL style
+   * {@code selection} and {@code sortOrder} arguments are not supported.
+   */
   @Override
   public Cursor query(
       Uri uri,
@@ -310,17 +231,59 @@ public class CoreContentProvider extends ContentProvider {
       String selection,
       String[] selectionArgs,
       String sortOrder) {
+    checkMatch(uri, MATCH_STATION);
+    if (selection != null || sortOrder != null) {
+      throw new IllegalArgumentException("Select stations with query parameters instead: " + uri);
+    }
+    // Parse before doing any work, so that a malformed query fails fast.
+    StationQuery query = StationQuery.fromUri(uri);
 
-    StationDataCursor cursor = new StationDataCursor();
+    if (stationList == null) {
+      loadFromStorage();
+    }
+    StationList currentStationList = stationList;
+    if (currentStationList == null) {
+      Log.i("Rollout", "Local storage was empty.");
+      startBootstrap();
+    } else {
+      recordFirstRow();
+    }
+    StationList selectedStationList = currentStationList == null
+        ? null
+        : stationDataProcessor.selectStations(currentStationList, query);
+    StationDataCursor cursor = new StationDataCursor(selectedStationList, projection);
+    Bundle extras = cursor.getExtras();
+    extras.putLong(StationDataCursor.EXTRA_TIME_TO_FIRST_ROW, timeToFirstRowMillis);
+    extras.putInt(StationDataCursor.EXTRA_UPDATE_QUEUE_DEPTH, updatePipeline.getQueueDepth());
+    extras.putLong(StationDataCursor.EXTRA_UPDATE_PASSES, updatePipeline.getPassCount());
+    extras.putLong(StationDataCursor.EXTRA_UPDATE_COALESCED, updatePipeline.getCoalescedCount());
+    extras.putLongArray(
+        StationDataCursor.EXTRA_UPDATE_STAGE_MILLIS, updatePipeline.getStageMillis());
+    cursor.setNotificationUri(getContext().getContentResolver(), Constants.STATION_URI);
+    return cursor;
+  }
+
+  private synchronized void loadFromStorage() {
     if (stationList == null) {
       Log.i("Rollout", "Provider not yet initialized, checking local storage...");
       stationList = stationDataStorage.get();
     }
-    if (stationList == null) {
-      Log.i("Rollout", "Local storage was empty.");
-      Future<StationList> future = executorService.submit(stationListDownloader);
-      try {
-        StationList providerList = future.get();
+  }
+
+  /**
+   * Downloads the station data in the background for a provider that has none, so that the first
+   * query returns an empty cursor at once rather than waiting on the network. Concurrent cold
+   * queries share a single download. Observers of {@link Constants#STATION_URI} are notified when
+   * the data arrive; if the download fails, a sync is requested instead.
+   */
+  private synchronized void startBootstrap() {
+    if (bootstrap != null && !bootstrap.isDone()) {
+      return;
+    }
+    bootstrap = executorService.submit(new Runnable() {
+      @Override
+      public void run() {
+        StationList providerList = stationListDownloader.get();
         if (providerList == null) {
           Log.i("Rollout", "Station list failed to download from query, requesting sync");
           Bundle settingsBundle = new Bundle();
@@ -329,291 +292,227 @@ public class CoreContentProvider extends ContentProvider {
           settingsBundle.putBoolean(
               ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
           ContentResolver.requestSync(ACCOUNT, AUTHORITY, settingsBundle);
-        } else {
+          return;
+        }
+        synchronized (CoreContentProvider.this) {
+          // A sync may have beaten the download here, in which case its data are at least as new.
+          if (stationList != null) {
+            return;
+          }
           Log.i("Rollout", "Direct download succeeded.");
-          // This implicitly sets stationList
+          // This implicitly sets stationList and notifies observers
           internalInsert(providerList);
         }
-      } catch (InterruptedException ex) {
-        Log.w("Rollout", "Content provider sync was interrupted", ex);
-      } catch (ExecutionException ex) {
-        Log.w("Rollout", "Content provider sync execution failed", ex);
       }
+    });
+  }
+
+  private void recordFirstRow() {
+    if (timeToFirstRowMillis < 0) {
+      timeToFirstRowMillis = SystemClock.elapsedRealtime() - createdAtMillis;
+      Log.i("Rollout", "Time to first row: " + timeToFirstRowMillis + "ms");
     }
-    if (stationList != null) {
-      cursor.setStationDataJson(gson.toJson(stationList));
-    }
-    cursor.setNotificationUri(getContext().getContentResolver(), Constants.STATION_URI);
-    return cursor;
   }
 
+  /**
+   * Reports a change to the action, the location or the settings, through {@link
+   * Constants#ACTION_URI}, {@link Constants#LOCATION_URI} or {@link Constants#SETTINGS_URI}
+   * respectively. The values are ignored; everything is read from its manager. This only queues
+   * the change with the {@link UpdatePipeline}; observers of the same URI are notified once the
+   * notification has been brought up to date.
+   */
   @Override
   public int update(
       Uri uri,
       ContentValues values,
       String selection,
       String[] selectionArgs) {
-    // TODO: this is silly. Disambiguate by using different URIs for data, location, action, etc
-    if (values.containsKey(Constants.UPDATE_KEY_LOCATION)) {
-      Log.i("Rollout", "Updating location");
-      internalUpdate();
-    } else if (values.containsKey(Constants.UPDATE_KEY_ACTION)) {
-      // TODO: Do this in the ActionManager. It's ridiculous to do this here.
-      int action = actionManager.getAction();
-      Log.i("Rollout", "Updating action to " + action);
-      switch (action) {
-        case Constants.ACTION_SEARCH:
-          Log.i("Rollout", "Active search action");
-          // Medium location speed
-          locationManager.setLocationUpdateInterval(1, PRIORITY_HIGH_ACCURACY);
-          // Fast periodic sync
-          setSyncPeriod(1);
-          break;
-        case Constants.ACTION_RIDE:
-          Log.i("Rollout", "Riding action");
-          // Fast location speed
-          locationManager.setLocationUpdateInterval(0.5, PRIORITY_HIGH_ACCURACY);
-          // Fast periodic sync
-          setSyncPeriod(1);
-          break;
-        case Constants.ACTION_IDLE:
-          Log.i("Rollout", "Passive search action");
-          // Slow location speed
-          locationManager.setLocationUpdateInterval(10, PRIORITY_BALANCED_POWER_ACCURACY);
-          // Slow periodic sync
-          setSyncPeriod(5);
-          break;
-        case Constants.ACTION_SILENCE:
-          Log.i("Rollout", "Muted action");
-          // Extra slow location speed
-          locationManager.setLocationUpdateInterval(60, PRIORITY_BALANCED_POWER_ACCURACY);
-          // Extra slow periodic sync
-          setSyncPeriod(20);
-      }
-      internalUpdate();
+    switch (URI_MATCHER.match(uri)) {
+      case MATCH_ACTION:
+        onActionChanged();
+        updatePipeline.post(UpdatePipeline.EVENT_ACTION);
+        break;
+      case MATCH_LOCATION:
+        Log.i("Rollout", "Updating location");
+        updatePipeline.post(UpdatePipeline.EVENT_LOCATION);
+        break;
+      case MATCH_SETTINGS:
+        Log.i("Rollout", "Updating settings");
+        // The preference listener that does this may not have run yet.
+        settings.invalidate();
+        updatePipeline.post(UpdatePipeline.EVENT_SETTINGS);
+        break;
+      default:
+        throw new IllegalArgumentException("Unsupported URI for update: " + uri);
     }
     return 0;
   }
 
-  private void setSyncPeriod(double periodInMinutes) {
-    Log.i("Rollout", "Data update period in minutes: " + periodInMinutes);
-    ContentResolver.addPeriodicSync(
-        ACCOUNT, AUTHORITY, Bundle.EMPTY, (long) (periodInMinutes * Constants.SECONDS_PER_MINUTE));
+  private void onActionChanged() {
+    // TODO: Do this in the ActionManager. It's ridiculous to do this here.
+    int action = actionManager.getAction();
+    Log.i("Rollout", "Updating action to " + action);
+    switch (action) {
+      case Constants.ACTION_SEARCH:
+        Log.i("Rollout", "Active search action");
+        // Medium location speed
+        locationManager.setLocationUpdateInterval(1, PRIORITY_HIGH_ACCURACY);
+        break;
+      case Constants.ACTION_RIDE:
+        Log.i("Rollout", "Riding action");
+        // Slow location speed; the geofences placed by each update pass speed it up near stations
+        locationManager.setLocationUpdateInterval(
+            GeofenceIntentService.BETWEEN_FENCES_INTERVAL_MINUTES,
+            PRIORITY_BALANCED_POWER_ACCURACY);
+        break;
+      case Constants.ACTION_IDLE:
+        Log.i("Rollout", "Passive search action");
+        // Slow location speed
+        locationManager.setLocationUpdateInterval(10, PRIORITY_BALANCED_POWER_ACCURACY);
+        break;
+      case Constants.ACTION_SILENCE:
+        Log.i("Rollout", "Muted action");
+        // Extra slow location speed
+        locationManager.setLocationUpdateInterval(60, PRIORITY_BALANCED_POWER_ACCURACY);
+    }
+    if (action != Constants.ACTION_RIDE) {
+      geofenceManager.clearFences();
+    }
+    // The update pass that follows also has the SyncScheduler pick a sync period for the action.
   }
 
-  private synchronized void internalUpdate() {
+  /**
+   * Notifies the observers of the URI of each of the given {@link UpdatePipeline} events, and then
+   * those of {@link Constants#ANY_URI} once for all of them.
+   */
+  private void notifyChange(int events) {
     if (!settings.isDisclaimerAgreed()) {
-      // The user has not yet agreed to the disclaimer. Post no notifications or URI changes.
-      notificationManager.cancel(1);
+      // Nothing is shown until the user agrees, so there is nothing to bring up to date.
       return;
     }
-    try {
-      int action = actionManager.getAction();
-      if (action == ACTION_SILENCE) {
-        // Turn off notifications but still post URI changes via finally clause
-        notificationManager.cancel(1);
-        return;
-      }
-      if (stationList == null) {
-        return;
-      }
-      Location lastLocation = locationManager.getLastLocation();
-      if (lastLocation == null) {
-        return;
-      }
-      StationDistanceRank stationDistanceRank
-          = stationDataProcessor.getClosestAvailableStation(stationList);
-      if (stationDistanceRank == null) {
-        return;
-      }
-      try {
-        Station station = stationDistanceRank.getStationDistance().getStation();
-        int iconIndex = getIconIndex(stationDistanceRank);
-
-        // The color icons look better on the wearable with their white background
-        Notification.WearableExtender wearable = new Notification.WearableExtender()
-            .setContentIcon(FILL_COLOR[iconIndex])
-            .setHintHideIcon(true);
-
-        // Don't bother setting large icon, it's redundant with the small icon especially once you
-        // are on Lollipop.
-        Notification.Builder builder = new Notification.Builder(getContext())
-            .setSmallIcon(FILL_BW[iconIndex])
-            .setColor(getContext().getResources().getColor(R.color.availableBikes))
-            .setContentTitle(station.stationName);
-        switch (action) {
-          case ACTION_RIDE:
-            builder.setContentText(getDocks(stationDistanceRank))
-                .setPriority(NotificationCompat.PRIORITY_MAX)
-                .setVibrate(getAppropriateBuzz(stationDistanceRank));
-            wearable.addAction(getIdleAction())
-                .addAction(getSearchAction())
-                .addAction(getSilenceAction());
-            break;
-          case ACTION_SEARCH:
-            builder.setContentText(getBikesAndDuds(stationDistanceRank))
-                .setVibrate(BUZZ_SILENT)
-                .setPriority(NotificationCompat.PRIORITY_MAX);
-            wearable.addActions(getRideActions())
-                .addAction(getIdleAction())
-                .addAction(getSilenceAction());
-            break;
-          case ACTION_IDLE:
-            builder.setContentText(getBikesAndDuds(stationDistanceRank))
-                .setPriority(NotificationCompat.PRIORITY_DEFAULT);
-            wearable.addAction(getSearchAction())
-                .addActions(getRideActions())
-                .addAction(getSilenceAction());
-            break;
-        }
-        Intent resultIntent = new Intent(getContext(), StationDataActivity.class);
-        PendingIntent pendingIntent = PendingIntent.getActivity(
-            getContext(),
-            0,
-            resultIntent,
-            PendingIntent.FLAG_UPDATE_CURRENT);
-
-        builder.setContentIntent(pendingIntent)
-            .extend(wearable);
-
-        notificationManager.notify(1, builder.build());
-      } finally {
-        previousStationDistanceRank = stationDistanceRank;
-      }
-    } finally {
-      getContext().getContentResolver().notifyChange(Constants.STATION_URI, null);
+    ContentResolver contentResolver = getContext().getContentResolver();
+    if ((events & UpdatePipeline.EVENT_STATIONS) != 0) {
+      contentResolver.notifyChange(Constants.STATION_URI, null);
+    }
+    if ((events & UpdatePipeline.EVENT_ACTION) != 0) {
+      contentResolver.notifyChange(Constants.ACTION_URI, null);
     }
+    if ((events & UpdatePipeline.EVENT_LOCATION) != 0) {
+      contentResolver.notifyChange(Constants.LOCATION_URI, null);
+    }
+    if ((events & UpdatePipeline.EVENT_SETTINGS) != 0) {
+      contentResolver.notifyChange(Constants.SETTINGS_URI, null);
+    }
+    contentResolver.notifyChange(Constants.ANY_URI, null);
   }
 
-  private long[] getAppropriateBuzz(StationDistanceRank nextStationDistanceRank) {
-    if (settings.isVibrationEnabled() && actionManager.getDestinationName() != null) {
-      if (previousStationDistanceRank == null) {
-        return BUZZ_RANKS[nextStationDistanceRank.getLimitedRank()];
-      }
-      Station previousStation = previousStationDistanceRank.getStationDistance().getStation();
-      Station nextStation = nextStationDistanceRank.getStationDistance().getStation();
-      if (previousStation.availableBikes != nextStation.availableBikes
-          || previousStation.availableDocks != nextStation.availableDocks
-          || previousStation.id != nextStation.id) {
-        return BUZZ_RANKS[nextStationDistanceRank.getLimitedRank()];
-      }
-    }
-    return BUZZ_SILENT;
+  /**
+   * Throws an {@link IllegalArgumentException} unless {@code uri} is one that {@link #insert}
+   * accepts, which is {@link Constants#STATION_URI} alone.
+   */
+  public static void checkInsertUri(Uri uri) {
+    checkMatch(uri, MATCH_STATION);
   }
 
-  private static int getIconIndex(StationDistanceRank stationDistanceRank) {
-    Station station = stationDistanceRank.getStationDistance().getStation();
-    int limitedRank = stationDistanceRank.getLimitedRank();
-    int iconIndex;
-    if (station.availableBikes == 0) {
-      iconIndex = 0;
-    } else if (station.availableDocks == 0) {
-      iconIndex = 8;
-    } else {
-      int max = station.availableDocks + station.availableBikes;
-      iconIndex = ((station.availableBikes * 7) / max) + 1;
+  private static void checkMatch(Uri uri, int match) {
+    if (URI_MATCHER.match(uri) != match) {
+      throw new IllegalArgumentException("Unsupported URI: " + uri);
     }
-    // Adjust index if the current rank is > 0.
-    return iconIndex + (limitedRank * 9);
   }
 
+  /**
+   * One pass of the {@link UpdatePipeline}: picks the target station for the newest state, brings
+   * the notification, geofences and sync schedule up to date with it, and then notifies observers
+   * of the events that led to the pass.
+   */
+  private void processUpdate(int events) {
+    long stageStart = System.nanoTime();
+    // Everything below works from this one state, even if the action or settings change meanwhile.
+    ActionState state = actionManager.getState();
+    int action = state.getAction();
+    boolean disclaimerAgreed = state.getSettings().isDisclaimerAgreed();
+    StationList currentStationList = stationList;
+    Location lastLocation = null;
+    StationDistanceRank target = null;
+    List<StationDistance> fenceCandidates = null;
+    // Null leaves the wearable showing what it last received.
+    List<StationDistance> nearbyStations = null;
+    if (disclaimerAgreed && action != ACTION_SILENCE && currentStationList != null) {
+      lastLocation = locationManager.getLastLocation();
+      if (lastLocation != null) {
+        // One ranking serves the target, the geofences and the wearable. It stays cached for the
+        // app's station list, which asks for the same ranking once observers are notified.
+        List<StationDistance> ranking =
+            stationDataProcessor.orderClosestStations(currentStationList, state);
+        target = stationDataProcessor.findAvailableStation(ranking, state);
+        if (target != null && action == ACTION_RIDE) {
+          fenceCandidates = stationDataProcessor.selectAvailableStations(
+              ranking, GeofenceManager.CANDIDATE_COUNT, state);
+        }
+        nearbyStations = stationDataProcessor.selectAvailableStations(
+            ranking, NearbyStationsPublisher.STATION_COUNT, state);
+      }
+    } else if (disclaimerAgreed && action == ACTION_SILENCE) {
+      nearbyStations = Collections.emptyList();
+    }
+    stageStart = updatePipeline.finishStage(UpdatePipeline.STAGE_RANK, stageStart);
 
-  private static String getBikesAndDuds(StationDistanceRank stationDistanceRank) {
-    StationDistance stationDistance = stationDistanceRank.getStationDistance();
-    Station station = stationDistance.getStation();
-    int duds = station.totalDocks - (station.availableDocks + station.availableBikes);
-    return getRankString(stationDistanceRank.getRank())
-        + "Bikes: " + station.availableBikes + " Duds: " + duds + "\n"
-        + "Go: " + stationDistance.getDistanceString();
-  }
+    if (!disclaimerAgreed) {
+      // The user has not yet agreed to the disclaimer. Post no notifications or URI changes.
+      notificationRenderer.cancel();
+      updatePipeline.finishStage(UpdatePipeline.STAGE_NOTIFICATION, stageStart);
+      return;
+    }
+    try {
+      if (action == ACTION_SILENCE) {
+        // Turn off notifications but still reschedule syncs via finally clause
+        notificationRenderer.cancel();
+      } else if (target != null) {
+        if (fenceCandidates != null) {
+          geofenceManager.setFences(lastLocation, fenceCandidates);
+        }
+        notificationRenderer.render(state, target);
+      }
+    } finally {
+      // The sync period depends on the action, the location and the target station, so it is
+      // reconsidered whenever any of them may have changed.
+      syncScheduler.reschedule(state, lastLocation, target);
+    }
+    stageStart = updatePipeline.finishStage(UpdatePipeline.STAGE_NOTIFICATION, stageStart);
 
-  private static String getDocks(StationDistanceRank stationDistanceRank) {
-    StationDistance stationDistance = stationDistanceRank.getStationDistance();
-    return getRankString(stationDistanceRank.getRank())
-        + "Docks: " + stationDistance.getStation().availableDocks + "\n"
-        + "Go: " + stationDistance.getDistanceString();
-  }
+    notifyChange(events);
+    stageStart = updatePipeline.finishStage(UpdatePipeline.STAGE_OBSERVERS, stageStart);
 
-  private static String getRankString(int rank) {
-    return rank == 0 ? "" : "Rank: " + (rank + 1) + "\n";
+    if (nearbyStations != null) {
+      nearbyStationsPublisher.publish(nearbyStations);
+    }
+    updatePipeline.finishStage(UpdatePipeline.STAGE_WEARABLE, stageStart);
   }
 
   private void internalInsert(StationList newStationList) {
     if (newStationList == null) {
       return;
     }
-    stationList = newStationList;
-    stationDataStorage.set(stationList);
-    internalUpdate();
+    stationDataStorage.set(newStationList);
+    replaceStationList(newStationList);
   }
 
-  private Notification.Action getSearchAction() {
-    return new Notification.Action(
-        R.drawable.ic_search_white_24dp,
-        "Search",
-        getActionSettingIntent(ACTION_SEARCH));
-  }
-
-  private Notification.Action getIdleAction() {
-    return new Notification.Action(
-        R.drawable.ic_pause_white_24dp,
-        "Idle",
-        getActionSettingIntent(ACTION_IDLE));
-  }
-
-  private List<Notification.Action> getRideActions() {
-    List<Notification.Action> actions = new ArrayList<Notification.Action>();
-    if (settings.isHomeDestinationActive()) {
-      actions.add(new Notification.Action(
-          R.drawable.ic_directions_bike_white_24dp,
-          DESTINATION_NAME_HOME,
-          getRideActionWithDestinationIntent(DESTINATION_NAME_HOME)));
-    }
-    if (settings.isWorkDestinationActive()) {
-      actions.add(new Notification.Action(
-          R.drawable.ic_directions_bike_white_24dp,
-          DESTINATION_NAME_WORK,
-          getRideActionWithDestinationIntent(DESTINATION_NAME_WORK)));
+  /**
+   * Swaps in a new station list, notifying observers only if some station actually changed. Most
+   * polls return the same counts as the one before, and rebuilding the notification and waking
+   * every observer for them would be wasted work.
+   */
+  private synchronized void replaceStationList(StationList newStationList) {
+    StationListDelta delta = StationListDelta.between(stationList, newStationList);
+    stationList = newStationList;
+    recordFirstRow();
+    syncScheduler.onStationData(
+        delta, newStationList.timestamp, locationManager.getLastLocation());
+    if (delta.isEmpty()) {
+      Log.i("Rollout", "Station data unchanged, skipping notification");
+      return;
     }
-    actions.add(new Notification.Action(
-        R.drawable.ic_directions_bike_white_24dp,
-        "Roam",
-        getActionSettingIntent(ACTION_RIDE)));
-    return actions;
-  }
-
-  private Notification.Action getSilenceAction() {
-    return new Notification.Action(
-        R.drawable.ic_volume_off_white_24dp,
-        "Mute",
-        getActionSettingIntent(ACTION_SILENCE));
-  }
-
-  private PendingIntent getActionSettingIntent(int action) {
-    Uri data = Constants.STATION_URI.buildUpon()
-        // TODO: Don't use update keys for query param names
-        .appendQueryParameter(UPDATE_KEY_ACTION, Integer.toString(action))
-        .build();
-    Intent intent = new Intent(getContext(), ActionIntentService.class);
-    intent.setData(data);
-
-    PendingIntent pendingIntent = PendingIntent.getService(
-        getContext(), 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
-
-    return pendingIntent;
-  }
-
-  private PendingIntent getRideActionWithDestinationIntent(String destination) {
-    Uri data = Constants.STATION_URI.buildUpon()
-        .appendQueryParameter(UPDATE_KEY_ACTION, Integer.toString(ACTION_RIDE))
-        .appendQueryParameter(UPDATE_KEY_DESTINATION, destination)
-        .build();
-    Intent intent = new Intent(getContext(), ActionIntentService.class);
-    intent.setData(data);
-
-    PendingIntent pendingIntent = PendingIntent.getService(
-        getContext(), 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
-
-    return pendingIntent;
+    Log.i("Rollout", "Station data changed at " + delta.getChanges().size() + " stations");
+    updatePipeline.post(UpdatePipeline.EVENT_STATIONS);
   }
 }
@@ -0,0 +1,58 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.station;
+
+import com.google.common.base.Objects;
+import com.jasonmheim.rollout.data.StationList;
+
+/**
+ * The HTTP validators that came with a download of the station feed, and the execution time of the
+ * list they describe. A conditional request quoting them is only answered "not modified" when the
+ * feed still matches that list, so the list reused in its place must be the same one.
+ */
+final class FeedValidators {
+
+  private final String executionTime;
+  private final String entityTag;
+  private final String lastModified;
+
+  FeedValidators(String executionTime, String entityTag, String lastModified) {
+    this.executionTime = executionTime;
+    this.entityTag = entityTag;
+    this.lastModified = lastModified;
+  }
+
+  /** The ETag header of the response, or null if there was none. */
+  String getEntityTag() {
+    return entityTag;
+  }
+
+  /** The Last-Modified header of the response, or null if there was none. */
+  String getLastModified() {
+    return lastModified;
+  }
+
+  /** Whether there is anything to quote in a conditional request. */
+  boolean isEmpty() {
+    return entityTag == null && lastModified == null;
+  }
+
+  /** Whether {@code stationList} is the list these validators came with. */
+  boolean describe(StationList stationList) {
+    return stationList != null && Objects.equal(executionTime, stationList.executionTime);
+  }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.station;
+
+import android.content.Context;
+import android.util.Log;
+
+import com.google.android.gms.common.ConnectionResult;
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.PutDataRequest;
+import com.google.android.gms.wearable.Wearable;
+import com.jasonmheim.rollout.data.NearbyStation;
+import com.jasonmheim.rollout.data.NearbyStations;
+import com.jasonmheim.rollout.data.NearbyStationsFormat;
+import com.jasonmheim.rollout.data.StationDistance;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Pushes the stations nearest the user to a paired wearable through the data layer. Two data items
+ * are kept: {@link NearbyStationsFormat#FULL_PATH} holds a full payload, which the deltas at
+ * {@link NearbyStationsFormat#DELTA_PATH} are encoded against. The data layer only keeps the
+ * latest value of each item, so a watch that missed any number of pushes can still decode the
+ * delta it has, or knows to wait for the full payload that the delta is based on. Most pushes only
+ * rewrite a delta of a few dozen bytes; a new full payload is written once the delta has grown to
+ * half of the full size.
+ * <p>
+ * Nothing is pushed when the stations would look the same on the watch as they did after the last
+ * push, which is most of the time: distances are only compared at the resolution they are shown at.
+ * <p>
+ * Not thread safe, and connecting blocks; the provider only uses this from its update pipeline.
+ */
+class NearbyStationsPublisher {
+
+  /** The number of stations pushed, starting with the closest. */
+  static final int STATION_COUNT = 5;
+
+  /** Writes a data item. */
+  interface DataLayer {
+    /** Replaces the data at {@code path}, returning whether it was written. */
+    boolean put(String path, byte[] data);
+  }
+
+  private final DataLayer dataLayer;
+
+  private int sequence;
+  // The last full payload written, and so the base of every delta until the next one.
+  private NearbyStations base;
+  // The stations as last written, full or delta, or null if the last write failed.
+  private List<NearbyStation> published;
+
+  NearbyStationsPublisher(Context context) {
+    this(new WearableDataLayer(context));
+  }
+
+  NearbyStationsPublisher(DataLayer dataLayer) {
+    this.dataLayer = dataLayer;
+    // Payloads left in the data layer by an earlier process must not look like this one's bases.
+    sequence = (int) (System.currentTimeMillis() / 1000);
+  }
+
+  /**
+   * Pushes the first {@link #STATION_COUNT} of the given stations, closest first, unless the watch
+   * already shows them. An empty list clears the watch's list.
+   */
+  void publish(List<? extends StationDistance> stationDistances) {
+    int count = Math.min(stationDistances.size(), STATION_COUNT);
+    List<NearbyStation> stations = new ArrayList<NearbyStation>(count);
+    for (int i = 0; i < count; i++) {
+      stations.add(NearbyStation.of(stationDistances.get(i)));
+    }
+    if (stations.equals(published)) {
+      return;
+    }
+    NearbyStations nearbyStations = new NearbyStations(++sequence, stations);
+    ByteBuffer full = NearbyStationsFormat.encodeFull(nearbyStations);
+    if (base != null) {
+      ByteBuffer delta = NearbyStationsFormat.encodeDelta(nearbyStations, base);
+      if (delta.remaining() * 2 <= full.remaining()) {
+        published = put(NearbyStationsFormat.DELTA_PATH, delta) ? stations : null;
+        return;
+      }
+    }
+    if (put(NearbyStationsFormat.FULL_PATH, full)) {
+      base = nearbyStations;
+      published = stations;
+    } else {
+      published = null;
+    }
+  }
+
+  private boolean put(String path, ByteBuffer payload) {
+    byte[] data = new byte[payload.remaining()];
+    payload.get(data);
+    return dataLayer.put(path, data);
+  }
+
+  /** Writes through the Wearable API, on a client of its own. */
+  private static class WearableDataLayer implements DataLayer {
+
+    private static final long CONNECT_TIMEOUT_SECONDS = 10;
+
+    private final Context context;
+    private GoogleApiClient client;
+    // Set once the Wearable API turns out to be missing, as it is without the Android Wear app.
+    private boolean unavailable;
+
+    WearableDataLayer(Context context) {
+      this.context = context;
+    }
+
+    @Override
+    public boolean put(String path, byte[] data) {
+      if (unavailable) {
+        return false;
+      }
+      if (client == null) {
+        client = new GoogleApiClient.Builder(context).addApi(Wearable.API).build();
+      }
+      if (!client.isConnected()) {
+        ConnectionResult connectionResult =
+            client.blockingConnect(CONNECT_TIMEOUT_SECONDS, TimeUnit.SECONDS);
+        if (!connectionResult.isSuccess()) {
+          Log.w("Rollout", "Could not connect to the wearable: " + connectionResult);
+          unavailable = connectionResult.getErrorCode() == ConnectionResult.API_UNAVAILABLE;
+          return false;
+        }
+      }
+      DataApi.DataItemResult result = Wearable.DataApi.putDataItem(
+          client, PutDataRequest.create(path).setData(data)).await();
+      if (!result.getStatus().isSuccess()) {
+        Log.w("Rollout", "Could not push " + path + " to the wearable: " + result.getStatus());
+        return false;
+      }
+      return true;
+    }
+  }
+}
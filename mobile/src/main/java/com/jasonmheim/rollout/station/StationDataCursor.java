@@ -17,70 +17,337 @@
 package com.jasonmheim.rollout.station;
 
 import android.database.AbstractCursor;
+import android.database.Cursor;
+import android.database.CursorWindow;
+import android.os.Bundle;
+
+import com.jasonmheim.rollout.data.Station;
+import com.jasonmheim.rollout.data.StationList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 
 /**
- * A custom cursor that always has exactly one row.
+ * A cursor with one row per station, read straight from the provider's in memory
+ * {@link StationList}. Numeric columns are typed, so nothing is formatted or parsed on the way
+ * through. The feed's execution time and the sync timestamp apply to every row, and are carried in
+ * the extras instead.
+ * <p>
+ * Only the columns named in the projection are exposed, and when the cursor crosses a process
+ * boundary only those are copied into the {@link CursorWindow}, each with its native type.
  */
 public class StationDataCursor extends AbstractCursor {
 
-  private static final String[] COLUMN_NAMES = {
-      "StationDataJson"
+  public static final String COLUMN_ID = "_id";
+  public static final String COLUMN_NAME = "stationName";
+  public static final String COLUMN_LATITUDE = "latitude";
+  public static final String COLUMN_LONGITUDE = "longitude";
+  public static final String COLUMN_AVAILABLE_BIKES = "availableBikes";
+  public static final String COLUMN_AVAILABLE_DOCKS = "availableDocks";
+  public static final String COLUMN_TOTAL_DOCKS = "totalDocks";
+  public static final String COLUMN_STATUS_KEY = "statusKey";
+  public static final String COLUMN_STATUS_VALUE = "statusValue";
+  public static final String COLUMN_CITY = "city";
+  public static final String COLUMN_TEST_STATION = "testStation";
+
+  public static final String EXTRA_EXECUTION_TIME = "executionTime";
+  public static final String EXTRA_TIMESTAMP = "timestamp";
+  /**
+   * How long the provider took after starting to have any station data to serve, in milliseconds,
+   * or -1 while it still has none and is fetching them; such a cursor is empty, and observers are
+   * notified when the data arrive.
+   */
+  public static final String EXTRA_TIME_TO_FIRST_ROW = "timeToFirstRow";
+  /** The number of changes waiting for the provider's update pipeline to start on them. */
+  public static final String EXTRA_UPDATE_QUEUE_DEPTH = "updateQueueDepth";
+  /** The number of passes the update pipeline has made over the changes given to it. */
+  public static final String EXTRA_UPDATE_PASSES = "updatePasses";
+  /** The number of changes the update pipeline handled in a pass made for an earlier change. */
+  public static final String EXTRA_UPDATE_COALESCED = "updateCoalesced";
+  /**
+   * The latency of each stage of the update pipeline's most recent pass, in milliseconds: waiting
+   * in the queue, choosing the target station, updating the notification, notifying observers,
+   * and pushing the nearby stations to the wearable, in that order.
+   */
+  public static final String EXTRA_UPDATE_STAGE_MILLIS = "updateStageMillis";
+
+  private static final String[] ALL_COLUMNS = {
+      COLUMN_ID,
+      COLUMN_NAME,
+      COLUMN_LATITUDE,
+      COLUMN_LONGITUDE,
+      COLUMN_AVAILABLE_BIKES,
+      COLUMN_AVAILABLE_DOCKS,
+      COLUMN_TOTAL_DOCKS,
+      COLUMN_STATUS_KEY,
+      COLUMN_STATUS_VALUE,
+      COLUMN_CITY,
+      COLUMN_TEST_STATION,
   };
 
-  // Default to an empty list inside the station list object
-  private String stationDataJson = "{\"stationBeanList\":[]}";
+  // Indices into ALL_COLUMNS
+  private static final int ID = 0;
+  private static final int NAME = 1;
+  private static final int LATITUDE = 2;
+  private static final int LONGITUDE = 3;
+  private static final int AVAILABLE_BIKES = 4;
+  private static final int AVAILABLE_DOCKS = 5;
+  private static final int TOTAL_DOCKS = 6;
+  private static final int STATUS_KEY = 7;
+  private static final int STATUS_VALUE = 8;
+  private static final int CITY = 9;
+  private static final int TEST_STATION = 10;
+
+  private final String[] columnNames;
+  // For each exposed column, its index into ALL_COLUMNS
+  private final int[] columns;
+  private final List<Station> stations;
+  private final Bundle extras;
+
+  /**
+   * Creates a cursor over the given station list, which may be null if none is known yet. A null
+   * projection selects every column.
+   *
+   * @throws IllegalArgumentException if the projection names an unknown column
+   */
+  StationDataCursor(StationList stationList, String[] projection) {
+    columnNames = projection == null ? ALL_COLUMNS : projection;
+    columns = new int[columnNames.length];
+    List<String> allColumns = Arrays.asList(ALL_COLUMNS);
+    for (int i = 0; i < columnNames.length; i++) {
+      columns[i] = allColumns.indexOf(columnNames[i]);
+      if (columns[i] < 0) {
+        throw new IllegalArgumentException("Unknown station data column: " + columnNames[i]);
+      }
+    }
+    extras = new Bundle();
+    if (stationList == null || stationList.stationBeanList == null) {
+      stations = new ArrayList<Station>();
+    } else {
+      stations = stationList.stationBeanList;
+      extras.putString(EXTRA_EXECUTION_TIME, stationList.executionTime);
+      extras.putLong(EXTRA_TIMESTAMP, stationList.timestamp);
+    }
+  }
 
-  /** Visible only to the content provider in our package */
-  void setStationDataJson(String stationDataJson) {
-    this.stationDataJson = stationDataJson;
-    super.onChange(false);
+  /**
+   * Rebuilds a {@link StationList} from a cursor with every column, as returned by a query with no
+   * projection. If the provider had no data, the list is empty.
+   */
+  public static StationList readStationList(Cursor cursor) {
+    Bundle extras = cursor.getExtras();
+    StationList stationList = new StationList();
+    stationList.executionTime = extras.getString(EXTRA_EXECUTION_TIME);
+    stationList.timestamp = extras.getLong(EXTRA_TIMESTAMP);
+    stationList.stationBeanList = new ArrayList<Station>(cursor.getCount());
+    int id = cursor.getColumnIndexOrThrow(COLUMN_ID);
+    int name = cursor.getColumnIndexOrThrow(COLUMN_NAME);
+    int latitude = cursor.getColumnIndexOrThrow(COLUMN_LATITUDE);
+    int longitude = cursor.getColumnIndexOrThrow(COLUMN_LONGITUDE);
+    int availableBikes = cursor.getColumnIndexOrThrow(COLUMN_AVAILABLE_BIKES);
+    int availableDocks = cursor.getColumnIndexOrThrow(COLUMN_AVAILABLE_DOCKS);
+    int totalDocks = cursor.getColumnIndexOrThrow(COLUMN_TOTAL_DOCKS);
+    int statusKey = cursor.getColumnIndexOrThrow(COLUMN_STATUS_KEY);
+    int statusValue = cursor.getColumnIndexOrThrow(COLUMN_STATUS_VALUE);
+    int city = cursor.getColumnIndexOrThrow(COLUMN_CITY);
+    int testStation = cursor.getColumnIndexOrThrow(COLUMN_TEST_STATION);
+    cursor.moveToPosition(-1);
+    while (cursor.moveToNext()) {
+      Station station = new Station();
+      station.id = cursor.getInt(id);
+      station.stationName = cursor.getString(name);
+      station.latitude = cursor.getDouble(latitude);
+      station.longitude = cursor.getDouble(longitude);
+      station.availableBikes = cursor.getInt(availableBikes);
+      station.availableDocks = cursor.getInt(availableDocks);
+      station.totalDocks = cursor.getInt(totalDocks);
+      station.statusKey = cursor.getInt(statusKey);
+      station.statusValue = cursor.getString(statusValue);
+      station.city = cursor.getString(city);
+      station.testStation = cursor.getInt(testStation) != 0;
+      stationList.stationBeanList.add(station);
+    }
+    return stationList;
   }
 
   @Override
   public int getCount() {
-    return 1;
+    return stations.size();
   }
 
   @Override
   public String[] getColumnNames() {
-    return COLUMN_NAMES;
+    return columnNames;
+  }
+
+  @Override
+  public Bundle getExtras() {
+    return extras;
+  }
+
+  @Override
+  public int getType(int i) {
+    switch (columns[i]) {
+      case LATITUDE:
+      case LONGITUDE:
+        return FIELD_TYPE_FLOAT;
+      case NAME:
+      case STATUS_VALUE:
+      case CITY:
+        return getString(i) == null ? FIELD_TYPE_NULL : FIELD_TYPE_STRING;
+      default:
+        return FIELD_TYPE_INTEGER;
+    }
   }
 
   @Override
   public String getString(int i) {
-    if (i == 0) {
-      return stationDataJson;
+    Station station = stations.get(mPos);
+    switch (columns[i]) {
+      case NAME:
+        return station.stationName;
+      case STATUS_VALUE:
+        return station.statusValue;
+      case CITY:
+        return station.city;
+      case LATITUDE:
+      case LONGITUDE:
+        return Double.toString(getDouble(i));
+      default:
+        return Long.toString(getLong(i));
     }
-    throw new IndexOutOfBoundsException("Unsupported StationDataCursor index: " + i);
   }
 
   @Override
   public short getShort(int i) {
-    throw new UnsupportedOperationException("Only getString is supported.");
+    return (short) getLong(i);
   }
 
   @Override
   public int getInt(int i) {
-    throw new UnsupportedOperationException("Only getString is supported.");
+    return (int) getLong(i);
   }
 
   @Override
   public long getLong(int i) {
-    throw new UnsupportedOperationException("Only getString is supported.");
+    Station station = stations.get(mPos);
+    switch (columns[i]) {
+      case ID:
+        return station.id;
+      case AVAILABLE_BIKES:
+        return station.availableBikes;
+      case AVAILABLE_DOCKS:
+        return station.availableDocks;
+      case TOTAL_DOCKS:
+        return station.totalDocks;
+      case STATUS_KEY:
+        return station.statusKey;
+      case TEST_STATION:
+        return station.testStation ? 1 : 0;
+      case LATITUDE:
+      case LONGITUDE:
+        return (long) getDouble(i);
+      default:
+        throw new UnsupportedOperationException(columnNames[i] + " is not numeric");
+    }
   }
 
   @Override
   public float getFloat(int i) {
-    throw new UnsupportedOperationException("Only getString is supported.");
+    return (float) getDouble(i);
   }
 
   @Override
   public double getDouble(int i) {
-    throw new UnsupportedOperationException("Only getString is supported.");
+    Station station = stations.get(mPos);
+    switch (columns[i]) {
+      case LATITUDE:
+        return station.latitude;
+      case LONGITUDE:
+        return station.longitude;
+      default:
+        return getLong(i);
+    }
   }
 
   @Override
   public boolean isNull(int i) {
-    throw new UnsupportedOperationException("Only getString is supported.");
+    return getType(i) == FIELD_TYPE_NULL;
+  }
+
+  /**
+   * Copies rows into the window with their native types, rather than as strings as the default
+   * implementation would. Stops quietly when the window is full; the client will ask for another
+   * window starting at the first row that did not fit.
+   */
+  @Override
+  public void fillWindow(int position, CursorWindow window) {
+    window.acquireReference();
+    try {
+      window.clear();
+      window.setStartPosition(position);
+      window.setNumColumns(columns.length);
+      for (int row = position; row < stations.size(); row++) {
+        if (!window.allocRow()) {
+          break;
+        }
+        if (!putRow(window, stations.get(row), row)) {
+          window.freeLastRow();
+          break;
+        }
+      }
+    } finally {
+      window.releaseReference();
+    }
+  }
+
+  private boolean putRow(CursorWindow window, Station station, int row) {
+    for (int i = 0; i < columns.length; i++) {
+      boolean success;
+      switch (columns[i]) {
+        case ID:
+          success = window.putLong(station.id, row, i);
+          break;
+        case NAME:
+          success = putString(window, station.stationName, row, i);
+          break;
+        case LATITUDE:
+          success = window.putDouble(station.latitude, row, i);
+          break;
+        case LONGITUDE:
+          success = window.putDouble(station.longitude, row, i);
+          break;
+        case AVAILABLE_BIKES:
+          success = window.putLong(station.availableBikes, row, i);
+          break;
+        case AVAILABLE_DOCKS:
+          success = window.putLong(station.availableDocks, row, i);
+          break;
+        case TOTAL_DOCKS:
+          success = window.putLong(station.totalDocks, row, i);
+          break;
+        case STATUS_KEY:
+          success = window.putLong(station.statusKey, row, i);
+          break;
+        case STATUS_VALUE:
+          success = putString(window, station.statusValue, row, i);
+          break;
+        case CITY:
+          success = putString(window, station.city, row, i);
+          break;
+        default:
+          success = window.putLong(station.testStation ? 1 : 0, row, i);
+          break;
+      }
+      if (!success) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static boolean putString(CursorWindow window, String value, int row, int column) {
+    return value == null ? window.putNull(row, column) : window.putString(value, row, column);
   }
 }
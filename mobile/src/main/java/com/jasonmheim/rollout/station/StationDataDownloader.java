@@ -19,47 +19,107 @@ package com.jasonmheim.rollout.station;
 import android.util.Log;
 
 import com.google.common.io.Closeables;
+import com.google.common.io.CountingInputStream;
 import com.google.gson.Gson;
 import com.jasonmheim.rollout.data.StationList;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
 import java.net.URLConnection;
 import java.util.Date;
 import java.util.concurrent.Callable;
+import java.util.zip.GZIPInputStream;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
+import javax.inject.Singleton;
 
 /**
  * Handles downloading station data. To execute on something other than the current thread, submit
  * this as a {@link Callable}.
+ * <p>
+ * The feed rarely changes between two polls a minute apart, so each download is a conditional
+ * request quoting the validators of the previous response, which are kept in
+ * {@link StationDataStorage} so that they outlive the process. When the server answers that nothing
+ * has changed, the stored station list is returned again with a fresh timestamp, without
+ * downloading or parsing anything. The validators are only quoted while the stored list is the one
+ * they came with. Responses are requested gzipped and decompressed while parsing.
+ * <p>
+ * The bytes read from the network and the time spent parsing are recorded for every download.
  */
+@Singleton
 public class StationDataDownloader implements Provider<StationList>, Callable<StationList> {
 
   private final Gson gson;
   private final Provider<Date> dateProvider;
   private final Provider<URLConnection> urlConnectionProvider;
+  private final StationDataStorage stationDataStorage;
+
+  private long lastBytesTransferred;
+  private long lastParseMillis;
+  private long totalBytesTransferred;
+  private int downloadCount;
+  private int notModifiedCount;
 
   @Inject
   StationDataDownloader(
       Gson gson,
       Provider<Date> dateProvider,
-      @StationData Provider<URLConnection> urlConnectionProvider) {
+      @StationData Provider<URLConnection> urlConnectionProvider,
+      StationDataStorage stationDataStorage) {
     this.gson = gson;
     this.dateProvider = dateProvider;
     this.urlConnectionProvider = urlConnectionProvider;
+    this.stationDataStorage = stationDataStorage;
   }
 
   @Override
-  public StationList get() {
+  public synchronized StationList get() {
+    CountingInputStream counter = null;
     InputStream input = null;
     try {
-      input = urlConnectionProvider.get().getInputStream();
+      FeedValidators validators = stationDataStorage.getValidators();
+      StationList storedStationList = getStoredStationList(validators);
+      URLConnection connection = urlConnectionProvider.get();
+      connection.setRequestProperty("Accept-Encoding", "gzip");
+      if (storedStationList != null) {
+        if (validators.getEntityTag() != null) {
+          connection.setRequestProperty("If-None-Match", validators.getEntityTag());
+        }
+        if (validators.getLastModified() != null) {
+          connection.setRequestProperty("If-Modified-Since", validators.getLastModified());
+        }
+      }
+      if (connection instanceof HttpURLConnection
+          && ((HttpURLConnection) connection).getResponseCode()
+              == HttpURLConnection.HTTP_NOT_MODIFIED
+          && storedStationList != null) {
+        notModifiedCount++;
+        lastBytesTransferred = 0;
+        lastParseMillis = 0;
+        Log.i("Rollout", "Station data not modified, reusing stored list.");
+        storedStationList.timestamp = dateProvider.get().getTime();
+        return storedStationList;
+      }
+      counter = new CountingInputStream(connection.getInputStream());
+      input = "gzip".equalsIgnoreCase(connection.getContentEncoding())
+          ? new GZIPInputStream(counter)
+          : counter;
+      long parseStart = System.nanoTime();
       StationList stationList = gson.fromJson(new InputStreamReader(input), StationList.class);
-      Log.i("Rollout", "Providing " + stationList.stationBeanList.size() + " stations.");
+      lastParseMillis = (System.nanoTime() - parseStart) / 1000000;
+      lastBytesTransferred = counter.getCount();
+      totalBytesTransferred += lastBytesTransferred;
+      downloadCount++;
+      Log.i("Rollout", "Providing " + stationList.stationBeanList.size() + " stations from "
+          + lastBytesTransferred + " bytes, parsed in " + lastParseMillis + "ms.");
       stationList.timestamp = dateProvider.get().getTime();
+      stationDataStorage.setValidators(new FeedValidators(
+          stationList.executionTime,
+          connection.getHeaderField("ETag"),
+          connection.getHeaderField("Last-Modified")));
       return stationList;
     } catch (RuntimeException ex) {
       Log.w("Rollout", "Failed to deserialize station list data from service", ex);
@@ -69,6 +129,7 @@ public class StationDataDownloader implements Provider<StationList>, Callable<St
       return null;
     } finally {
       Closeables.closeQuietly(input);
+      Closeables.closeQuietly(counter);
     }
   }
 
@@ -76,4 +137,38 @@ public class StationDataDownloader implements Provider<StationList>, Callable<St
   public StationList call() {
     return get();
   }
+
+  // Returns the stored list if there are validators describing it to quote, otherwise null.
+  private StationList getStoredStationList(FeedValidators validators) {
+    if (validators == null || validators.isEmpty()) {
+      return null;
+    }
+    StationList storedStationList = stationDataStorage.get();
+    return validators.describe(storedStationList) ? storedStationList : null;
+  }
+
+  /** Bytes read from the network by the most recent download, before decompression. */
+  public synchronized long getLastBytesTransferred() {
+    return lastBytesTransferred;
+  }
+
+  /** Milliseconds spent parsing the most recent download; zero if the server sent nothing new. */
+  public synchronized long getLastParseMillis() {
+    return lastParseMillis;
+  }
+
+  /** Bytes read from the network by every download so far. */
+  public synchronized long getTotalBytesTransferred() {
+    return totalBytesTransferred;
+  }
+
+  /** The number of downloads that returned a full response. */
+  public synchronized int getDownloadCount() {
+    return downloadCount;
+  }
+
+  /** The number of downloads answered with "not modified". */
+  public synchronized int getNotModifiedCount() {
+    return notModifiedCount;
+  }
 }
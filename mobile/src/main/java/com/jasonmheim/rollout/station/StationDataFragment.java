@@ -19,49 +19,61 @@ package com.jasonmheim.rollout.station;
 import android.app.Activity;
 import android.content.ContentResolver;
 import android.os.Bundle;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
 import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.AbsListView;
-import android.widget.AdapterView;
-import android.widget.ArrayAdapter;
-import android.widget.ListAdapter;
-import android.widget.ListView;
 import android.widget.TextView;
 
 import com.jasonmheim.rollout.Constants;
 import com.jasonmheim.rollout.R;
 import com.jasonmheim.rollout.action.ActionManager;
+import com.jasonmheim.rollout.action.ActionState;
+import com.jasonmheim.rollout.data.Station;
+import com.jasonmheim.rollout.data.StationDelta;
 import com.jasonmheim.rollout.data.StationDistance;
 import com.jasonmheim.rollout.data.StationList;
 import com.jasonmheim.rollout.inject.DaggerFragment;
 import com.jasonmheim.rollout.sync.LastKnownStationList;
+import com.jasonmheim.rollout.sync.StationDataDeltaEvent;
 import com.jasonmheim.rollout.sync.StationDataUpdateEvent;
 import com.squareup.otto.Bus;
 import com.squareup.otto.Subscribe;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
 
 import javax.inject.Inject;
 
 /**
  * A fragment representing a list of Items.
  * <p/>
- * Large screen devices (such as tablets) are supported by replacing the ListView
- * with a GridView.
- * <p/>
  * Activities containing this fragment MUST implement the {@link Listener}
  * interface.
  */
-public class StationDataFragment extends DaggerFragment
-    implements AbsListView.OnItemClickListener {
+public class StationDataFragment extends DaggerFragment {
+
+  // Stations are added to the list a page at a time, as the user scrolls towards the end.
+  private static final int PAGE_SIZE = 20;
 
   private Listener listener;
   private StationList lastStationList;
-
-  private ListView scrollView;
+  private List<StationDistance> orderedStations = new ArrayList<StationDistance>();
+  // Stations that changed since orderedStations was ranked, by id, for the pages not yet shown.
+  private Map<Integer, Station> updatedStations = new HashMap<Integer, Station>();
+  // Counts refreshes, so that a ranking which finishes after a newer one was started is dropped.
+  private int refreshGeneration;
+  // The refresh whose ranking the list shows; behind refreshGeneration while one is running.
+  private int shownGeneration;
+
+  private RecyclerView scrollView;
+  private LinearLayoutManager layoutManager;
+  private TextView emptyView;
   private StationDataRowViewHolder topRowViewHolder;
 
   @Inject
@@ -76,11 +88,14 @@ public class StationDataFragment extends DaggerFragment
   @Inject
   StationDataProcessor stationDataProcessor;
 
+  @Inject
+  ExecutorService executorService;
+
   /**
    * The Adapter which will be used to populate the ListView/GridView with
    * Views.
    */
-  private ArrayAdapter<StationDistance> listAdapter;
+  private StationDataListAdapter listAdapter;
 
   /**
    * Mandatory empty constructor for the fragment manager to instantiate the
@@ -92,11 +107,7 @@ public class StationDataFragment extends DaggerFragment
   @Override
   public void onCreate(Bundle savedInstanceState) {
     super.onCreate(savedInstanceState);
-    // TODO: wtf is the text parameter for?
-    listAdapter = new StationDataListAdapter(getActivity(),
-        android.R.id.text1,
-        new ArrayList<StationDistance>(),
-        actionManager);
+    listAdapter = new StationDataListAdapter();
   }
 
   @Override
@@ -106,13 +117,26 @@ public class StationDataFragment extends DaggerFragment
       Bundle savedInstanceState) {
     View view = inflater.inflate(R.layout.fragment_stationdistance, container, false);
 
-    scrollView = (ListView) view.findViewById(R.id.scrollable_list);
+    scrollView = (RecyclerView) view.findViewById(R.id.scrollable_list);
+    emptyView = (TextView) view.findViewById(android.R.id.empty);
     topRowViewHolder = new StationDataRowViewHolder(view.findViewById(R.id.topText));
 
+    layoutManager = new LinearLayoutManager(getActivity());
+    scrollView.setLayoutManager(layoutManager);
     scrollView.setAdapter(listAdapter);
-
-    // Set OnItemClickListener so we can be notified on item clicks
-    scrollView.setOnItemClickListener(this);
+    scrollView.setOnScrollListener(new RecyclerView.OnScrollListener() {
+      @Override
+      public void onScrollStateChanged(RecyclerView recyclerView, int newState) {
+      }
+
+      @Override
+      public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+        if (layoutManager.findLastVisibleItemPosition() + (PAGE_SIZE / 2)
+            >= listAdapter.getItemCount()) {
+          addNextPage();
+        }
+      }
+    });
 
     return view;
   }
@@ -151,6 +175,41 @@ public class StationDataFragment extends DaggerFragment
     getActivity().invalidateOptionsMenu();
   }
 
+  /**
+   * Applies a change to the stations. Counts and status do not affect the ranking, so when nothing
+   * else changed only the rows showing those stations are rebound; otherwise the list is ranked
+   * again.
+   */
+  @Subscribe
+  public void onStationDataDelta(StationDataDeltaEvent event) {
+    lastStationList = event.getStationList();
+    getActivity().invalidateOptionsMenu();
+    Map<Integer, Station> changed = new HashMap<Integer, Station>();
+    for (StationDelta change : event.getDelta().getChanges()) {
+      if (change.getType() != StationDelta.Type.CHANGED || !isSamePlace(change)) {
+        refresh();
+        return;
+      }
+      changed.put(change.getId(), change.getCurrent());
+    }
+    if (listener == null
+        || shownGeneration != refreshGeneration
+        || listAdapter.getItemCount() == 0) {
+      // Nothing to update in place, or a ranking of the older stations is about to replace it.
+      refresh();
+      return;
+    }
+    Log.i("Rollout", "Updating " + changed.size() + " stations in place");
+    topRowViewHolder.setTopRowText(lastStationList, actionManager.getActionDisplayName());
+    updatedStations.putAll(changed);
+    listAdapter.updateStations(changed);
+  }
+
+  private static boolean isSamePlace(StationDelta change) {
+    return Double.compare(change.getPrevious().latitude, change.getCurrent().latitude) == 0
+        && Double.compare(change.getPrevious().longitude, change.getCurrent().longitude) == 0;
+  }
+
   void refresh() {
     if (lastStationList == null) {
       Bundle settingsBundle = new Bundle();
@@ -167,14 +226,37 @@ public class StationDataFragment extends DaggerFragment
     try {
       Log.i("Rollout", "Refreshing list");
       topRowViewHolder.setTopRowText(lastStationList, actionManager.getActionDisplayName());
-      final List<StationDistance> results =
-          stationDataProcessor.orderClosestStations(lastStationList);
-      listener.runOnUiThread(new Runnable() {
+      final StationList stationList = lastStationList;
+      final ActionState state = actionManager.getState();
+      final int generation = ++refreshGeneration;
+      // Re-rank as many rows as are already shown, so the new ranking can be compared row by row.
+      final int rowCount = Math.max(PAGE_SIZE, listAdapter.getItemCount());
+      final Listener uiListener = listener;
+      executorService.submit(new Runnable() {
         @Override
         public void run() {
-          listAdapter.clear();
-          listAdapter.addAll(results);
-          listAdapter.notifyDataSetChanged();
+          try {
+            // The provider ranked the same stations for the same state in the update pass that led
+            // here, so this is normally answered from the processor's cache.
+            final List<StationDistance> results =
+                stationDataProcessor.orderClosestStations(stationList, state);
+            final List<StationDistance> rows = new ArrayList<StationDistance>(
+                results.subList(0, Math.min(rowCount, results.size())));
+            uiListener.runOnUiThread(new Runnable() {
+              @Override
+              public void run() {
+                if (generation != refreshGeneration || listener == null) {
+                  return;
+                }
+                shownGeneration = generation;
+                orderedStations = results;
+                updatedStations = new HashMap<Integer, Station>();
+                listAdapter.setRows(rows, state.getAction() == Constants.ACTION_RIDE);
+              }
+            });
+          } catch (Exception ex) {
+            Log.e("Rollout", "Failed to rank stations for the list", ex);
+          }
         }
       });
     } catch (Exception ex) {
@@ -182,6 +264,27 @@ public class StationDataFragment extends DaggerFragment
     }
   }
 
+  /**
+   * Appends the next page of {@link #orderedStations} to the list, if there is one, showing any
+   * stations updated since. The ordering is lazy, so stations further down are not sorted until
+   * they are about to be shown.
+   */
+  private void addNextPage() {
+    int from = listAdapter.getItemCount();
+    int to = Math.min(from + PAGE_SIZE, orderedStations.size());
+    if (from < to) {
+      List<StationDistance> page =
+          new ArrayList<StationDistance>(orderedStations.subList(from, to));
+      for (int i = 0; i < page.size(); i++) {
+        Station station = updatedStations.get(page.get(i).getStation().id);
+        if (station != null) {
+          page.set(i, StationDataListAdapter.withStation(page.get(i), station));
+        }
+      }
+      listAdapter.addAll(page);
+    }
+  }
+
   @Override
   public void onAttach(Activity activity) {
     super.onAttach(activity);
@@ -201,24 +304,13 @@ public class StationDataFragment extends DaggerFragment
   }
 
 
-  @Override
-  public void onItemClick(AdapterView<?> parent, View view, int position, long id) {
-    if (listener != null) {
-      // DO item click stuff here
-    }
-  }
-
   /**
    * The default content for this Fragment has a TextView that is shown when
    * the list is empty. If you would like to change the text, call this method
    * to supply the text it should use.
    */
   public void setEmptyText(CharSequence emptyText) {
-    View emptyView = scrollView.getEmptyView();
-
-    if (emptyText instanceof TextView) {
-      ((TextView) emptyView).setText(emptyText);
-    }
+    emptyView.setText(emptyText);
   }
 
   /**
@@ -16,54 +16,148 @@
 
 package com.jasonmheim.rollout.station;
 
-import android.app.Activity;
-import android.content.Context;
+import android.support.v7.widget.RecyclerView;
+import android.util.Log;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
 
-import com.jasonmheim.rollout.Constants;
 import com.jasonmheim.rollout.R;
-import com.jasonmheim.rollout.action.ActionManager;
+import com.jasonmheim.rollout.data.DestinationDistance;
+import com.jasonmheim.rollout.data.Station;
 import com.jasonmheim.rollout.data.StationDistance;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 
 /**
  * Converts a {@link StationDistance} to a view as a list item.
+ * <p>
+ * New rankings are applied with {@link #setRows}, which compares them to the rows already shown
+ * and notifies the list of just the rows that were removed, moved, inserted or now show different
+ * numbers; see {@link StationRowDiff}. Only the rows that changed are rebound, and the list
+ * animates the ones that moved. When only the counts or status of some stations changed, the order
+ * stands, and {@link #updateStations} rebinds just the rows showing them. Item ids are station ids.
  */
-public class StationDataListAdapter extends ArrayAdapter<StationDistance> {
+public class StationDataListAdapter
+    extends RecyclerView.Adapter<StationDataListAdapter.RowHolder> {
 
-  private final ActionManager actionManager;
+  /** Holds the views of one row. */
+  static class RowHolder extends RecyclerView.ViewHolder {
+    final StationDataRowViewHolder views;
 
-  public StationDataListAdapter(
-      Context context,
-      int resource,
-      List<StationDistance> objects,
-      ActionManager actionManager) {
-    super(context, resource, objects);
-    this.actionManager = actionManager;
+    RowHolder(View itemView) {
+      super(itemView);
+      views = new StationDataRowViewHolder(itemView);
+    }
+  }
+
+  private final List<StationDistance> rows = new ArrayList<StationDistance>();
+  private boolean riding;
+
+  public StationDataListAdapter() {
+    setHasStableIds(true);
   }
 
   @Override
-  public View getView(int position, View convertView, ViewGroup parent) {
-
-    StationDataRowViewHolder viewHolder;
-    if (convertView == null) {
-      LayoutInflater mInflater =
-          (LayoutInflater) getContext().getSystemService(Activity.LAYOUT_INFLATER_SERVICE);
-      convertView = mInflater.inflate(R.layout.stationdistance_list_item, null);
-      viewHolder = new StationDataRowViewHolder(convertView);
-    } else {
-      viewHolder = (StationDataRowViewHolder) convertView.getTag();
+  public int getItemCount() {
+    return rows.size();
+  }
+
+  public StationDistance getItem(int position) {
+    return rows.get(position);
+  }
+
+  @Override
+  public long getItemId(int position) {
+    return rows.get(position).getStation().id;
+  }
+
+  /** Appends rows below the ones already shown, as the user scrolls. */
+  public void addAll(List<StationDistance> moreRows) {
+    int from = rows.size();
+    rows.addAll(moreRows);
+    notifyItemRangeInserted(from, moreRows.size());
+  }
+
+  /** Replaces the rows with those of a new ranking, notifying the list of only what changed. */
+  public void setRows(List<StationDistance> newRows, boolean riding) {
+    if (riding != this.riding) {
+      // Every row is drawn differently.
+      this.riding = riding;
+      rows.clear();
+      rows.addAll(newRows);
+      notifyDataSetChanged();
+      return;
     }
-    if (actionManager.getAction() == Constants.ACTION_RIDE) {
-      viewHolder.setForRiding(getItem(position));
-    } else {
-      viewHolder.setForNotRiding(getItem(position));
+    StationRowDiff diff = StationRowDiff.between(rows, newRows);
+    if (diff.isStructural()) {
+      Log.d("Rollout", "Station list changed shape; " + diff.getMovedCount() + " rows moved");
     }
-    return convertView;
+    rows.clear();
+    rows.addAll(newRows);
+    diff.dispatchTo(new StationRowDiff.Callback() {
+      @Override
+      public void onRemoved(int position) {
+        notifyItemRemoved(position);
+      }
+
+      @Override
+      public void onMoved(int fromPosition, int toPosition) {
+        notifyItemMoved(fromPosition, toPosition);
+      }
+
+      @Override
+      public void onInserted(int position) {
+        notifyItemInserted(position);
+      }
+
+      @Override
+      public void onChanged(int position) {
+        notifyItemChanged(position);
+      }
+    });
+  }
+
+  /**
+   * Shows the newer state of the given stations, keyed by id, in the rows already showing them,
+   * keeping each row's distance and position. Notifies the list of just those rows.
+   */
+  public void updateStations(Map<Integer, Station> stations) {
+    for (int position = 0; position < rows.size(); position++) {
+      StationDistance row = rows.get(position);
+      Station station = stations.get(row.getStation().id);
+      if (station != null) {
+        rows.set(position, withStation(row, station));
+        notifyItemChanged(position);
+      }
+    }
+  }
+
+  /** A copy of {@code row} for a newer state of its station, at the same distance. */
+  static StationDistance withStation(StationDistance row, Station station) {
+    if (row instanceof DestinationDistance) {
+      return new DestinationDistance(station,
+          ((DestinationDistance) row).getMilesToDestination(), row.getMilesToLocation(),
+          row.getDirection());
+    }
+    return new StationDistance(station, row.getMilesToLocation(), row.getDirection());
   }
 
+  @Override
+  public RowHolder onCreateViewHolder(ViewGroup parent, int viewType) {
+    View itemView = LayoutInflater.from(parent.getContext())
+        .inflate(R.layout.stationdistance_list_item, parent, false);
+    return new RowHolder(itemView);
+  }
+
+  @Override
+  public void onBindViewHolder(RowHolder holder, int position) {
+    if (riding) {
+      holder.views.setForRiding(getItem(position));
+    } else {
+      holder.views.setForNotRiding(getItem(position));
+    }
+  }
 }
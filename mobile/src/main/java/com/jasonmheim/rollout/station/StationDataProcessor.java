@@ -18,21 +18,27 @@ package com.jasonmheim.rollout.station;
 
 import android.location.Location;
 
-import com.google.common.base.Function;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Ordering;
+import com.google.common.base.Objects;
+import com.google.common.base.Predicate;
 import com.jasonmheim.rollout.action.ActionManager;
-import com.jasonmheim.rollout.data.DestinationDistanceCalculator;
+import com.jasonmheim.rollout.action.ActionState;
+import com.jasonmheim.rollout.data.DestinationDistance;
+import com.jasonmheim.rollout.data.DistanceMode;
 import com.jasonmheim.rollout.data.Station;
 import com.jasonmheim.rollout.data.StationDistance;
-import com.jasonmheim.rollout.data.StationDistanceCalculator;
 import com.jasonmheim.rollout.data.StationDistanceRank;
+import com.jasonmheim.rollout.data.StationGridIndex;
 import com.jasonmheim.rollout.data.StationList;
+import com.jasonmheim.rollout.data.StationRanking;
+import com.jasonmheim.rollout.data.StationTable;
 import com.jasonmheim.rollout.location.LocationManager;
-import com.jasonmheim.rollout.settings.Settings;
+import com.jasonmheim.rollout.settings.SettingsSnapshot;
 
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
@@ -48,16 +54,53 @@ public class StationDataProcessor {
 
   private final ActionManager actionManager;
   private final LocationManager locationManager;
-  private final Settings settings;
+
+  /**
+   * The furthest the user may move for the next ranking to be derived from the previous one
+   * rather than built afresh. Beyond this the previous distances bound the new ones too loosely to
+   * save any work.
+   */
+  static final float REPAIR_BOUND_METERS = 200;
+
+  /** The most rankings kept by {@link #orderClosestStations}. */
+  static final int RANKING_CACHE_SIZE = 8;
+
+  /**
+   * The size of the location cells that rankings are cached by, in degrees: about 11 meters north
+   * to south, and less east to west. Every location within a cell shares the ranking computed for
+   * the first of them.
+   */
+  static final double CELL_DEGREES = 0.0001;
+
+  // The table and index for the most recently seen station list, rebuilt when a new list arrives.
+  private StationList indexedStationList;
+  private StationGridIndex stationGridIndex;
+  // Incremented for every new station list.
+  private int snapshotVersion;
+
+  // Rankings for the current snapshot, least recently used first.
+  private final Map<RankingKey, List<StationDistance>> rankingCache =
+      new LinkedHashMap<RankingKey, List<StationDistance>>(RANKING_CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<RankingKey, List<StationDistance>> eldest) {
+          return size() > RANKING_CACHE_SIZE;
+        }
+      };
+  private int cacheHitCount;
+  private int cacheMissCount;
+
+  // The most recent ranking, of whichever kind, and the locations it was computed for.
+  private StationRanking<StationDistance> previousDistanceRanking;
+  private StationRanking<DestinationDistance> previousDestinationRanking;
+  private Location previousLocation;
+  private Location previousDestination;
 
   @Inject
   public StationDataProcessor(
       ActionManager actionManager,
-      LocationManager locationManager,
-      Settings settings) {
+      LocationManager locationManager) {
     this.actionManager = actionManager;
     this.locationManager = locationManager;
-    this.settings = settings;
   }
 
   /**
@@ -65,12 +108,16 @@ public class StationDataProcessor {
    * are sorted by distance. If the current action is riding, and a destination is specified, then
    * these are sorted by proximity to the destination, with additional weight given to the user's
    * current location. Otherwise the results are sorted by proximity to the user's current location.
+   * <p>
+   * The returned list is an unmodifiable view, not a {@link StationRanking} itself, but it is
+   * backed by one, which sorts lazily, so callers that only read the first page of results only pay
+   * for that page. It may be shared: rankings are cached for the current station list by location
+   * cell, action, destination and thresholds, so callers asking for the same ranking get the same
+   * instance. A list read back through the provider's cursor counts as the provider's own list, so
+   * the app shares the ranking made by the provider's last update pass.
    */
   public List<StationDistance> orderClosestStations(StationList stationList) {
-    if (stationList == null) {
-      return Collections.emptyList();
-    }
-    return orderClosestStations(stationList, actionManager.getAction());
+    return orderClosestStations(stationList, actionManager.getState());
   }
 
   /**
@@ -78,58 +125,328 @@ public class StationDataProcessor {
    * current needs. The stations are ordered as described in {@link #orderClosestStations}. If the
    * user is currently riding, the first station with available docks is returned. Otherwise the
    * first station with available bikes is returned.
+   * <p>
+   * This does not sort the full list; it searches a {@link StationGridIndex} that is built once
+   * per station list, so only the stations near the user or destination are examined.
    */
   public StationDistanceRank getClosestAvailableStation(StationList stationList) {
-    int action = actionManager.getAction();
-    List<StationDistance> orderedStations = orderClosestStations(stationList, action);
-    if (action == ACTION_RIDE) {
-      return getClosestStationWithDocks(orderedStations, settings.getFullThreshold());
+    return getClosestAvailableStation(stationList, actionManager.getState());
+  }
+
+  /**
+   * As {@link #getClosestAvailableStation(StationList)}, for the given action, destination and
+   * settings rather than the current ones.
+   */
+  public StationDistanceRank getClosestAvailableStation(
+      StationList stationList, ActionState state) {
+    if (stationList == null) {
+      return null;
+    }
+    Location location = locationManager.getLastLocation();
+    if (location == null) {
+      return null;
+    }
+    StationGridIndex index = getStationGridIndex(stationList);
+    SettingsSnapshot settings = state.getSettings();
+    if (state.getAction() == ACTION_RIDE) {
+      Predicate<Station> hasDocks = hasMoreDocksThan(settings.getFullThreshold());
+      Location destination = state.getDestination();
+      if (destination != null) {
+        return index.getClosestStation(
+            location.getLatitude(), location.getLongitude(),
+            destination.getLatitude(), destination.getLongitude(),
+            hasDocks);
+      }
+      return index.getClosestStation(location.getLatitude(), location.getLongitude(), hasDocks);
     }
-    return getClosestStationWithBikes(orderedStations, settings.getEmptyThreshold());
+    return index.getClosestStation(
+        location.getLatitude(), location.getLongitude(),
+        hasMoreBikesThan(settings.getEmptyThreshold()));
   }
 
-  private StationDistanceRank getClosestStationWithDocks(
-      List<StationDistance> orderedStations, int docks) {
-    int rank = 0;
-    for (StationDistance stationDistance : orderedStations) {
-      if (stationDistance.getStation().availableDocks > docks) {
+  /**
+   * Returns the first station in {@code ranking} that suits the needs of {@code state}, as
+   * {@link #getClosestAvailableStation(StationList, ActionState)} would choose it, along with its
+   * rank. {@code ranking} should come from {@link #orderClosestStations(StationList, ActionState)}
+   * for the same state; only as much of it is sorted as is read. Returns null if no station
+   * qualifies.
+   */
+  public StationDistanceRank findAvailableStation(
+      List<StationDistance> ranking, ActionState state) {
+    Predicate<Station> available = isAvailable(state);
+    for (int rank = 0; rank < ranking.size(); rank++) {
+      StationDistance stationDistance = ranking.get(rank);
+      if (available.apply(stationDistance.getStation())) {
         return new StationDistanceRank(stationDistance, rank);
       }
-      rank++;
     }
     return null;
   }
 
-  private StationDistanceRank getClosestStationWithBikes(
-      List<StationDistance> orderedStations, int bikes) {
-    int rank = 0;
-    for (StationDistance stationDistance : orderedStations) {
-      if (stationDistance.getStation().availableBikes > bikes) {
-        return new StationDistanceRank(stationDistance, rank);
+  /**
+   * Returns up to {@code count} stations from {@code ranking} that suit the needs of
+   * {@code state}, best first, as {@link #findAvailableStation} reads them. The list is
+   * unmodifiable.
+   */
+  public List<StationDistance> selectAvailableStations(
+      List<StationDistance> ranking, int count, ActionState state) {
+    Predicate<Station> available = isAvailable(state);
+    List<StationDistance> selected = new ArrayList<StationDistance>(count);
+    for (int rank = 0; rank < ranking.size() && selected.size() < count; rank++) {
+      StationDistance stationDistance = ranking.get(rank);
+      if (available.apply(stationDistance.getStation())) {
+        selected.add(stationDistance);
       }
-      rank++;
     }
-    return null;
+    return Collections.unmodifiableList(selected);
+  }
+
+  /**
+   * Returns a station list holding only the stations asked for by {@code query}, with the same
+   * timestamps as {@code stationList}. A query with a location is answered from the
+   * {@link StationGridIndex}, so only the stations near that location are examined; otherwise the
+   * stations are filtered in feed order.
+   */
+  StationList selectStations(StationList stationList, StationQuery query) {
+    if (!query.isSelective()) {
+      return stationList;
+    }
+    StationList result = new StationList();
+    result.executionTime = stationList.executionTime;
+    result.timestamp = stationList.timestamp;
+    result.stationBeanList = new ArrayList<Station>();
+    if (query.hasLocation) {
+      for (StationDistance stationDistance : getStationGridIndex(stationList).getClosestStations(
+          query.latitude, query.longitude, query.limit, query.radiusMiles,
+          query.getPredicate())) {
+        result.stationBeanList.add(stationDistance.getStation());
+      }
+    } else if (stationList.stationBeanList != null) {
+      Predicate<Station> predicate = query.getPredicate();
+      for (Station station : stationList.stationBeanList) {
+        if (result.stationBeanList.size() == query.limit) {
+          break;
+        }
+        if (predicate.apply(station)) {
+          result.stationBeanList.add(station);
+        }
+      }
+    }
+    return result;
+  }
+
+  /** The number of calls to {@link #orderClosestStations} answered from the cache. */
+  public synchronized int getCacheHitCount() {
+    return cacheHitCount;
+  }
+
+  /** The number of calls to {@link #orderClosestStations} that computed a new ranking. */
+  public synchronized int getCacheMissCount() {
+    return cacheMissCount;
+  }
+
+  private synchronized StationGridIndex getStationGridIndex(StationList stationList) {
+    if (!isSameSnapshot(stationList, indexedStationList)) {
+      // Ranking only needs to be right at the scale of a city block, so use the flat approximation.
+      // The distances shown are still the reference ones, so neighbors within its 0.01% error of
+      // each other, under six feet at ten miles, may be listed out of order by that much.
+      stationGridIndex =
+          new StationGridIndex(new StationTable(stationList, DistanceMode.EQUIRECTANGULAR));
+      indexedStationList = stationList;
+      snapshotVersion++;
+      rankingCache.clear();
+    }
+    return stationGridIndex;
+  }
+
+  // A list read back through the provider's cursor is a copy of the provider's own, with the same
+  // sync timestamp, which no other download shares. Lists that were never synced have none.
+  private static boolean isSameSnapshot(StationList stationList, StationList other) {
+    if (stationList == other) {
+      return true;
+    }
+    return other != null
+        && stationList.timestamp != 0
+        && stationList.timestamp == other.timestamp
+        && Objects.equal(stationList.executionTime, other.executionTime)
+        && stationList.stationBeanList != null
+        && other.stationBeanList != null
+        && stationList.stationBeanList.size() == other.stationBeanList.size();
   }
 
-  private List<StationDistance> orderClosestStations(StationList stationList, int action) {
+  private static Predicate<Station> isAvailable(ActionState state) {
+    SettingsSnapshot settings = state.getSettings();
+    return state.getAction() == ACTION_RIDE
+        ? hasMoreDocksThan(settings.getFullThreshold())
+        : hasMoreBikesThan(settings.getEmptyThreshold());
+  }
+
+  private static Predicate<Station> hasMoreDocksThan(final int docks) {
+    return new Predicate<Station>() {
+      @Override
+      public boolean apply(Station station) {
+        return station.availableDocks > docks;
+      }
+    };
+  }
+
+  private static Predicate<Station> hasMoreBikesThan(final int bikes) {
+    return new Predicate<Station>() {
+      @Override
+      public boolean apply(Station station) {
+        return station.availableBikes > bikes;
+      }
+    };
+  }
+
+  /**
+   * As {@link #orderClosestStations(StationList)}, for the given action, destination and settings
+   * rather than the current ones.
+   */
+  public List<StationDistance> orderClosestStations(StationList stationList, ActionState state) {
     if (stationList == null) {
       return Collections.emptyList();
     }
     Location location = locationManager.getLastLocation();
     if (location != null) {
-      Location destination = actionManager.getDestination();
-      Function<Station, ? extends StationDistance> calculator;
-      if (action == ACTION_RIDE && destination != null) {
-        calculator = new DestinationDistanceCalculator(
-            location.getLatitude(), location.getLongitude(),
-            destination.getLatitude(), destination.getLongitude());
-      } else {
-        calculator = new StationDistanceCalculator(location.getLatitude(), location.getLongitude());
+      int action = state.getAction();
+      Location destination = action == ACTION_RIDE ? state.getDestination() : null;
+      SettingsSnapshot settings = state.getSettings();
+      synchronized (this) {
+        StationTable table = getStationGridIndex(stationList).getTable();
+        RankingKey key = new RankingKey(snapshotVersion, location, action, destination,
+            settings.getEmptyThreshold(), settings.getFullThreshold());
+        List<StationDistance> ranking = rankingCache.get(key);
+        if (ranking != null) {
+          cacheHitCount++;
+          return ranking;
+        }
+        cacheMissCount++;
+        // Only distances are computed up front; stations are sorted as they are read.
+        if (destination != null) {
+          ranking = Collections.<StationDistance>unmodifiableList(
+              rankByDestination(table, location, destination));
+        } else {
+          ranking = Collections.<StationDistance>unmodifiableList(rankByDistance(table, location));
+        }
+        rankingCache.put(key, ranking);
+        return ranking;
       }
-      return Ordering.natural().immutableSortedCopy(
-          Iterables.transform(stationList.stationBeanList, calculator));
     }
     return Collections.emptyList();
   }
+
+  /**
+   * Ranks by distance from {@code location}, reusing the previous ranking if the user has not
+   * moved, or repairing its order if the user moved no more than {@link #REPAIR_BOUND_METERS}.
+   */
+  private synchronized StationRanking<StationDistance> rankByDistance(
+      StationTable table, Location location) {
+    StationRanking<StationDistance> previous = previousDistanceRanking;
+    previousDestinationRanking = null;
+    if (previous == null || previous.getTable() != table) {
+      previous = null;
+    } else if (isSamePlace(location, previousLocation)) {
+      return previous;
+    }
+    if (previous != null && isNearby(location, previousLocation)) {
+      previousDistanceRanking = table.getRankingByDistance(
+          location.getLatitude(), location.getLongitude(), previous);
+    } else {
+      previousDistanceRanking =
+          table.getRankingByDistance(location.getLatitude(), location.getLongitude());
+    }
+    previousLocation = location;
+    return previousDistanceRanking;
+  }
+
+  /**
+   * Ranks by weighted distance from {@code location} and {@code destination}, reusing or
+   * repairing the previous ranking as {@link #rankByDistance} does if the destination is the same.
+   */
+  private synchronized StationRanking<DestinationDistance> rankByDestination(
+      StationTable table, Location location, Location destination) {
+    StationRanking<DestinationDistance> previous = previousDestinationRanking;
+    previousDistanceRanking = null;
+    if (previous == null || previous.getTable() != table
+        || !isSamePlace(destination, previousDestination)) {
+      previous = null;
+    } else if (isSamePlace(location, previousLocation)) {
+      return previous;
+    }
+    if (previous != null && isNearby(location, previousLocation)) {
+      previousDestinationRanking = table.getRankingByDestination(
+          location.getLatitude(), location.getLongitude(),
+          destination.getLatitude(), destination.getLongitude(), previous);
+    } else {
+      previousDestinationRanking = table.getRankingByDestination(
+          location.getLatitude(), location.getLongitude(),
+          destination.getLatitude(), destination.getLongitude());
+    }
+    previousLocation = location;
+    previousDestination = destination;
+    return previousDestinationRanking;
+  }
+
+  private static boolean isSamePlace(Location location, Location other) {
+    return other != null
+        && location.getLatitude() == other.getLatitude()
+        && location.getLongitude() == other.getLongitude();
+  }
+
+  private static boolean isNearby(Location location, Location other) {
+    return location.distanceTo(other) <= REPAIR_BOUND_METERS;
+  }
+
+  /** Identifies a ranking within {@link #rankingCache}. */
+  private static final class RankingKey {
+
+    private final int snapshotVersion;
+    private final long latitudeCell;
+    private final long longitudeCell;
+    private final int action;
+    private final Double destinationLatitude;
+    private final Double destinationLongitude;
+    private final int emptyThreshold;
+    private final int fullThreshold;
+
+    RankingKey(
+        int snapshotVersion,
+        Location location,
+        int action,
+        Location destination,
+        int emptyThreshold,
+        int fullThreshold) {
+      this.snapshotVersion = snapshotVersion;
+      this.latitudeCell = (long) Math.floor(location.getLatitude() / CELL_DEGREES);
+      this.longitudeCell = (long) Math.floor(location.getLongitude() / CELL_DEGREES);
+      this.action = action;
+      this.destinationLatitude = destination == null ? null : destination.getLatitude();
+      this.destinationLongitude = destination == null ? null : destination.getLongitude();
+      this.emptyThreshold = emptyThreshold;
+      this.fullThreshold = fullThreshold;
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      if (!(object instanceof RankingKey)) {
+        return false;
+      }
+      RankingKey other = (RankingKey) object;
+      return snapshotVersion == other.snapshotVersion
+          && latitudeCell == other.latitudeCell
+          && longitudeCell == other.longitudeCell
+          && action == other.action
+          && Objects.equal(destinationLatitude, other.destinationLatitude)
+          && Objects.equal(destinationLongitude, other.destinationLongitude)
+          && emptyThreshold == other.emptyThreshold
+          && fullThreshold == other.fullThreshold;
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(snapshotVersion, latitudeCell, longitudeCell, action,
+          destinationLatitude, destinationLongitude, emptyThreshold, fullThreshold);
+    }
+  }
 }
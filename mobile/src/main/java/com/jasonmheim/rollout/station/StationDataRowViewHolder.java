@@ -18,7 +18,6 @@ package com.jasonmheim.rollout.station;
 
 import android.text.format.DateUtils;
 import android.view.View;
-import android.widget.LinearLayout;
 import android.widget.TextView;
 
 import com.jasonmheim.rollout.R;
@@ -28,37 +27,62 @@ import com.jasonmheim.rollout.data.StationList;
 
 import java.text.DateFormat;
 
-import static android.view.ViewGroup.LayoutParams.MATCH_PARENT;
-
 /**
  * Holder for the various widgets within a row view of station data. Classes like this are an
  * optimization for list views. Without this class, then each time a particular row view was
  * recycled the system would have to find all the inner view objects again. This class pre-extracts
  * the references to the views so that they can be immediately referenced when the object is
  * recycled for a different {@link StationDistance} object.
+ * <p>
+ * Binding a row allocates nothing. Count labels come from a table built once, and the distance is
+ * written into a buffer that is handed to {@link TextView#setText(char[], int, int)}, which unlike
+ * the other setters does not copy its text into a new string.
 */
 class StationDataRowViewHolder {
+
+  private static final String BIKES_LABEL = "Bikes:\t";
+  private static final String DOCKS_LABEL = "Docks:\t";
+  private static final String DUDS_LABEL = "Duds:\t";
+
+  // Labels for every count below this are built once, up front.
+  private static final int CACHED_COUNTS = 100;
+  private static final String[] BIKES_LABELS = countLabels(BIKES_LABEL);
+  private static final String[] DOCKS_LABELS = countLabels(DOCKS_LABEL);
+  private static final String[] DUDS_LABELS = countLabels(DUDS_LABEL);
+
   private final TextView textViewTL;
   private final TextView textViewTR;
   private final TextView textViewBL;
   private final TextView textViewBR;
 
-  private final TextView brokenBikes;
-  private final TextView availableBikes;
-  private final TextView availableDocks;
+  private final AvailabilityBarView availabilityBar;
+
+  private final StringBuilder distanceBuilder = new StringBuilder(32);
+  // The text view keeps a reference to this, so it belongs to textViewBL alone.
+  private char[] distanceChars = new char[32];
 
   public StationDataRowViewHolder(View convertView) {
-    textViewTL = (TextView) convertView.findViewById(R.id.textViewTL);
-    textViewTR = (TextView) convertView.findViewById(R.id.textViewTR);
-    textViewBL = (TextView) convertView.findViewById(R.id.textViewBL);
-    textViewBR = (TextView) convertView.findViewById(R.id.textViewBR);
-
-    brokenBikes = (TextView) convertView.findViewById(R.id.brokenBikes);
-    availableBikes = (TextView) convertView.findViewById(R.id.availableBikes);
-    availableDocks = (TextView) convertView.findViewById(R.id.availableDocks);
+    this((TextView) convertView.findViewById(R.id.textViewTL),
+        (TextView) convertView.findViewById(R.id.textViewTR),
+        (TextView) convertView.findViewById(R.id.textViewBL),
+        (TextView) convertView.findViewById(R.id.textViewBR),
+        (AvailabilityBarView) convertView.findViewById(R.id.availabilityBar));
     convertView.setTag(this);
   }
 
+  StationDataRowViewHolder(
+      TextView textViewTL,
+      TextView textViewTR,
+      TextView textViewBL,
+      TextView textViewBR,
+      AvailabilityBarView availabilityBar) {
+    this.textViewTL = textViewTL;
+    this.textViewTR = textViewTR;
+    this.textViewBL = textViewBL;
+    this.textViewBR = textViewBR;
+    this.availabilityBar = availabilityBar;
+  }
+
   /**
    * Sets the row data for when the user is riding.
    */
@@ -66,8 +90,8 @@ class StationDataRowViewHolder {
     Station station = stationDistance.getStation();
     textViewTL.setText(station.stationName);
     // TODO: Use string resources and proper pluralization
-    textViewTR.setText("Docks:\t" + station.availableDocks);
-    textViewBL.setText(stationDistance.getDistanceString());
+    textViewTR.setText(countLabel(DOCKS_LABELS, DOCKS_LABEL, station.availableDocks));
+    setDistance(stationDistance);
     textViewBR.setText("");
 
     setBackground(station);
@@ -80,22 +104,27 @@ class StationDataRowViewHolder {
     Station station = stationDistance.getStation();
     textViewTL.setText(station.stationName);
     // TODO: Use string resources and proper pluralization
-    textViewTR.setText("Bikes:\t" + station.availableBikes);
-    textViewBL.setText(stationDistance.getDistanceString());
+    textViewTR.setText(countLabel(BIKES_LABELS, BIKES_LABEL, station.availableBikes));
+    setDistance(stationDistance);
     int duds = station.totalDocks - (station.availableBikes + station.availableDocks);
-    textViewBR.setText("Duds:\t" + duds);
+    textViewBR.setText(countLabel(DUDS_LABELS, DUDS_LABEL, duds));
 
     setBackground(station);
   }
 
-  private void setBackground(Station station) {
-    float availableBikesWeight = (float) station.availableBikes / (float) station.totalDocks;
-    float availableDocksWeight = (float) station.availableDocks / (float) station.totalDocks;
-    float brokenBikesWeight = 1f - (availableBikesWeight + availableDocksWeight);
+  private void setDistance(StationDistance stationDistance) {
+    distanceBuilder.setLength(0);
+    stationDistance.appendDistance(distanceBuilder);
+    int length = distanceBuilder.length();
+    if (length > distanceChars.length) {
+      distanceChars = new char[length];
+    }
+    distanceBuilder.getChars(0, length, distanceChars, 0);
+    textViewBL.setText(distanceChars, 0, length);
+  }
 
-    brokenBikes.setLayoutParams(new LinearLayout.LayoutParams(0, MATCH_PARENT, brokenBikesWeight));
-    availableBikes.setLayoutParams(new LinearLayout.LayoutParams(0, MATCH_PARENT, availableBikesWeight));
-    availableDocks.setLayoutParams(new LinearLayout.LayoutParams(0, MATCH_PARENT, availableDocksWeight));
+  private void setBackground(Station station) {
+    availabilityBar.setCounts(station.availableBikes, station.availableDocks, station.totalDocks);
   }
 
   /**
@@ -109,8 +138,18 @@ class StationDataRowViewHolder {
         DateFormat.SHORT,
         DateFormat.SHORT));
     textViewBL.setText(action);
-    brokenBikes.setLayoutParams(new LinearLayout.LayoutParams(0, MATCH_PARENT, 1f));
-    availableBikes.setLayoutParams(new LinearLayout.LayoutParams(0, MATCH_PARENT, 0f));
-    availableDocks.setLayoutParams(new LinearLayout.LayoutParams(0, MATCH_PARENT, 0f));
+    availabilityBar.setCounts(0, 0, 0);
+  }
+
+  private static String[] countLabels(String label) {
+    String[] labels = new String[CACHED_COUNTS];
+    for (int count = 0; count < CACHED_COUNTS; count++) {
+      labels[count] = label + count;
+    }
+    return labels;
+  }
+
+  private static String countLabel(String[] labels, String label, int count) {
+    return count >= 0 && count < labels.length ? labels[count] : label + count;
   }
 }
@@ -16,83 +16,253 @@
 
 package com.jasonmheim.rollout.station;
 
-import android.app.Application;
-import android.content.Context;
 import android.util.Log;
 
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
 import com.google.gson.Gson;
+import com.jasonmheim.rollout.data.StationCatalog;
 import com.jasonmheim.rollout.data.StationList;
+import com.jasonmheim.rollout.data.StationListBinaryFormat;
+import com.jasonmheim.rollout.data.StationStatusSnapshot;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.io.Reader;
 import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 import javax.inject.Inject;
 import javax.inject.Singleton;
 
 /**
- * A reader and writer of the StationData to local disk. Synchronizes on itself, ergo this is
- * intended to be a singleton per process, and only one process - that of the content provider -
- * should interact with this class.
+ * A reader and writer of the StationData to local disk. Synchronizes on the data directory, ergo
+ * this is intended to be a singleton per process. Only the content provider's process writes the
+ * station data; the sync process reads them back, and keeps the {@link FeedValidators} of its last
+ * download next to them so that a new process can still send a conditional request.
+ * <p>
+ * The data are stored as two files in {@link StationListBinaryFormat}: the {@link StationCatalog},
+ * which is only rewritten when it changes, and the {@link StationStatusSnapshot}, which is
+ * rewritten on every sync. Both are read back through memory mapped files so that a cold start
+ * does not pay for parsing JSON. Writes go to a temporary file which then replaces the old one, so
+ * a reader never sees a partial file. A JSON file left by an earlier version of the app is migrated
+ * on first read; JSON remains available through {@link #exportJson} for debugging. Since another
+ * process may replace the catalog, it is read again whenever the file has changed.
  */
 @Singleton
 class StationDataStorage {
 
-  private final Context context;
-  private final File file;
+  // The file that earlier versions stored the list in, next to the data directory.
+  private static final String LEGACY_JSON_FILE_NAME = "stationData.json";
+  private static final String CATALOG_FILE_NAME = "catalog.bin";
+  private static final String SNAPSHOT_FILE_NAME = "status.bin";
+  private static final String VALIDATORS_FILE_NAME = "validators.json";
+
+  private final File directory;
+  private final File catalogFile;
+  private final File snapshotFile;
+  private final File validatorsFile;
+  private final File legacyJsonFile;
   private final Gson gson;
 
+  // The catalog as last read or written, so that an unchanged catalog is not written again.
+  private StationCatalog catalog;
+  // The modification time and length of the catalog file when it was last read or written.
+  private long catalogLastModified;
+  private long catalogLength;
+
   @Inject
   StationDataStorage(
-      Application context,
-      @StationData File file,
+      @StationData File directory,
       Gson gson) {
-    this.context = context;
-    this.file = file;
+    this.directory = directory;
+    this.catalogFile = new File(directory, CATALOG_FILE_NAME);
+    this.snapshotFile = new File(directory, SNAPSHOT_FILE_NAME);
+    this.validatorsFile = new File(directory, VALIDATORS_FILE_NAME);
+    this.legacyJsonFile = new File(directory.getParentFile(), LEGACY_JSON_FILE_NAME);
     this.gson = gson;
   }
 
+  /** Stores a complete list, writing its catalog only if that has changed. */
   public void set(StationList stationList) {
-    synchronized(file) {
+    try {
+      setCatalog(StationCatalog.of(stationList));
+      setSnapshot(StationStatusSnapshot.of(stationList));
+    } catch (RuntimeException ex) {
+      Log.w("Rollout", "Failed to serialize station list data", ex);
+    }
+  }
+
+  /** Stores the given catalog, unless it is the same as the one already stored. */
+  public void setCatalog(StationCatalog newCatalog) {
+    synchronized(directory) {
+      if (newCatalog.equals(getCatalog())) {
+        return;
+      }
       try {
-        Writer writer = new OutputStreamWriter(new FileOutputStream(file));
+        write(catalogFile, StationListBinaryFormat.encodeCatalog(newCatalog));
+        catalog = newCatalog;
+        catalogLastModified = catalogFile.lastModified();
+        catalogLength = catalogFile.length();
+      } catch (IOException ex) {
+        Log.w("Rollout", "Failed to write station catalog", ex);
+      }
+    }
+  }
+
+  public void setSnapshot(StationStatusSnapshot snapshot) {
+    synchronized(directory) {
+      try {
+        write(snapshotFile, StationListBinaryFormat.encodeSnapshot(snapshot));
+      } catch (IOException ex) {
+        Log.w("Rollout", "Failed to write station status", ex);
+      }
+    }
+  }
+
+  /** Returns the stored catalog, or null if there is none. */
+  public StationCatalog getCatalog() {
+    synchronized(directory) {
+      long lastModified = catalogFile.lastModified();
+      long length = catalogFile.length();
+      if (lastModified == 0) {
+        catalog = null;
+      } else if (catalog == null
+          || lastModified != catalogLastModified
+          || length != catalogLength) {
         try {
-          gson.toJson(stationList, writer);
-        } finally {
-          writer.close();
+          catalog = StationListBinaryFormat.decodeCatalog(map(catalogFile));
+          catalogLastModified = lastModified;
+          catalogLength = length;
+        } catch (IOException ex) {
+          Log.w("Rollout", "Failed to read station catalog", ex);
         }
-      } catch (IOException ex) {
-        Log.w("Rollout", "Failed to write station list data", ex);
-      } catch (RuntimeException ex) {
-        Log.w("Rollout", "Failed to serialize station list data", ex);
       }
+      return catalog;
     }
   }
 
+  /** Returns the stored catalog merged with the stored snapshot, or null if either is missing. */
   public StationList get() {
-    synchronized(file) {
-      if (!file.exists()) {
+    synchronized(directory) {
+      if (!catalogFile.exists() && !snapshotFile.exists()) {
+        return migrateLegacyJson();
+      }
+      StationCatalog storedCatalog = getCatalog();
+      if (storedCatalog == null || !snapshotFile.exists()) {
         return null;
       }
       try {
-        Reader reader = new InputStreamReader(new FileInputStream(file));
-        try {
-          return gson.fromJson(reader, StationList.class);
-        } finally {
-          reader.close();
-        }
+        return storedCatalog.merge(StationListBinaryFormat.decodeSnapshot(map(snapshotFile)));
+      } catch (IOException ex) {
+        Log.w("Rollout", "Failed to read station status", ex);
+        return null;
+      }
+    }
+  }
+
+  /** Stores the validators of the latest download, replacing any stored before. */
+  public void setValidators(FeedValidators validators) {
+    synchronized(directory) {
+      try {
+        write(validatorsFile, ByteBuffer.wrap(gson.toJson(validators).getBytes(Charsets.UTF_8)));
+      } catch (IOException ex) {
+        Log.w("Rollout", "Failed to write feed validators", ex);
+      }
+    }
+  }
+
+  /** Returns the stored validators, or null if there are none. */
+  public FeedValidators getValidators() {
+    synchronized(directory) {
+      if (!validatorsFile.exists()) {
+        return null;
+      }
+      try {
+        return gson.fromJson(Files.toString(validatorsFile, Charsets.UTF_8), FeedValidators.class);
       } catch (RuntimeException ex) {
-        Log.w("Rollout", "Failed to deserialize station list data from file", ex);
+        Log.w("Rollout", "Failed to deserialize feed validators", ex);
         return null;
       } catch (IOException ex) {
-        Log.w("Rollout", "Failed to read station list data", ex);
+        Log.w("Rollout", "Failed to read feed validators", ex);
         return null;
       }
     }
   }
+
+  /**
+   * Writes the stored list to {@code writer} as JSON, in the same form as the feed it was
+   * downloaded from. Writes nothing if no list is stored.
+   */
+  public void exportJson(Writer writer) throws IOException {
+    StationList stationList = get();
+    if (stationList != null) {
+      gson.toJson(stationList, writer);
+      writer.flush();
+    }
+  }
+
+  private static ByteBuffer map(File file) throws IOException {
+    FileInputStream input = new FileInputStream(file);
+    try {
+      FileChannel channel = input.getChannel();
+      return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } finally {
+      input.close();
+    }
+  }
+
+  private void write(File file, ByteBuffer buffer) throws IOException {
+    if (!directory.isDirectory() && !directory.mkdirs()) {
+      throw new IOException("Failed to create " + directory);
+    }
+    File temporaryFile = new File(file.getPath() + ".tmp");
+    FileOutputStream output = new FileOutputStream(temporaryFile);
+    try {
+      FileChannel channel = output.getChannel();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } finally {
+      output.close();
+    }
+    if (!temporaryFile.renameTo(file)) {
+      throw new IOException("Failed to replace " + file);
+    }
+  }
+
+  private StationList migrateLegacyJson() {
+    if (!legacyJsonFile.exists()) {
+      return null;
+    }
+    Log.i("Rollout", "Migrating station list data from JSON");
+    StationList stationList;
+    try {
+      Reader reader = new BufferedReader(new InputStreamReader(new FileInputStream(legacyJsonFile)));
+      try {
+        stationList = gson.fromJson(reader, StationList.class);
+      } finally {
+        reader.close();
+      }
+    } catch (RuntimeException ex) {
+      Log.w("Rollout", "Failed to deserialize station list data from file", ex);
+      return null;
+    } catch (IOException ex) {
+      Log.w("Rollout", "Failed to read station list data", ex);
+      return null;
+    }
+    if (stationList == null) {
+      return null;
+    }
+    set(stationList);
+    if (!legacyJsonFile.delete()) {
+      Log.w("Rollout", "Failed to delete migrated station list data");
+    }
+    return stationList;
+  }
 }
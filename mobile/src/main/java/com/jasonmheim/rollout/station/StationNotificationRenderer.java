@@ -0,0 +1,526 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.station;
+
+import android.app.Notification;
+import android.app.NotificationManager;
+import android.app.PendingIntent;
+import android.content.Context;
+import android.content.Intent;
+import android.net.Uri;
+import android.support.v4.app.NotificationCompat;
+
+import com.google.common.base.Objects;
+import com.jasonmheim.rollout.Constants;
+import com.jasonmheim.rollout.R;
+import com.jasonmheim.rollout.action.ActionIntentService;
+import com.jasonmheim.rollout.action.ActionState;
+import com.jasonmheim.rollout.data.Station;
+import com.jasonmheim.rollout.data.StationDistance;
+import com.jasonmheim.rollout.data.StationDistanceRank;
+import com.jasonmheim.rollout.settings.SettingsSnapshot;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static com.jasonmheim.rollout.Constants.ACTION_IDLE;
+import static com.jasonmheim.rollout.Constants.ACTION_RIDE;
+import static com.jasonmheim.rollout.Constants.ACTION_SEARCH;
+import static com.jasonmheim.rollout.Constants.ACTION_SILENCE;
+import static com.jasonmheim.rollout.Constants.DESTINATION_NAME_HOME;
+import static com.jasonmheim.rollout.Constants.DESTINATION_NAME_WORK;
+import static com.jasonmheim.rollout.Constants.UPDATE_KEY_ACTION;
+import static com.jasonmheim.rollout.Constants.UPDATE_KEY_DESTINATION;
+
+/**
+ * Builds and posts the notification for the station that best suits the user, including its
+ * actions on the wearable.
+ * <p>
+ * Most update passes would post exactly what is already showing, since the location changes far
+ * more often than the station, its counts or the distance as rendered. Each posted notification is
+ * summarized by a {@link ContentKey}, and while the key stays the same neither the notification is
+ * built nor the call to post it made. The actions, and the pending intents behind them, depend
+ * only on the action and destination they set, so they are built once and reused.
+ * <p>
+ * Not thread safe; the provider only uses it from its {@link UpdatePipeline}.
+ */
+class StationNotificationRenderer {
+
+  static final int NOTIFICATION_ID = 1;
+
+  private static final int[] FILL_COLOR = {
+      R.drawable.ic_fill_0_color_48dp,
+      R.drawable.ic_fill_1_color_48dp,
+      R.drawable.ic_fill_2_color_48dp,
+      R.drawable.ic_fill_3_color_48dp,
+      R.drawable.ic_fill_4_color_48dp,
+      R.drawable.ic_fill_5_color_48dp,
+      R.drawable.ic_fill_6_color_48dp,
+      R.drawable.ic_fill_7_color_48dp,
+      R.drawable.ic_fill_8_color_48dp,
+      R.drawable.ic_fill_0_red1_48dp,
+      R.drawable.ic_fill_1_red1_48dp,
+      R.drawable.ic_fill_2_red1_48dp,
+      R.drawable.ic_fill_3_red1_48dp,
+      R.drawable.ic_fill_4_red1_48dp,
+      R.drawable.ic_fill_5_red1_48dp,
+      R.drawable.ic_fill_6_red1_48dp,
+      R.drawable.ic_fill_7_red1_48dp,
+      R.drawable.ic_fill_8_red1_48dp,
+      R.drawable.ic_fill_0_red2_48dp,
+      R.drawable.ic_fill_1_red2_48dp,
+      R.drawable.ic_fill_2_red2_48dp,
+      R.drawable.ic_fill_3_red2_48dp,
+      R.drawable.ic_fill_4_red2_48dp,
+      R.drawable.ic_fill_5_red2_48dp,
+      R.drawable.ic_fill_6_red2_48dp,
+      R.drawable.ic_fill_7_red2_48dp,
+      R.drawable.ic_fill_8_red2_48dp,
+      R.drawable.ic_fill_0_red3_48dp,
+      R.drawable.ic_fill_1_red3_48dp,
+      R.drawable.ic_fill_2_red3_48dp,
+      R.drawable.ic_fill_3_red3_48dp,
+      R.drawable.ic_fill_4_red3_48dp,
+      R.drawable.ic_fill_5_red3_48dp,
+      R.drawable.ic_fill_6_red3_48dp,
+      R.drawable.ic_fill_7_red3_48dp,
+      R.drawable.ic_fill_8_red3_48dp,
+  };
+
+  private static final int[] FILL_BW = {
+      R.drawable.ic_fill_0_bw_24p,
+      R.drawable.ic_fill_1_bw_24p,
+      R.drawable.ic_fill_2_bw_24p,
+      R.drawable.ic_fill_3_bw_24p,
+      R.drawable.ic_fill_4_bw_24p,
+      R.drawable.ic_fill_5_bw_24p,
+      R.drawable.ic_fill_6_bw_24p,
+      R.drawable.ic_fill_7_bw_24p,
+      R.drawable.ic_fill_8_bw_24p,
+      R.drawable.ic_fill_0_bw_red1_24p,
+      R.drawable.ic_fill_1_bw_red1_24p,
+      R.drawable.ic_fill_2_bw_red1_24p,
+      R.drawable.ic_fill_3_bw_red1_24p,
+      R.drawable.ic_fill_4_bw_red1_24p,
+      R.drawable.ic_fill_5_bw_red1_24p,
+      R.drawable.ic_fill_6_bw_red1_24p,
+      R.drawable.ic_fill_7_bw_red1_24p,
+      R.drawable.ic_fill_8_bw_red1_24p,
+      R.drawable.ic_fill_0_bw_red2_24p,
+      R.drawable.ic_fill_1_bw_red2_24p,
+      R.drawable.ic_fill_2_bw_red2_24p,
+      R.drawable.ic_fill_3_bw_red2_24p,
+      R.drawable.ic_fill_4_bw_red2_24p,
+      R.drawable.ic_fill_5_bw_red2_24p,
+      R.drawable.ic_fill_6_bw_red2_24p,
+      R.drawable.ic_fill_7_bw_red2_24p,
+      R.drawable.ic_fill_8_bw_red2_24p,
+      R.drawable.ic_fill_0_bw_red3_24p,
+      R.drawable.ic_fill_1_bw_red3_24p,
+      R.drawable.ic_fill_2_bw_red3_24p,
+      R.drawable.ic_fill_3_bw_red3_24p,
+      R.drawable.ic_fill_4_bw_red3_24p,
+      R.drawable.ic_fill_5_bw_red3_24p,
+      R.drawable.ic_fill_6_bw_red3_24p,
+      R.drawable.ic_fill_7_bw_red3_24p,
+      R.drawable.ic_fill_8_bw_red3_24p,
+  };
+
+  // Use this to bump the priority of a notification without actually buzzing the device
+  private static final long[] BUZZ_SILENT = {
+      0,
+      0,
+  };
+
+  private static final long[] BUZZ_0 = {
+      0,
+      200,
+      100,
+      200,
+      100,
+      200,
+  };
+
+  private static final long[] BUZZ_1 = {
+      0,
+      100,
+      150,
+      200,
+      150,
+      300,
+      150,
+      400,
+  };
+
+  private static final long[] BUZZ_2 = {
+      0,
+      100,
+      150,
+      200,
+      150,
+      300,
+      150,
+      400,
+      250,
+      100,
+      150,
+      200,
+      150,
+      300,
+      150,
+      400,
+  };
+
+  private static final long[] BUZZ_3 = {
+      0,
+      100,
+      150,
+      200,
+      150,
+      300,
+      150,
+      400,
+      250,
+      100,
+      150,
+      200,
+      150,
+      300,
+      150,
+      400,
+      250,
+      100,
+      150,
+      200,
+      150,
+      300,
+      150,
+      400,
+  };
+
+  private static final long[][] BUZZ_RANKS = {
+      BUZZ_0, BUZZ_1, BUZZ_2, BUZZ_3,
+  };
+
+  private final Context context;
+  private final NotificationManager notificationManager;
+
+  private StationDistanceRank previousStationDistanceRank;
+  // Null when nothing has been posted, or the notification was cancelled.
+  private ContentKey postedKey;
+  // Whether the notification has been cancelled, and nothing posted since.
+  private boolean cancelled;
+
+  // Built on first use.
+  private PendingIntent contentIntent;
+  private Notification.Action searchAction;
+  private Notification.Action idleAction;
+  private Notification.Action silenceAction;
+  private Notification.Action roamAction;
+  private Notification.Action rideHomeAction;
+  private Notification.Action rideWorkAction;
+
+  StationNotificationRenderer(Context context, NotificationManager notificationManager) {
+    this.context = context;
+    this.notificationManager = notificationManager;
+  }
+
+  /**
+   * Shows the notification for {@code stationDistanceRank}, the target station for {@code state},
+   * unless what it would show is what was last posted. Returns whether anything was posted.
+   */
+  boolean render(ActionState state, StationDistanceRank stationDistanceRank) {
+    ContentKey key = new ContentKey(state, stationDistanceRank);
+    if (key.equals(postedKey)) {
+      previousStationDistanceRank = stationDistanceRank;
+      return false;
+    }
+    int action = state.getAction();
+    try {
+      Station station = stationDistanceRank.getStationDistance().getStation();
+      int iconIndex = getIconIndex(stationDistanceRank);
+
+      // The color icons look better on the wearable with their white background
+      Notification.WearableExtender wearable = new Notification.WearableExtender()
+          .setContentIcon(FILL_COLOR[iconIndex])
+          .setHintHideIcon(true);
+
+      // Don't bother setting large icon, it's redundant with the small icon especially once you
+      // are on Lollipop.
+      Notification.Builder builder = new Notification.Builder(context)
+          .setSmallIcon(FILL_BW[iconIndex])
+          .setColor(context.getResources().getColor(R.color.availableBikes))
+          .setContentTitle(station.stationName);
+      switch (action) {
+        case ACTION_RIDE:
+          builder.setContentText(getDocks(stationDistanceRank))
+              .setPriority(NotificationCompat.PRIORITY_MAX)
+              .setVibrate(getAppropriateBuzz(state, stationDistanceRank));
+          wearable.addAction(getIdleAction())
+              .addAction(getSearchAction())
+              .addAction(getSilenceAction());
+          break;
+        case ACTION_SEARCH:
+          builder.setContentText(getBikesAndDuds(stationDistanceRank))
+              .setVibrate(BUZZ_SILENT)
+              .setPriority(NotificationCompat.PRIORITY_MAX);
+          wearable.addActions(getRideActions(state.getSettings()))
+              .addAction(getIdleAction())
+              .addAction(getSilenceAction());
+          break;
+        case ACTION_IDLE:
+          builder.setContentText(getBikesAndDuds(stationDistanceRank))
+              .setPriority(NotificationCompat.PRIORITY_DEFAULT);
+          wearable.addAction(getSearchAction())
+              .addActions(getRideActions(state.getSettings()))
+              .addAction(getSilenceAction());
+          break;
+      }
+      builder.setContentIntent(getContentIntent())
+          .extend(wearable);
+
+      notificationManager.notify(NOTIFICATION_ID, builder.build());
+      postedKey = key;
+      cancelled = false;
+      return true;
+    } finally {
+      previousStationDistanceRank = stationDistanceRank;
+    }
+  }
+
+  /**
+   * Removes the notification, if it is showing. Only the first of several calls in a row does
+   * anything, though that first one always does, in case an earlier process left one showing.
+   */
+  void cancel() {
+    if (cancelled) {
+      return;
+    }
+    notificationManager.cancel(NOTIFICATION_ID);
+    postedKey = null;
+    cancelled = true;
+  }
+
+  private long[] getAppropriateBuzz(
+      ActionState state, StationDistanceRank nextStationDistanceRank) {
+    if (state.getSettings().isVibrationEnabled() && state.getDestinationName() != null) {
+      if (previousStationDistanceRank == null) {
+        return BUZZ_RANKS[nextStationDistanceRank.getLimitedRank()];
+      }
+      Station previousStation = previousStationDistanceRank.getStationDistance().getStation();
+      Station nextStation = nextStationDistanceRank.getStationDistance().getStation();
+      if (previousStation.availableBikes != nextStation.availableBikes
+          || previousStation.availableDocks != nextStation.availableDocks
+          || previousStation.id != nextStation.id) {
+        return BUZZ_RANKS[nextStationDistanceRank.getLimitedRank()];
+      }
+    }
+    return BUZZ_SILENT;
+  }
+
+  private static int getIconIndex(StationDistanceRank stationDistanceRank) {
+    Station station = stationDistanceRank.getStationDistance().getStation();
+    int limitedRank = stationDistanceRank.getLimitedRank();
+    int iconIndex;
+    if (station.availableBikes == 0) {
+      iconIndex = 0;
+    } else if (station.availableDocks == 0) {
+      iconIndex = 8;
+    } else {
+      int max = station.availableDocks + station.availableBikes;
+      iconIndex = ((station.availableBikes * 7) / max) + 1;
+    }
+    // Adjust index if the current rank is > 0.
+    return iconIndex + (limitedRank * 9);
+  }
+
+
+  private static String getBikesAndDuds(StationDistanceRank stationDistanceRank) {
+    StationDistance stationDistance = stationDistanceRank.getStationDistance();
+    Station station = stationDistance.getStation();
+    int duds = station.totalDocks - (station.availableDocks + station.availableBikes);
+    return getRankString(stationDistanceRank.getRank())
+        + "Bikes: " + station.availableBikes + " Duds: " + duds + "\n"
+        + "Go: " + stationDistance.getDistanceString();
+  }
+
+  private static String getDocks(StationDistanceRank stationDistanceRank) {
+    StationDistance stationDistance = stationDistanceRank.getStationDistance();
+    return getRankString(stationDistanceRank.getRank())
+        + "Docks: " + stationDistance.getStation().availableDocks + "\n"
+        + "Go: " + stationDistance.getDistanceString();
+  }
+
+  private static String getRankString(int rank) {
+    return rank == 0 ? "" : "Rank: " + (rank + 1) + "\n";
+  }
+
+  private Notification.Action getSearchAction() {
+    if (searchAction == null) {
+      searchAction = new Notification.Action(
+          R.drawable.ic_search_white_24dp,
+          "Search",
+          getActionSettingIntent(ACTION_SEARCH));
+    }
+    return searchAction;
+  }
+
+  private Notification.Action getIdleAction() {
+    if (idleAction == null) {
+      idleAction = new Notification.Action(
+          R.drawable.ic_pause_white_24dp,
+          "Idle",
+          getActionSettingIntent(ACTION_IDLE));
+    }
+    return idleAction;
+  }
+
+  private List<Notification.Action> getRideActions(SettingsSnapshot settings) {
+    List<Notification.Action> actions = new ArrayList<Notification.Action>();
+    if (settings.isHomeDestinationActive()) {
+      if (rideHomeAction == null) {
+        rideHomeAction = new Notification.Action(
+            R.drawable.ic_directions_bike_white_24dp,
+            DESTINATION_NAME_HOME,
+            getRideActionWithDestinationIntent(DESTINATION_NAME_HOME));
+      }
+      actions.add(rideHomeAction);
+    }
+    if (settings.isWorkDestinationActive()) {
+      if (rideWorkAction == null) {
+        rideWorkAction = new Notification.Action(
+            R.drawable.ic_directions_bike_white_24dp,
+            DESTINATION_NAME_WORK,
+            getRideActionWithDestinationIntent(DESTINATION_NAME_WORK));
+      }
+      actions.add(rideWorkAction);
+    }
+    if (roamAction == null) {
+      roamAction = new Notification.Action(
+          R.drawable.ic_directions_bike_white_24dp,
+          "Roam",
+          getActionSettingIntent(ACTION_RIDE));
+    }
+    actions.add(roamAction);
+    return actions;
+  }
+
+  private Notification.Action getSilenceAction() {
+    if (silenceAction == null) {
+      silenceAction = new Notification.Action(
+          R.drawable.ic_volume_off_white_24dp,
+          "Mute",
+          getActionSettingIntent(ACTION_SILENCE));
+    }
+    return silenceAction;
+  }
+
+  private PendingIntent getContentIntent() {
+    if (contentIntent == null) {
+      Intent resultIntent = new Intent(context, StationDataActivity.class);
+      contentIntent = PendingIntent.getActivity(
+          context,
+          0,
+          resultIntent,
+          PendingIntent.FLAG_UPDATE_CURRENT);
+    }
+    return contentIntent;
+  }
+
+  private PendingIntent getActionSettingIntent(int action) {
+    Uri data = Constants.STATION_URI.buildUpon()
+        // TODO: Don't use update keys for query param names
+        .appendQueryParameter(UPDATE_KEY_ACTION, Integer.toString(action))
+        .build();
+    Intent intent = new Intent(context, ActionIntentService.class);
+    intent.setData(data);
+
+    PendingIntent pendingIntent = PendingIntent.getService(
+        context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+    return pendingIntent;
+  }
+
+  private PendingIntent getRideActionWithDestinationIntent(String destination) {
+    Uri data = Constants.STATION_URI.buildUpon()
+        .appendQueryParameter(UPDATE_KEY_ACTION, Integer.toString(ACTION_RIDE))
+        .appendQueryParameter(UPDATE_KEY_DESTINATION, destination)
+        .build();
+    Intent intent = new Intent(context, ActionIntentService.class);
+    intent.setData(data);
+
+    PendingIntent pendingIntent = PendingIntent.getService(
+        context, 0, intent, PendingIntent.FLAG_UPDATE_CURRENT);
+
+    return pendingIntent;
+  }
+
+  /**
+   * Everything that a posted notification shows: the action and the ride actions offered, and the
+   * station, its rank, its counts and its distance as rendered. Two passes with equal keys would
+   * post identical notifications.
+   */
+  static final class ContentKey {
+
+    private final int action;
+    private final boolean homeDestinationActive;
+    private final boolean workDestinationActive;
+    private final int stationId;
+    private final int rank;
+    private final int availableBikes;
+    private final int availableDocks;
+    private final int totalDocks;
+    private final String distance;
+
+    ContentKey(ActionState state, StationDistanceRank stationDistanceRank) {
+      StationDistance stationDistance = stationDistanceRank.getStationDistance();
+      Station station = stationDistance.getStation();
+      this.action = state.getAction();
+      this.homeDestinationActive = state.getSettings().isHomeDestinationActive();
+      this.workDestinationActive = state.getSettings().isWorkDestinationActive();
+      this.stationId = station.id;
+      this.rank = stationDistanceRank.getRank();
+      this.availableBikes = station.availableBikes;
+      this.availableDocks = station.availableDocks;
+      this.totalDocks = station.totalDocks;
+      this.distance = stationDistance.getDistanceString();
+    }
+
+    @Override
+    public boolean equals(Object object) {
+      if (!(object instanceof ContentKey)) {
+        return false;
+      }
+      ContentKey other = (ContentKey) object;
+      return action == other.action
+          && homeDestinationActive == other.homeDestinationActive
+          && workDestinationActive == other.workDestinationActive
+          && stationId == other.stationId
+          && rank == other.rank
+          && availableBikes == other.availableBikes
+          && availableDocks == other.availableDocks
+          && totalDocks == other.totalDocks
+          && distance.equals(other.distance);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hashCode(action, homeDestinationActive, workDestinationActive, stationId,
+          rank, availableBikes, availableDocks, totalDocks, distance);
+    }
+  }
+}
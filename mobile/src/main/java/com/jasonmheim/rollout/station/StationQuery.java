@@ -0,0 +1,103 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.station;
+
+import android.net.Uri;
+
+import com.google.common.base.Predicate;
+import com.jasonmheim.rollout.data.Station;
+
+import static com.jasonmheim.rollout.Constants.QUERY_KEY_BIKES_ABOVE;
+import static com.jasonmheim.rollout.Constants.QUERY_KEY_DOCKS_ABOVE;
+import static com.jasonmheim.rollout.Constants.QUERY_KEY_LATITUDE;
+import static com.jasonmheim.rollout.Constants.QUERY_KEY_LIMIT;
+import static com.jasonmheim.rollout.Constants.QUERY_KEY_LONGITUDE;
+import static com.jasonmheim.rollout.Constants.QUERY_KEY_RADIUS_METERS;
+
+/**
+ * The stations asked for by a query on the station URI, parsed from its query parameters. See
+ * {@link com.jasonmheim.rollout.Constants#QUERY_KEY_LATITUDE} and the keys that follow it.
+ */
+final class StationQuery {
+
+  private static final double METERS_PER_MILE = 1609.344;
+
+  final boolean hasLocation;
+  final double latitude;
+  final double longitude;
+  final int limit;
+  final double radiusMiles;
+  final int bikesAbove;
+  final int docksAbove;
+
+  private StationQuery(Uri uri) {
+    String latitudeParameter = uri.getQueryParameter(QUERY_KEY_LATITUDE);
+    String longitudeParameter = uri.getQueryParameter(QUERY_KEY_LONGITUDE);
+    if ((latitudeParameter == null) != (longitudeParameter == null)) {
+      throw new IllegalArgumentException("Latitude and longitude must be given together: " + uri);
+    }
+    hasLocation = latitudeParameter != null;
+    latitude = hasLocation ? Double.parseDouble(latitudeParameter) : Double.NaN;
+    longitude = hasLocation ? Double.parseDouble(longitudeParameter) : Double.NaN;
+    limit = getInt(uri, QUERY_KEY_LIMIT, Integer.MAX_VALUE);
+    if (limit <= 0) {
+      throw new IllegalArgumentException("Limit must be positive: " + uri);
+    }
+    String radiusParameter = uri.getQueryParameter(QUERY_KEY_RADIUS_METERS);
+    radiusMiles = radiusParameter == null
+        ? Double.POSITIVE_INFINITY
+        : Double.parseDouble(radiusParameter) / METERS_PER_MILE;
+    if (radiusParameter != null && !hasLocation) {
+      throw new IllegalArgumentException("A radius needs a latitude and longitude: " + uri);
+    }
+    bikesAbove = getInt(uri, QUERY_KEY_BIKES_ABOVE, Integer.MIN_VALUE);
+    docksAbove = getInt(uri, QUERY_KEY_DOCKS_ABOVE, Integer.MIN_VALUE);
+  }
+
+  /**
+   * Parses the query parameters of {@code uri}.
+   *
+   * @throws IllegalArgumentException if a parameter is malformed
+   */
+  static StationQuery fromUri(Uri uri) {
+    return new StationQuery(uri);
+  }
+
+  /** Whether this query asks for anything other than the whole system. */
+  boolean isSelective() {
+    return hasLocation
+        || limit != Integer.MAX_VALUE
+        || radiusMiles != Double.POSITIVE_INFINITY
+        || bikesAbove != Integer.MIN_VALUE
+        || docksAbove != Integer.MIN_VALUE;
+  }
+
+  /** Whether a station has the bikes and docks asked for. */
+  Predicate<Station> getPredicate() {
+    return new Predicate<Station>() {
+      @Override
+      public boolean apply(Station station) {
+        return station.availableBikes > bikesAbove && station.availableDocks > docksAbove;
+      }
+    };
+  }
+
+  private static int getInt(Uri uri, String key, int defaultValue) {
+    String parameter = uri.getQueryParameter(key);
+    return parameter == null ? defaultValue : Integer.parseInt(parameter);
+  }
+}
@@ -0,0 +1,253 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.station;
+
+import com.google.common.base.Objects;
+import com.jasonmheim.rollout.data.Station;
+import com.jasonmheim.rollout.data.StationDistance;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The difference between the rows a list is showing and the rows of a newer ranking, as the steps
+ * that turn one into the other: rows removed, rows moved, rows inserted, and then the rows whose
+ * station is unchanged but would be drawn differently. The steps are in the order a
+ * {@link android.support.v7.widget.RecyclerView} expects to be notified of them, each position
+ * counted after the steps before it.
+ * <p>
+ * A new ranking after a short ride mostly keeps the stations in the same order, with a few
+ * overtaking others. The stations that keep their relative order are found as the longest run of
+ * them that is still in order, and only the rest are moved, so swapping two neighbours costs one
+ * move rather than a move for every row in between.
+ */
+final class StationRowDiff {
+
+  /** Receives the steps of a diff; see {@link #dispatchTo}. */
+  interface Callback {
+    void onRemoved(int position);
+
+    void onMoved(int fromPosition, int toPosition);
+
+    void onInserted(int position);
+
+    void onChanged(int position);
+  }
+
+  private static final int REMOVED = 0;
+  private static final int MOVED = 1;
+  private static final int INSERTED = 2;
+  private static final int CHANGED = 3;
+
+  // Each step is three ints: what happened, and one or two positions.
+  private final int[] steps;
+  private final int stepCount;
+  private final int movedCount;
+  private final int[] changedPositions;
+
+  private StationRowDiff(int[] steps, int stepCount, int movedCount, int[] changedPositions) {
+    this.steps = steps;
+    this.stepCount = stepCount;
+    this.movedCount = movedCount;
+    this.changedPositions = changedPositions;
+  }
+
+  static StationRowDiff between(List<StationDistance> oldRows, List<StationDistance> newRows) {
+    Map<Integer, StationDistance> oldById = new HashMap<Integer, StationDistance>();
+    for (StationDistance oldRow : oldRows) {
+      oldById.put(oldRow.getStation().id, oldRow);
+    }
+    Map<Integer, Integer> newPositionById = new HashMap<Integer, Integer>();
+    for (int position = 0; position < newRows.size(); position++) {
+      newPositionById.put(newRows.get(position).getStation().id, position);
+    }
+    Builder builder = new Builder(oldRows.size() + 2 * newRows.size());
+
+    // The ids as the list holds them while the steps are applied.
+    List<Integer> ids = new ArrayList<Integer>(Math.max(oldRows.size(), newRows.size()));
+    for (int position = oldRows.size() - 1; position >= 0; position--) {
+      int id = oldRows.get(position).getStation().id;
+      if (newPositionById.containsKey(id)) {
+        ids.add(0, id);
+      } else {
+        builder.add(REMOVED, position, 0);
+      }
+    }
+
+    // The stations left, in their new order, and which of them stay put.
+    List<Integer> kept = new ArrayList<Integer>(ids.size());
+    for (StationDistance newRow : newRows) {
+      if (oldById.containsKey(newRow.getStation().id)) {
+        kept.add(newRow.getStation().id);
+      }
+    }
+    int[] oldPositions = new int[kept.size()];
+    for (int i = 0; i < oldPositions.length; i++) {
+      oldPositions[i] = ids.indexOf(kept.get(i));
+    }
+    boolean[] inOrder = longestIncreasingRun(oldPositions);
+
+    // Each station that moves goes right after the one that now comes before it. Those are handled
+    // in their new order, so that one is already where it belongs, or never moves at all.
+    for (int i = 0; i < kept.size(); i++) {
+      if (inOrder[i]) {
+        continue;
+      }
+      Integer id = kept.get(i);
+      int from = ids.indexOf(id);
+      int to;
+      if (i == 0) {
+        to = 0;
+      } else {
+        int previous = ids.indexOf(kept.get(i - 1));
+        to = from > previous ? previous + 1 : previous;
+      }
+      if (from != to) {
+        ids.remove(from);
+        ids.add(to, id);
+        builder.add(MOVED, from, to);
+      }
+    }
+
+    // Every position before a new station is already final, so it goes in where it belongs.
+    for (int position = 0; position < newRows.size(); position++) {
+      int id = newRows.get(position).getStation().id;
+      if (!oldById.containsKey(id)) {
+        ids.add(position, id);
+        builder.add(INSERTED, position, 0);
+      }
+    }
+
+    int[] changedPositions = new int[newRows.size()];
+    int changedCount = 0;
+    for (int position = 0; position < newRows.size(); position++) {
+      StationDistance newRow = newRows.get(position);
+      StationDistance oldRow = oldById.get(newRow.getStation().id);
+      if (oldRow != null && !looksTheSame(oldRow, newRow)) {
+        changedPositions[changedCount++] = position;
+        builder.add(CHANGED, position, 0);
+      }
+    }
+    return new StationRowDiff(builder.steps, builder.count, builder.movedCount,
+        Arrays.copyOf(changedPositions, changedCount));
+  }
+
+  /** Whether any station moved, appeared or disappeared. */
+  boolean isStructural() {
+    for (int i = 0; i < stepCount; i += 3) {
+      if (steps[i] != CHANGED) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** The number of moves among the steps. */
+  int getMovedCount() {
+    return movedCount;
+  }
+
+  /** The new positions of the stations that were already shown, but now look different. */
+  int[] getChangedPositions() {
+    return changedPositions;
+  }
+
+  /** Replays the steps, in order, to the given callback. */
+  void dispatchTo(Callback callback) {
+    for (int i = 0; i < stepCount; i += 3) {
+      switch (steps[i]) {
+        case REMOVED:
+          callback.onRemoved(steps[i + 1]);
+          break;
+        case MOVED:
+          callback.onMoved(steps[i + 1], steps[i + 2]);
+          break;
+        case INSERTED:
+          callback.onInserted(steps[i + 1]);
+          break;
+        default:
+          callback.onChanged(steps[i + 1]);
+          break;
+      }
+    }
+  }
+
+  // Marks the longest strictly increasing subsequence of the values, found by patience sorting.
+  private static boolean[] longestIncreasingRun(int[] values) {
+    int[] tails = new int[values.length];
+    int[] previous = new int[values.length];
+    int length = 0;
+    for (int i = 0; i < values.length; i++) {
+      int low = 0;
+      int high = length;
+      while (low < high) {
+        int middle = (low + high) >>> 1;
+        if (values[tails[middle]] < values[i]) {
+          low = middle + 1;
+        } else {
+          high = middle;
+        }
+      }
+      previous[i] = low > 0 ? tails[low - 1] : -1;
+      tails[low] = i;
+      if (low == length) {
+        length++;
+      }
+    }
+    boolean[] inRun = new boolean[values.length];
+    for (int i = length > 0 ? tails[length - 1] : -1; i >= 0; i = previous[i]) {
+      inRun[i] = true;
+    }
+    return inRun;
+  }
+
+  // Compares everything a row shows: the name, the counts, and the distance and direction.
+  private static boolean looksTheSame(StationDistance oldRow, StationDistance newRow) {
+    Station oldStation = oldRow.getStation();
+    Station newStation = newRow.getStation();
+    return oldStation.availableBikes == newStation.availableBikes
+        && oldStation.availableDocks == newStation.availableDocks
+        && oldStation.totalDocks == newStation.totalDocks
+        && Objects.equal(oldStation.stationName, newStation.stationName)
+        && Objects.equal(oldRow.getDistanceString(), newRow.getDistanceString());
+  }
+
+  private static class Builder {
+    int[] steps;
+    int count;
+    int movedCount;
+
+    Builder(int expectedSteps) {
+      steps = new int[3 * Math.max(expectedSteps, 1)];
+    }
+
+    void add(int kind, int position, int toPosition) {
+      if (count + 3 > steps.length) {
+        steps = Arrays.copyOf(steps, steps.length * 2);
+      }
+      steps[count++] = kind;
+      steps[count++] = position;
+      steps[count++] = toPosition;
+      if (kind == MOVED) {
+        movedCount++;
+      }
+    }
+  }
+}
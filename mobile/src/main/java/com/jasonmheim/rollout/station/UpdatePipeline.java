@@ -0,0 +1,156 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.station;
+
+import android.util.Log;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Runs every update of the notification, and of the observers and the wearable that follow it,
+ * one pass at a time on a single worker. Changes to the station data, the action, the location and
+ * the settings are posted as event flags. While a pass is queued or running, further events only
+ * add their flags, so a burst of them is handled by one pass that reads the newest state of
+ * everything: a pass needs to know what changed, but not how many times.
+ * <p>
+ * The queue depth, the number of events folded into another one's pass and the latency of each
+ * stage of the most recent pass are kept for diagnostics; see {@link StationDataCursor}.
+ */
+class UpdatePipeline {
+
+  static final int EVENT_STATIONS = 1;
+  static final int EVENT_ACTION = 1 << 1;
+  static final int EVENT_LOCATION = 1 << 2;
+  static final int EVENT_SETTINGS = 1 << 3;
+
+  /** From the first event of a pass being posted to the pass starting. */
+  static final int STAGE_QUEUE = 0;
+  /** Choosing the target station, the nearby stations, and the geofence candidates when riding. */
+  static final int STAGE_RANK = 1;
+  /** Posting the notification and geofences, and rescheduling syncs. */
+  static final int STAGE_NOTIFICATION = 2;
+  /** Notifying the content observers, which include the station list. */
+  static final int STAGE_OBSERVERS = 3;
+  /** Pushing the nearby stations to the wearable, which may block on connecting to it. */
+  static final int STAGE_WEARABLE = 4;
+  static final int STAGE_COUNT = 5;
+
+  /** Does the work of a pass. */
+  interface Processor {
+    /** Handles every event posted since the last pass, as a union of the event flags. */
+    void process(int events);
+  }
+
+  private final Executor executor;
+  private final Processor processor;
+
+  // All guarded by this.
+  private int pendingEvents;
+  private int queueDepth;
+  private long firstPostedNanos;
+  private boolean draining;
+  private long passCount;
+  private long coalescedCount;
+  private final long[] stageNanos = new long[STAGE_COUNT];
+
+  private final Runnable drain = new Runnable() {
+    @Override
+    public void run() {
+      while (true) {
+        int events;
+        synchronized (UpdatePipeline.this) {
+          if (pendingEvents == 0) {
+            draining = false;
+            return;
+          }
+          events = pendingEvents;
+          pendingEvents = 0;
+          passCount++;
+          coalescedCount += queueDepth - 1;
+          queueDepth = 0;
+          stageNanos[STAGE_QUEUE] = System.nanoTime() - firstPostedNanos;
+        }
+        try {
+          processor.process(events);
+        } catch (RuntimeException ex) {
+          Log.e("Rollout", "Update pass failed for events " + events, ex);
+        }
+      }
+    }
+  };
+
+  /**
+   * Creates a pipeline that runs passes on {@code executor}. Since passes never overlap, the
+   * executor needs no more than one thread of its own.
+   */
+  UpdatePipeline(Executor executor, Processor processor) {
+    this.executor = executor;
+    this.processor = processor;
+  }
+
+  /** Queues a pass for the given events, unless one is queued already. */
+  void post(int events) {
+    synchronized (this) {
+      if (queueDepth == 0) {
+        firstPostedNanos = System.nanoTime();
+      }
+      pendingEvents |= events;
+      queueDepth++;
+      if (draining) {
+        return;
+      }
+      draining = true;
+    }
+    executor.execute(drain);
+  }
+
+  /**
+   * Records the latency of a stage of the current pass that started at {@code startNanos}, and
+   * returns the current time, at which the next stage starts.
+   */
+  long finishStage(int stage, long startNanos) {
+    long now = System.nanoTime();
+    synchronized (this) {
+      stageNanos[stage] = now - startNanos;
+    }
+    return now;
+  }
+
+  /** The number of events posted that no pass has started on yet. */
+  synchronized int getQueueDepth() {
+    return queueDepth;
+  }
+
+  /** The number of passes started. */
+  synchronized long getPassCount() {
+    return passCount;
+  }
+
+  /** The number of events that were handled by a pass started for an earlier one. */
+  synchronized long getCoalescedCount() {
+    return coalescedCount;
+  }
+
+  /** The latency of each stage of the most recent pass, in milliseconds, by stage. */
+  synchronized long[] getStageMillis() {
+    long[] stageMillis = new long[STAGE_COUNT];
+    for (int stage = 0; stage < STAGE_COUNT; stage++) {
+      stageMillis[stage] = stageNanos[stage] / 1000000;
+    }
+    return stageMillis;
+  }
+}
@@ -23,9 +23,10 @@ import android.net.Uri;
 import android.os.Handler;
 import android.util.Log;
 
-import com.google.gson.Gson;
 import com.jasonmheim.rollout.Constants;
 import com.jasonmheim.rollout.data.StationList;
+import com.jasonmheim.rollout.data.StationListDelta;
+import com.jasonmheim.rollout.station.StationDataCursor;
 import com.squareup.otto.Bus;
 
 import javax.inject.Inject;
@@ -33,14 +34,19 @@ import javax.inject.Singleton;
 
 /**
  * Helper class to manage the last known station list. This downloads the data from the content
- * provider but also registers a {@link ContentObserver} so that any updates to data, location, or
- * action will trigger the data to be re-obtained and broadcast within the process.
+ * provider but also registers a {@link ContentObserver} so that any updates to data, location,
+ * action or settings are broadcast within the process. The data are only re-obtained when the
+ * stations themselves have changed; other changes rebroadcast the list already held.
+ * <p>
+ * Location, action and settings changes are broadcast as a {@link StationDataUpdateEvent}, since
+ * they affect the ranking even when the stations have not changed. When the stations have changed,
+ * a {@link StationDataDeltaEvent} describing exactly which ones is posted instead, so that
+ * subscribers can update just those stations.
  */
 @Singleton
 public class LastKnownStationList {
 
   private final Bus bus;
-  private final Gson gson;
   private final ContentResolver contentResolver;
 
   private StationList stationList;
@@ -48,23 +54,24 @@ public class LastKnownStationList {
   @Inject
   public LastKnownStationList(
       Bus bus,
-      ContentResolver contentResolver,
-      Gson gson) {
+      ContentResolver contentResolver) {
     this.bus = bus;
     this.contentResolver = contentResolver;
-    this.gson = gson;
   }
 
   public synchronized StationList get() {
     if (stationList == null) {
       Cursor cursor = contentResolver.query(Constants.STATION_URI, null, null, null, null);
       try {
-        // TODO: make a helper for serialization/deserialization
-        stationList = gson.fromJson(cursor.getString(0), StationList.class);
-        contentResolver.registerContentObserver(Constants.STATION_URI, true, new Observer());
+        stationList = StationDataCursor.readStationList(cursor);
+        Observer observer = new Observer();
+        contentResolver.registerContentObserver(Constants.STATION_URI, true, observer);
+        contentResolver.registerContentObserver(Constants.ACTION_URI, false, observer);
+        contentResolver.registerContentObserver(Constants.LOCATION_URI, false, observer);
+        contentResolver.registerContentObserver(Constants.SETTINGS_URI, false, observer);
         Log.i("Rollout", "Initialized last know station list.");
       } catch (RuntimeException ex) {
-        Log.w("Rollout", "Failed to deserialize station list during initialization.", ex);
+        Log.w("Rollout", "Failed to read station list during initialization.", ex);
       } finally {
         cursor.close();
       }
@@ -85,13 +92,25 @@ public class LastKnownStationList {
     @Override
     public void onChange(boolean selfChange, Uri uri) {
       super.onChange(selfChange, uri);
+      if (uri != null && !Constants.STATION_URI.equals(uri)) {
+        // The stations are as they were, but their ranking may not be.
+        Log.i("Rollout", "Content observer received update for " + uri.getPath());
+        bus.post(new StationDataUpdateEvent(stationList));
+        return;
+      }
       Cursor cursor = contentResolver.query(Constants.STATION_URI, null, null, null, null);
       try {
-        stationList = gson.fromJson(cursor.getString(0), StationList.class);
+        StationList newStationList = StationDataCursor.readStationList(cursor);
+        StationListDelta delta = StationListDelta.between(stationList, newStationList);
+        stationList = newStationList;
         Log.i("Rollout", "Content observer received update.");
-        bus.post(new StationDataUpdateEvent(stationList));
+        if (delta.isEmpty()) {
+          bus.post(new StationDataUpdateEvent(stationList));
+        } else {
+          bus.post(new StationDataDeltaEvent(stationList, delta));
+        }
       } catch (RuntimeException ex) {
-        Log.w("Rollout", "Failed to deserialize station list from update.", ex);
+        Log.w("Rollout", "Failed to read station list from update.", ex);
       } finally {
         cursor.close();
       }
@@ -0,0 +1,43 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.sync;
+
+import com.jasonmheim.rollout.data.StationList;
+import com.jasonmheim.rollout.data.StationListDelta;
+
+/**
+ * Denotes that the station data have been updated, and which stations changed. Never posted when
+ * nothing changed.
+ */
+public class StationDataDeltaEvent {
+
+  private final StationList stationList;
+  private final StationListDelta delta;
+
+  public StationDataDeltaEvent(StationList stationList, StationListDelta delta) {
+    this.stationList = stationList;
+    this.delta = delta;
+  }
+
+  public StationList getStationList() {
+    return stationList;
+  }
+
+  public StationListDelta getDelta() {
+    return delta;
+  }
+}
@@ -22,45 +22,59 @@ import android.content.ContentProviderClient;
 import android.content.ContentValues;
 import android.content.Context;
 import android.content.SyncResult;
+import android.net.Uri;
 import android.os.Bundle;
 import android.os.RemoteException;
 import android.util.Log;
 
-import com.google.gson.Gson;
 import com.jasonmheim.rollout.Constants;
+import com.jasonmheim.rollout.data.StationCatalog;
+import com.jasonmheim.rollout.data.StationListBinaryFormat;
+import com.jasonmheim.rollout.data.StationStatusSnapshot;
 import com.jasonmheim.rollout.station.StationDataDownloader;
 import com.jasonmheim.rollout.data.StationList;
 import com.jasonmheim.rollout.inject.ObjectGraphProvider;
 import com.squareup.otto.Bus;
 
+import java.nio.ByteBuffer;
 import java.util.Date;
 
 import javax.inject.Inject;
 import javax.inject.Provider;
 
+import static com.jasonmheim.rollout.Constants.INSERT_KEY_CATALOG;
+import static com.jasonmheim.rollout.Constants.INSERT_KEY_STATUS;
+
 /**
- * A sync adapter that downloads and stores the latest station data.
+ * A sync adapter that downloads and stores the latest station data. Only the live counts are passed
+ * to the content provider on every sync; the station catalog is passed when it changes.
  */
 public class StationDataSyncAdapter extends AbstractThreadedSyncAdapter {
 
   @Inject
   Bus bus;
 
-  @Inject
-  Gson gson;
-
   @Inject
   StationDataDownloader stationListDownloader;
 
   @Inject
   Provider<Date> dateProvider;
 
+  // The catalog most recently accepted by the content provider, which need not be sent again.
+  private StationCatalog sentCatalog;
+
   StationDataSyncAdapter(Context context) {
     super(context, false);
     Log.i("Rollout", "Creating data retriever");
     ((ObjectGraphProvider) context.getApplicationContext()).get().inject(this);
   }
 
+  /** Test only constructor */
+  StationDataSyncAdapter(Context context, StationDataDownloader stationListDownloader) {
+    super(context, false);
+    this.stationListDownloader = stationListDownloader;
+  }
+
   @Override
   public void onPerformSync(
       Account account,
@@ -73,13 +87,30 @@ public class StationDataSyncAdapter extends AbstractThreadedSyncAdapter {
       Log.w("Rollout", "StationList provider returned null");
     } else {
       Log.i("Rollout", "SYNCED " + stationList.stationBeanList.size() + " stations.");
+      StationCatalog catalog = StationCatalog.of(stationList);
       ContentValues values = new ContentValues();
-      values.put("StationList", gson.toJson(stationList));
+      values.put(INSERT_KEY_STATUS, toByteArray(
+          StationListBinaryFormat.encodeSnapshot(StationStatusSnapshot.of(stationList))));
+      if (!catalog.equals(sentCatalog)) {
+        values.put(INSERT_KEY_CATALOG, toByteArray(StationListBinaryFormat.encodeCatalog(catalog)));
+      }
       try {
-        contentProviderClient.insert(Constants.AUTHORITY_URI, values);
+        Uri result = contentProviderClient.insert(Constants.STATION_URI, values);
+        if (result == null && !values.containsKey(INSERT_KEY_CATALOG)) {
+          // The provider has lost or never had the catalog, e.g. its data were cleared.
+          values.put(INSERT_KEY_CATALOG, toByteArray(StationListBinaryFormat.encodeCatalog(catalog)));
+          result = contentProviderClient.insert(Constants.STATION_URI, values);
+        }
+        sentCatalog = result == null ? null : catalog;
       } catch (RemoteException ex) {
         Log.w("Rollout", "Failed to insert sync data", ex);
       }
     }
   }
+
+  private static byte[] toByteArray(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return bytes;
+  }
 }
@@ -0,0 +1,224 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.sync;
+
+import android.content.ContentResolver;
+import android.location.Location;
+import android.os.Bundle;
+import android.util.Log;
+
+import com.jasonmheim.rollout.action.ActionState;
+import com.jasonmheim.rollout.data.Station;
+import com.jasonmheim.rollout.data.StationDelta;
+import com.jasonmheim.rollout.data.StationDistanceRank;
+import com.jasonmheim.rollout.data.StationListDelta;
+import com.jasonmheim.rollout.settings.SettingsSnapshot;
+
+import java.util.Calendar;
+import java.util.Date;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+
+import static com.jasonmheim.rollout.Constants.ACCOUNT;
+import static com.jasonmheim.rollout.Constants.ACTION_IDLE;
+import static com.jasonmheim.rollout.Constants.ACTION_RIDE;
+import static com.jasonmheim.rollout.Constants.ACTION_SEARCH;
+import static com.jasonmheim.rollout.Constants.AUTHORITY;
+import static com.jasonmheim.rollout.Constants.SECONDS_PER_MINUTE;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Decides how often the sync adapter polls for station data. Each action has a base period, which
+ * is then stretched or shrunk according to:
+ * <ul>
+ *   <li>how often the stations near the user actually changed over recent syncs; a quiet
+ *       neighborhood is polled up to half as often,
+ *   <li>whether the user is heading for a station that is nearly empty, or nearly full when riding,
+ *       and will get there within a few minutes, in which case it is polled every
+ *       {@link #CRITICAL_PERIOD_SECONDS}, faster than any base period,
+ *   <li>and the time of day, since counts barely move overnight.
+ * </ul>
+ * The period is registered with {@link ContentResolver#addPeriodicSync} only when it changes. If
+ * the period drops while the data are already older than the new period, a one off sync is
+ * requested as well so that the user does not wait out the old one. A period shorter than
+ * {@link #MIN_PERIOD_SECONDS} cannot be left to the periodic sync, so while it applies an expedited
+ * one off sync is requested on every reschedule that finds the data older than the period.
+ */
+@Singleton
+public class SyncScheduler {
+
+  /** The shortest period the sync framework reliably honors. */
+  static final long MIN_PERIOD_SECONDS = 60;
+
+  /** The period while the user closes in on a critical station, below the periodic minimum. */
+  static final long CRITICAL_PERIOD_SECONDS = 30;
+
+  // Stations within this distance of the user are the ones whose churn matters.
+  static final float NEARBY_METERS = 800;
+
+  // A station is nearly empty or full when within this many of the user's threshold.
+  static final int CRITICAL_MARGIN = 2;
+
+  // The user is about to reach the target station when expected within this many minutes.
+  static final double ARRIVAL_MINUTES = 5;
+
+  // Assume a walking pace when the user's speed is unknown.
+  static final double DEFAULT_METERS_PER_SECOND = 1.4;
+
+  // Weight of the latest sync in the moving average of nearby churn.
+  private static final double CHURN_WEIGHT = 0.25;
+
+  // Local hours, inclusive start and exclusive end, during which the system is assumed quiet.
+  private static final int NIGHT_START_HOUR = 1;
+  private static final int NIGHT_END_HOUR = 6;
+
+  private final Provider<Date> dateProvider;
+
+  // Moving average of the fraction of syncs in which a station near the user changed. Start out
+  // assuming everything changes, so that nothing is polled more slowly until there is evidence.
+  private double nearbyChurn = 1;
+  private Location previousLocation;
+  private double metersPerSecond = -1;
+  private long dataTimestamp;
+  private long periodSeconds;
+
+  @Inject
+  SyncScheduler(Provider<Date> dateProvider) {
+    this.dateProvider = dateProvider;
+  }
+
+  /**
+   * Records a sync result: whether any station within {@link #NEARBY_METERS} of the user changed,
+   * and when the data were fetched.
+   */
+  public synchronized void onStationData(
+      StationListDelta delta, long timestamp, Location location) {
+    dataTimestamp = timestamp;
+    if (location == null) {
+      return;
+    }
+    boolean nearbyChanged = false;
+    float[] meters = new float[1];
+    for (StationDelta change : delta.getChanges()) {
+      Station station = change.getCurrent() == null ? change.getPrevious() : change.getCurrent();
+      Location.distanceBetween(location.getLatitude(), location.getLongitude(),
+          station.latitude, station.longitude, meters);
+      if (meters[0] <= NEARBY_METERS) {
+        nearbyChanged = true;
+        break;
+      }
+    }
+    nearbyChurn = ((1 - CHURN_WEIGHT) * nearbyChurn) + (nearbyChanged ? CHURN_WEIGHT : 0);
+  }
+
+  /**
+   * Recomputes the sync period after a change to the action, the location, or the data, and
+   * registers it if it changed. The action and thresholds are those of {@code state}, which should
+   * be the state that {@code target} was chosen for. {@code location} and {@code target} may be null
+   * when unknown.
+   */
+  public synchronized void reschedule(
+      ActionState state, Location location, StationDistanceRank target) {
+    int action = state.getAction();
+    updateSpeed(location);
+    double minutesToTarget = -1;
+    boolean critical = false;
+    if (target != null) {
+      double meters = target.getStationDistance().getMetersToLocation();
+      double speed = metersPerSecond > 0 ? metersPerSecond : DEFAULT_METERS_PER_SECOND;
+      minutesToTarget = meters / speed / SECONDS_PER_MINUTE;
+      critical = isCritical(
+          action, state.getSettings(), target.getStationDistance().getStation());
+    }
+    Calendar calendar = Calendar.getInstance();
+    Date now = dateProvider.get();
+    calendar.setTime(now);
+    long newPeriodSeconds = computePeriodSeconds(action, nearbyChurn, minutesToTarget, critical,
+        calendar.get(Calendar.HOUR_OF_DAY));
+    long ageSeconds = (now.getTime() - dataTimestamp) / 1000;
+    boolean due = ageSeconds >= newPeriodSeconds
+        && (newPeriodSeconds < periodSeconds || newPeriodSeconds < MIN_PERIOD_SECONDS);
+    if (newPeriodSeconds != periodSeconds) {
+      Log.i("Rollout", "Data update period in seconds: " + newPeriodSeconds
+          + " (nearby churn " + nearbyChurn + ", minutes to target " + minutesToTarget + ")");
+      ContentResolver.addPeriodicSync(ACCOUNT, AUTHORITY, Bundle.EMPTY,
+          max(MIN_PERIOD_SECONDS, newPeriodSeconds));
+      periodSeconds = newPeriodSeconds;
+    }
+    if (due) {
+      Bundle settingsBundle = new Bundle();
+      settingsBundle.putBoolean(ContentResolver.SYNC_EXTRAS_EXPEDITED, true);
+      ContentResolver.requestSync(ACCOUNT, AUTHORITY, settingsBundle);
+    }
+  }
+
+  /**
+   * The sync period for the given conditions. {@code nearbyChurn} is the fraction of recent syncs
+   * in which a nearby station changed, and {@code minutesToTarget} is -1 if there is no target.
+   */
+  static long computePeriodSeconds(
+      int action, double nearbyChurn, double minutesToTarget, boolean critical, int hourOfDay) {
+    long baseSeconds = getBasePeriodMinutes(action) * SECONDS_PER_MINUTE;
+    if (critical && minutesToTarget >= 0 && minutesToTarget <= ARRIVAL_MINUTES) {
+      return CRITICAL_PERIOD_SECONDS;
+    }
+    // Anywhere from the base period when everything changes, to twice it when nothing does.
+    double factor = 2 - max(0, min(1, nearbyChurn));
+    if (hourOfDay >= NIGHT_START_HOUR && hourOfDay < NIGHT_END_HOUR) {
+      factor *= 2;
+    }
+    return max(MIN_PERIOD_SECONDS, (long) (baseSeconds * factor));
+  }
+
+  private static long getBasePeriodMinutes(int action) {
+    switch (action) {
+      case ACTION_SEARCH:
+      case ACTION_RIDE:
+        return 1;
+      case ACTION_IDLE:
+        return 5;
+      default:
+        return 20;
+    }
+  }
+
+  /** Whether {@code station} is within {@link #CRITICAL_MARGIN} of the user's threshold. */
+  static boolean isCritical(int action, SettingsSnapshot settings, Station station) {
+    if (action == ACTION_RIDE) {
+      return station.availableDocks <= settings.getFullThreshold() + CRITICAL_MARGIN;
+    }
+    return station.availableBikes <= settings.getEmptyThreshold() + CRITICAL_MARGIN;
+  }
+
+  private void updateSpeed(Location location) {
+    if (location == null) {
+      return;
+    }
+    if (location.hasSpeed()) {
+      metersPerSecond = location.getSpeed();
+    } else if (previousLocation != null && location.getTime() > previousLocation.getTime()) {
+      metersPerSecond = location.distanceTo(previousLocation) * 1000
+          / (location.getTime() - previousLocation.getTime());
+    }
+    if (previousLocation == null || location.getTime() != previousLocation.getTime()) {
+      previousLocation = location;
+    }
+  }
+}
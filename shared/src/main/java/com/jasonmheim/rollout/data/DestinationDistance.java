@@ -28,6 +28,9 @@ package com.jasonmheim.rollout.data;
  */
 public class DestinationDistance extends StationDistance {
 
+  /** How much more heavily the distance to the destination is weighed than the distance to go. */
+  static final int DESTINATION_WEIGHT = 4;
+
   private final double milesToDestination;
 
   public DestinationDistance(
@@ -55,13 +58,20 @@ public class DestinationDistance extends StationDistance {
     return milesToKilometers(milesToDestination);
   }
 
+  @Override
+  double getWeightedMiles() {
+    return weightedMiles(milesToDestination, milesToLocation);
+  }
+
+  static double weightedMiles(double milesToDestination, double milesToLocation) {
+    return (milesToDestination * DESTINATION_WEIGHT) + milesToLocation;
+  }
+
   @Override
   public int compareTo(StationDistance otherType) {
     if (otherType instanceof DestinationDistance) {
       DestinationDistance other = (DestinationDistance) otherType;
-      return Double.compare(
-          (milesToDestination * 4) + milesToLocation,
-          (other.milesToDestination * 4) + other.milesToLocation);
+      return Double.compare(getWeightedMiles(), other.getWeightedMiles());
     }
     return super.compareTo(otherType);
   }
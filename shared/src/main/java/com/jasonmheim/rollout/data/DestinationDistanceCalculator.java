@@ -18,12 +18,8 @@ package com.jasonmheim.rollout.data;
 
 import com.google.common.base.Function;
 
-import static java.lang.Math.PI;
-import static java.lang.Math.acos;
-import static java.lang.Math.atan2;
 import static java.lang.Math.cos;
 import static java.lang.Math.sin;
-import static java.lang.Math.toDegrees;
 import static java.lang.Math.toRadians;
 
 /**
@@ -33,33 +29,35 @@ import static java.lang.Math.toRadians;
  */
 public class DestinationDistanceCalculator implements Function<Station, DestinationDistance> {
 
-  private final double latitudeRadians;
-  private final double longitudeRadians;
-  private final double destinationLatitudeRadians;
-  private final double destinationLongitudeRadians;
+  private final GeoPoint location;
+  private final GeoPoint destination;
 
   public DestinationDistanceCalculator(
       double latitude,
       double longitude,
       double destinationLatitude,
       double destinationLongitude) {
-    this.latitudeRadians = toRadians(latitude);
-    this.longitudeRadians = toRadians(longitude);
-    this.destinationLatitudeRadians = toRadians(destinationLatitude);
-    this.destinationLongitudeRadians = toRadians(destinationLongitude);
+    this.location = new GeoPoint(latitude, longitude);
+    this.destination = new GeoPoint(destinationLatitude, destinationLongitude);
   }
 
   @Override
   public DestinationDistance apply(Station station) {
+    // The station's trigonometry is shared by both distances and the compass direction.
     double stationLatitudeRadians = toRadians(station.latitude);
     double stationLongitudeRadians = toRadians(station.longitude);
+    double sinStationLatitude = sin(stationLatitudeRadians);
+    double cosStationLatitude = cos(stationLatitudeRadians);
+    double theta = stationLongitudeRadians - location.longitude;
+    double cosTheta = cos(theta);
     return new DestinationDistance(
         station,
-        GeoUtils.distanceInMiles(destinationLatitudeRadians, destinationLongitudeRadians,
-            stationLatitudeRadians, stationLongitudeRadians),
-        GeoUtils.distanceInMiles(latitudeRadians, longitudeRadians,
-            stationLatitudeRadians, stationLongitudeRadians),
-        GeoUtils.compassDirection(latitudeRadians, longitudeRadians,
-            stationLatitudeRadians, stationLongitudeRadians));
+        GeoUtils.distanceInMiles(destination.sinLatitude, destination.cosLatitude,
+            sinStationLatitude, cosStationLatitude,
+            cos(stationLongitudeRadians - destination.longitude)),
+        GeoUtils.distanceInMiles(location.sinLatitude, location.cosLatitude,
+            sinStationLatitude, cosStationLatitude, cosTheta),
+        GeoUtils.compassDirection(location.sinLatitude, location.cosLatitude,
+            sinStationLatitude, cosStationLatitude, sin(theta), cosTheta));
   }
 }
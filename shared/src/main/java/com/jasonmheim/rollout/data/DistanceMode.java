@@ -0,0 +1,79 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+/**
+ * The formulas available to a {@link StationTable} for ranking stations by distance. All of them
+ * work from latitudes and longitudes in radians along with the sine and cosine of each latitude,
+ * which the table computes once per station list rather than once per station per location update.
+ * <p>
+ * The error bounds below are relative to {@link #SPHERICAL_LAW_OF_COSINES}, for points no more than
+ * ten miles apart and no further from the equator than 60 degrees, which covers any bike share
+ * system. They are checked against the sample snapshot by {@code DistanceModeTest}.
+ */
+public enum DistanceMode {
+
+  /**
+   * The spherical law of cosines, exactly as {@link StationDistanceCalculator} computes it. With
+   * cached trigonometry this costs one cosine and one arccosine per station. It loses precision as
+   * points get very close, and rounds to NaN for identical points.
+   */
+  SPHERICAL_LAW_OF_COSINES {
+    @Override
+    double distanceInMiles(
+        double lat1, double lon1, double sinLat1, double cosLat1,
+        double lat2, double lon2, double sinLat2, double cosLat2) {
+      return GeoUtils.distanceInMiles(sinLat1, cosLat1, sinLat2, cosLat2, Math.cos(lon2 - lon1));
+    }
+  },
+
+  /**
+   * The haversine formula: two sines, a square root and an arcsine per station. It is numerically
+   * stable at every distance, and agrees with the law of cosines to well under a foot.
+   */
+  HAVERSINE {
+    @Override
+    double distanceInMiles(
+        double lat1, double lon1, double sinLat1, double cosLat1,
+        double lat2, double lon2, double sinLat2, double cosLat2) {
+      return GeoUtils.haversineInMiles(lat1, lon1, cosLat1, lat2, lon2, cosLat2);
+    }
+  },
+
+  /**
+   * The equirectangular approximation, which treats the area around the two points as flat. Only
+   * a square root per station, and no trigonometry. Within a city the relative error is under
+   * 0.01%, which is less than six feet at ten miles and far less at the distances that decide a
+   * ranking.
+   */
+  EQUIRECTANGULAR {
+    @Override
+    double distanceInMiles(
+        double lat1, double lon1, double sinLat1, double cosLat1,
+        double lat2, double lon2, double sinLat2, double cosLat2) {
+      return GeoUtils.equirectangularInMiles(lat1, lon1, cosLat1, lat2, lon2, cosLat2);
+    }
+  };
+
+  /**
+   * Distance in miles between two points, given in radians along with the sine and cosine of each
+   * latitude.
+   */
+  abstract double distanceInMiles(
+      double lat1, double lon1, double sinLat1, double cosLat1,
+      double lat2, double lon2, double sinLat2, double cosLat2);
+}
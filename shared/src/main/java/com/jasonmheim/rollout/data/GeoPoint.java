@@ -0,0 +1,40 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import static java.lang.Math.cos;
+import static java.lang.Math.sin;
+import static java.lang.Math.toRadians;
+
+/**
+ * A point given in decimal degrees, converted once to radians along with the sine and cosine of its
+ * latitude so that distances to many stations can be computed without repeating that work.
+ */
+final class GeoPoint {
+
+  final double latitude;
+  final double longitude;
+  final double sinLatitude;
+  final double cosLatitude;
+
+  GeoPoint(double latitudeDegrees, double longitudeDegrees) {
+    this.latitude = toRadians(latitudeDegrees);
+    this.longitude = toRadians(longitudeDegrees);
+    this.sinLatitude = sin(latitude);
+    this.cosLatitude = cos(latitude);
+  }
+}
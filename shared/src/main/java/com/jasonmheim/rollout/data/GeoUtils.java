@@ -18,9 +18,12 @@ package com.jasonmheim.rollout.data;
 
 import static java.lang.Math.PI;
 import static java.lang.Math.acos;
+import static java.lang.Math.asin;
 import static java.lang.Math.atan2;
 import static java.lang.Math.cos;
+import static java.lang.Math.min;
 import static java.lang.Math.sin;
+import static java.lang.Math.sqrt;
 import static java.lang.Math.toDegrees;
 
 /**
@@ -28,8 +31,14 @@ import static java.lang.Math.toDegrees;
  */
 class GeoUtils {
 
+  /** Miles covered by one degree of arc along a great circle, matching {@link #distanceInMiles}. */
+  static final double MILES_PER_DEGREE = 60 * 1.1515;
+
+  /** Miles covered by one radian of arc along a great circle, matching {@link #distanceInMiles}. */
+  static final double MILES_PER_RADIAN = toDegrees(1) * MILES_PER_DEGREE;
+
   // 16 point compass where N is at index 0, counting up clockwise from there.
-  private static final String[] DIRECTIONS = {
+  static final String[] DIRECTIONS = {
       "N",
       "NNE",
       "NE",
@@ -48,17 +57,74 @@ class GeoUtils {
       "NNW",
   };
 
+  /**
+   * Great circle distance by the spherical law of cosines, given latitudes and longitudes in
+   * radians. This is the reference calculation that the faster {@link DistanceMode}s are measured
+   * against.
+   */
   static double distanceInMiles(double lat1, double lon1, double lat2, double lon2) {
     double dist = acos(sin(lat1) * sin(lat2) + cos(lat1) * cos(lat2) * cos(lon2 - lon1));
     dist = toDegrees(dist);
-    dist = dist * 60 * 1.1515;
+    dist = dist * MILES_PER_DEGREE;
+    return (dist);
+  }
+
+  /**
+   * The same calculation as {@link #distanceInMiles(double, double, double, double)}, for callers
+   * that already have the sines and cosines of both latitudes and the cosine of the difference in
+   * longitude. The result is identical to the last bit.
+   */
+  static double distanceInMiles(
+      double sinLat1, double cosLat1, double sinLat2, double cosLat2, double cosDeltaLon) {
+    double dist = acos(sinLat1 * sinLat2 + cosLat1 * cosLat2 * cosDeltaLon);
+    dist = toDegrees(dist);
+    dist = dist * MILES_PER_DEGREE;
     return (dist);
   }
 
+  /**
+   * Great circle distance by the haversine formula, given the latitudes and longitudes in radians
+   * and the cosines of both latitudes.
+   */
+  static double haversineInMiles(
+      double lat1, double lon1, double cosLat1, double lat2, double lon2, double cosLat2) {
+    double sinHalfDeltaLat = sin((lat2 - lat1) / 2);
+    double sinHalfDeltaLon = sin((lon2 - lon1) / 2);
+    double h = (sinHalfDeltaLat * sinHalfDeltaLat)
+        + (cosLat1 * cosLat2 * sinHalfDeltaLon * sinHalfDeltaLon);
+    return 2 * asin(sqrt(min(1, h))) * MILES_PER_RADIAN;
+  }
+
+  /**
+   * Flat earth distance that treats a small patch of the sphere as a plane, scaling longitude by
+   * the mean of the cosines of the two latitudes. Uses no trigonometric functions at all, given the
+   * latitudes and longitudes in radians and the cosines of both latitudes.
+   */
+  static double equirectangularInMiles(
+      double lat1, double lon1, double cosLat1, double lat2, double lon2, double cosLat2) {
+    double x = (lon2 - lon1) * ((cosLat1 + cosLat2) / 2);
+    double y = lat2 - lat1;
+    return sqrt((x * x) + (y * y)) * MILES_PER_RADIAN;
+  }
+
   static String compassDirection(double lat1, double lon1, double lat2, double lon2) {
     double theta = lon2 - lon1;
-    double dy = sin(theta) * cos(lat2);
-    double dx = (cos(lat1) * sin(lat2)) - (sin(lat1) * cos(lat2) * cos(theta));
+    return compassDirection(sin(lat1), cos(lat1), sin(lat2), cos(lat2), sin(theta), cos(theta));
+  }
+
+  /**
+   * The same as {@link #compassDirection(double, double, double, double)}, for callers that already
+   * have the sines and cosines of both latitudes and of the difference in longitude.
+   */
+  static String compassDirection(
+      double sinLat1,
+      double cosLat1,
+      double sinLat2,
+      double cosLat2,
+      double sinDeltaLon,
+      double cosDeltaLon) {
+    double dy = sinDeltaLon * cosLat2;
+    double dx = (cosLat1 * sinLat2) - (sinLat1 * cosLat2 * cosDeltaLon);
 
     // Get the arctangent in radians, measuring clockwise from true north.
     // Normalize to a range from -8 to 8, which represents 16 tick marks on the compass
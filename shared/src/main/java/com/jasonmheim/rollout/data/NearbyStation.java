@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import com.google.common.base.Objects;
+
+/**
+ * What a wearable shows for one of the stations near the user: its id and name, its counts, and
+ * its distance and compass direction from the user. The distance is kept in whole feet, rounded to
+ * what {@link StationDistance#getDistanceString} shows, so that two instances are equal exactly
+ * when they would be shown the same way.
+ */
+public final class NearbyStation {
+
+  private static final double FEET_PER_MILE = 5280;
+  // The resolution of distances of a tenth of a mile or more, which are shown in hundredths.
+  private static final double FEET_PER_HUNDREDTH = FEET_PER_MILE / 100;
+
+  private final int id;
+  private final String name;
+  private final int availableBikes;
+  private final int availableDocks;
+  private final int feet;
+  private final String direction;
+
+  public NearbyStation(
+      int id, String name, int availableBikes, int availableDocks, int feet, String direction) {
+    this.id = id;
+    this.name = name;
+    this.availableBikes = availableBikes;
+    this.availableDocks = availableDocks;
+    this.feet = feet;
+    this.direction = direction;
+  }
+
+  public static NearbyStation of(StationDistance stationDistance) {
+    Station station = stationDistance.getStation();
+    double miles = stationDistance.getMilesToLocation();
+    int feet = miles < 0.1
+        ? (int) stationDistance.getFeetToLocation()
+        : (int) Math.round(Math.round(miles * 100) * FEET_PER_HUNDREDTH);
+    return new NearbyStation(station.id, station.stationName, station.availableBikes,
+        station.availableDocks, feet, stationDistance.getDirection());
+  }
+
+  public int getId() {
+    return id;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public int getAvailableBikes() {
+    return availableBikes;
+  }
+
+  public int getAvailableDocks() {
+    return availableDocks;
+  }
+
+  public int getFeet() {
+    return feet;
+  }
+
+  public String getDirection() {
+    return direction;
+  }
+
+  /** Appends the distance and direction as {@link StationDistance#getDistanceString} does. */
+  public StringBuilder appendDistance(StringBuilder builder) {
+    // Measured to the middle of the foot, so that converting back to feet cannot round down to
+    // the foot before. It is still well within the rounding of the hundredths of a mile.
+    return StationDistance.appendDistance(builder, (feet + 0.5) / FEET_PER_MILE, direction);
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (!(object instanceof NearbyStation)) {
+      return false;
+    }
+    NearbyStation other = (NearbyStation) object;
+    return id == other.id
+        && Objects.equal(name, other.name)
+        && availableBikes == other.availableBikes
+        && availableDocks == other.availableDocks
+        && feet == other.feet
+        && Objects.equal(direction, other.direction);
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hashCode(id, name, availableBikes, availableDocks, feet, direction);
+  }
+
+  @Override
+  public String toString() {
+    return name + ": " + appendDistance(new StringBuilder());
+  }
+}
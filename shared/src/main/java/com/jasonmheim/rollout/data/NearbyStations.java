@@ -0,0 +1,44 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The stations near the user, best first, as pushed to a wearable. Each push has a sequence
+ * number, which {@link NearbyStationsFormat} uses to match a delta with the push it is based on.
+ */
+public final class NearbyStations {
+
+  private final int sequence;
+  private final List<NearbyStation> stations;
+
+  public NearbyStations(int sequence, List<NearbyStation> stations) {
+    this.sequence = sequence;
+    this.stations = Collections.unmodifiableList(new ArrayList<NearbyStation>(stations));
+  }
+
+  public int getSequence() {
+    return sequence;
+  }
+
+  public List<NearbyStation> getStations() {
+    return stations;
+  }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import com.google.common.base.Charsets;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary encoding of {@link NearbyStations}, small enough to push to a wearable over
+ * Bluetooth whenever the stations near the user change. A payload is either full, or a delta that
+ * can only be decoded given the push it was encoded against, its base.
+ * <p>
+ * The header holds a magic number, the format version, the kind of payload, the sequence number,
+ * the base's sequence number for a delta, and the station count. Each station then starts with a
+ * byte giving the index of the same station in the base, or {@link #NEW_STATION} for one that is
+ * not there, which is followed by its id and name. The bikes, docks and feet come next, as
+ * variable length differences from the base station's values, or from zero for a new station, and
+ * then the index of the compass direction. A station whose counts are unchanged and which has moved
+ * a little costs five or six bytes in a delta, where a full payload spends more than that on its id
+ * and the length of its name alone.
+ * <p>
+ * Numbers in the header are big endian. Differences are zig-zag encoded, seven bits to a byte with
+ * the high bit set on all but the last. Names are UTF-8 with a two byte length.
+ */
+public final class NearbyStationsFormat {
+
+  /** "RLNB" */
+  static final int MAGIC = 0x524c4e42;
+  static final int VERSION = 1;
+  static final int KIND_FULL = 0;
+  static final int KIND_DELTA = 1;
+  // Magic, version, kind, sequence and count; a delta adds the base sequence before the count.
+  static final int HEADER_SIZE = 11;
+
+  /** The path of the wearable data item holding the last full payload, the base of the deltas. */
+  public static final String FULL_PATH = "/nearby_stations/full";
+  /** The path of the wearable data item holding the latest delta. */
+  public static final String DELTA_PATH = "/nearby_stations/delta";
+
+  /** The most stations a payload can hold. */
+  public static final int MAX_STATIONS = 255;
+  // Base indices run up to MAX_STATIONS - 1, leaving this free.
+  static final int NEW_STATION = 0xff;
+
+  private NearbyStationsFormat() {}
+
+  /** Encodes every station in full, ready to be written out from position zero. */
+  public static ByteBuffer encodeFull(NearbyStations stations) {
+    return encode(stations, null);
+  }
+
+  /**
+   * Encodes {@code stations} as the differences from {@code base}, ready to be written out from
+   * position zero.
+   */
+  public static ByteBuffer encodeDelta(NearbyStations stations, NearbyStations base) {
+    if (base == null) {
+      throw new NullPointerException("A delta needs a base");
+    }
+    return encode(stations, base);
+  }
+
+  /**
+   * Whether the payload starting at the buffer's position can be decoded given {@code base}, which
+   * may be null: a full payload always can, and a delta only with the push it is based on. The
+   * buffer's position is left alone.
+   */
+  public static boolean canDecode(ByteBuffer buffer, NearbyStations base) {
+    int start = buffer.position();
+    if (buffer.remaining() < HEADER_SIZE
+        || buffer.getInt(start) != MAGIC
+        || buffer.get(start + 4) != VERSION) {
+      return false;
+    }
+    if (buffer.get(start + 5) == KIND_FULL) {
+      return true;
+    }
+    return base != null
+        && buffer.remaining() >= HEADER_SIZE + 4
+        && buffer.getInt(start + 10) == base.getSequence();
+  }
+
+  /**
+   * Decodes a payload from the given buffer, starting at its position. {@code base} is only used
+   * for a delta, and must then be the push the delta is based on; see {@link #canDecode}. Throws
+   * an {@link IOException} if the buffer does not hold a payload, holds a version this code does
+   * not understand, or holds a delta that {@code base} does not match.
+   */
+  public static NearbyStations decode(ByteBuffer buffer, NearbyStations base)
+      throws IOException {
+    if (buffer.remaining() < HEADER_SIZE || buffer.getInt() != MAGIC) {
+      throw new IOException("Not a nearby stations payload");
+    }
+    int version = buffer.get();
+    if (version != VERSION) {
+      throw new IOException("Unsupported nearby stations version " + version);
+    }
+    try {
+      boolean delta = buffer.get() == KIND_DELTA;
+      int sequence = buffer.getInt();
+      List<NearbyStation> baseStations = null;
+      if (delta) {
+        int baseSequence = buffer.getInt();
+        if (base == null || base.getSequence() != baseSequence) {
+          throw new IOException("Nearby stations delta does not match its base");
+        }
+        baseStations = base.getStations();
+      }
+      int count = buffer.get() & 0xff;
+      List<NearbyStation> stations = new ArrayList<NearbyStation>(count);
+      for (int i = 0; i < count; i++) {
+        int reference = buffer.get() & 0xff;
+        int id;
+        String name;
+        int availableBikes = 0;
+        int availableDocks = 0;
+        int feet = 0;
+        if (reference == NEW_STATION) {
+          id = buffer.getInt();
+          name = getString(buffer);
+        } else {
+          if (baseStations == null) {
+            throw new IOException("Full nearby stations payload refers to a base");
+          }
+          NearbyStation baseStation = baseStations.get(reference);
+          id = baseStation.getId();
+          name = baseStation.getName();
+          availableBikes = baseStation.getAvailableBikes();
+          availableDocks = baseStation.getAvailableDocks();
+          feet = baseStation.getFeet();
+        }
+        availableBikes += getVarint(buffer);
+        availableDocks += getVarint(buffer);
+        feet += getVarint(buffer);
+        String direction = GeoUtils.DIRECTIONS[buffer.get()];
+        stations.add(new NearbyStation(
+            id, name, availableBikes, availableDocks, feet, direction));
+      }
+      return new NearbyStations(sequence, stations);
+    } catch (RuntimeException ex) {
+      // Buffer underflows and bad indices alike mean the data are truncated.
+      throw new IOException("Corrupt nearby stations payload", ex);
+    }
+  }
+
+  private static ByteBuffer encode(NearbyStations nearbyStations, NearbyStations base) {
+    List<NearbyStation> stations = nearbyStations.getStations();
+    int count = stations.size();
+    if (count > MAX_STATIONS) {
+      throw new IllegalArgumentException("Too many nearby stations: " + count);
+    }
+    // Encode names and find references up front so that the buffer can be sized.
+    int[] references = new int[count];
+    byte[][] names = new byte[count][];
+    int size = HEADER_SIZE + (base == null ? 0 : 4);
+    for (int i = 0; i < count; i++) {
+      NearbyStation station = stations.get(i);
+      references[i] = base == null ? NEW_STATION : indexOf(base.getStations(), station.getId());
+      if (references[i] == NEW_STATION) {
+        names[i] = station.getName() == null
+            ? new byte[0]
+            : station.getName().getBytes(Charsets.UTF_8);
+        size += 4 + 2 + names[i].length;
+      }
+      // Reference, three varints of at most five bytes each, and direction.
+      size += 1 + (3 * 5) + 1;
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    buffer.putInt(MAGIC);
+    buffer.put((byte) VERSION);
+    buffer.put((byte) (base == null ? KIND_FULL : KIND_DELTA));
+    buffer.putInt(nearbyStations.getSequence());
+    if (base != null) {
+      buffer.putInt(base.getSequence());
+    }
+    buffer.put((byte) count);
+    for (int i = 0; i < count; i++) {
+      NearbyStation station = stations.get(i);
+      buffer.put((byte) references[i]);
+      int availableBikes = 0;
+      int availableDocks = 0;
+      int feet = 0;
+      if (references[i] == NEW_STATION) {
+        buffer.putInt(station.getId());
+        buffer.putShort((short) names[i].length);
+        buffer.put(names[i]);
+      } else {
+        NearbyStation baseStation = base.getStations().get(references[i]);
+        availableBikes = baseStation.getAvailableBikes();
+        availableDocks = baseStation.getAvailableDocks();
+        feet = baseStation.getFeet();
+      }
+      putVarint(buffer, station.getAvailableBikes() - availableBikes);
+      putVarint(buffer, station.getAvailableDocks() - availableDocks);
+      putVarint(buffer, station.getFeet() - feet);
+      buffer.put((byte) directionIndex(station.getDirection()));
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  private static int indexOf(List<NearbyStation> stations, int id) {
+    for (int i = 0; i < stations.size(); i++) {
+      if (stations.get(i).getId() == id) {
+        return i;
+      }
+    }
+    return NEW_STATION;
+  }
+
+  private static int directionIndex(String direction) {
+    for (int i = 0; i < GeoUtils.DIRECTIONS.length; i++) {
+      if (GeoUtils.DIRECTIONS[i].equals(direction)) {
+        return i;
+      }
+    }
+    throw new IllegalArgumentException("Not a compass direction: " + direction);
+  }
+
+  private static void putVarint(ByteBuffer buffer, int value) {
+    int zigZag = (value << 1) ^ (value >> 31);
+    while ((zigZag & ~0x7f) != 0) {
+      buffer.put((byte) ((zigZag & 0x7f) | 0x80));
+      zigZag >>>= 7;
+    }
+    buffer.put((byte) zigZag);
+  }
+
+  private static int getVarint(ByteBuffer buffer) {
+    int zigZag = 0;
+    for (int shift = 0; shift < 35; shift += 7) {
+      byte b = buffer.get();
+      zigZag |= (b & 0x7f) << shift;
+      if (b >= 0) {
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+      }
+    }
+    throw new IllegalArgumentException("Varint too long");
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getShort() & 0xffff];
+    buffer.get(bytes);
+    return new String(bytes, Charsets.UTF_8);
+  }
+}
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The part of a bike share system that rarely changes: each station's id, name, location, city and
+ * number of docks. A catalog is refreshed only when the feed shows that one of these has changed,
+ * and is combined with a {@link StationStatusSnapshot} of the live counts to produce a
+ * {@link StationList} through {@link #merge}.
+ * <p>
+ * Stations are kept in feed order, and are also indexed by {@link Station#id}. Instances are
+ * immutable.
+ */
+public class StationCatalog {
+
+  // Stations holding only the catalog fields; the count fields are left at zero.
+  private final List<Station> stations;
+  private final Map<Integer, Integer> indexById;
+
+  StationCatalog(List<Station> stations) {
+    this.stations = ImmutableList.copyOf(stations);
+    this.indexById = new HashMap<Integer, Integer>();
+    for (int i = 0; i < stations.size(); i++) {
+      indexById.put(stations.get(i).id, i);
+    }
+  }
+
+  /** Creates a catalog from the static fields of every station in the given list. */
+  public static StationCatalog of(StationList stationList) {
+    List<Station> stations = new ArrayList<Station>();
+    if (stationList.stationBeanList != null) {
+      for (Station station : stationList.stationBeanList) {
+        Station entry = new Station();
+        entry.id = station.id;
+        entry.stationName = station.stationName;
+        entry.totalDocks = station.totalDocks;
+        entry.latitude = station.latitude;
+        entry.longitude = station.longitude;
+        entry.city = station.city;
+        entry.testStation = station.testStation;
+        stations.add(entry);
+      }
+    }
+    return new StationCatalog(stations);
+  }
+
+  public int size() {
+    return stations.size();
+  }
+
+  /**
+   * Returns the catalog entry at the given index. Only the catalog fields are set; use
+   * {@link #merge} for complete stations.
+   */
+  public Station getStation(int index) {
+    return stations.get(index);
+  }
+
+  /** Returns the index of the station with the given id, or -1 if it is not in the catalog. */
+  public int indexOf(int id) {
+    Integer index = indexById.get(id);
+    return index == null ? -1 : index;
+  }
+
+  /**
+   * Whether every station in the given snapshot is in this catalog. If not, the catalog is out of
+   * date and must be refreshed before the snapshot can be merged.
+   */
+  public boolean covers(StationStatusSnapshot snapshot) {
+    for (int i = 0; i < snapshot.size(); i++) {
+      if (!indexById.containsKey(snapshot.getId(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Combines this catalog with the given snapshot into a complete station list, in the snapshot's
+   * order. Stations in the snapshot that are missing from the catalog are left out; see
+   * {@link #covers}.
+   */
+  public StationList merge(StationStatusSnapshot snapshot) {
+    List<Station> merged = new ArrayList<Station>(snapshot.size());
+    for (int i = 0; i < snapshot.size(); i++) {
+      int index = indexOf(snapshot.getId(i));
+      if (index < 0) {
+        continue;
+      }
+      Station entry = stations.get(index);
+      Station station = new Station();
+      station.id = entry.id;
+      station.stationName = entry.stationName;
+      station.totalDocks = entry.totalDocks;
+      station.latitude = entry.latitude;
+      station.longitude = entry.longitude;
+      station.city = entry.city;
+      station.testStation = entry.testStation;
+      station.availableBikes = snapshot.getAvailableBikes(i);
+      station.availableDocks = snapshot.getAvailableDocks(i);
+      station.statusKey = snapshot.getStatusKey(i);
+      station.statusValue = snapshot.getStatusValue(i);
+      merged.add(station);
+    }
+    StationList stationList = new StationList();
+    stationList.executionTime = snapshot.getExecutionTime();
+    stationList.timestamp = snapshot.getTimestamp();
+    stationList.stationBeanList = merged;
+    return stationList;
+  }
+
+  @Override
+  public boolean equals(Object object) {
+    if (!(object instanceof StationCatalog)) {
+      return false;
+    }
+    List<Station> otherStations = ((StationCatalog) object).stations;
+    if (stations.size() != otherStations.size()) {
+      return false;
+    }
+    for (int i = 0; i < stations.size(); i++) {
+      Station station = stations.get(i);
+      Station other = otherStations.get(i);
+      if (station.id != other.id
+          || station.totalDocks != other.totalDocks
+          || station.testStation != other.testStation
+          || Double.compare(station.latitude, other.latitude) != 0
+          || Double.compare(station.longitude, other.longitude) != 0
+          || !Objects.equal(station.stationName, other.stationName)
+          || !Objects.equal(station.city, other.city)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int hashCode = stations.size();
+    for (Station station : stations) {
+      hashCode = (31 * hashCode) + station.id;
+    }
+    return hashCode;
+  }
+}
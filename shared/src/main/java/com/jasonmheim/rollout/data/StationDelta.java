@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+/**
+ * How a single station differs between two consecutive station lists. See
+ * {@link StationListDelta}.
+ */
+public class StationDelta {
+
+  public enum Type {
+    /** The station is new in the later list. */
+    ADDED,
+    /** The station is missing from the later list. */
+    REMOVED,
+    /** The station is in both lists, and its counts, status or metadata changed. */
+    CHANGED,
+  }
+
+  private final Type type;
+  private final Station previous;
+  private final Station current;
+
+  StationDelta(Type type, Station previous, Station current) {
+    this.type = type;
+    this.previous = previous;
+    this.current = current;
+  }
+
+  public Type getType() {
+    return type;
+  }
+
+  public int getId() {
+    return current == null ? previous.id : current.id;
+  }
+
+  /** The station as it was in the earlier list, or null if it was added. */
+  public Station getPrevious() {
+    return previous;
+  }
+
+  /** The station as it is in the later list, or null if it was removed. */
+  public Station getCurrent() {
+    return current;
+  }
+
+  /** The change in available bikes; a removed station has lost them all. */
+  public int getBikeChange() {
+    return count(current, true) - count(previous, true);
+  }
+
+  /** The change in available docks; a removed station has lost them all. */
+  public int getDockChange() {
+    return count(current, false) - count(previous, false);
+  }
+
+  /** Whether the station was taken out of or put back into service. */
+  public boolean isStatusChanged() {
+    return type == Type.CHANGED && previous.statusKey != current.statusKey;
+  }
+
+  private static int count(Station station, boolean bikes) {
+    if (station == null) {
+      return 0;
+    }
+    return bikes ? station.availableBikes : station.availableDocks;
+  }
+
+  @Override
+  public String toString() {
+    return type + " " + getId() + ": bikes " + getBikeChange() + ", docks " + getDockChange()
+        + (isStatusChanged() ? ", status " + current.statusValue : "");
+  }
+}
@@ -53,11 +53,45 @@ public class StationDistance implements Comparable<StationDistance> {
     return station;
   }
 
+  public String getDirection() {
+    return direction;
+  }
+
   public String getDistanceString() {
+    return appendDistance(new StringBuilder(24)).toString();
+  }
+
+  /**
+   * Appends the text of {@link #getDistanceString} to {@code builder}, and returns the builder.
+   * Nothing else is allocated, so a list can reuse one builder for every row it binds.
+   */
+  public StringBuilder appendDistance(StringBuilder builder) {
+    return appendDistance(builder, milesToLocation, direction);
+  }
+
+  /** As {@link #appendDistance(StringBuilder)}, for any distance and direction. */
+  public static StringBuilder appendDistance(
+      StringBuilder builder, double milesToLocation, String direction) {
     if (milesToLocation < 0.1) {
-      return String.valueOf((int) getFeetToLocation()) + " Feet " + direction;
+      appendDigits(builder, (long) milesToFeet(milesToLocation));
+      builder.append(" Feet ");
+    } else {
+      long hundredths = Math.round(milesToLocation * 100);
+      appendDigits(builder, hundredths / 100);
+      builder.append('.')
+          .append((char) ('0' + hundredths / 10 % 10))
+          .append((char) ('0' + hundredths % 10))
+          .append(" Miles ");
     }
-    return String.format("%.2f Miles ", milesToLocation) + direction;
+    return builder.append(direction);
+  }
+
+  /**
+   * The value that this instance is ordered by. For a plain station distance this is simply the
+   * distance to the current location; subclasses may blend in other distances.
+   */
+  double getWeightedMiles() {
+    return milesToLocation;
   }
 
   @Override
@@ -70,6 +104,21 @@ public class StationDistance implements Comparable<StationDistance> {
     return station.stationName + ": " + getDistanceString();
   }
 
+  // Appends a non-negative number one digit at a time, since StringBuilder.append(long) may build
+  // a temporary string first.
+  private static void appendDigits(StringBuilder builder, long value) {
+    int start = builder.length();
+    do {
+      builder.append((char) ('0' + value % 10));
+      value /= 10;
+    } while (value > 0);
+    for (int i = start, j = builder.length() - 1; i < j; i++, j--) {
+      char digit = builder.charAt(i);
+      builder.setCharAt(i, builder.charAt(j));
+      builder.setCharAt(j, digit);
+    }
+  }
+
   protected static double milesToFeet(double miles) {
     return miles * 5280;
   }
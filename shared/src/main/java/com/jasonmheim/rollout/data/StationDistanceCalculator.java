@@ -18,12 +18,8 @@ package com.jasonmheim.rollout.data;
 
 import com.google.common.base.Function;
 
-import static java.lang.Math.PI;
-import static java.lang.Math.acos;
-import static java.lang.Math.atan2;
 import static java.lang.Math.cos;
 import static java.lang.Math.sin;
-import static java.lang.Math.toDegrees;
 import static java.lang.Math.toRadians;
 
 /**
@@ -35,25 +31,27 @@ public class StationDistanceCalculator implements Function<Station, StationDista
 
   private final double latitude;
   private final double longitude;
-  private final double latitudeRadians;
-  private final double longitudeRadians;
+  private final GeoPoint location;
 
   public StationDistanceCalculator(double latitude, double longitude) {
     this.latitude = latitude;
     this.longitude = longitude;
-    this.latitudeRadians = toRadians(latitude);
-    this.longitudeRadians = toRadians(longitude);
+    this.location = new GeoPoint(latitude, longitude);
   }
 
   @Override
   public StationDistance apply(Station station) {
+    // The station's trigonometry is shared by the distance and the compass direction.
     double stationLatitudeRadians = toRadians(station.latitude);
-    double stationLongitudeRadians = toRadians(station.longitude);
+    double sinStationLatitude = sin(stationLatitudeRadians);
+    double cosStationLatitude = cos(stationLatitudeRadians);
+    double theta = toRadians(station.longitude) - location.longitude;
+    double cosTheta = cos(theta);
     return new StationDistance(
         station,
-        GeoUtils.distanceInMiles(latitudeRadians, longitudeRadians,
-            stationLatitudeRadians, stationLongitudeRadians),
-        GeoUtils.compassDirection(latitudeRadians, longitudeRadians,
-            stationLatitudeRadians, stationLongitudeRadians));
+        GeoUtils.distanceInMiles(location.sinLatitude, location.cosLatitude,
+            sinStationLatitude, cosStationLatitude, cosTheta),
+        GeoUtils.compassDirection(location.sinLatitude, location.cosLatitude,
+            sinStationLatitude, cosStationLatitude, sin(theta), cosTheta));
   }
 }
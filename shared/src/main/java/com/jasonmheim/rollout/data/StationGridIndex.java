@@ -0,0 +1,484 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.jasonmheim.rollout.data.GeoUtils.MILES_PER_DEGREE;
+import static java.lang.Math.abs;
+import static java.lang.Math.ceil;
+import static java.lang.Math.cos;
+import static java.lang.Math.floor;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sqrt;
+import static java.lang.Math.toRadians;
+
+/**
+ * A uniform latitude/longitude grid over the stations of a {@link StationTable}, built once per
+ * station list. Nearest station queries start at the grid cell containing the point of interest and
+ * visit rings of cells around it, stopping as soon as no unvisited cell can contain a better result.
+ * For the usual queries this examines a few dozen stations rather than the entire system.
+ * <p>
+ * Distances are computed from the table's primitive columns, using its {@link DistanceMode};
+ * {@link StationDistance} instances are only created for the results. With the reference distance
+ * mode, results are ordered exactly as a stable sort of {@link StationDistance} or
+ * {@link DestinationDistance} instances would be. With another mode the results still carry the
+ * reference distances, but are ordered by the approximation, so two results whose distances differ
+ * by less than the mode's error may trade places. Instances are immutable and may be shared
+ * between threads.
+ */
+public class StationGridIndex {
+
+  // Aim for a handful of stations per cell, so that the first ring or two usually answers a query.
+  private static final int STATIONS_PER_CELL = 4;
+
+  // Never make cells smaller than this, even for a very dense or very small system.
+  private static final double MIN_CELL_MILES = 0.05;
+
+  // The great circle between two points at the same latitude is slightly shorter than the path
+  // along their parallel, so shave the longitude bound a little to keep it a true lower bound.
+  private static final double LONGITUDE_BOUND_SLACK = 0.99;
+
+  private final StationTable table;
+  private final int rows;
+  private final int columns;
+  private final double minLatitude;
+  private final double minLongitude;
+  private final double cellLatitudeDegrees;
+  private final double cellLongitudeDegrees;
+  private final double maxAbsLatitude;
+
+  // The stations in cell i are those at cellStations[cellStart[i]] up to but excluding
+  // cellStations[cellStart[i + 1]], in their original table order.
+  private final int[] cellStart;
+  private final int[] cellStations;
+
+  public StationGridIndex(StationList stationList) {
+    this(new StationTable(stationList));
+  }
+
+  public StationGridIndex(StationTable table) {
+    this.table = table;
+    int size = table.size();
+
+    double minLat = Double.POSITIVE_INFINITY;
+    double maxLat = Double.NEGATIVE_INFINITY;
+    double minLon = Double.POSITIVE_INFINITY;
+    double maxLon = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < size; i++) {
+      minLat = min(minLat, table.getLatitude(i));
+      maxLat = max(maxLat, table.getLatitude(i));
+      minLon = min(minLon, table.getLongitude(i));
+      maxLon = max(maxLon, table.getLongitude(i));
+    }
+    if (size == 0) {
+      minLat = maxLat = minLon = maxLon = 0;
+    }
+    minLatitude = minLat;
+    minLongitude = minLon;
+    maxAbsLatitude = max(abs(minLat), abs(maxLat));
+
+    // Size the cells in miles so that they are roughly square on the ground.
+    double longitudeScale = cos(toRadians((minLat + maxLat) / 2));
+    double heightMiles = (maxLat - minLat) * MILES_PER_DEGREE;
+    double widthMiles = (maxLon - minLon) * MILES_PER_DEGREE * longitudeScale;
+    int targetCells = max(1, size / STATIONS_PER_CELL);
+    double cellMiles = max(MIN_CELL_MILES, sqrt(heightMiles * widthMiles / targetCells));
+    rows = max(1, (int) ceil(heightMiles / cellMiles));
+    columns = max(1, (int) ceil(widthMiles / cellMiles));
+    cellLatitudeDegrees = max(maxLat - minLat, cellMiles / MILES_PER_DEGREE) / rows;
+    cellLongitudeDegrees =
+        max(maxLon - minLon, cellMiles / (MILES_PER_DEGREE * longitudeScale)) / columns;
+
+    // Counting sort of the stations into their cells.
+    int[] stationCell = new int[size];
+    cellStart = new int[(rows * columns) + 1];
+    for (int i = 0; i < size; i++) {
+      int row = clamp(rowOf(table.getLatitude(i)), rows);
+      int column = clamp(columnOf(table.getLongitude(i)), columns);
+      stationCell[i] = (row * columns) + column;
+      cellStart[stationCell[i] + 1]++;
+    }
+    for (int cell = 0; cell < rows * columns; cell++) {
+      cellStart[cell + 1] += cellStart[cell];
+    }
+    int[] next = Arrays.copyOf(cellStart, rows * columns);
+    cellStations = new int[size];
+    for (int i = 0; i < size; i++) {
+      cellStations[next[stationCell[i]]++] = i;
+    }
+  }
+
+  public StationTable getTable() {
+    return table;
+  }
+
+  /**
+   * Returns up to {@code count} stations that satisfy {@code predicate}, ordered by distance from
+   * the given location, exactly as sorting the output of a {@link StationDistanceCalculator} would.
+   */
+  public List<StationDistance> getClosestStations(
+      double latitude, double longitude, int count, Predicate<? super Station> predicate) {
+    return getClosestStations(latitude, longitude, count, Double.POSITIVE_INFINITY, predicate);
+  }
+
+  /**
+   * Returns up to {@code count} stations within {@code maxMiles} of the given location that satisfy
+   * {@code predicate}, ordered as by {@link #getClosestStations(double, double, int, Predicate)}.
+   * Cells beyond the radius are never visited, so a small radius keeps the search small even when
+   * {@code count} is large.
+   */
+  public List<StationDistance> getClosestStations(
+      double latitude,
+      double longitude,
+      int count,
+      double maxMiles,
+      Predicate<? super Station> predicate) {
+    Search search = new Search(count, false, maxMiles);
+    searchAroundLocation(latitude, longitude, search, predicate);
+    return search.getResults(new StationDistanceCalculator(latitude, longitude));
+  }
+
+  /**
+   * Returns up to {@code count} stations that satisfy {@code predicate}, ordered by their weighted
+   * distance from the given location and destination, exactly as sorting the output of a
+   * {@link DestinationDistanceCalculator} would.
+   */
+  public List<DestinationDistance> getClosestStations(
+      double latitude,
+      double longitude,
+      double destinationLatitude,
+      double destinationLongitude,
+      int count,
+      Predicate<? super Station> predicate) {
+    Search search = new Search(count, false, Double.POSITIVE_INFINITY);
+    searchAroundDestination(latitude, longitude, destinationLatitude, destinationLongitude,
+        search, predicate);
+    return search.getResults(new DestinationDistanceCalculator(
+        latitude, longitude, destinationLatitude, destinationLongitude));
+  }
+
+  /**
+   * Returns the closest station to the given location that satisfies {@code predicate}, along with
+   * its rank among all stations regardless of the predicate, or {@code null} if no station
+   * qualifies.
+   */
+  public StationDistanceRank getClosestStation(
+      double latitude, double longitude, Predicate<? super Station> predicate) {
+    Search search = new Search(1, true, Double.POSITIVE_INFINITY);
+    searchAroundLocation(latitude, longitude, search, predicate);
+    return search.getRank(new StationDistanceCalculator(latitude, longitude));
+  }
+
+  /**
+   * Returns the station that satisfies {@code predicate} with the best weighted distance from the
+   * given location and destination, along with its rank among all stations regardless of the
+   * predicate, or {@code null} if no station qualifies.
+   */
+  public StationDistanceRank getClosestStation(
+      double latitude,
+      double longitude,
+      double destinationLatitude,
+      double destinationLongitude,
+      Predicate<? super Station> predicate) {
+    Search search = new Search(1, true, Double.POSITIVE_INFINITY);
+    searchAroundDestination(latitude, longitude, destinationLatitude, destinationLongitude,
+        search, predicate);
+    return search.getRank(new DestinationDistanceCalculator(
+        latitude, longitude, destinationLatitude, destinationLongitude));
+  }
+
+  private void searchAroundLocation(
+      final double latitude,
+      final double longitude,
+      Search search,
+      Predicate<? super Station> predicate) {
+    final GeoPoint location = new GeoPoint(latitude, longitude);
+    search(latitude, longitude, 0, 1, new Scorer() {
+      @Override
+      public double score(int index) {
+        return table.distanceInMiles(index, location);
+      }
+    }, search, predicate);
+  }
+
+  private void searchAroundDestination(
+      double latitude,
+      double longitude,
+      double destinationLatitude,
+      double destinationLongitude,
+      Search search,
+      Predicate<? super Station> predicate) {
+    final GeoPoint location = new GeoPoint(latitude, longitude);
+    final GeoPoint destination = new GeoPoint(destinationLatitude, destinationLongitude);
+    // Rings are centered on the destination, since it carries the most weight. A station at least
+    // d miles from the destination is also at least (span - d) miles from the current location,
+    // where span is the distance between the two, so its weighted distance can be no less than
+    // DESTINATION_WEIGHT * d + max(0, span - d). That expression never decreases as d grows.
+    double span = table.getDistanceMode().distanceInMiles(
+        location.latitude, location.longitude, location.sinLatitude, location.cosLatitude,
+        destination.latitude, destination.longitude,
+        destination.sinLatitude, destination.cosLatitude);
+    search(destinationLatitude, destinationLongitude,
+        span, DestinationDistance.DESTINATION_WEIGHT, new Scorer() {
+          @Override
+          public double score(int index) {
+            return DestinationDistance.weightedMiles(
+                table.distanceInMiles(index, destination),
+                table.distanceInMiles(index, location));
+          }
+        }, search, predicate);
+  }
+
+  /**
+   * Visits rings of cells around the given center until the search is satisfied. The score of any
+   * station at least d miles from the center must be no less than
+   * {@code weight * d + max(0, span - d)}.
+   */
+  private void search(
+      double centerLatitude,
+      double centerLongitude,
+      double span,
+      int weight,
+      Scorer scorer,
+      Search search,
+      Predicate<? super Station> predicate) {
+    if (table.size() == 0) {
+      return;
+    }
+    int centerRow = rowOf(centerLatitude);
+    int centerColumn = columnOf(centerLongitude);
+    double longitudeMilesPerDegree = MILES_PER_DEGREE * LONGITUDE_BOUND_SLACK
+        * cos(toRadians(max(maxAbsLatitude, abs(centerLatitude))));
+
+    // Skip straight to the first ring that touches the grid.
+    int ring = max(
+        max(0, max(centerRow - (rows - 1), -centerRow)),
+        max(centerColumn - (columns - 1), -centerColumn));
+    while (true) {
+      int top = centerRow - ring;
+      int bottom = centerRow + ring;
+      int left = centerColumn - ring;
+      int right = centerColumn + ring;
+      for (int row = max(top, 0); row <= min(bottom, rows - 1); row++) {
+        if (row == top || row == bottom) {
+          for (int column = max(left, 0); column <= min(right, columns - 1); column++) {
+            visitCell((row * columns) + column, scorer, search, predicate);
+          }
+        } else {
+          if (left >= 0) {
+            visitCell((row * columns) + left, scorer, search, predicate);
+          }
+          if (right < columns && right != left) {
+            visitCell((row * columns) + right, scorer, search, predicate);
+          }
+        }
+      }
+      if (top <= 0 && bottom >= rows - 1 && left <= 0 && right >= columns - 1) {
+        // Every cell has been visited.
+        return;
+      }
+      if (search.isFull() || search.isBounded()) {
+        // Everything outside the block of rings visited so far is at least this far away.
+        double south = minLatitude + (top * cellLatitudeDegrees);
+        double north = minLatitude + ((bottom + 1) * cellLatitudeDegrees);
+        double west = minLongitude + (left * cellLongitudeDegrees);
+        double east = minLongitude + ((right + 1) * cellLongitudeDegrees);
+        double miles = min(
+            min(centerLatitude - south, north - centerLatitude) * MILES_PER_DEGREE,
+            min(centerLongitude - west, east - centerLongitude) * longitudeMilesPerDegree);
+        double bound = (weight * miles) + max(0, span - miles);
+        if ((search.isFull() && bound >= search.getWorstScore()) || bound > search.maxScore) {
+          return;
+        }
+      }
+      ring++;
+    }
+  }
+
+  private void visitCell(
+      int cell, Scorer scorer, Search search, Predicate<? super Station> predicate) {
+    for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+      int index = cellStations[i];
+      search.offer(index, scorer.score(index), predicate.apply(table.getStation(index)));
+    }
+  }
+
+  private int rowOf(double latitude) {
+    return (int) floor((latitude - minLatitude) / cellLatitudeDegrees);
+  }
+
+  private int columnOf(double longitude) {
+    return (int) floor((longitude - minLongitude) / cellLongitudeDegrees);
+  }
+
+  private static int clamp(int index, int size) {
+    return max(0, min(size - 1, index));
+  }
+
+  /**
+   * Computes the value that results are ordered by for the station at a given table index.
+   */
+  private interface Scorer {
+    double score(int index);
+  }
+
+  /**
+   * The state of a single query: the best matches seen so far, held as a bounded max-heap of table
+   * indices keyed by score, and, if a rank is wanted, the scores of every station visited along the
+   * way. Ties are broken by table index, which reproduces the order of a stable sort.
+   */
+  private class Search {
+
+    // Stations scoring more than this are never results.
+    private final double maxScore;
+    private final int[] heapIndices;
+    private final double[] heapScores;
+    private int heapSize;
+    private double[] visitedScores;
+    private int visitedCount;
+
+    Search(int count, boolean rankWanted, double maxScore) {
+      Preconditions.checkArgument(count > 0, "count must be positive: %s", count);
+      this.maxScore = maxScore;
+      // A huge count is common when only the radius matters; never hold more than every station.
+      count = min(count, max(1, table.size()));
+      heapIndices = new int[count];
+      heapScores = new double[count];
+      visitedScores = rankWanted ? new double[16] : null;
+    }
+
+    void offer(int index, double score, boolean matched) {
+      if (visitedScores != null) {
+        if (visitedCount == visitedScores.length) {
+          visitedScores = Arrays.copyOf(visitedScores, visitedCount * 2);
+        }
+        visitedScores[visitedCount++] = score;
+      }
+      if (!matched || score > maxScore) {
+        return;
+      }
+      if (heapSize < heapIndices.length) {
+        heapIndices[heapSize] = index;
+        heapScores[heapSize] = score;
+        siftUp(heapSize++);
+      } else if (isBefore(score, index, heapScores[0], heapIndices[0])) {
+        heapIndices[0] = index;
+        heapScores[0] = score;
+        siftDown(0);
+      }
+    }
+
+    boolean isBounded() {
+      return maxScore != Double.POSITIVE_INFINITY;
+    }
+
+    boolean isFull() {
+      return heapSize == heapIndices.length;
+    }
+
+    double getWorstScore() {
+      return heapScores[0];
+    }
+
+    <T extends StationDistance> List<T> getResults(Function<Station, T> calculator) {
+      // Drain the max-heap from the back so that the results come out best first.
+      int size = heapSize;
+      int[] ordered = new int[size];
+      for (int i = size - 1; i >= 0; i--) {
+        ordered[i] = heapIndices[0];
+        heapSize--;
+        heapIndices[0] = heapIndices[heapSize];
+        heapScores[0] = heapScores[heapSize];
+        siftDown(0);
+      }
+      ImmutableList.Builder<T> results = ImmutableList.builder();
+      for (int index : ordered) {
+        results.add(calculator.apply(table.getStation(index)));
+      }
+      return results.build();
+    }
+
+    /**
+     * Every station ahead of the best match must have been visited, since the search only stops
+     * once no unvisited station can beat it.
+     */
+    StationDistanceRank getRank(Function<Station, ? extends StationDistance> calculator) {
+      if (heapSize == 0) {
+        return null;
+      }
+      double bestScore = heapScores[0];
+      int rank = 0;
+      for (int i = 0; i < visitedCount; i++) {
+        if (Double.compare(visitedScores[i], bestScore) < 0) {
+          rank++;
+        }
+      }
+      return new StationDistanceRank(calculator.apply(table.getStation(heapIndices[0])), rank);
+    }
+
+    private void siftUp(int position) {
+      while (position > 0) {
+        int parent = (position - 1) / 2;
+        if (!isBefore(heapScores[parent], heapIndices[parent],
+            heapScores[position], heapIndices[position])) {
+          return;
+        }
+        swap(parent, position);
+        position = parent;
+      }
+    }
+
+    private void siftDown(int position) {
+      while (true) {
+        int largest = position;
+        for (int child = (2 * position) + 1; child <= (2 * position) + 2; child++) {
+          if (child < heapSize && isBefore(heapScores[largest], heapIndices[largest],
+              heapScores[child], heapIndices[child])) {
+            largest = child;
+          }
+        }
+        if (largest == position) {
+          return;
+        }
+        swap(position, largest);
+        position = largest;
+      }
+    }
+
+    private void swap(int a, int b) {
+      int index = heapIndices[a];
+      heapIndices[a] = heapIndices[b];
+      heapIndices[b] = index;
+      double score = heapScores[a];
+      heapScores[a] = heapScores[b];
+      heapScores[b] = score;
+    }
+  }
+
+  private static boolean isBefore(double score, int index, double otherScore, int otherIndex) {
+    int comparison = Double.compare(score, otherScore);
+    return comparison < 0 || (comparison == 0 && index < otherIndex);
+  }
+}
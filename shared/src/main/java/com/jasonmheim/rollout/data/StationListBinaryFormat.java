@@ -0,0 +1,255 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import com.google.common.base.Charsets;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compact, versioned binary encodings of the two halves of a station list, a
+ * {@link StationCatalog} and a {@link StationStatusSnapshot}. They are used both to keep the most
+ * recent list on local disk and to pass it between processes, and are laid out to be decoded
+ * straight out of a memory mapped file.
+ * <p>
+ * Each encoding starts with a fixed size header: a magic number identifying the kind of data, the
+ * format version, and the station count.
+ * <ul>
+ *   <li>A catalog follows this with each station's metadata, one station after another.
+ *   <li>A snapshot adds the timestamp to the header, and follows it with the execution time, a
+ *       small table of the distinct status strings, and then the ids and counts of every station
+ *       as packed int arrays, one array per field.
+ * </ul>
+ * Only the fields that {@link StationListTypeAdapter} decodes are stored. Strings are length
+ * prefixed UTF-8; all numbers are big endian.
+ */
+public final class StationListBinaryFormat {
+
+  /** "RLSC" */
+  static final int CATALOG_MAGIC = 0x524c5343;
+  /** "RLSS" */
+  static final int SNAPSHOT_MAGIC = 0x524c5353;
+  static final int VERSION = 1;
+  static final int CATALOG_HEADER_SIZE = 12;
+  static final int SNAPSHOT_HEADER_SIZE = 20;
+
+  private StationListBinaryFormat() {}
+
+  /** Encodes the given catalog into a buffer, ready to be written out from position zero. */
+  public static ByteBuffer encodeCatalog(StationCatalog catalog) {
+    int count = catalog.size();
+    // Encode strings up front so that the buffer can be sized exactly.
+    byte[][] names = new byte[count][];
+    byte[][] cities = new byte[count][];
+    int size = CATALOG_HEADER_SIZE;
+    for (int i = 0; i < count; i++) {
+      Station station = catalog.getStation(i);
+      names[i] = encodeString(station.stationName);
+      cities[i] = encodeString(station.city);
+      // id, latitude, longitude, totalDocks, testStation and two strings.
+      size += 4 + 8 + 8 + 4 + 1 + stringSize(names[i]) + stringSize(cities[i]);
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    buffer.putInt(CATALOG_MAGIC);
+    buffer.putInt(VERSION);
+    buffer.putInt(count);
+    for (int i = 0; i < count; i++) {
+      Station station = catalog.getStation(i);
+      buffer.putInt(station.id);
+      buffer.putDouble(station.latitude);
+      buffer.putDouble(station.longitude);
+      buffer.putInt(station.totalDocks);
+      buffer.put((byte) (station.testStation ? 1 : 0));
+      putString(buffer, names[i]);
+      putString(buffer, cities[i]);
+    }
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Decodes a catalog from the given buffer, starting at its position. Throws an
+   * {@link IOException} if the buffer does not hold a catalog, or holds a version this code does
+   * not understand.
+   */
+  public static StationCatalog decodeCatalog(ByteBuffer buffer) throws IOException {
+    // Every station takes at least 33 bytes.
+    int count = readHeader(buffer, CATALOG_MAGIC, CATALOG_HEADER_SIZE, 33);
+    try {
+      List<Station> stations = new ArrayList<Station>(count);
+      for (int i = 0; i < count; i++) {
+        Station station = new Station();
+        station.id = buffer.getInt();
+        station.latitude = buffer.getDouble();
+        station.longitude = buffer.getDouble();
+        station.totalDocks = buffer.getInt();
+        station.testStation = buffer.get() != 0;
+        station.stationName = getString(buffer);
+        station.city = getString(buffer);
+        stations.add(station);
+      }
+      return new StationCatalog(stations);
+    } catch (RuntimeException ex) {
+      // Buffer underflows and bad string lengths alike mean the data are truncated.
+      throw new IOException("Corrupt station catalog", ex);
+    }
+  }
+
+  /** Encodes the given snapshot into a buffer, ready to be written out from position zero. */
+  public static ByteBuffer encodeSnapshot(StationStatusSnapshot snapshot) {
+    int count = snapshot.size();
+    int[] ids = new int[count];
+    int[] availableBikes = new int[count];
+    int[] availableDocks = new int[count];
+    int[] statusKeys = new int[count];
+    int[] statusIndex = new int[count];
+    List<byte[]> statusValues = new ArrayList<byte[]>();
+    Map<String, Integer> statusIndices = new HashMap<String, Integer>();
+    int statusSize = 0;
+    for (int i = 0; i < count; i++) {
+      ids[i] = snapshot.getId(i);
+      availableBikes[i] = snapshot.getAvailableBikes(i);
+      availableDocks[i] = snapshot.getAvailableDocks(i);
+      statusKeys[i] = snapshot.getStatusKey(i);
+      String statusValue = snapshot.getStatusValue(i);
+      Integer index = statusIndices.get(statusValue);
+      if (index == null) {
+        index = statusValues.size();
+        statusIndices.put(statusValue, index);
+        byte[] encoded = encodeString(statusValue);
+        statusValues.add(encoded);
+        statusSize += stringSize(encoded);
+      }
+      statusIndex[i] = index;
+    }
+    byte[] executionTime = encodeString(snapshot.getExecutionTime());
+
+    ByteBuffer buffer = ByteBuffer.allocate(
+        SNAPSHOT_HEADER_SIZE + stringSize(executionTime) + 4 + statusSize + (5 * 4 * count));
+    buffer.putInt(SNAPSHOT_MAGIC);
+    buffer.putInt(VERSION);
+    buffer.putInt(count);
+    buffer.putLong(snapshot.getTimestamp());
+    putString(buffer, executionTime);
+    buffer.putInt(statusValues.size());
+    for (byte[] statusValue : statusValues) {
+      putString(buffer, statusValue);
+    }
+    putInts(buffer, ids);
+    putInts(buffer, availableBikes);
+    putInts(buffer, availableDocks);
+    putInts(buffer, statusKeys);
+    putInts(buffer, statusIndex);
+    buffer.flip();
+    return buffer;
+  }
+
+  /**
+   * Decodes a snapshot from the given buffer, starting at its position. Throws an
+   * {@link IOException} if the buffer does not hold a snapshot, or holds a version this code does
+   * not understand.
+   */
+  public static StationStatusSnapshot decodeSnapshot(ByteBuffer buffer) throws IOException {
+    // Every station takes 20 bytes.
+    int count = readHeader(buffer, SNAPSHOT_MAGIC, SNAPSHOT_HEADER_SIZE, 20);
+    try {
+      long timestamp = buffer.getLong();
+      String executionTime = getString(buffer);
+      String[] statusTable = new String[buffer.getInt()];
+      for (int i = 0; i < statusTable.length; i++) {
+        statusTable[i] = getString(buffer);
+      }
+      int[] ids = getInts(buffer, count);
+      int[] availableBikes = getInts(buffer, count);
+      int[] availableDocks = getInts(buffer, count);
+      int[] statusKeys = getInts(buffer, count);
+      int[] statusIndex = getInts(buffer, count);
+      String[] statusValues = new String[count];
+      for (int i = 0; i < count; i++) {
+        statusValues[i] = statusTable[statusIndex[i]];
+      }
+      return new StationStatusSnapshot(executionTime, timestamp,
+          ids, availableBikes, availableDocks, statusKeys, statusValues);
+    } catch (RuntimeException ex) {
+      // Buffer underflows and bad string table indices alike mean the data are truncated.
+      throw new IOException("Corrupt station status snapshot", ex);
+    }
+  }
+
+  /** Checks the magic number and version, and returns a plausible station count. */
+  private static int readHeader(ByteBuffer buffer, int magic, int headerSize, int minStationSize)
+      throws IOException {
+    if (buffer.remaining() < headerSize || buffer.getInt() != magic) {
+      throw new IOException("Not a binary station list");
+    }
+    int version = buffer.getInt();
+    if (version != VERSION) {
+      throw new IOException("Unsupported binary station list version " + version);
+    }
+    int count = buffer.getInt();
+    if (count < 0 || count > buffer.remaining() / minStationSize) {
+      throw new IOException("Corrupt binary station list");
+    }
+    return count;
+  }
+
+  private static void putInts(ByteBuffer buffer, int[] values) {
+    buffer.asIntBuffer().put(values);
+    buffer.position(buffer.position() + (4 * values.length));
+  }
+
+  private static int[] getInts(ByteBuffer buffer, int count) {
+    int[] values = new int[count];
+    buffer.asIntBuffer().get(values);
+    buffer.position(buffer.position() + (4 * count));
+    return values;
+  }
+
+  private static byte[] encodeString(String value) {
+    return value == null ? null : value.getBytes(Charsets.UTF_8);
+  }
+
+  private static int stringSize(byte[] value) {
+    return 4 + (value == null ? 0 : value.length);
+  }
+
+  // A length of -1 stands for null.
+  private static void putString(ByteBuffer buffer, byte[] value) {
+    if (value == null) {
+      buffer.putInt(-1);
+    } else {
+      buffer.putInt(value.length);
+      buffer.put(value);
+    }
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    int length = buffer.getInt();
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, Charsets.UTF_8);
+  }
+}
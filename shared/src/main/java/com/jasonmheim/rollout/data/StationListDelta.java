@@ -0,0 +1,108 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import com.google.common.base.Objects;
+import com.google.common.collect.ImmutableList;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The differences between two consecutive station lists, one {@link StationDelta} per station that
+ * was added, removed, or changed in any field the app decodes. Stations are matched by
+ * {@link Station#id}, so the order of the feed does not matter. The execution time and timestamp
+ * of the lists are not compared; a list that was merely fetched again yields an empty delta.
+ * <p>
+ * Instances are immutable.
+ */
+public class StationListDelta {
+
+  private final List<StationDelta> changes;
+
+  private StationListDelta(List<StationDelta> changes) {
+    this.changes = changes;
+  }
+
+  /**
+   * Computes the delta from {@code previous} to {@code current}. If {@code previous} is null, every
+   * station in {@code current} is added.
+   */
+  public static StationListDelta between(StationList previous, StationList current) {
+    List<Station> previousStations = stationsOf(previous);
+    List<Station> currentStations = stationsOf(current);
+    Map<Integer, Station> previousById = new HashMap<Integer, Station>();
+    for (Station station : previousStations) {
+      previousById.put(station.id, station);
+    }
+
+    ImmutableList.Builder<StationDelta> changes = ImmutableList.builder();
+    Set<Integer> currentIds = new HashSet<Integer>();
+    for (Station station : currentStations) {
+      currentIds.add(station.id);
+      Station before = previousById.get(station.id);
+      if (before == null) {
+        changes.add(new StationDelta(StationDelta.Type.ADDED, null, station));
+      } else if (!isSame(before, station)) {
+        changes.add(new StationDelta(StationDelta.Type.CHANGED, before, station));
+      }
+    }
+    for (Station station : previousStations) {
+      if (!currentIds.contains(station.id)) {
+        changes.add(new StationDelta(StationDelta.Type.REMOVED, station, null));
+      }
+    }
+    return new StationListDelta(changes.build());
+  }
+
+  /** Changes in the order of the later list, followed by removed stations. */
+  public List<StationDelta> getChanges() {
+    return changes;
+  }
+
+  public boolean isEmpty() {
+    return changes.isEmpty();
+  }
+
+  private static List<Station> stationsOf(StationList stationList) {
+    if (stationList == null || stationList.stationBeanList == null) {
+      return ImmutableList.of();
+    }
+    return stationList.stationBeanList;
+  }
+
+  private static boolean isSame(Station before, Station after) {
+    return before.availableBikes == after.availableBikes
+        && before.availableDocks == after.availableDocks
+        && before.statusKey == after.statusKey
+        && before.totalDocks == after.totalDocks
+        && before.testStation == after.testStation
+        && Double.compare(before.latitude, after.latitude) == 0
+        && Double.compare(before.longitude, after.longitude) == 0
+        && Objects.equal(before.statusValue, after.statusValue)
+        && Objects.equal(before.stationName, after.stationName)
+        && Objects.equal(before.city, after.city);
+  }
+
+  @Override
+  public String toString() {
+    return changes.toString();
+  }
+}
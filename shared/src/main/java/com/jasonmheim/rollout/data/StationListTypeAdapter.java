@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import com.google.common.collect.Interner;
+import com.google.common.collect.Interners;
+import com.google.gson.TypeAdapter;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import com.google.gson.stream.JsonWriter;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A streaming replacement for Gson's reflective handling of {@link StationList}. Stations are
+ * decoded straight from the {@link JsonReader} into the model without reflection, and the fields
+ * that nothing in the app reads (street addresses, postal code, location, altitude, land mark and
+ * last communication time) are skipped rather than allocated. The handful of distinct status and
+ * city strings are interned, so that every station shares the same instances.
+ * <p>
+ * Skipped fields are left null, and are not written back out. Register with
+ * {@link com.google.gson.GsonBuilder#registerTypeAdapter}.
+ */
+public class StationListTypeAdapter extends TypeAdapter<StationList> {
+
+  private static final Interner<String> INTERNER = Interners.newWeakInterner();
+
+  @Override
+  public void write(JsonWriter writer, StationList stationList) throws IOException {
+    if (stationList == null) {
+      writer.nullValue();
+      return;
+    }
+    writer.beginObject();
+    if (stationList.executionTime != null) {
+      writer.name("executionTime").value(stationList.executionTime);
+    }
+    if (stationList.stationBeanList != null) {
+      writer.name("stationBeanList");
+      writer.beginArray();
+      for (Station station : stationList.stationBeanList) {
+        writeStation(writer, station);
+      }
+      writer.endArray();
+    }
+    writer.name("timestamp").value(stationList.timestamp);
+    writer.endObject();
+  }
+
+  private static void writeStation(JsonWriter writer, Station station) throws IOException {
+    writer.beginObject();
+    writer.name("id").value(station.id);
+    if (station.stationName != null) {
+      writer.name("stationName").value(station.stationName);
+    }
+    writer.name("availableDocks").value(station.availableDocks);
+    writer.name("totalDocks").value(station.totalDocks);
+    writer.name("latitude").value(station.latitude);
+    writer.name("longitude").value(station.longitude);
+    if (station.statusValue != null) {
+      writer.name("statusValue").value(station.statusValue);
+    }
+    writer.name("statusKey").value(station.statusKey);
+    writer.name("availableBikes").value(station.availableBikes);
+    if (station.city != null) {
+      writer.name("city").value(station.city);
+    }
+    writer.name("testStation").value(station.testStation);
+    writer.endObject();
+  }
+
+  @Override
+  public StationList read(JsonReader reader) throws IOException {
+    if (reader.peek() == JsonToken.NULL) {
+      reader.nextNull();
+      return null;
+    }
+    StationList stationList = new StationList();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (reader.peek() == JsonToken.NULL) {
+        reader.nextNull();
+      } else if (name.equals("stationBeanList")) {
+        stationList.stationBeanList = readStations(reader);
+      } else if (name.equals("executionTime")) {
+        stationList.executionTime = reader.nextString();
+      } else if (name.equals("timestamp")) {
+        stationList.timestamp = reader.nextLong();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return stationList;
+  }
+
+  private static List<Station> readStations(JsonReader reader) throws IOException {
+    List<Station> stations = new ArrayList<Station>();
+    reader.beginArray();
+    while (reader.hasNext()) {
+      stations.add(readStation(reader));
+    }
+    reader.endArray();
+    return stations;
+  }
+
+  private static Station readStation(JsonReader reader) throws IOException {
+    Station station = new Station();
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (reader.peek() == JsonToken.NULL) {
+        reader.nextNull();
+      } else if (name.equals("id")) {
+        station.id = reader.nextInt();
+      } else if (name.equals("stationName")) {
+        station.stationName = reader.nextString();
+      } else if (name.equals("availableDocks")) {
+        station.availableDocks = reader.nextInt();
+      } else if (name.equals("totalDocks")) {
+        station.totalDocks = reader.nextInt();
+      } else if (name.equals("latitude")) {
+        station.latitude = reader.nextDouble();
+      } else if (name.equals("longitude")) {
+        station.longitude = reader.nextDouble();
+      } else if (name.equals("statusValue")) {
+        station.statusValue = INTERNER.intern(reader.nextString());
+      } else if (name.equals("statusKey")) {
+        station.statusKey = reader.nextInt();
+      } else if (name.equals("availableBikes")) {
+        station.availableBikes = reader.nextInt();
+      } else if (name.equals("city")) {
+        station.city = INTERNER.intern(reader.nextString());
+      } else if (name.equals("testStation")) {
+        station.testStation = reader.nextBoolean();
+      } else {
+        reader.skipValue();
+      }
+    }
+    reader.endObject();
+    return station;
+  }
+}
@@ -0,0 +1,288 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import com.google.common.base.Function;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * Every station in a {@link StationTable}, ordered by distance, but sorted only as far as it has
+ * been read. Building a ranking computes one distance per station and arranges the rows into a
+ * binary heap in linear time; each rank that is read afterwards costs a logarithmic pop from that
+ * heap. Reading the first K stations therefore never pays for the order of the rest, while reading
+ * the whole list costs no more than a full sort.
+ * <p>
+ * A ranking can also be derived from a previous one after a short move, see
+ * {@link StationTable#getRankingByDistance(double, double, StationRanking)}. No distance changes by
+ * more than the move, so the previous distances less the move are lower bounds on the new ones.
+ * The heap starts out keyed by those bounds, and a station's real distance is only computed once
+ * its bound reaches the top of the heap. The stations read from the previous ranking, which are
+ * most likely to be read again, are computed up front and re-sorted with an insertion sort, which
+ * is linear when they are still nearly in order. Reading the first page after a short move thus
+ * computes a few dozen distances rather than one per station.
+ * <p>
+ * The order is identical to that of {@link StationTable#rankByDistance} or
+ * {@link StationTable#rankByDestination}: stations with equal distances keep their order in the
+ * table. {@link StationDistance} instances are created on first access to each rank and then kept.
+ * <p>
+ * Instances are safe to share between threads; the lazy sorting is synchronized.
+ */
+public class StationRanking<T extends StationDistance> extends AbstractList<T>
+    implements RandomAccess {
+
+  /** Computes the key that a single row is ranked by. */
+  interface RowKey {
+    double key(int row);
+  }
+
+  private final StationTable table;
+  private final Function<Station, T> calculator;
+  private final RowKey rowKey;
+  private final GeoPoint location;
+  private final GeoPoint destination;
+
+  // The key of each row, or a lower bound on it if the row is not marked exact.
+  private final double[] keys;
+  // Null if every key is exact.
+  private final boolean[] exact;
+
+  // Rows in rank order, filled in as far as sortedCount.
+  private final int[] rows;
+  private int sortedCount;
+  private final Object[] stationDistances;
+
+  // Rows expected to rank first, sorted by exact key, and not yet moved into rows.
+  private final int[] run;
+  private int runIndex;
+
+  // The remaining rows, as a min heap on key and then row.
+  private final int[] heap;
+  private int heapSize;
+
+  StationRanking(
+      StationTable table,
+      Function<Station, T> calculator,
+      RowKey rowKey,
+      GeoPoint location,
+      GeoPoint destination,
+      double[] keys) {
+    this.table = table;
+    this.calculator = calculator;
+    this.rowKey = rowKey;
+    this.location = location;
+    this.destination = destination;
+    this.keys = keys;
+    this.exact = null;
+    int size = table.size();
+    rows = new int[size];
+    stationDistances = new Object[size];
+    run = new int[0];
+    heap = new int[size];
+    for (int row = 0; row < size; row++) {
+      heap[row] = row;
+    }
+    heapSize = size;
+    heapify();
+  }
+
+  /**
+   * Creates a ranking from the same table as {@code previous}, for a location no more than
+   * {@code slack} from the previous one. For a destination ranking, the destination must be the
+   * same.
+   */
+  StationRanking(
+      Function<Station, T> calculator,
+      RowKey rowKey,
+      GeoPoint location,
+      GeoPoint destination,
+      StationRanking<T> previous,
+      double slack) {
+    this.table = previous.table;
+    this.calculator = calculator;
+    this.rowKey = rowKey;
+    this.location = location;
+    this.destination = destination;
+    int size = table.size();
+    rows = new int[size];
+    stationDistances = new Object[size];
+    keys = new double[size];
+    exact = new boolean[size];
+    synchronized (previous) {
+      run = new int[previous.sortedCount];
+      System.arraycopy(previous.rows, 0, run, 0, run.length);
+      heap = new int[previous.heapSize + previous.run.length - previous.runIndex];
+      for (int i = 0; i < previous.heapSize; i++) {
+        heap[heapSize++] = previous.heap[i];
+      }
+      for (int i = previous.runIndex; i < previous.run.length; i++) {
+        heap[heapSize++] = previous.run[i];
+      }
+      for (int i = 0; i < heapSize; i++) {
+        int row = heap[i];
+        keys[row] = previous.keys[row] - slack;
+      }
+    }
+    heapify();
+    for (int row : run) {
+      keys[row] = rowKey.key(row);
+      exact[row] = true;
+    }
+    for (int i = 1; i < run.length; i++) {
+      int row = run[i];
+      int j = i - 1;
+      while (j >= 0 && isBefore(row, run[j])) {
+        run[j + 1] = run[j];
+        j--;
+      }
+      run[j + 1] = row;
+    }
+  }
+
+  public StationTable getTable() {
+    return table;
+  }
+
+  GeoPoint getLocation() {
+    return location;
+  }
+
+  /** The destination that the ranking is weighted towards, or null for a ranking by distance. */
+  GeoPoint getDestination() {
+    return destination;
+  }
+
+  @Override
+  public int size() {
+    return rows.length;
+  }
+
+  /**
+   * Returns the table row of the station at the given rank, sorting just far enough to know it.
+   */
+  public synchronized int getRow(int rank) {
+    if (rank < 0 || rank >= rows.length) {
+      throw new IndexOutOfBoundsException("Rank " + rank + " of " + rows.length);
+    }
+    while (sortedCount <= rank) {
+      popNext();
+    }
+    return rows[rank];
+  }
+
+  @Override
+  @SuppressWarnings("unchecked")
+  public synchronized T get(int rank) {
+    int row = getRow(rank);
+    T stationDistance = (T) stationDistances[rank];
+    if (stationDistance == null) {
+      stationDistance = calculator.apply(table.getStation(row));
+      stationDistances[rank] = stationDistance;
+    }
+    return stationDistance;
+  }
+
+  /**
+   * Returns the rank of the closest station with more than {@code bikes} available bikes, or -1 if
+   * there is none. Only the stations up to and including that one are sorted.
+   */
+  public synchronized int findFirstWithBikes(int bikes) {
+    for (int rank = 0; rank < rows.length; rank++) {
+      if (table.getAvailableBikes(getRow(rank)) > bikes) {
+        return rank;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the rank of the closest station with more than {@code docks} available docks, or -1 if
+   * there is none. Only the stations up to and including that one are sorted.
+   */
+  public synchronized int findFirstWithDocks(int docks) {
+    for (int rank = 0; rank < rows.length; rank++) {
+      if (table.getAvailableDocks(getRow(rank)) > docks) {
+        return rank;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the station at the given rank along with that rank, or null if {@code rank} is -1, as
+   * returned by the {@code findFirst} methods.
+   */
+  public StationDistanceRank getStationDistanceRank(int rank) {
+    return rank < 0 ? null : new StationDistanceRank(get(rank), rank);
+  }
+
+  /** The number of ranks that have been sorted so far. */
+  synchronized int getSortedCount() {
+    return sortedCount;
+  }
+
+  private void popNext() {
+    // A bound at the top of the heap may hide a row with a smaller key, so keep replacing bounds
+    // with keys until the top is exact. It is then no greater than any key below it.
+    while (heapSize > 0 && exact != null && !exact[heap[0]]) {
+      int row = heap[0];
+      keys[row] = rowKey.key(row);
+      exact[row] = true;
+      siftDown(0);
+    }
+    if (runIndex < run.length && (heapSize == 0 || isBefore(run[runIndex], heap[0]))) {
+      rows[sortedCount++] = run[runIndex++];
+      return;
+    }
+    rows[sortedCount++] = heap[0];
+    heapSize--;
+    heap[0] = heap[heapSize];
+    siftDown(0);
+  }
+
+  private void heapify() {
+    for (int i = heapSize / 2 - 1; i >= 0; i--) {
+      siftDown(i);
+    }
+  }
+
+  private void siftDown(int i) {
+    int row = heap[i];
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= heapSize) {
+        break;
+      }
+      if (child + 1 < heapSize && isBefore(heap[child + 1], heap[child])) {
+        child++;
+      }
+      if (!isBefore(heap[child], row)) {
+        break;
+      }
+      heap[i] = heap[child];
+      i = child;
+    }
+    heap[i] = row;
+  }
+
+  // Ties are broken by row, which is what makes the order match a stable sort.
+  private boolean isBefore(int row, int other) {
+    int comparison = Double.compare(keys[row], keys[other]);
+    return comparison < 0 || (comparison == 0 && row < other);
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import java.util.List;
+
+/**
+ * The live part of a bike share system: for each station id, the available bikes and docks and the
+ * station's status, along with the time the feed was generated and fetched. This is all that
+ * changes from one poll to the next, so it is what gets written and passed between processes on
+ * every sync; see {@link StationCatalog} for the rest.
+ * <p>
+ * The counts are held in parallel arrays, one element per station in feed order. Instances are
+ * immutable.
+ */
+public class StationStatusSnapshot {
+
+  private final String executionTime;
+  private final long timestamp;
+  private final int[] ids;
+  private final int[] availableBikes;
+  private final int[] availableDocks;
+  private final int[] statusKeys;
+  private final String[] statusValues;
+
+  StationStatusSnapshot(
+      String executionTime,
+      long timestamp,
+      int[] ids,
+      int[] availableBikes,
+      int[] availableDocks,
+      int[] statusKeys,
+      String[] statusValues) {
+    this.executionTime = executionTime;
+    this.timestamp = timestamp;
+    this.ids = ids;
+    this.availableBikes = availableBikes;
+    this.availableDocks = availableDocks;
+    this.statusKeys = statusKeys;
+    this.statusValues = statusValues;
+  }
+
+  /** Creates a snapshot of the live fields of every station in the given list. */
+  public static StationStatusSnapshot of(StationList stationList) {
+    List<Station> stations = stationList.stationBeanList;
+    int size = stations == null ? 0 : stations.size();
+    int[] ids = new int[size];
+    int[] availableBikes = new int[size];
+    int[] availableDocks = new int[size];
+    int[] statusKeys = new int[size];
+    String[] statusValues = new String[size];
+    for (int i = 0; i < size; i++) {
+      Station station = stations.get(i);
+      ids[i] = station.id;
+      availableBikes[i] = station.availableBikes;
+      availableDocks[i] = station.availableDocks;
+      statusKeys[i] = station.statusKey;
+      statusValues[i] = station.statusValue;
+    }
+    return new StationStatusSnapshot(stationList.executionTime, stationList.timestamp,
+        ids, availableBikes, availableDocks, statusKeys, statusValues);
+  }
+
+  public String getExecutionTime() {
+    return executionTime;
+  }
+
+  public long getTimestamp() {
+    return timestamp;
+  }
+
+  public int size() {
+    return ids.length;
+  }
+
+  public int getId(int index) {
+    return ids[index];
+  }
+
+  public int getAvailableBikes(int index) {
+    return availableBikes[index];
+  }
+
+  public int getAvailableDocks(int index) {
+    return availableDocks[index];
+  }
+
+  public int getStatusKey(int index) {
+    return statusKeys[index];
+  }
+
+  public String getStatusValue(int index) {
+    return statusValues[index];
+  }
+}
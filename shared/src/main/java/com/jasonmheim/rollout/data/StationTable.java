@@ -0,0 +1,414 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.util.List;
+
+import static java.lang.Math.cos;
+import static java.lang.Math.sin;
+import static java.lang.Math.toRadians;
+
+/**
+ * A column oriented copy of the numeric fields of a {@link StationList}. Each station is a row, and
+ * each field used for ranking is held in its own primitive array, so that distance calculations
+ * and threshold checks over the whole system run over contiguous memory without creating an object
+ * per station. Rankings are returned as arrays of row indices.
+ * <p>
+ * Everything else about a station, notably its strings, stays in the original {@link Station}
+ * objects, which serve as a side table consulted through {@link #getStation} only for the rows that
+ * are actually displayed.
+ * <p>
+ * Each station's coordinates are also converted to radians, along with the sine and cosine of its
+ * latitude, once when the table is built. The {@link DistanceMode} chosen for the table decides how
+ * distances are computed from them.
+ * <p>
+ * Instances are immutable. The station list must not be modified once the table has been built.
+ */
+public class StationTable {
+
+  private final int[] id;
+  private final double[] latitude;
+  private final double[] longitude;
+  private final int[] availableBikes;
+  private final int[] availableDocks;
+  private final int[] totalDocks;
+
+  private final DistanceMode distanceMode;
+  private final double[] latitudeRadians;
+  private final double[] longitudeRadians;
+  private final double[] sinLatitude;
+  private final double[] cosLatitude;
+
+  private final List<Station> stations;
+
+  /**
+   * Creates a table that computes distances with the reference
+   * {@link DistanceMode#SPHERICAL_LAW_OF_COSINES}, so that rankings match those of the calculators
+   * exactly.
+   */
+  public StationTable(StationList stationList) {
+    this(stationList, DistanceMode.SPHERICAL_LAW_OF_COSINES);
+  }
+
+  public StationTable(StationList stationList, DistanceMode distanceMode) {
+    this.distanceMode = distanceMode;
+    stations = stationList.stationBeanList == null
+        ? ImmutableList.<Station>of()
+        : ImmutableList.copyOf(stationList.stationBeanList);
+    int size = stations.size();
+    id = new int[size];
+    latitude = new double[size];
+    longitude = new double[size];
+    availableBikes = new int[size];
+    availableDocks = new int[size];
+    totalDocks = new int[size];
+    latitudeRadians = new double[size];
+    longitudeRadians = new double[size];
+    sinLatitude = new double[size];
+    cosLatitude = new double[size];
+    for (int row = 0; row < size; row++) {
+      Station station = stations.get(row);
+      id[row] = station.id;
+      latitude[row] = station.latitude;
+      longitude[row] = station.longitude;
+      availableBikes[row] = station.availableBikes;
+      availableDocks[row] = station.availableDocks;
+      totalDocks[row] = station.totalDocks;
+      latitudeRadians[row] = toRadians(station.latitude);
+      longitudeRadians[row] = toRadians(station.longitude);
+      sinLatitude[row] = sin(latitudeRadians[row]);
+      cosLatitude[row] = cos(latitudeRadians[row]);
+    }
+  }
+
+  public DistanceMode getDistanceMode() {
+    return distanceMode;
+  }
+
+  public int size() {
+    return id.length;
+  }
+
+  public int getId(int row) {
+    return id[row];
+  }
+
+  public double getLatitude(int row) {
+    return latitude[row];
+  }
+
+  public double getLongitude(int row) {
+    return longitude[row];
+  }
+
+  public int getAvailableBikes(int row) {
+    return availableBikes[row];
+  }
+
+  public int getAvailableDocks(int row) {
+    return availableDocks[row];
+  }
+
+  public int getTotalDocks(int row) {
+    return totalDocks[row];
+  }
+
+  /**
+   * Returns the full {@link Station} for the given row, for access to the fields that are not held
+   * in columns.
+   */
+  public Station getStation(int row) {
+    return stations.get(row);
+  }
+
+  /**
+   * Distance in miles from the given point to the station in the given row, computed according to
+   * this table's {@link DistanceMode}.
+   */
+  double distanceInMiles(int row, GeoPoint point) {
+    return distanceMode.distanceInMiles(
+        point.latitude, point.longitude, point.sinLatitude, point.cosLatitude,
+        latitudeRadians[row], longitudeRadians[row], sinLatitude[row], cosLatitude[row]);
+  }
+
+  /**
+   * Writes the distance in miles from the given location to every station into {@code miles},
+   * which must have at least {@link #size} elements.
+   */
+  public void getMilesToLocation(double latitude, double longitude, double[] miles) {
+    GeoPoint location = new GeoPoint(latitude, longitude);
+    for (int row = 0; row < id.length; row++) {
+      miles[row] = distanceInMiles(row, location);
+    }
+  }
+
+  /**
+   * Writes the weighted distance used to order {@link DestinationDistance} instances for every
+   * station into {@code miles}, which must have at least {@link #size} elements.
+   */
+  public void getWeightedMilesToDestination(
+      double latitude,
+      double longitude,
+      double destinationLatitude,
+      double destinationLongitude,
+      double[] miles) {
+    GeoPoint location = new GeoPoint(latitude, longitude);
+    GeoPoint destination = new GeoPoint(destinationLatitude, destinationLongitude);
+    for (int row = 0; row < id.length; row++) {
+      miles[row] = DestinationDistance.weightedMiles(
+          distanceInMiles(row, destination), distanceInMiles(row, location));
+    }
+  }
+
+  /**
+   * Returns every row ordered by distance from the given location. With the reference distance
+   * mode this is the same order as sorting the output of a {@link StationDistanceCalculator}.
+   */
+  public int[] rankByDistance(double latitude, double longitude) {
+    double[] miles = new double[id.length];
+    getMilesToLocation(latitude, longitude, miles);
+    return order(miles, id.length);
+  }
+
+  /**
+   * Returns every row ordered by weighted distance from the given location and destination. With
+   * the reference distance mode this is the same order as sorting the output of a
+   * {@link DestinationDistanceCalculator}.
+   */
+  public int[] rankByDestination(
+      double latitude,
+      double longitude,
+      double destinationLatitude,
+      double destinationLongitude) {
+    double[] miles = new double[id.length];
+    getWeightedMilesToDestination(
+        latitude, longitude, destinationLatitude, destinationLongitude, miles);
+    return order(miles, id.length);
+  }
+
+  /**
+   * Returns a {@link StationRanking} by distance from the given location, which sorts only as many
+   * stations as are read from it.
+   */
+  public StationRanking<StationDistance> getRankingByDistance(double latitude, double longitude) {
+    GeoPoint location = new GeoPoint(latitude, longitude);
+    double[] miles = new double[id.length];
+    for (int row = 0; row < id.length; row++) {
+      miles[row] = distanceInMiles(row, location);
+    }
+    return new StationRanking<StationDistance>(this,
+        new StationDistanceCalculator(latitude, longitude), milesToLocation(location), location,
+        null, miles);
+  }
+
+  /**
+   * Returns a {@link StationRanking} by weighted distance from the given location and destination,
+   * which sorts only as many stations as are read from it.
+   */
+  public StationRanking<DestinationDistance> getRankingByDestination(
+      double latitude,
+      double longitude,
+      double destinationLatitude,
+      double destinationLongitude) {
+    GeoPoint location = new GeoPoint(latitude, longitude);
+    GeoPoint destination = new GeoPoint(destinationLatitude, destinationLongitude);
+    double[] miles = new double[id.length];
+    for (int row = 0; row < id.length; row++) {
+      miles[row] = DestinationDistance.weightedMiles(
+          distanceInMiles(row, destination), distanceInMiles(row, location));
+    }
+    return new StationRanking<DestinationDistance>(this, new DestinationDistanceCalculator(
+        latitude, longitude, destinationLatitude, destinationLongitude),
+        weightedMilesToDestination(location, destination), location, destination, miles);
+  }
+
+  /**
+   * Returns the same ranking as {@link #getRankingByDistance(double, double)}, derived from a
+   * ranking of this table for a nearby location. Only the stations that are read from the result,
+   * and those that were read from {@code previous}, have their distances computed; see
+   * {@link StationRanking}. The saving shrinks as the move grows, so callers should start afresh
+   * once the user has moved further than a screen of stations spans.
+   */
+  public StationRanking<StationDistance> getRankingByDistance(
+      double latitude, double longitude, StationRanking<StationDistance> previous) {
+    Preconditions.checkArgument(previous.getTable() == this, "Ranking is from another table");
+    Preconditions.checkArgument(previous.getDestination() == null, "Ranking has a destination");
+    GeoPoint location = new GeoPoint(latitude, longitude);
+    return new StationRanking<StationDistance>(
+        new StationDistanceCalculator(latitude, longitude), milesToLocation(location), location,
+        null, previous, slack(previous.getLocation(), location));
+  }
+
+  /**
+   * Returns the same ranking as
+   * {@link #getRankingByDestination(double, double, double, double)}, derived from a ranking of
+   * this table for a nearby location and the same destination, as described for
+   * {@link #getRankingByDistance(double, double, StationRanking)}.
+   */
+  public StationRanking<DestinationDistance> getRankingByDestination(
+      double latitude,
+      double longitude,
+      double destinationLatitude,
+      double destinationLongitude,
+      StationRanking<DestinationDistance> previous) {
+    Preconditions.checkArgument(previous.getTable() == this, "Ranking is from another table");
+    GeoPoint destination = new GeoPoint(destinationLatitude, destinationLongitude);
+    GeoPoint previousDestination = previous.getDestination();
+    Preconditions.checkArgument(previousDestination != null
+        && previousDestination.latitude == destination.latitude
+        && previousDestination.longitude == destination.longitude,
+        "Ranking has another destination");
+    GeoPoint location = new GeoPoint(latitude, longitude);
+    // Only the distance to the location changes, and it is weighted by one.
+    return new StationRanking<DestinationDistance>(new DestinationDistanceCalculator(
+        latitude, longitude, destinationLatitude, destinationLongitude),
+        weightedMilesToDestination(location, destination), location, destination, previous,
+        slack(previous.getLocation(), location));
+  }
+
+  private StationRanking.RowKey milesToLocation(final GeoPoint location) {
+    return new StationRanking.RowKey() {
+      @Override
+      public double key(int row) {
+        return distanceInMiles(row, location);
+      }
+    };
+  }
+
+  private StationRanking.RowKey weightedMilesToDestination(
+      final GeoPoint location, final GeoPoint destination) {
+    return new StationRanking.RowKey() {
+      @Override
+      public double key(int row) {
+        return DestinationDistance.weightedMiles(
+            distanceInMiles(row, destination), distanceInMiles(row, location));
+      }
+    };
+  }
+
+  /**
+   * By the triangle inequality, no station's distance changes by more than the distance between
+   * the two points. The margin on top of that covers rounding in the distance formulas, and the
+   * approximate modes, which are not quite metrics.
+   */
+  private double slack(GeoPoint from, GeoPoint to) {
+    double miles = distanceMode.distanceInMiles(
+        from.latitude, from.longitude, from.sinLatitude, from.cosLatitude,
+        to.latitude, to.longitude, to.sinLatitude, to.cosLatitude);
+    return miles * 1.01 + 0.001;
+  }
+
+  /**
+   * Returns the position within {@code ranking} of the first row with more than {@code bikes}
+   * available bikes, or -1 if there is none. The position is also the station's rank.
+   */
+  public int findFirstWithBikes(int[] ranking, int bikes) {
+    for (int rank = 0; rank < ranking.length; rank++) {
+      if (availableBikes[ranking[rank]] > bikes) {
+        return rank;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Returns the position within {@code ranking} of the first row with more than {@code docks}
+   * available docks, or -1 if there is none. The position is also the station's rank.
+   */
+  public int findFirstWithDocks(int[] ranking, int docks) {
+    for (int rank = 0; rank < ranking.length; rank++) {
+      if (availableDocks[ranking[rank]] > docks) {
+        return rank;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Creates the {@link StationDistance} for a single row, as {@link StationDistanceCalculator}
+   * would. Intended for the handful of rows that are actually displayed.
+   */
+  public StationDistance getStationDistance(int row, double latitude, double longitude) {
+    return new StationDistanceCalculator(latitude, longitude).apply(stations.get(row));
+  }
+
+  /**
+   * Creates the {@link DestinationDistance} for a single row, as
+   * {@link DestinationDistanceCalculator} would. Intended for the handful of rows that are actually
+   * displayed.
+   */
+  public DestinationDistance getDestinationDistance(
+      int row,
+      double latitude,
+      double longitude,
+      double destinationLatitude,
+      double destinationLongitude) {
+    return new DestinationDistanceCalculator(
+        latitude, longitude, destinationLatitude, destinationLongitude).apply(stations.get(row));
+  }
+
+  /**
+   * Returns the indices 0 to {@code size - 1} ordered by their value in {@code keys}. The sort is
+   * stable, so rows with equal keys keep their original order, just as they would when sorting
+   * objects with {@link com.google.common.collect.Ordering}.
+   */
+  static int[] order(double[] keys, int size) {
+    int[] result = new int[size];
+    for (int i = 0; i < size; i++) {
+      result[i] = i;
+    }
+    mergeSort(result, new int[size], 0, size, keys);
+    return result;
+  }
+
+  private static void mergeSort(int[] indices, int[] scratch, int from, int to, double[] keys) {
+    if (to - from <= 16) {
+      // Insertion sort is both faster and stable on short runs.
+      for (int i = from + 1; i < to; i++) {
+        int index = indices[i];
+        double key = keys[index];
+        int j = i - 1;
+        while (j >= from && Double.compare(keys[indices[j]], key) > 0) {
+          indices[j + 1] = indices[j];
+          j--;
+        }
+        indices[j + 1] = index;
+      }
+      return;
+    }
+    int middle = (from + to) >>> 1;
+    mergeSort(indices, scratch, from, middle, keys);
+    mergeSort(indices, scratch, middle, to, keys);
+    if (Double.compare(keys[indices[middle - 1]], keys[indices[middle]]) <= 0) {
+      return;
+    }
+    System.arraycopy(indices, from, scratch, from, to - from);
+    int left = from;
+    int right = middle;
+    for (int i = from; i < to; i++) {
+      if (right >= to
+          || (left < middle && Double.compare(keys[scratch[left]], keys[scratch[right]]) <= 0)) {
+        indices[i] = scratch[left++];
+      } else {
+        indices[i] = scratch[right++];
+      }
+    }
+  }
+}
@@ -0,0 +1,135 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import com.google.gson.Gson;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+
+import static java.lang.Math.abs;
+import static java.lang.Math.toRadians;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks each {@link DistanceMode}, and the calculators' cached trigonometry, against the reference
+ * law of cosines in {@link GeoUtils} over every pair of stations in the sample snapshot.
+ */
+public class DistanceModeTest {
+
+  private static final double FEET_PER_MILE = 5280;
+
+  private static List<Station> stations;
+
+  @BeforeClass
+  public static void setUpOnce() throws Exception {
+    FileInputStream file = new FileInputStream("libs/test/data/sampleSnapshot.json");
+    stations = new Gson().fromJson(new InputStreamReader(file), StationList.class).stationBeanList;
+    file.close();
+  }
+
+  @Test
+  public void testSphericalLawOfCosines_matchesReference() {
+    for (Station from : stations) {
+      GeoPoint point = new GeoPoint(from.latitude, from.longitude);
+      for (Station to : stations) {
+        GeoPoint other = new GeoPoint(to.latitude, to.longitude);
+        assertEquals(reference(from, to),
+            distance(DistanceMode.SPHERICAL_LAW_OF_COSINES, point, other), 0);
+      }
+    }
+  }
+
+  @Test
+  public void testHaversine_withinAFoot() {
+    assertTrue(maxErrorInFeet(DistanceMode.HAVERSINE) < 1);
+  }
+
+  @Test
+  public void testEquirectangular_withinRelativeBound() {
+    for (Station from : stations) {
+      GeoPoint point = new GeoPoint(from.latitude, from.longitude);
+      for (Station to : stations) {
+        if (from == to) {
+          continue;
+        }
+        double expected = reference(from, to);
+        double actual =
+            distance(DistanceMode.EQUIRECTANGULAR, point, new GeoPoint(to.latitude, to.longitude));
+        assertEquals(expected, actual, expected * 0.0001);
+      }
+    }
+  }
+
+  @Test
+  public void testCalculators_matchReference() {
+    Station origin = stations.get(0);
+    Station destination = stations.get(stations.size() - 1);
+    StationDistanceCalculator stationCalculator =
+        new StationDistanceCalculator(origin.latitude, origin.longitude);
+    DestinationDistanceCalculator destinationCalculator = new DestinationDistanceCalculator(
+        origin.latitude, origin.longitude, destination.latitude, destination.longitude);
+    for (Station station : stations) {
+      StationDistance stationDistance = stationCalculator.apply(station);
+      assertEquals(reference(origin, station), stationDistance.getMilesToLocation(), 0);
+      String direction = GeoUtils.compassDirection(
+          toRadians(origin.latitude), toRadians(origin.longitude),
+          toRadians(station.latitude), toRadians(station.longitude));
+      assertEquals(new StationDistance(station, reference(origin, station), direction).toString(),
+          stationDistance.toString());
+      DestinationDistance destinationDistance = destinationCalculator.apply(station);
+      assertEquals(reference(destination, station), destinationDistance.getMilesToDestination(), 0);
+      assertEquals(
+          stationDistance.getMilesToLocation(), destinationDistance.getMilesToLocation(), 0);
+      assertEquals(stationDistance.getDistanceString(), destinationDistance.getDistanceString());
+    }
+  }
+
+  private static double maxErrorInFeet(DistanceMode mode) {
+    double max = 0;
+    for (Station from : stations) {
+      GeoPoint point = new GeoPoint(from.latitude, from.longitude);
+      for (Station to : stations) {
+        if (from == to) {
+          // The law of cosines rounds to NaN for identical points.
+          continue;
+        }
+        double error = abs(distance(mode, point, new GeoPoint(to.latitude, to.longitude))
+            - reference(from, to));
+        max = Math.max(max, error * FEET_PER_MILE);
+      }
+    }
+    return max;
+  }
+
+  private static double distance(DistanceMode mode, GeoPoint from, GeoPoint to) {
+    return mode.distanceInMiles(
+        from.latitude, from.longitude, from.sinLatitude, from.cosLatitude,
+        to.latitude, to.longitude, to.sinLatitude, to.cosLatitude);
+  }
+
+  private static double reference(Station from, Station to) {
+    return GeoUtils.distanceInMiles(
+        toRadians(from.latitude), toRadians(from.longitude),
+        toRadians(to.latitude), toRadians(to.longitude));
+  }
+}
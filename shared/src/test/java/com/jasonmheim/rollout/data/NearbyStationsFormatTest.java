@@ -0,0 +1,137 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import com.google.gson.Gson;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class NearbyStationsFormatTest {
+
+  // Approximately 76 Ninth Ave, New York, NY, 10011
+  private static final double LATITUDE = 40.7417806;
+  private static final double LONGITUDE = -74.0045012;
+  private static final int COUNT = 10;
+
+  private static StationTable table;
+
+  @BeforeClass
+  public static void setUpOnce() throws Exception {
+    FileInputStream file = new FileInputStream("libs/test/data/sampleSnapshot.json");
+    StationList stationList = new Gson().fromJson(new InputStreamReader(file), StationList.class);
+    file.close();
+    table = new StationTable(stationList);
+  }
+
+  @Test
+  public void testNearbyStation_distanceShownAsBefore() {
+    for (StationDistance stationDistance : table.getRankingByDistance(LATITUDE, LONGITUDE)) {
+      NearbyStation nearbyStation = NearbyStation.of(stationDistance);
+      assertEquals(stationDistance.getDistanceString(),
+          nearbyStation.appendDistance(new StringBuilder()).toString());
+    }
+  }
+
+  @Test
+  public void testFull() throws IOException {
+    NearbyStations expected = nearby(7, LATITUDE, LONGITUDE);
+    ByteBuffer buffer = NearbyStationsFormat.encodeFull(expected);
+    assertTrue(NearbyStationsFormat.canDecode(buffer, null));
+    assertSame(expected, NearbyStationsFormat.decode(buffer, null));
+    assertEquals(0, buffer.remaining());
+  }
+
+  @Test
+  public void testDelta() throws IOException {
+    NearbyStations base = nearby(7, LATITUDE, LONGITUDE);
+    // A block or so north, which reorders and replaces some of the stations.
+    NearbyStations expected = nearby(8, LATITUDE + 0.002, LONGITUDE);
+    ByteBuffer delta = NearbyStationsFormat.encodeDelta(expected, base);
+    ByteBuffer full = NearbyStationsFormat.encodeFull(expected);
+    assertTrue(delta.remaining() < full.remaining());
+    assertTrue(NearbyStationsFormat.canDecode(delta, base));
+    assertSame(expected, NearbyStationsFormat.decode(delta, base));
+  }
+
+  @Test
+  public void testDelta_unchangedIsSmall() throws IOException {
+    NearbyStations base = nearby(7, LATITUDE, LONGITUDE);
+    NearbyStations expected = nearby(8, LATITUDE, LONGITUDE);
+    ByteBuffer delta = NearbyStationsFormat.encodeDelta(expected, base);
+    // The header, then a reference, three zeros and a direction for each station.
+    assertEquals(NearbyStationsFormat.HEADER_SIZE + 4 + (5 * COUNT), delta.remaining());
+    assertSame(expected, NearbyStationsFormat.decode(delta, base));
+  }
+
+  @Test
+  public void testDelta_wrongBase() {
+    NearbyStations base = nearby(7, LATITUDE, LONGITUDE);
+    NearbyStations other = nearby(6, LATITUDE, LONGITUDE);
+    ByteBuffer delta = NearbyStationsFormat.encodeDelta(nearby(8, LATITUDE, LONGITUDE), base);
+    assertFalse(NearbyStationsFormat.canDecode(delta, null));
+    assertFalse(NearbyStationsFormat.canDecode(delta, other));
+    try {
+      NearbyStationsFormat.decode(delta, other);
+      fail();
+    } catch (IOException expected) {
+    }
+  }
+
+  @Test
+  public void testEmpty() throws IOException {
+    NearbyStations empty = new NearbyStations(3, new ArrayList<NearbyStation>());
+    assertSame(empty, NearbyStationsFormat.decode(NearbyStationsFormat.encodeFull(empty), null));
+  }
+
+  @Test
+  public void testTruncated() {
+    ByteBuffer buffer = NearbyStationsFormat.encodeFull(nearby(7, LATITUDE, LONGITUDE));
+    buffer.limit(buffer.limit() - 3);
+    try {
+      NearbyStationsFormat.decode(buffer, null);
+      fail();
+    } catch (IOException expected) {
+    }
+  }
+
+  private static NearbyStations nearby(int sequence, double latitude, double longitude) {
+    List<NearbyStation> stations = new ArrayList<NearbyStation>();
+    for (StationDistance stationDistance
+        : table.getRankingByDistance(latitude, longitude).subList(0, COUNT)) {
+      stations.add(NearbyStation.of(stationDistance));
+    }
+    return new NearbyStations(sequence, stations);
+  }
+
+  private static void assertSame(NearbyStations expected, NearbyStations actual) {
+    assertEquals(expected.getSequence(), actual.getSequence());
+    assertEquals(expected.getStations(), actual.getStations());
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import com.google.gson.Gson;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StationCatalogTest {
+
+  private StationList stationList;
+
+  @Before
+  public void setUp() throws Exception {
+    FileInputStream file = new FileInputStream("libs/test/data/sampleSnapshot.json");
+    stationList = new Gson().fromJson(new InputStreamReader(file), StationList.class);
+    file.close();
+  }
+
+  @Test
+  public void testIndexOf() {
+    StationCatalog catalog = StationCatalog.of(stationList);
+    assertEquals(stationList.stationBeanList.size(), catalog.size());
+    for (int i = 0; i < stationList.stationBeanList.size(); i++) {
+      assertEquals(i, catalog.indexOf(stationList.stationBeanList.get(i).id));
+    }
+    assertEquals(-1, catalog.indexOf(-5));
+  }
+
+  @Test
+  public void testMerge_withLaterCounts() {
+    StationCatalog catalog = StationCatalog.of(stationList);
+    Station changed = stationList.stationBeanList.get(3);
+    changed.availableBikes++;
+    changed.availableDocks--;
+    // Reversing the feed order shows that stations are matched by id.
+    Collections.reverse(stationList.stationBeanList);
+    StationStatusSnapshot snapshot = StationStatusSnapshot.of(stationList);
+    assertTrue(catalog.covers(snapshot));
+    StationList merged = catalog.merge(snapshot);
+    assertEquals(stationList.stationBeanList.size(), merged.stationBeanList.size());
+    for (int i = 0; i < merged.stationBeanList.size(); i++) {
+      Station expected = stationList.stationBeanList.get(i);
+      Station actual = merged.stationBeanList.get(i);
+      assertEquals(expected.id, actual.id);
+      assertEquals(expected.stationName, actual.stationName);
+      assertEquals(expected.latitude, actual.latitude, 0);
+      assertEquals(expected.availableBikes, actual.availableBikes);
+      assertEquals(expected.availableDocks, actual.availableDocks);
+      assertEquals(expected.statusValue, actual.statusValue);
+    }
+  }
+
+  @Test
+  public void testCovers_newStation() {
+    StationCatalog catalog = StationCatalog.of(stationList);
+    Station added = new Station();
+    added.id = 100000;
+    stationList.stationBeanList.add(added);
+    StationStatusSnapshot snapshot = StationStatusSnapshot.of(stationList);
+    assertFalse(catalog.covers(snapshot));
+    assertEquals(catalog.size(), catalog.merge(snapshot).stationBeanList.size());
+  }
+
+  @Test
+  public void testEquals() {
+    StationCatalog catalog = StationCatalog.of(stationList);
+    stationList.stationBeanList.get(0).availableBikes += 3;
+    assertEquals(catalog, StationCatalog.of(stationList));
+    assertEquals(catalog.hashCode(), StationCatalog.of(stationList).hashCode());
+    stationList.stationBeanList.get(0).stationName = "Renamed";
+    assertNotEquals(catalog, StationCatalog.of(stationList));
+  }
+}
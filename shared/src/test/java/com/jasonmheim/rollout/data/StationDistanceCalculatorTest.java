@@ -28,6 +28,7 @@ import org.junit.Test;
 import java.io.FileInputStream;
 import java.io.InputStreamReader;
 import java.util.List;
+import java.util.Locale;
 
 import static org.junit.Assert.*;
 
@@ -64,4 +65,23 @@ public class StationDistanceCalculatorTest {
       System.out.println(result);
     }
   }
+
+  @Test
+  public void testDistanceString() {
+    // From nearby, and from far enough away that every distance is in the hundreds of miles.
+    StationDistanceCalculator[] calculators = {
+        instance, new StationDistanceCalculator(37.7749, -122.4194)};
+    StringBuilder builder = new StringBuilder();
+    for (StationDistanceCalculator calculator : calculators) {
+      for (StationDistance result : Iterables.transform(stationList.stationBeanList, calculator)) {
+        String expected = result.getMilesToLocation() < 0.1
+            ? (int) result.getFeetToLocation() + " Feet " + result.getDirection()
+            : String.format(Locale.US, "%.2f Miles ", result.getMilesToLocation())
+                + result.getDirection();
+        assertEquals(expected, result.getDistanceString());
+        builder.setLength(0);
+        assertEquals(expected, result.appendDistance(builder).toString());
+      }
+    }
+  }
 }
\ No newline at end of file
@@ -0,0 +1,249 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import com.google.common.base.Function;
+import com.google.common.base.Predicate;
+import com.google.common.base.Predicates;
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Ordering;
+import com.google.gson.Gson;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Checks {@link StationGridIndex} against a brute force sort of the sample snapshot.
+ */
+public class StationGridIndexTest {
+
+  // Approximately 76 Ninth Ave, New York, NY, 10011
+  private static final double LATITUDE = 40.7417806;
+  private static final double LONGITUDE = -74.0045012;
+  // Approximately Grand Army Plaza, Brooklyn, NY
+  private static final double DESTINATION_LATITUDE = 40.6740;
+  private static final double DESTINATION_LONGITUDE = -73.9701;
+
+  private static final double[][] ORIGINS = {
+      {LATITUDE, LONGITUDE},
+      {DESTINATION_LATITUDE, DESTINATION_LONGITUDE},
+      // Out in the Atlantic, well outside the grid.
+      {40.5, -73.5},
+      // Another city entirely.
+      {37.7749, -122.4194},
+  };
+
+  // The relative error of DistanceMode.EQUIRECTANGULAR in a city, as checked by DistanceModeTest.
+  private static final double EQUIRECTANGULAR_ERROR = 0.0001;
+
+  private static StationList stationList;
+  private static StationGridIndex instance;
+
+  @BeforeClass
+  public static void setUpOnce() throws Exception {
+    FileInputStream file = new FileInputStream("libs/test/data/sampleSnapshot.json");
+    stationList = new Gson().fromJson(new InputStreamReader(file), StationList.class);
+    file.close();
+    instance = new StationGridIndex(stationList);
+  }
+
+  @Test
+  public void testGetClosestStations() {
+    for (double[] origin : ORIGINS) {
+      List<StationDistance> expected = bruteForce(
+          new StationDistanceCalculator(origin[0], origin[1]), Predicates.<Station>alwaysTrue());
+      assertSameStations(expected.subList(0, 10), instance.getClosestStations(
+          origin[0], origin[1], 10, Predicates.<Station>alwaysTrue()));
+    }
+  }
+
+  @Test
+  public void testGetClosestStations_withPredicate() {
+    Predicate<Station> hasBikes = hasMoreBikesThan(5);
+    for (double[] origin : ORIGINS) {
+      List<StationDistance> expected =
+          bruteForce(new StationDistanceCalculator(origin[0], origin[1]), hasBikes);
+      assertSameStations(expected.subList(0, 5),
+          instance.getClosestStations(origin[0], origin[1], 5, hasBikes));
+    }
+  }
+
+  @Test
+  public void testGetClosestStations_withDestination() {
+    Predicate<Station> hasDocks = hasMoreDocksThan(3);
+    for (double[] origin : ORIGINS) {
+      List<DestinationDistance> expected = bruteForce(
+          new DestinationDistanceCalculator(
+              origin[0], origin[1], DESTINATION_LATITUDE, DESTINATION_LONGITUDE),
+          hasDocks);
+      assertSameStations(expected.subList(0, 5), instance.getClosestStations(
+          origin[0], origin[1], DESTINATION_LATITUDE, DESTINATION_LONGITUDE, 5, hasDocks));
+    }
+  }
+
+  @Test
+  public void testGetClosestStations_approximateOrderWithinError() {
+    StationGridIndex approximate =
+        new StationGridIndex(new StationTable(stationList, DistanceMode.EQUIRECTANGULAR));
+    int count = stationList.stationBeanList.size();
+    for (Station origin : stationList.stationBeanList) {
+      // The law of cosines rounds to NaN for identical points, so leave out the origin itself.
+      Predicate<Station> others = Predicates.not(Predicates.equalTo(origin));
+      assertOrderedWithinError(approximate.getClosestStations(
+          origin.latitude, origin.longitude, count, others));
+      assertOrderedWithinError(approximate.getClosestStations(
+          origin.latitude, origin.longitude, DESTINATION_LATITUDE, DESTINATION_LONGITUDE, count,
+          others));
+    }
+  }
+
+  @Test
+  public void testGetClosestStations_moreThanAvailable() {
+    List<StationDistance> results = instance.getClosestStations(
+        LATITUDE, LONGITUDE, 1000, Predicates.<Station>alwaysTrue());
+    assertEquals(stationList.stationBeanList.size(), results.size());
+  }
+
+  @Test
+  public void testGetClosestStations_withinRadius() {
+    Predicate<Station> hasBikes = hasMoreBikesThan(5);
+    for (double[] origin : ORIGINS) {
+      for (double miles : new double[] {0.25, 1, 5}) {
+        List<StationDistance> expected = new ArrayList<StationDistance>();
+        for (StationDistance stationDistance :
+            bruteForce(new StationDistanceCalculator(origin[0], origin[1]), hasBikes)) {
+          if (stationDistance.getMilesToLocation() <= miles) {
+            expected.add(stationDistance);
+          }
+        }
+        assertSameStations(expected, instance.getClosestStations(
+            origin[0], origin[1], Integer.MAX_VALUE, miles, hasBikes));
+        if (expected.size() > 3) {
+          assertSameStations(expected.subList(0, 3),
+              instance.getClosestStations(origin[0], origin[1], 3, miles, hasBikes));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testGetClosestStation() {
+    for (int bikes = 0; bikes < 30; bikes += 5) {
+      Predicate<Station> hasBikes = hasMoreBikesThan(bikes);
+      List<StationDistance> ordered = bruteForce(
+          new StationDistanceCalculator(LATITUDE, LONGITUDE), Predicates.<Station>alwaysTrue());
+      int expectedRank = Iterables.indexOf(ordered, matching(hasBikes));
+      StationDistanceRank result = instance.getClosestStation(LATITUDE, LONGITUDE, hasBikes);
+      assertSame(ordered.get(expectedRank).getStation(), result.getStationDistance().getStation());
+      assertEquals(expectedRank, result.getRank());
+    }
+  }
+
+  @Test
+  public void testGetClosestStation_withDestination() {
+    for (int docks = 0; docks < 30; docks += 5) {
+      Predicate<Station> hasDocks = hasMoreDocksThan(docks);
+      List<DestinationDistance> ordered = bruteForce(
+          new DestinationDistanceCalculator(
+              LATITUDE, LONGITUDE, DESTINATION_LATITUDE, DESTINATION_LONGITUDE),
+          Predicates.<Station>alwaysTrue());
+      int expectedRank = Iterables.indexOf(ordered, matching(hasDocks));
+      StationDistanceRank result = instance.getClosestStation(
+          LATITUDE, LONGITUDE, DESTINATION_LATITUDE, DESTINATION_LONGITUDE, hasDocks);
+      assertSame(ordered.get(expectedRank).getStation(), result.getStationDistance().getStation());
+      assertEquals(expectedRank, result.getRank());
+    }
+  }
+
+  @Test
+  public void testGetClosestStation_noneMatch() {
+    assertNull(instance.getClosestStation(
+        LATITUDE, LONGITUDE, Predicates.<Station>alwaysFalse()));
+  }
+
+  @Test
+  public void testEmptyStationList() {
+    StationList empty = new StationList();
+    empty.stationBeanList = new ArrayList<Station>();
+    StationGridIndex emptyIndex = new StationGridIndex(empty);
+    assertEquals(0, emptyIndex.getClosestStations(
+        LATITUDE, LONGITUDE, 3, Predicates.<Station>alwaysTrue()).size());
+    assertNull(emptyIndex.getClosestStation(
+        LATITUDE, LONGITUDE, Predicates.<Station>alwaysTrue()));
+  }
+
+  private static <T extends StationDistance> List<T> bruteForce(
+      Function<Station, T> calculator, Predicate<Station> predicate) {
+    return Ordering.natural().sortedCopy(
+        Iterables.transform(Iterables.filter(stationList.stationBeanList, predicate), calculator));
+  }
+
+  private static void assertSameStations(
+      List<? extends StationDistance> expected, List<? extends StationDistance> actual) {
+    assertEquals(expected.size(), actual.size());
+    for (int i = 0; i < expected.size(); i++) {
+      assertSame(expected.get(i).getStation(), actual.get(i).getStation());
+    }
+  }
+
+  // Each result may be ranked ahead of one whose reference distance is shorter only by the error of
+  // both distances: with a <= b for estimates within the relative error e of the reference, the
+  // reference of b is at least (1 - e) / (1 + e), so more than (1 - 2e), of the reference of a.
+  private static void assertOrderedWithinError(List<? extends StationDistance> results) {
+    for (int i = 1; i < results.size(); i++) {
+      double previous = results.get(i - 1).getWeightedMiles();
+      assertTrue(results.get(i).getWeightedMiles() >= previous * (1 - 2 * EQUIRECTANGULAR_ERROR));
+    }
+  }
+
+  private static Predicate<StationDistance> matching(final Predicate<Station> predicate) {
+    return new Predicate<StationDistance>() {
+      @Override
+      public boolean apply(StationDistance stationDistance) {
+        return predicate.apply(stationDistance.getStation());
+      }
+    };
+  }
+
+  private static Predicate<Station> hasMoreBikesThan(final int bikes) {
+    return new Predicate<Station>() {
+      @Override
+      public boolean apply(Station station) {
+        return station.availableBikes > bikes;
+      }
+    };
+  }
+
+  private static Predicate<Station> hasMoreDocksThan(final int docks) {
+    return new Predicate<Station>() {
+      @Override
+      public boolean apply(Station station) {
+        return station.availableDocks > docks;
+      }
+    };
+  }
+}
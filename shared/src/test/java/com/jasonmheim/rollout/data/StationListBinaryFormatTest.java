@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import com.google.gson.Gson;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StationListBinaryFormatTest {
+
+  private static StationList stationList;
+
+  @BeforeClass
+  public static void setUpOnce() throws Exception {
+    FileInputStream file = new FileInputStream("libs/test/data/sampleSnapshot.json");
+    stationList = new Gson().fromJson(new InputStreamReader(file), StationList.class);
+    file.close();
+    stationList.timestamp = 1413764641000L;
+  }
+
+  @Test
+  public void testRoundTrip() throws IOException {
+    StationList decoded = roundTrip(stationList);
+    assertEquals(stationList.timestamp, decoded.timestamp);
+    assertEquals(stationList.executionTime, decoded.executionTime);
+    assertEquals(stationList.stationBeanList.size(), decoded.stationBeanList.size());
+    for (int i = 0; i < stationList.stationBeanList.size(); i++) {
+      Station expected = stationList.stationBeanList.get(i);
+      Station actual = decoded.stationBeanList.get(i);
+      assertEquals(expected.id, actual.id);
+      assertEquals(expected.stationName, actual.stationName);
+      assertEquals(expected.availableDocks, actual.availableDocks);
+      assertEquals(expected.totalDocks, actual.totalDocks);
+      assertEquals(expected.latitude, actual.latitude, 0);
+      assertEquals(expected.longitude, actual.longitude, 0);
+      assertEquals(expected.statusValue, actual.statusValue);
+      assertEquals(expected.statusKey, actual.statusKey);
+      assertEquals(expected.availableBikes, actual.availableBikes);
+      assertEquals(expected.city, actual.city);
+      assertEquals(expected.testStation, actual.testStation);
+    }
+  }
+
+  @Test
+  public void testRoundTrip_sharesStatusStrings() throws IOException {
+    StationList decoded = roundTrip(stationList);
+    Station first = decoded.stationBeanList.get(0);
+    for (Station station : decoded.stationBeanList) {
+      if (station.statusValue.equals(first.statusValue)) {
+        assertSame(first.statusValue, station.statusValue);
+      }
+    }
+  }
+
+  @Test
+  public void testRoundTrip_emptyAndNulls() throws IOException {
+    StationList empty = new StationList();
+    StationList decoded = roundTrip(empty);
+    assertNull(decoded.executionTime);
+    assertEquals(0, decoded.stationBeanList.size());
+
+    Station station = new Station();
+    station.id = 7;
+    empty.stationBeanList = new ArrayList<Station>();
+    empty.stationBeanList.add(station);
+    decoded = roundTrip(empty);
+    assertEquals(7, decoded.stationBeanList.get(0).id);
+    assertNull(decoded.stationBeanList.get(0).stationName);
+    assertNull(decoded.stationBeanList.get(0).statusValue);
+  }
+
+  @Test
+  public void testSnapshot_isSmallerThanCatalog() {
+    assertTrue(StationListBinaryFormat.encodeSnapshot(StationStatusSnapshot.of(stationList)).limit()
+        < StationListBinaryFormat.encodeCatalog(StationCatalog.of(stationList)).limit());
+  }
+
+  @Test
+  public void testDecode_rejectsOtherData() {
+    assertCorruptCatalog(ByteBuffer.wrap("{\"stationBeanList\":[]}".getBytes()));
+    assertCorruptSnapshot(ByteBuffer.wrap("{\"stationBeanList\":[]}".getBytes()));
+    // Neither kind of data is mistaken for the other.
+    assertCorruptCatalog(StationListBinaryFormat.encodeSnapshot(
+        StationStatusSnapshot.of(stationList)));
+    assertCorruptSnapshot(StationListBinaryFormat.encodeCatalog(StationCatalog.of(stationList)));
+    ByteBuffer buffer = StationListBinaryFormat.encodeCatalog(StationCatalog.of(stationList));
+    buffer.putInt(4, StationListBinaryFormat.VERSION + 1);
+    assertCorruptCatalog(buffer);
+  }
+
+  @Test
+  public void testDecode_rejectsTruncatedData() {
+    ByteBuffer catalog = StationListBinaryFormat.encodeCatalog(StationCatalog.of(stationList));
+    catalog.limit(catalog.limit() - 1);
+    assertCorruptCatalog(catalog);
+    ByteBuffer snapshot =
+        StationListBinaryFormat.encodeSnapshot(StationStatusSnapshot.of(stationList));
+    snapshot.limit(snapshot.limit() - 1);
+    assertCorruptSnapshot(snapshot);
+    snapshot.rewind();
+    snapshot.limit(StationListBinaryFormat.SNAPSHOT_HEADER_SIZE + 10);
+    assertCorruptSnapshot(snapshot);
+  }
+
+  private static StationList roundTrip(StationList stationList) throws IOException {
+    StationCatalog catalog = StationListBinaryFormat.decodeCatalog(
+        StationListBinaryFormat.encodeCatalog(StationCatalog.of(stationList)));
+    StationStatusSnapshot snapshot = StationListBinaryFormat.decodeSnapshot(
+        StationListBinaryFormat.encodeSnapshot(StationStatusSnapshot.of(stationList)));
+    return catalog.merge(snapshot);
+  }
+
+  private static void assertCorruptCatalog(ByteBuffer buffer) {
+    try {
+      StationListBinaryFormat.decodeCatalog(buffer);
+      fail();
+    } catch (IOException expected) {
+    }
+  }
+
+  private static void assertCorruptSnapshot(ByteBuffer buffer) {
+    try {
+      StationListBinaryFormat.decodeSnapshot(buffer);
+      fail();
+    } catch (IOException expected) {
+    }
+  }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import com.google.gson.Gson;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StationListDeltaTest {
+
+  private StationList previous;
+  private StationList current;
+
+  @Before
+  public void setUp() throws Exception {
+    previous = load();
+    current = load();
+  }
+
+  @Test
+  public void testUnchanged() {
+    current.timestamp = previous.timestamp + 60000;
+    current.executionTime = "later";
+    Collections.reverse(current.stationBeanList);
+    assertTrue(StationListDelta.between(previous, current).isEmpty());
+  }
+
+  @Test
+  public void testCountsChanged() {
+    Station station = current.stationBeanList.get(5);
+    station.availableBikes += 2;
+    station.availableDocks -= 2;
+    StationListDelta delta = StationListDelta.between(previous, current);
+    assertEquals(1, delta.getChanges().size());
+    StationDelta change = delta.getChanges().get(0);
+    assertEquals(StationDelta.Type.CHANGED, change.getType());
+    assertEquals(station.id, change.getId());
+    assertSame(previous.stationBeanList.get(5), change.getPrevious());
+    assertSame(station, change.getCurrent());
+    assertEquals(2, change.getBikeChange());
+    assertEquals(-2, change.getDockChange());
+    assertFalse(change.isStatusChanged());
+  }
+
+  @Test
+  public void testStatusChanged() {
+    Station station = current.stationBeanList.get(0);
+    station.statusKey = 3;
+    station.statusValue = "Not In Service";
+    StationDelta change = StationListDelta.between(previous, current).getChanges().get(0);
+    assertTrue(change.isStatusChanged());
+    assertEquals(0, change.getBikeChange());
+  }
+
+  @Test
+  public void testAddedAndRemoved() {
+    Station removed = current.stationBeanList.remove(0);
+    Station added = new Station();
+    added.id = 100000;
+    added.availableBikes = 4;
+    current.stationBeanList.add(added);
+    StationListDelta delta = StationListDelta.between(previous, current);
+    assertEquals(2, delta.getChanges().size());
+    StationDelta first = delta.getChanges().get(0);
+    assertEquals(StationDelta.Type.ADDED, first.getType());
+    assertNull(first.getPrevious());
+    assertEquals(4, first.getBikeChange());
+    StationDelta second = delta.getChanges().get(1);
+    assertEquals(StationDelta.Type.REMOVED, second.getType());
+    assertEquals(removed.id, second.getId());
+    assertEquals(-removed.availableDocks, second.getDockChange());
+  }
+
+  @Test
+  public void testNoPreviousList() {
+    StationListDelta delta = StationListDelta.between(null, current);
+    assertEquals(current.stationBeanList.size(), delta.getChanges().size());
+    for (StationDelta change : delta.getChanges()) {
+      assertEquals(StationDelta.Type.ADDED, change.getType());
+    }
+  }
+
+  private static StationList load() throws Exception {
+    FileInputStream file = new FileInputStream("libs/test/data/sampleSnapshot.json");
+    StationList stationList = new Gson().fromJson(new InputStreamReader(file), StationList.class);
+    file.close();
+    return stationList;
+  }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import com.google.common.io.Files;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class StationListTypeAdapterTest {
+
+  private static String json;
+  private static Gson gson;
+
+  @BeforeClass
+  public static void setUpOnce() throws Exception {
+    json = Files.toString(new File("libs/test/data/sampleSnapshot.json"), StandardCharsets.UTF_8);
+    gson = new GsonBuilder()
+        .registerTypeAdapter(StationList.class, new StationListTypeAdapter())
+        .create();
+  }
+
+  @Test
+  public void testRead_matchesReflection() {
+    StationList expected = new Gson().fromJson(json, StationList.class);
+    StationList actual = gson.fromJson(json, StationList.class);
+    assertEquals(expected.executionTime, actual.executionTime);
+    assertEquals(expected.stationBeanList.size(), actual.stationBeanList.size());
+    for (int i = 0; i < expected.stationBeanList.size(); i++) {
+      assertSameFields(expected.stationBeanList.get(i), actual.stationBeanList.get(i));
+    }
+  }
+
+  @Test
+  public void testRead_skipsUnusedFields() {
+    Station station = gson.fromJson(json, StationList.class).stationBeanList.get(0);
+    assertNull(station.stAddress1);
+    assertNull(station.stAddress2);
+    assertNull(station.postalCode);
+    assertNull(station.location);
+    assertNull(station.altitude);
+    assertNull(station.lastCommunicationTime);
+    assertNull(station.landMark);
+  }
+
+  @Test
+  public void testRead_internsRepeatedStrings() {
+    StationList stationList = gson.fromJson(json, StationList.class);
+    Station first = stationList.stationBeanList.get(0);
+    for (Station station : stationList.stationBeanList) {
+      if (station.statusValue.equals(first.statusValue)) {
+        assertSame(first.statusValue, station.statusValue);
+      }
+      assertSame(first.city, station.city);
+    }
+  }
+
+  @Test
+  public void testRead_toleratesNullsAndUnknownFields() {
+    StationList stationList = gson.fromJson(
+        "{\"extra\":{\"a\":[1,2]},\"executionTime\":null,"
+            + "\"stationBeanList\":[{\"id\":7,\"stationName\":null,\"unknown\":\"x\"}]}",
+        StationList.class);
+    assertNull(stationList.executionTime);
+    assertEquals(1, stationList.stationBeanList.size());
+    assertEquals(7, stationList.stationBeanList.get(0).id);
+    assertNull(stationList.stationBeanList.get(0).stationName);
+    assertNull(gson.fromJson("null", StationList.class));
+  }
+
+  @Test
+  public void testRoundTrip() {
+    StationList original = gson.fromJson(json, StationList.class);
+    original.timestamp = 1413764641000L;
+    String written = gson.toJson(original);
+    // Readable by the reflective path too, since the written fields keep their names.
+    StationList reflected = new Gson().fromJson(written, StationList.class);
+    StationList streamed = gson.fromJson(written, StationList.class);
+    assertEquals(original.timestamp, reflected.timestamp);
+    assertEquals(original.timestamp, streamed.timestamp);
+    assertEquals(original.executionTime, streamed.executionTime);
+    for (int i = 0; i < original.stationBeanList.size(); i++) {
+      assertSameFields(original.stationBeanList.get(i), reflected.stationBeanList.get(i));
+      assertSameFields(original.stationBeanList.get(i), streamed.stationBeanList.get(i));
+    }
+  }
+
+  private static void assertSameFields(Station expected, Station actual) {
+    assertEquals(expected.id, actual.id);
+    assertEquals(expected.stationName, actual.stationName);
+    assertEquals(expected.availableDocks, actual.availableDocks);
+    assertEquals(expected.totalDocks, actual.totalDocks);
+    assertEquals(expected.latitude, actual.latitude, 0);
+    assertEquals(expected.longitude, actual.longitude, 0);
+    assertEquals(expected.statusValue, actual.statusValue);
+    assertEquals(expected.statusKey, actual.statusKey);
+    assertEquals(expected.availableBikes, actual.availableBikes);
+    assertEquals(expected.city, actual.city);
+    assertEquals(expected.testStation, actual.testStation);
+  }
+}
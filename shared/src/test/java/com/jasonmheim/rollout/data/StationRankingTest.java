@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import com.google.gson.Gson;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StationRankingTest {
+
+  // Approximately 76 Ninth Ave, New York, NY, 10011
+  private static final double LATITUDE = 40.7417806;
+  private static final double LONGITUDE = -74.0045012;
+  // Approximately Grand Army Plaza, Brooklyn, NY
+  private static final double DESTINATION_LATITUDE = 40.6740;
+  private static final double DESTINATION_LONGITUDE = -73.9701;
+
+  private static StationTable table;
+
+  @BeforeClass
+  public static void setUpOnce() throws Exception {
+    FileInputStream file = new FileInputStream("libs/test/data/sampleSnapshot.json");
+    StationList stationList =
+        new Gson().fromJson(new InputStreamReader(file), StationList.class);
+    file.close();
+    table = new StationTable(stationList);
+  }
+
+  @Test
+  public void testMatchesFullSort() {
+    int[] expected = table.rankByDistance(LATITUDE, LONGITUDE);
+    StationRanking<StationDistance> ranking = table.getRankingByDistance(LATITUDE, LONGITUDE);
+    assertEquals(expected.length, ranking.size());
+    for (int rank = 0; rank < expected.length; rank++) {
+      assertEquals(expected[rank], ranking.getRow(rank));
+      assertSame(table.getStation(expected[rank]), ranking.get(rank).getStation());
+    }
+  }
+
+  @Test
+  public void testMatchesFullSort_withDestination() {
+    int[] expected = table.rankByDestination(
+        LATITUDE, LONGITUDE, DESTINATION_LATITUDE, DESTINATION_LONGITUDE);
+    StationRanking<DestinationDistance> ranking = table.getRankingByDestination(
+        LATITUDE, LONGITUDE, DESTINATION_LATITUDE, DESTINATION_LONGITUDE);
+    for (int rank = 0; rank < expected.length; rank++) {
+      assertEquals(expected[rank], ranking.getRow(rank));
+    }
+  }
+
+  @Test
+  public void testReusesPreviousOrder() {
+    StationRanking<StationDistance> previous = table.getRankingByDistance(LATITUDE, LONGITUDE);
+    previous.get(40);
+    // About 30 meters north, then somewhere else entirely; either way the result must be exact.
+    double[][] origins = {{LATITUDE + 0.0003, LONGITUDE}, {DESTINATION_LATITUDE, LONGITUDE}};
+    for (double[] origin : origins) {
+      int[] expected = table.rankByDistance(origin[0], origin[1]);
+      StationRanking<StationDistance> ranking =
+          table.getRankingByDistance(origin[0], origin[1], previous);
+      assertEquals(expected.length, ranking.size());
+      for (int rank = 0; rank < expected.length; rank++) {
+        assertEquals(expected[rank], ranking.getRow(rank));
+      }
+    }
+  }
+
+  @Test
+  public void testReusesPreviousOrder_repeatedly() {
+    StationRanking<StationDistance> ranking = table.getRankingByDistance(LATITUDE, LONGITUDE);
+    for (int step = 1; step <= 10; step++) {
+      ranking.get(step * 3);
+      double latitude = LATITUDE + step * 0.0002;
+      double longitude = LONGITUDE - step * 0.0001;
+      ranking = table.getRankingByDistance(latitude, longitude, ranking);
+      int[] expected = table.rankByDistance(latitude, longitude);
+      for (int rank = 0; rank < 40; rank++) {
+        assertEquals(expected[rank], ranking.getRow(rank));
+      }
+    }
+  }
+
+  @Test
+  public void testReusesPreviousOrder_withDestination() {
+    StationRanking<DestinationDistance> previous = table.getRankingByDestination(
+        LATITUDE, LONGITUDE, DESTINATION_LATITUDE, DESTINATION_LONGITUDE);
+    previous.get(previous.size() - 1);
+    int[] expected = table.rankByDestination(
+        LATITUDE, LONGITUDE + 0.0004, DESTINATION_LATITUDE, DESTINATION_LONGITUDE);
+    StationRanking<DestinationDistance> ranking = table.getRankingByDestination(
+        LATITUDE, LONGITUDE + 0.0004, DESTINATION_LATITUDE, DESTINATION_LONGITUDE, previous);
+    for (int rank = 0; rank < expected.length; rank++) {
+      assertEquals(expected[rank], ranking.getRow(rank));
+    }
+  }
+
+  @Test
+  public void testSortsOnlyWhatIsRead() {
+    StationRanking<StationDistance> ranking = table.getRankingByDistance(LATITUDE, LONGITUDE);
+    assertEquals(0, ranking.getSortedCount());
+    StationDistance tenth = ranking.get(9);
+    assertEquals(10, ranking.getSortedCount());
+    assertSame(tenth, ranking.get(9));
+    ranking.get(4);
+    assertEquals(10, ranking.getSortedCount());
+  }
+
+  @Test
+  public void testFindFirst() {
+    int[] expected = table.rankByDistance(LATITUDE, LONGITUDE);
+    for (int threshold = 0; threshold < 30; threshold += 5) {
+      StationRanking<StationDistance> ranking = table.getRankingByDistance(LATITUDE, LONGITUDE);
+      int rank = ranking.findFirstWithBikes(threshold);
+      assertEquals(table.findFirstWithBikes(expected, threshold), rank);
+      assertEquals(rank + 1, ranking.getSortedCount());
+      StationDistanceRank result = ranking.getStationDistanceRank(rank);
+      assertEquals(rank, result.getRank());
+      assertTrue(result.getStationDistance().getStation().availableBikes > threshold);
+      assertEquals(table.findFirstWithDocks(expected, threshold),
+          ranking.findFirstWithDocks(threshold));
+    }
+    StationRanking<StationDistance> ranking = table.getRankingByDistance(LATITUDE, LONGITUDE);
+    assertEquals(-1, ranking.findFirstWithBikes(Integer.MAX_VALUE));
+    assertNull(ranking.getStationDistanceRank(-1));
+  }
+
+  @Test
+  public void testEmptyTable() {
+    StationList empty = new StationList();
+    empty.stationBeanList = new ArrayList<Station>();
+    StationRanking<StationDistance> ranking =
+        new StationTable(empty).getRankingByDistance(LATITUDE, LONGITUDE);
+    assertEquals(0, ranking.size());
+    assertEquals(-1, ranking.findFirstWithDocks(0));
+  }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright (C) 2014 Jason M. Heim
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.jasonmheim.rollout.data;
+
+import com.google.common.collect.Iterables;
+import com.google.common.collect.Ordering;
+import com.google.gson.Gson;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class StationTableTest {
+
+  // Approximately 76 Ninth Ave, New York, NY, 10011
+  private static final double LATITUDE = 40.7417806;
+  private static final double LONGITUDE = -74.0045012;
+  // Approximately Grand Army Plaza, Brooklyn, NY
+  private static final double DESTINATION_LATITUDE = 40.6740;
+  private static final double DESTINATION_LONGITUDE = -73.9701;
+
+  private static StationList stationList;
+  private static StationTable instance;
+
+  @BeforeClass
+  public static void setUpOnce() throws Exception {
+    FileInputStream file = new FileInputStream("libs/test/data/sampleSnapshot.json");
+    stationList = new Gson().fromJson(new InputStreamReader(file), StationList.class);
+    file.close();
+    instance = new StationTable(stationList);
+  }
+
+  @Test
+  public void testColumns() {
+    assertEquals(stationList.stationBeanList.size(), instance.size());
+    for (int row = 0; row < instance.size(); row++) {
+      Station station = stationList.stationBeanList.get(row);
+      assertSame(station, instance.getStation(row));
+      assertEquals(station.id, instance.getId(row));
+      assertEquals(station.latitude, instance.getLatitude(row), 0);
+      assertEquals(station.longitude, instance.getLongitude(row), 0);
+      assertEquals(station.availableBikes, instance.getAvailableBikes(row));
+      assertEquals(station.availableDocks, instance.getAvailableDocks(row));
+      assertEquals(station.totalDocks, instance.getTotalDocks(row));
+    }
+  }
+
+  @Test
+  public void testRankByDistance() {
+    List<StationDistance> expected = Ordering.natural().sortedCopy(Iterables.transform(
+        stationList.stationBeanList, new StationDistanceCalculator(LATITUDE, LONGITUDE)));
+    int[] ranking = instance.rankByDistance(LATITUDE, LONGITUDE);
+    assertEquals(expected.size(), ranking.length);
+    for (int i = 0; i < ranking.length; i++) {
+      assertSame(expected.get(i).getStation(), instance.getStation(ranking[i]));
+    }
+  }
+
+  @Test
+  public void testRankByDestination() {
+    List<DestinationDistance> expected = Ordering.natural().sortedCopy(Iterables.transform(
+        stationList.stationBeanList,
+        new DestinationDistanceCalculator(
+            LATITUDE, LONGITUDE, DESTINATION_LATITUDE, DESTINATION_LONGITUDE)));
+    int[] ranking = instance.rankByDestination(
+        LATITUDE, LONGITUDE, DESTINATION_LATITUDE, DESTINATION_LONGITUDE);
+    assertEquals(expected.size(), ranking.length);
+    for (int i = 0; i < ranking.length; i++) {
+      assertSame(expected.get(i).getStation(), instance.getStation(ranking[i]));
+    }
+  }
+
+  @Test
+  public void testFindFirst() {
+    int[] ranking = instance.rankByDistance(LATITUDE, LONGITUDE);
+    int rank = instance.findFirstWithBikes(ranking, 10);
+    for (int i = 0; i < rank; i++) {
+      assertTrue(instance.getAvailableBikes(ranking[i]) <= 10);
+    }
+    assertTrue(instance.getAvailableBikes(ranking[rank]) > 10);
+    rank = instance.findFirstWithDocks(ranking, 10);
+    for (int i = 0; i < rank; i++) {
+      assertTrue(instance.getAvailableDocks(ranking[i]) <= 10);
+    }
+    assertTrue(instance.getAvailableDocks(ranking[rank]) > 10);
+    assertEquals(-1, instance.findFirstWithBikes(ranking, Integer.MAX_VALUE));
+  }
+}
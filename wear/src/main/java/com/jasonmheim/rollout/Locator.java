@@ -22,14 +22,40 @@ import android.support.wearable.view.WatchViewStub;
 import android.util.Log;
 import android.widget.TextView;
 
-public class Locator extends Activity {
+import com.google.android.gms.common.api.GoogleApiClient;
+import com.google.android.gms.common.api.ResultCallback;
+import com.google.android.gms.wearable.DataApi;
+import com.google.android.gms.wearable.DataEvent;
+import com.google.android.gms.wearable.DataEventBuffer;
+import com.google.android.gms.wearable.DataItem;
+import com.google.android.gms.wearable.DataItemBuffer;
+import com.google.android.gms.wearable.Wearable;
+import com.jasonmheim.rollout.data.NearbyStation;
+import com.jasonmheim.rollout.data.NearbyStations;
+import com.jasonmheim.rollout.data.NearbyStationsFormat;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Shows the stations nearest the user, as pushed by the phone through the data layer; see
+ * {@link NearbyStationsFormat}. The phone keeps a full payload and a delta against it, and either
+ * may arrive first, so the delta is kept until the full payload it is based on has been seen.
+ */
+public class Locator extends Activity
+        implements GoogleApiClient.ConnectionCallbacks, DataApi.DataListener {
+
+    private GoogleApiClient mClient;
     private TextView mTextView;
+    private final StringBuilder mText = new StringBuilder();
+
+    // Only touched on the main thread.
+    private NearbyStations mBase;
+    private byte[] mDelta;
+    private NearbyStations mShown;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
-
-        Log.e("Rollout", "onCreate!");
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_locator);
         final WatchViewStub stub = (WatchViewStub) findViewById(R.id.watch_view_stub);
@@ -37,7 +63,135 @@ public class Locator extends Activity {
             @Override
             public void onLayoutInflated(WatchViewStub stub) {
                 mTextView = (TextView) stub.findViewById(R.id.text);
+                render();
             }
         });
+        mClient = new GoogleApiClient.Builder(this)
+                .addApi(Wearable.API)
+                .addConnectionCallbacks(this)
+                .build();
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        mClient.connect();
+    }
+
+    @Override
+    protected void onStop() {
+        if (mClient.isConnected()) {
+            Wearable.DataApi.removeListener(mClient, this);
+        }
+        mClient.disconnect();
+        super.onStop();
+    }
+
+    @Override
+    public void onConnected(Bundle connectionHint) {
+        Wearable.DataApi.addListener(mClient, this);
+        // The listener only hears of changes, so catch up on whatever the phone pushed before.
+        Wearable.DataApi.getDataItems(mClient).setResultCallback(
+                new ResultCallback<DataItemBuffer>() {
+                    @Override
+                    public void onResult(DataItemBuffer dataItems) {
+                        // The full payload goes first, so that a delta based on it decodes at once.
+                        byte[] full = null;
+                        byte[] delta = null;
+                        for (DataItem dataItem : dataItems) {
+                            String path = dataItem.getUri().getPath();
+                            if (NearbyStationsFormat.FULL_PATH.equals(path)) {
+                                full = dataItem.getData();
+                            } else if (NearbyStationsFormat.DELTA_PATH.equals(path)) {
+                                delta = dataItem.getData();
+                            }
+                        }
+                        dataItems.release();
+                        onPayload(NearbyStationsFormat.FULL_PATH, full);
+                        onPayload(NearbyStationsFormat.DELTA_PATH, delta);
+                    }
+                });
+    }
+
+    @Override
+    public void onConnectionSuspended(int cause) {
+    }
+
+    @Override
+    public void onDataChanged(DataEventBuffer dataEvents) {
+        // The buffer is only valid until released, and this may not be the main thread.
+        for (DataEvent dataEvent : dataEvents) {
+            if (dataEvent.getType() != DataEvent.TYPE_CHANGED) {
+                continue;
+            }
+            final String path = dataEvent.getDataItem().getUri().getPath();
+            final byte[] data = dataEvent.getDataItem().getData();
+            runOnUiThread(new Runnable() {
+                @Override
+                public void run() {
+                    onPayload(path, data);
+                }
+            });
+        }
+        dataEvents.release();
+    }
+
+    private void onPayload(String path, byte[] data) {
+        if (data == null) {
+            return;
+        }
+        if (NearbyStationsFormat.FULL_PATH.equals(path)) {
+            NearbyStations full = decode(data, null);
+            if (full == null) {
+                return;
+            }
+            mBase = full;
+        } else if (NearbyStationsFormat.DELTA_PATH.equals(path)) {
+            mDelta = data;
+        } else {
+            return;
+        }
+        NearbyStations latest = mBase;
+        if (mDelta != null && NearbyStationsFormat.canDecode(ByteBuffer.wrap(mDelta), mBase)) {
+            NearbyStations fromDelta = decode(mDelta, mBase);
+            // A delta left over from before the full payload was rewritten is older than it.
+            if (fromDelta != null && fromDelta.getSequence() - latest.getSequence() > 0) {
+                latest = fromDelta;
+            }
+        }
+        if (latest != null && latest != mShown) {
+            mShown = latest;
+            render();
+        }
+    }
+
+    private static NearbyStations decode(byte[] data, NearbyStations base) {
+        try {
+            return NearbyStationsFormat.decode(ByteBuffer.wrap(data), base);
+        } catch (IOException ex) {
+            Log.w("Rollout", "Ignoring a payload from the phone", ex);
+            return null;
+        }
+    }
+
+    private void render() {
+        if (mTextView == null || mShown == null) {
+            return;
+        }
+        if (mShown.getStations().isEmpty()) {
+            mTextView.setText(R.string.no_nearby_stations);
+            return;
+        }
+        mText.setLength(0);
+        for (NearbyStation station : mShown.getStations()) {
+            if (mText.length() > 0) {
+                mText.append("\n\n");
+            }
+            mText.append(station.getName()).append('\n')
+                    .append(station.getAvailableBikes()).append(" bikes, ")
+                    .append(station.getAvailableDocks()).append(" docks, ");
+            station.appendDistance(mText);
+        }
+        mTextView.setText(mText);
     }
 }